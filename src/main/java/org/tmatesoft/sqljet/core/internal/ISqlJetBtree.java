@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal;
 
 import java.util.Set;
+import java.util.function.IntConsumer;
 
 import javax.annotation.Nonnull;
 
@@ -75,6 +76,57 @@ public interface ISqlJetBtree extends AutoCloseable {
      */
     void setCacheSize(int mxPage);
 
+    /**
+     * Change the replacement policy of clean pages in the page cache.
+     *
+     * @param policy
+     */
+    void setCachePolicy(@Nonnull SqlJetPageCachePolicy policy);
+
+    /**
+     * @return replacement policy of clean pages in the page cache.
+     */
+    @Nonnull
+    SqlJetPageCachePolicy getCachePolicy();
+
+    /**
+     * Set the maximum number of bytes of the database file which are read
+     * through memory-mapped I/O, like PRAGMA mmap_size does. Zero disables
+     * memory-mapped reads.
+     *
+     * @param mmapSize
+     */
+    void setMmapSize(long mmapSize);
+
+    /**
+     * @return the maximum number of bytes read through memory-mapped I/O.
+     */
+    long getMmapSize();
+
+    /**
+     * Set the number of sibling pages which are loaded into cache ahead of
+     * cursor while it scans b-tree sequentially. Zero disables read-ahead.
+     *
+     * @param pages
+     */
+    void setReadAhead(int pages);
+
+    /**
+     * @return the number of sibling pages loaded ahead of sequential scan.
+     */
+    int getReadAhead();
+
+    /**
+     * @return number of cursor seeks which searched b-tree pages.
+     */
+    long getSeekCount();
+
+    /**
+     * @return number of seeks which started from the leaf page of cursor or
+     *         from its parent instead of the root page.
+     */
+    long getNearSeekCount();
+
     /**
      * Change the way data is synced to disk in order to increase or decrease
      * how well the database resists damage due to OS crashes and power
@@ -92,6 +144,49 @@ public interface ISqlJetBtree extends AutoCloseable {
 
     SqlJetPagerJournalMode getJournalMode();
 
+    /**
+     * Change the journal mode of database. Switching to or from
+     * {@link SqlJetPagerJournalMode#WAL} also updates file format version
+     * numbers in the database header, like SQLite does. Must not be called
+     * inside a transaction.
+     *
+     * @param journalMode
+     * @throws SqlJetException
+     */
+    void setJournalMode(@Nonnull SqlJetPagerJournalMode journalMode) throws SqlJetException;
+
+    /**
+     * Copy all content of write-ahead log into the database file. This is a
+     * no-op if database isn't in WAL mode. Must not be called inside a
+     * transaction.
+     *
+     * @throws SqlJetException
+     */
+    void checkpoint() throws SqlJetException;
+
+    /**
+     * Reclaim free pages of database in incremental auto-vacuum mode: pages
+     * from the end of file are moved into free pages and the file is
+     * truncated. This is a no-op in other auto-vacuum modes. Must be called
+     * inside a write transaction.
+     *
+     * @param pages
+     *            maximum number of pages to reclaim, negative value reclaims
+     *            all free pages.
+     * @return number of reclaimed pages.
+     * @throws SqlJetException
+     */
+    int incrementalVacuum(int pages) throws SqlJetException;
+
+    /**
+     * Number of pages in the free-list of database. Must be called inside a
+     * transaction.
+     *
+     * @return number of free pages.
+     * @throws SqlJetException
+     */
+    int getFreePageCount() throws SqlJetException;
+
     /**
      * Return the value of the 'auto-vacuum' property. If auto-vacuum is enabled
      * 1 is returned. Otherwise 0.
@@ -102,6 +197,76 @@ public interface ISqlJetBtree extends AutoCloseable {
     @Nonnull
     SqlJetAutoVacuumMode getAutoVacuum();
 
+    /**
+     * Set auto-vacuum mode of a new database. Mode of existing database can't
+     * be changed.
+     *
+     * @param mode
+     * @throws SqlJetException
+     */
+    void setAutoVacuum(@Nonnull SqlJetAutoVacuumMode mode) throws SqlJetException;
+
+    /**
+     * Set page size and number of bytes reserved at the end of every page of a
+     * new database. Page size of existing database can't be changed.
+     *
+     * @param pageSize
+     * @param nReserve
+     * @throws SqlJetException
+     */
+    void setPageSize(int pageSize, int nReserve) throws SqlJetException;
+
+    /**
+     * @return number of bytes reserved at the end of every page.
+     */
+    int getReserve();
+
+    /**
+     * Replace content of this database with content of another one, like
+     * sqlite3BtreeCopyFile() of SQLite. Both databases must have the same page
+     * size. Pages are written through the pager, so the change is atomic and
+     * becomes durable on commit. Must be called inside a write transaction of
+     * this database and at least read transaction of the source.
+     *
+     * Header fields of the first page which describe file rather than
+     * content (journal mode, change counter, version numbers) are kept.
+     *
+     * @param from
+     *            database to copy.
+     * @throws SqlJetException
+     */
+    void copyFile(@Nonnull ISqlJetBtree from) throws SqlJetException;
+
+    /**
+     * Visit leaf pages of b-tree in key order. Only interior pages are read.
+     * Must be called inside a transaction.
+     *
+     * @param table
+     *            root page of b-tree.
+     * @param visitor
+     *            receives numbers of leaf pages.
+     * @throws SqlJetException
+     */
+    void visitLeafPages(int table, @Nonnull IntConsumer visitor) throws SqlJetException;
+
+    /**
+     * Create loader which builds content of empty b-tree from entries sorted
+     * in key order. Must be called inside a write transaction. Other cursors
+     * on this b-tree should not be used until the loader is finished.
+     *
+     * @param table
+     *            root page of empty b-tree.
+     * @param keyInfo
+     *            key comparator of index, is used to check order of entries.
+     * @param fillFactor
+     *            share of page in percents which is filled with entries, from
+     *            10 to 100.
+     * @return loader of b-tree.
+     * @throws SqlJetException
+     */
+    @Nonnull
+    ISqlJetBtreeLoader getLoader(int table, ISqlJetKeyInfo keyInfo, int fillFactor) throws SqlJetException;
+
     /**
      * Get transaction mode
      *
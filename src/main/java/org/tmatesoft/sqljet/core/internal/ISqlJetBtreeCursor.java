@@ -175,6 +175,33 @@ public interface ISqlJetBtreeCursor {
      */
     boolean eof();
 
+    /**
+     * Count the number of entries in the b-tree. Only the page headers are
+     * read, the position of the cursor isn't changed.
+     *
+     * @return number of entries in the b-tree.
+     * @throws SqlJetException
+     */
+    long count() throws SqlJetException;
+
+    /**
+     * Move the cursor to the entry with given position in key order. Whole
+     * subtrees before the entry are skipped using numbers of their entries.
+     *
+     * @param position
+     *            zero-based position of entry.
+     * @return true if the cursor points to the entry, false if position is out
+     *         of range and the cursor wasn't moved.
+     * @throws SqlJetException
+     */
+    boolean moveToPosition(long position) throws SqlJetException;
+
+    /**
+     * @return zero-based position of current entry in key order.
+     * @throws SqlJetException
+     */
+    long getPosition() throws SqlJetException;
+
     /**
      * Return the flag byte at the beginning of the page that the cursor is
      * currently pointing to.
@@ -202,6 +229,14 @@ public interface ISqlJetBtreeCursor {
      */
     long getKeySize() throws SqlJetException;
 
+    /**
+     * Returns page number and index of the cell which cursor points to,
+     * packed into one value, or -1 if the cursor is not pointing to a valid
+     * entry. Entries which are moved by balancing or by deletes get other
+     * position, though other entry could take the same position.
+     */
+    long getCellPosition() throws SqlJetException;
+
     /**
      * Read part of the key associated with cursor pCur. Exactly "amt" bytes
      * will be transfered into buf[]. The transfer begins at "offset".
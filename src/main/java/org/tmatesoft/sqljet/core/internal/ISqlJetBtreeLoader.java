@@ -0,0 +1,72 @@
+/**
+ * ISqlJetBtreeLoader.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * Builds content of empty b-tree from entries which come in key order. Leaf
+ * pages are filled one after another and interior levels are built bottom-up
+ * when all entries are appended, so every page is written once and no
+ * balancing is needed.
+ *
+ * Loader should be closed if it isn't finished, for example when appending of
+ * entries fails, so pages which it holds are released before rollback.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public interface ISqlJetBtreeLoader extends AutoCloseable {
+
+    /**
+     * Append entry to b-tree. Arguments have the same meaning as for
+     * {@link ISqlJetBtreeCursor#insert(ISqlJetMemoryPointer, long, ISqlJetMemoryPointer, int, int, boolean)}
+     * . Entry should follow all previously appended entries in key order.
+     *
+     * @param pKey
+     *            key of index entry, null for tables.
+     * @param nKey
+     *            rowid for tables, size of pKey for indices.
+     * @param pData
+     *            data of table entry.
+     * @param nData
+     *            size of pData.
+     * @throws SqlJetException
+     */
+    void append(ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData, int nData) throws SqlJetException;
+
+    /**
+     * Build interior pages and put the top of b-tree into its root page. The
+     * loader can't be used after that.
+     *
+     * @return number of appended entries.
+     * @throws SqlJetException
+     */
+    long finish() throws SqlJetException;
+
+    /**
+     * Release pages of unfinished b-tree. Does nothing after
+     * {@link #finish()}.
+     *
+     * @throws SqlJetException
+     */
+    @Override
+    void close() throws SqlJetException;
+
+}
@@ -47,6 +47,14 @@ public interface ISqlJetDbHandle {
 
     SqlAbstractJetMutex getMutex();
 
+    /**
+     * Replace mutex of this connection. Connections which share page cache
+     * share the mutex too.
+     *
+     * @param mutex
+     */
+    void setMutex(SqlAbstractJetMutex mutex);
+
     /**
      * @return
      */
@@ -117,6 +117,20 @@ public interface ISqlJetFile extends AutoCloseable {
      */
     void write(@Nonnull ISqlJetMemoryPointer buffer, final int amount, final long offset) throws SqlJetException;
 
+    /**
+     * Write data from several buffers into a contiguous region of a file,
+     * starting at offset. Implementations which support it issue a single
+     * gathering write.
+     * 
+     * @param buffers
+     * @param amounts
+     *            number of bytes to write from every buffer.
+     * @param offset
+     * @throws SqlJetIOException
+     */
+    void write(@Nonnull ISqlJetMemoryPointer[] buffers, @Nonnull int[] amounts, final long offset)
+            throws SqlJetException;
+
     /**
      * Truncate an open file to a specified size
      * 
@@ -224,4 +238,20 @@ public interface ISqlJetFile extends AutoCloseable {
      */
     boolean isMemJournal();
 
+    /**
+     * Set the maximum number of bytes at the beginning of the file which are
+     * read through memory-mapped I/O, like PRAGMA mmap_size of SQLite. Zero
+     * disables memory-mapped reads.
+     * 
+     * @param mmapSize
+     */
+    void setMmapSize(long mmapSize);
+
+    /**
+     * Returns the maximum number of bytes read through memory-mapped I/O.
+     * 
+     * @return
+     */
+    long getMmapSize();
+
 }
@@ -18,7 +18,7 @@
 package org.tmatesoft.sqljet.core.internal;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 import javax.annotation.Nonnull;
@@ -162,32 +162,56 @@ public interface ISqlJetMemoryBuffer {
     void putIntUnsigned(int pointer, long value);
 
     /**
-     * Read from file into memory chunk at pointer. Method isn't synchronized on
-     * file.
+     * Read from file into memory chunk at pointer. Uses positional read, so
+     * channel's position isn't changed and method doesn't need to be
+     * synchronized on file.
      *
      * @param pointer
-     * @param file
+     * @param channel
      * @param position
      * @param count
      * @return
      * @throws IOException
      */
-    int readFromFile(int pointer, @Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position,
-            int count) throws IOException;
+    int readFromFile(int pointer, @Nonnull FileChannel channel, long position, int count) throws IOException;
 
     /**
-     * Write from memory chunk at pointer to file. Method isn't synchronized on
-     * file.
+     * Write from memory chunk at pointer to file. Uses positional write, so
+     * channel's position isn't changed and method doesn't need to be
+     * synchronized on file.
      *
      * @param pointer
-     * @param file
+     * @param channel
      * @param position
      * @param count
      * @return
      * @throws IOException
      */
-    int writeToFile(int pointer, @Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position, int count)
-            throws IOException;
+    int writeToFile(int pointer, @Nonnull FileChannel channel, long position, int count) throws IOException;
+
+    /**
+     * Read from byte buffer (for example memory-mapped region of file) into
+     * memory chunk at pointer. Position and limit of source buffer aren't
+     * changed, so it could be shared between threads.
+     *
+     * @param pointer
+     * @param src
+     * @param position
+     * @param count
+     */
+    void readFromBuffer(int pointer, @Nonnull ByteBuffer src, int position, int count);
+
+    /**
+     * Returns byte buffer which shares content of memory chunk from pointer to
+     * pointer+count, without copying. Position of returned buffer is zero and
+     * limit is count.
+     *
+     * @param pointer
+     * @param count
+     * @return
+     */
+    @Nonnull
+    ByteBuffer asByteBuffer(int pointer, int count);
 
     /**
      * @param dstPos
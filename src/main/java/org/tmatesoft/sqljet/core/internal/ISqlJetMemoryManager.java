@@ -19,6 +19,8 @@ package org.tmatesoft.sqljet.core.internal;
 
 import javax.annotation.Nonnull;
 
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetBufferPool;
+
 /**
  * Default implementation of SQLJet's memory manager. It allows allocate memory
  * chunk {@link ISqlJetMemoryBuffer}.
@@ -91,4 +93,44 @@ public interface ISqlJetMemoryManager {
     @Nonnull
     ISqlJetMemoryBuffer allocate(@Nonnull byte[] bytes, SqlJetMemoryBufferType bufferType);
 
+    /**
+     * Allocates zeroed page-sized buffer, reusing free buffer from the pool
+     * when possible. Buffer should be returned by
+     * {@link #free(ISqlJetMemoryPointer)} when it isn't used anymore, or
+     * passed to {@link #forget(ISqlJetMemoryPointer)} if it can't be returned.
+     * 
+     * @param size
+     *            size of buffer in bytes
+     * @param bufferType
+     * @return pointer to the start of allocated buffer
+     */
+    @Nonnull
+    ISqlJetMemoryPointer allocatePagePtr(int size, SqlJetMemoryBufferType bufferType);
+
+    /**
+     * Returns buffer allocated by
+     * {@link #allocatePagePtr(int, SqlJetMemoryBufferType)} to the pool. The
+     * buffer must not be used after that.
+     * 
+     * @param pointer
+     *            pointer to the start of buffer
+     */
+    void free(@Nonnull ISqlJetMemoryPointer pointer);
+
+    /**
+     * Tells the pool that buffer allocated by
+     * {@link #allocatePagePtr(int, SqlJetMemoryBufferType)} won't be returned
+     * because it could be still read. Buffer is left to garbage collector.
+     * 
+     * @param pointer
+     *            pointer to the start of buffer
+     */
+    void forget(@Nonnull ISqlJetMemoryPointer pointer);
+
+    /**
+     * @return pool of page-sized buffers with its statistics.
+     */
+    @Nonnull
+    SqlJetBufferPool getBufferPool();
+
 }
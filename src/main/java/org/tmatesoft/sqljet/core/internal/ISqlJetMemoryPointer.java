@@ -18,7 +18,6 @@
 package org.tmatesoft.sqljet.core.internal;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 
 import javax.annotation.Nonnull;
@@ -139,28 +138,26 @@ public interface ISqlJetMemoryPointer {
     void putIntUnsigned(long value);
 
     /**
-     * Read from file at current address.
+     * Read from file at current address. Channel's position isn't changed.
      *
-     * @param file
+     * @param channel
      * @param position
      * @param count
      * @return
      * @throws IOException
      */
-    int readFromFile(@Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position, int count)
-            throws IOException;
+    int readFromFile(@Nonnull FileChannel channel, long position, int count) throws IOException;
 
     /**
-     * Write to file at current address.
+     * Write to file at current address. Channel's position isn't changed.
      *
-     * @param file
+     * @param channel
      * @param position
      * @param count
      * @return
      * @throws IOException
      */
-    int writeToFile(@Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position, int count)
-            throws IOException;
+    int writeToFile(@Nonnull FileChannel channel, long position, int count) throws IOException;
 
     /**
      * Read byte at pointer.
@@ -317,8 +314,27 @@ public interface ISqlJetMemoryPointer {
     
     int skipVarint32();
 
+    /**
+     * Read a 32-bit variable-length integer like {@link #getVarint32(int)}
+     * does but without allocation of result: value and number of bytes read
+     * are packed into long, use {@link SqlJetVarintResult32#getPackedValue(long)}
+     * and {@link SqlJetVarintResult32#getPackedOffset(long)} to get them.
+     */
+    long getVarint32Packed(int offset);
+
     SqlJetVarintResult getVarint(int offset);
 
+    /**
+     * @return value of 64-bit variable-length integer at offset, see
+     *         {@link #getVarint(int)}.
+     */
+    long getVarintValue(int offset);
+
+    /**
+     * @return number of bytes in 64-bit variable-length integer at offset.
+     */
+    int getVarintLength(int offset);
+
     /**
      * Read a 64-bit variable-length integer from memory starting at p[0].
      * Return the number of bytes read. The value is stored in *v.
@@ -19,6 +19,8 @@ package org.tmatesoft.sqljet.core.internal;
 
 import java.util.List;
 
+import javax.annotation.Nonnull;
+
 import org.tmatesoft.sqljet.core.SqlJetException;
 
 /**
@@ -51,6 +53,28 @@ public interface ISqlJetPageCache {
      */
     ISqlJetPage fetch(int pageNumber, boolean createFlag) throws SqlJetException;
 
+    /**
+     * Check if page is in the cache. Unlike {@link #fetch(int, boolean)} it
+     * doesn't reference the page and isn't counted as its use by replacement
+     * policy.
+     * 
+     * @param pageNumber
+     * @return true if page is cached.
+     */
+    boolean contains(int pageNumber);
+
+    /**
+     * Create a page for content read ahead of its use. Unlike
+     * {@link #fetch(int, boolean)} it never tries to make dirty pages clean,
+     * and the first fetch of the page after it's released isn't counted as
+     * its reuse by replacement policy.
+     * 
+     * @param pageNumber
+     * @return new referenced page, or null if page is cached already or no
+     *         clean page could be recycled.
+     */
+    ISqlJetPage prefetch(int pageNumber);
+
     /**
      * Remove page from cache
      * 
@@ -139,4 +163,20 @@ public interface ISqlJetPageCache {
      */
     void setCacheSize(int cacheSize);
 
+    /**
+     * Get the replacement policy of clean unreferenced pages.
+     * 
+     * @return
+     */
+    @Nonnull
+    SqlJetPageCachePolicy getPolicy();
+
+    /**
+     * Set the replacement policy of clean unreferenced pages. Default policy
+     * is taken from SQLJET.PAGE_CACHE_POLICY system property.
+     * 
+     * @param policy
+     */
+    void setPolicy(@Nonnull SqlJetPageCachePolicy policy);
+
 }
@@ -46,7 +46,7 @@ public abstract class SqlJetAbstractPager {
      */
     protected static final int SQLJET_MIN_SECTOR_SIZE = SqlJetUtility.getIntSysProp("SQLJET_MIN_SECTOR_SIZE", 512);
 
-    protected static final String JOURNAL = "-journal";
+    public static final String JOURNAL = "-journal";
 
     /**
      * Journal files begin with the following magic string. The data was
@@ -314,6 +314,24 @@ public abstract class SqlJetAbstractPager {
      */
     public abstract SqlJetPagerJournalMode getJournalMode();
 
+    /**
+     * Set the journal-mode for this pager. Journal mode can't be changed while
+     * write transaction is active. Pagers which don't support requested mode
+     * keep their current mode.
+     * 
+     * @param journalMode
+     * @throws SqlJetException
+     */
+    public abstract void setJournalMode(@Nonnull SqlJetPagerJournalMode journalMode) throws SqlJetException;
+
+    /**
+     * Copy all pages from write-ahead log back into the database file. This is
+     * a no-op if pager isn't in {@link SqlJetPagerJournalMode#WAL} mode.
+     * 
+     * @throws SqlJetException
+     */
+    public abstract void checkpoint() throws SqlJetException;
+
     /**
      * Set safety level
      * 
@@ -377,6 +395,13 @@ public abstract class SqlJetAbstractPager {
      */
     public abstract int setPageSize(final int pageSize) throws SqlJetException;
 
+    /**
+     * @return size of page in bytes.
+     */
+    public final int getPageSize() {
+        return pageSize;
+    }
+
     /**
      * Change the maximum number of in-memory pages that are allowed.
      * 
@@ -384,6 +409,54 @@ public abstract class SqlJetAbstractPager {
      */
     public abstract void setCacheSize(final int cacheSize);
 
+    /**
+     * Change the replacement policy of clean pages in cache.
+     * 
+     * @param policy
+     */
+    public abstract void setCachePolicy(@Nonnull SqlJetPageCachePolicy policy);
+
+    /**
+     * @return replacement policy of clean pages in cache.
+     */
+    public abstract @Nonnull SqlJetPageCachePolicy getCachePolicy();
+
+    /**
+     * Set the maximum number of bytes at the beginning of the database file
+     * which are read through memory-mapped I/O. Zero disables memory-mapped
+     * reads.
+     * 
+     * @param mmapSize
+     */
+    public void setMmapSize(final long mmapSize) {
+        final ISqlJetFile file = getFile();
+        if (file != null) {
+            file.setMmapSize(mmapSize);
+        }
+    }
+
+    /**
+     * @return the maximum number of bytes read through memory-mapped I/O.
+     */
+    public long getMmapSize() {
+        final ISqlJetFile file = getFile();
+        return file != null ? file.getMmapSize() : 0;
+    }
+
+    /**
+     * Load pages into cache ahead of their use. Pages which are already cached
+     * or don't exist are skipped. This is only a hint, so pagers which keep
+     * all pages in memory ignore it.
+     * 
+     * @param pageNumbers
+     *            numbers of pages to load, in the order of expected use.
+     * @param count
+     *            number of entries used in pageNumbers.
+     * @throws SqlJetException
+     */
+    public void prefetch(@Nonnull int[] pageNumbers, int count) throws SqlJetException {
+    }
+
     /**
      * Read the first N bytes from the beginning of the file into memory that
      * buffer points to.
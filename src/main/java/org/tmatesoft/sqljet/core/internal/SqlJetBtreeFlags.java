@@ -46,7 +46,13 @@ public enum SqlJetBtreeFlags {
     READWRITE,
 
     /** Create the database if it does not exist */
-    CREATE;
+    CREATE,
+
+    /**
+     * Share page cache with other connections opened with this flag on the
+     * same file in this JVM
+     */
+    SHARED_CACHE;
 
     private final SqlJetPagerFlags pagerFlag;
 
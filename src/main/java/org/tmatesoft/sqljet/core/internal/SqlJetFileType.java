@@ -23,7 +23,7 @@ package org.tmatesoft.sqljet.core.internal;
  *
  */
 public enum SqlJetFileType {
-    MAIN_DB, TEMP_DB, TRANSIENT_DB, MAIN_JOURNAL, TEMP_JOURNAL, SUBJOURNAL, MASTER_JOURNAL;
+    MAIN_DB, TEMP_DB, TRANSIENT_DB, MAIN_JOURNAL, TEMP_JOURNAL, SUBJOURNAL, MASTER_JOURNAL, WAL;
 
     public boolean noLock() {
         return MAIN_DB != this;
@@ -106,6 +106,10 @@ public final class SqlJetUtility {
         return Integer.parseInt(System.getProperty(propName, Integer.toString(defValue)));
     }
 
+    public static long getLongSysProp(@Nonnull String propName, final long defValue) {
+        return Long.parseLong(System.getProperty(propName, Long.toString(defValue)));
+    }
+
     /**
      * @param string
      * @param b
@@ -18,8 +18,10 @@
 package org.tmatesoft.sqljet.core.internal.btree;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Set;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +33,7 @@ import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeLoader;
 import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
 import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
 import org.tmatesoft.sqljet.core.internal.ISqlJetKeyInfo;
@@ -44,6 +47,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetBtreeFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetBtreeTableCreateFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetResultWithOffset;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
@@ -156,16 +160,66 @@ public class SqlJetBtree implements ISqlJetBtree {
          */
         final boolean isMemdb = filename != null && SqlJetAbstractPager.MEMORY_DB.equals(filename.getPath());
 
-        ISqlJetFileSystem pVfs = db
-                .getFileSystem(); /* The VFS to use for this btree */
         this.db = db;
 
         /*
-         * The following asserts make sure that structures used by the btree are
-         * the right size. This is to guard against size changes that result
-         * when compiling on a different architecture.
+         * In shared-cache mode connections opened on the same file share the
+         * BtShared structure, so it's opened only by the first of them. They
+         * also share the mutex, which guards access to BtShared. Pager reads
+         * the file through file system of the first connection, so cache
+         * isn't shared by connections which use other file systems.
          */
-        pBt = new SqlJetBtreeShared(); /* Shared part of btree structure */
+        final String sharedKey = !isMemdb && filename != null && flags != null
+                && flags.contains(SqlJetBtreeFlags.SHARED_CACHE)
+                        ? sharedCacheKey(filename, db.getFileSystem(), permissions) : null;
+        if (sharedKey != null) {
+            synchronized (SqlJetBtreeShared.SHARED_CACHE_LIST) {
+                SqlJetBtreeShared shared = SqlJetBtreeShared.SHARED_CACHE_LIST.get(sharedKey);
+                if (shared == null) {
+                    shared = openShared(filename, isMemdb, flags, type, permissions);
+                    shared.sharedKey = sharedKey;
+                    shared.mutex = db.getMutex();
+                    shared.fileSystem = db.getFileSystem();
+                    SqlJetBtreeShared.SHARED_CACHE_LIST.put(sharedKey, shared);
+                } else if (shared.fileSystem != db.getFileSystem()) {
+                    /* Other instance of the same file system, its files may differ. */
+                    shared = openShared(filename, isMemdb, flags, type, permissions);
+                } else {
+                    db.setMutex(shared.mutex);
+                }
+                shared.sharing.add(this);
+                pBt = shared;
+            }
+        } else {
+            pBt = openShared(filename, isMemdb, flags, type, permissions);
+            pBt.sharing.add(this);
+        }
+        readOnly = pBt.pPager.isReadOnly();
+    }
+
+    private static String sharedCacheKey(@Nonnull File filename, ISqlJetFileSystem fileSystem,
+            Set<SqlJetFileOpenPermission> permissions) {
+        String path;
+        try {
+            path = filename.getCanonicalPath();
+        } catch (IOException e) {
+            path = filename.getAbsolutePath();
+        }
+        path += "?vfs=" + fileSystem.getName();
+        /* Read-only connections don't share cache with writable ones. */
+        return permissions.contains(SqlJetFileOpenPermission.READONLY) ? path + "&mode=ro" : path;
+    }
+
+    /**
+     * Open pager and create the BtShared structure for it.
+     */
+    private @Nonnull SqlJetBtreeShared openShared(File filename, boolean isMemdb, Set<SqlJetBtreeFlags> flags,
+            @Nonnull SqlJetFileType type, @Nonnull Set<SqlJetFileOpenPermission> permissions)
+            throws SqlJetException {
+        ISqlJetFileSystem pVfs = db
+                .getFileSystem(); /* The VFS to use for this btree */
+
+        final SqlJetBtreeShared pBt = new SqlJetBtreeShared(); /* Shared part of btree structure */
         if (isMemdb) {
             pBt.pPager = new SqlJetMemPager(pVfs);
         } else if (filename == null) {
@@ -180,7 +234,6 @@ public class SqlJetBtree implements ISqlJetBtree {
             pBt.pPager.setBusyhandler(this::invokeBusyHandler);
             pBt.pPager.setReiniter(page -> pageReinit(page));
 
-            readOnly = pBt.pPager.isReadOnly();
             int pageSize = zDbHeader.getShortUnsigned(16);
 
             int nReserve;
@@ -213,6 +266,7 @@ public class SqlJetBtree implements ISqlJetBtree {
             pBt.pPager.close();
             throw e;
         }
+        return pBt;
     }
 
     /**
@@ -269,8 +323,19 @@ public class SqlJetBtree implements ISqlJetBtree {
          * Clean out and delete the BtShared object.
          */
         assert cursors.isEmpty();
-        pBt.pPager.close();
         pSchema = null;
+        synchronized (SqlJetBtreeShared.SHARED_CACHE_LIST) {
+            pBt.sharing.remove(this);
+            if (!pBt.sharing.isEmpty()) {
+                final SqlJetBtree other = pBt.sharing.get(0);
+                pBt.pPager.setBusyhandler(other::invokeBusyHandler);
+                return;
+            }
+            if (pBt.isShared()) {
+                SqlJetBtreeShared.SHARED_CACHE_LIST.remove(pBt.sharedKey);
+            }
+        }
+        pBt.pPager.close();
     }
 
     /*
@@ -289,6 +354,49 @@ public class SqlJetBtree implements ISqlJetBtree {
         return pBt.pPager.getCacheSize();
     }
 
+    @Override
+    public void setCachePolicy(@Nonnull SqlJetPageCachePolicy policy) {
+        assert db.getMutex().held();
+        pBt.pPager.setCachePolicy(policy);
+    }
+
+    @Override
+    public @Nonnull SqlJetPageCachePolicy getCachePolicy() {
+        return pBt.pPager.getCachePolicy();
+    }
+
+    @Override
+    public void setReadAhead(int pages) {
+        assert db.getMutex().held();
+        pBt.readAhead = pages;
+    }
+
+    @Override
+    public int getReadAhead() {
+        return pBt.readAhead;
+    }
+
+    @Override
+    public long getSeekCount() {
+        return pBt.seekCount;
+    }
+
+    @Override
+    public long getNearSeekCount() {
+        return pBt.nearSeekCount;
+    }
+
+    @Override
+    public void setMmapSize(long mmapSize) {
+        assert db.getMutex().held();
+        pBt.pPager.setMmapSize(mmapSize);
+    }
+
+    @Override
+    public long getMmapSize() {
+        return pBt.pPager.getMmapSize();
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -311,11 +419,196 @@ public class SqlJetBtree implements ISqlJetBtree {
         return pBt.pPager.getJournalMode();
     }
 
+    @Override
+    public void setJournalMode(@Nonnull SqlJetPagerJournalMode journalMode) throws SqlJetException {
+        assert db.getMutex().held();
+        SqlJetAssert.assertTrue(inTrans == TransMode.NONE && (!pBt.isShared() || pBt.isUnused()),
+                SqlJetErrorCode.MISUSE, "Journal mode can't be changed inside transaction");
+        final SqlJetPagerJournalMode current = pBt.pPager.getJournalMode();
+        if (current == journalMode) {
+            return;
+        }
+        if (journalMode == SqlJetPagerJournalMode.WAL) {
+            pBt.pPager.setJournalMode(journalMode);
+            if (pBt.pPager.getJournalMode() == SqlJetPagerJournalMode.WAL) {
+                setFileFormat(2);
+            }
+        } else {
+            if (current == SqlJetPagerJournalMode.WAL) {
+                setFileFormat(1);
+            }
+            pBt.pPager.setJournalMode(journalMode);
+        }
+    }
+
+    /**
+     * Write read and write file format versions into the database header.
+     * Version 2 marks databases in WAL mode.
+     */
+    private void setFileFormat(int version) throws SqlJetException {
+        beginTrans(SqlJetTransactionMode.EXCLUSIVE);
+        try {
+            ISqlJetMemoryPointer pP1 = pBt.pPage1.getData();
+            pBt.pPage1.pDbPage.write();
+            pP1.putByteUnsigned(18, version);
+            pP1.putByteUnsigned(19, version);
+            commit();
+        } catch (SqlJetException e) {
+            rollback();
+            throw e;
+        }
+    }
+
+    @Override
+    public void checkpoint() throws SqlJetException {
+        assert db.getMutex().held();
+        SqlJetAssert.assertTrue(inTrans == TransMode.NONE && (!pBt.isShared() || pBt.isUnused()),
+                SqlJetErrorCode.MISUSE, "Checkpoint can't be done inside transaction");
+        pBt.pPager.checkpoint();
+    }
+
+    @Override
+    public int incrementalVacuum(int pages) throws SqlJetException {
+        assert db.getMutex().held();
+        SqlJetAssert.assertTrue(inTrans == TransMode.WRITE, SqlJetErrorCode.MISUSE,
+                "Incremental vacuum can be done only inside write transaction");
+        if (!pBt.autoVacuumMode.isIncrVacuum() || pages == 0) {
+            return 0;
+        }
+        /* Pages could be relocated under any cursor, including our own. */
+        for (SqlJetBtree p : pBt.sharing) {
+            p.cursors.saveAllCursors(0, null);
+        }
+        return pBt.incrVacuum(pages);
+    }
+
+    @Override
+    public int getFreePageCount() throws SqlJetException {
+        assert db.getMutex().held();
+        SqlJetAssert.assertFalse(inTrans == TransMode.NONE, SqlJetErrorCode.MISUSE);
+        return pBt.pPage1.getData().getInt(36);
+    }
+
     @Override
     public @Nonnull SqlJetAutoVacuumMode getAutoVacuum() {
         return pBt.autoVacuumMode;
     }
 
+    @Override
+    public void setAutoVacuum(@Nonnull SqlJetAutoVacuumMode mode) throws SqlJetException {
+        assertEmpty();
+        pBt.autoVacuumMode = mode;
+    }
+
+    @Override
+    public void setPageSize(int pageSize, int nReserve) throws SqlJetException {
+        assertEmpty();
+        SqlJetAssert.assertTrue(pageSize >= ISqlJetLimits.SQLJET_MIN_PAGE_SIZE
+                && pageSize <= ISqlJetLimits.SQLJET_MAX_PAGE_SIZE && (pageSize - 1 & pageSize) == 0
+                && nReserve >= 0 && nReserve <= 255 && pageSize - nReserve >= 500, SqlJetErrorCode.MISUSE,
+                "Bad page size");
+        pBt.usableSize = pageSize - nReserve;
+        pBt.setPageSize(pBt.pPager.setPageSize(pageSize));
+    }
+
+    @Override
+    public int getReserve() {
+        return pBt.getPageSize() - pBt.usableSize;
+    }
+
+    /**
+     * Page size and auto-vacuum mode are fixed by the first page of database.
+     */
+    private void assertEmpty() throws SqlJetException {
+        assert db.getMutex().held();
+        SqlJetAssert.assertTrue(inTrans == TransMode.NONE && pBt.pPage1 == null && pBt.pPager.getPageCount() == 0,
+                SqlJetErrorCode.MISUSE, "It can be changed only for a new database");
+    }
+
+    @Override
+    public void copyFile(@Nonnull ISqlJetBtree from) throws SqlJetException {
+        assert db.getMutex().held();
+        assertWriteTransaction();
+        final SqlJetAbstractPager src = from.getPager();
+        final SqlJetAbstractPager dst = pBt.pPager;
+        final int pageSize = pBt.getPageSize();
+        SqlJetAssert.assertTrue(src.getPageSize() == pageSize && from.getReserve() == getReserve(),
+                SqlJetErrorCode.MISUSE, "Page size of databases differs");
+
+        /* All pages are replaced under cursors of all connections. */
+        for (SqlJetBtree p : pBt.sharing) {
+            p.cursors.saveAllCursors(0, null);
+        }
+        pBt.invalidateCursorCaches();
+        final int nFrom = src.getPageCount();
+        final int nTo = dst.getPageCount();
+        final int pendingPage = pBt.pendingBytePage();
+        for (int pgno = 1; pgno <= nFrom; pgno++) {
+            if (pgno == pendingPage) {
+                continue;
+            }
+            final ISqlJetPage fromPage = src.acquirePage(pgno, true);
+            try {
+                final ISqlJetPage toPage = dst.acquirePage(pgno, pgno <= nTo);
+                try {
+                    toPage.write();
+                    final ISqlJetMemoryPointer toData = toPage.getData();
+                    final ISqlJetMemoryPointer fromData = fromPage.getData();
+                    if (pgno == 1) {
+                        /*
+                         * Keep file format versions (journal mode), change
+                         * counter and version numbers of this file.
+                         */
+                        toData.copyFrom(0, fromData, 0, 18);
+                        toData.copyFrom(20, fromData, 20, 4);
+                        toData.copyFrom(28, fromData, 28, 92 - 28);
+                        toData.copyFrom(100, fromData, 100, pageSize - 100);
+                    } else {
+                        toData.copyFrom(fromData, pageSize);
+                    }
+                    pageReinit(toPage);
+                } finally {
+                    toPage.unref();
+                }
+            } finally {
+                fromPage.unref();
+            }
+        }
+        if (nFrom < nTo) {
+            dst.truncateImage(nFrom);
+        }
+    }
+
+    @Override
+    public void visitLeafPages(int table, @Nonnull IntConsumer visitor) throws SqlJetException {
+        assert db.getMutex().held();
+        SqlJetAssert.assertFalse(inTrans == TransMode.NONE, SqlJetErrorCode.MISUSE);
+        visitLeafPages(table, visitor, 0);
+    }
+
+    @Override
+    public @Nonnull ISqlJetBtreeLoader getLoader(int table, ISqlJetKeyInfo keyInfo, int fillFactor)
+            throws SqlJetException {
+        return new SqlJetBtreeLoader(this, table, keyInfo, fillFactor);
+    }
+
+    private void visitLeafPages(int pgno, @Nonnull IntConsumer visitor, int depth) throws SqlJetException {
+        SqlJetAssert.assertTrue(depth < ISqlJetBtreeCursor.BTCURSOR_MAX_DEPTH, SqlJetErrorCode.CORRUPT);
+        final SqlJetMemPage pPage = pBt.getAndInitPage(pgno);
+        try {
+            if (pPage.leaf) {
+                visitor.accept(pgno);
+                return;
+            }
+            for (int i = 0; i < pPage.nCell; i++) {
+                visitLeafPages(pPage.findCell(i).getInt(), visitor, depth + 1);
+            }
+            visitLeafPages(pPage.getData().getInt(pPage.getHdrOffset() + 8), visitor, depth + 1);
+        } finally {
+            SqlJetMemPage.releasePage(pPage);
+        }
+    }
+
     /**
      * Get a reference to pPage1 of the database file. This will also acquire a
      * readlock on that file.
@@ -341,10 +634,15 @@ public class SqlJetBtree implements ISqlJetBtree {
             if (nPage > 0) {
                 ISqlJetMemoryPointer page1 = pPage1.getData();
                 SqlJetAssert.assertTrue(SqlJetUtility.memcmp(page1, MAGIC_HEADER, 16) == 0, SqlJetErrorCode.NOTADB);
-                if (page1.getByteUnsigned(18) > 1) {
+                if (page1.getByteUnsigned(18) > 2) {
                     readOnly = true;
                 }
-                SqlJetAssert.assertFalse(page1.getByteUnsigned(19) > 1, SqlJetErrorCode.NOTADB);
+                SqlJetAssert.assertFalse(page1.getByteUnsigned(19) > 2, SqlJetErrorCode.NOTADB);
+                if (page1.getByteUnsigned(19) == 2
+                        && pBt.pPager.getJournalMode() != SqlJetPagerJournalMode.WAL) {
+                    /* Database was switched into WAL mode. */
+                    pBt.pPager.setJournalMode(SqlJetPagerJournalMode.WAL);
+                }
 
                 /*
                  * The maximum embedded fraction must be exactly 25%. And the
@@ -435,9 +733,22 @@ public class SqlJetBtree implements ISqlJetBtree {
             return;
         }
 
+        /* Database file could be changed by other connections meanwhile. */
+        pBt.invalidateCursorCaches();
+
         /* Write transactions are not possible on a read-only database */
         SqlJetAssert.assertFalse(readOnly && mode != SqlJetTransactionMode.READ_ONLY, SqlJetErrorCode.READONLY);
 
+        if (pBt.isShared()) {
+            /*
+             * Only one of connections which share cache may write. Every
+             * transaction holds read lock on schema table.
+             */
+            SqlJetAssert.assertTrue(mode == SqlJetTransactionMode.READ_ONLY || pBt.pWriter == null,
+                    SqlJetErrorCode.LOCKED, "database is locked by other connection which shares cache");
+            pBt.lockTable(this, ISqlJetDbHandle.MASTER_ROOT, false);
+        }
+
         transMode = mode;
 
         int nBusy = 0;
@@ -465,7 +776,13 @@ public class SqlJetBtree implements ISqlJetBtree {
 
         if (rc == null) {
             inTrans = mode != SqlJetTransactionMode.READ_ONLY ? TransMode.WRITE : TransMode.READ;
+            if (inTrans == TransMode.WRITE) {
+                pBt.pWriter = this;
+            }
         } else {
+            if (isUnused()) {
+                pBt.unlockTables(this);
+            }
             throw rc;
         }
     }
@@ -501,6 +818,12 @@ public class SqlJetBtree implements ISqlJetBtree {
     private void commitPhaseOne() throws SqlJetException {
         if (this.inTrans == TransMode.WRITE) {
             if (pBt.autoVacuumMode.isAutoVacuum()) {
+                /* Pages could be relocated under cursors of other connections. */
+                for (SqlJetBtree p : pBt.sharing) {
+                    if (p != this) {
+                        p.cursors.saveAllCursors(0, null);
+                    }
+                }
                 pBt.autoVacuumCommit();
             }
             pBt.pPager.commitPhaseOne(false);
@@ -530,6 +853,7 @@ public class SqlJetBtree implements ISqlJetBtree {
          */
         if (this.inTrans == TransMode.WRITE) {
             pBt.pPager.commitPhaseTwo();
+            pBt.pWriter = null;
         }
 
         /*
@@ -537,6 +861,7 @@ public class SqlJetBtree implements ISqlJetBtree {
          * the pager if this call closed the only read or write transaction.
          */
         this.inTrans = TransMode.NONE;
+        pBt.unlockTables(this);
         unlockBtreeIfUnused();
     }
 
@@ -576,19 +901,29 @@ public class SqlJetBtree implements ISqlJetBtree {
 
         try {
             if (this.inTrans == TransMode.WRITE) {
+                pBt.invalidateCursorCaches();
                 try {
                     pBt.pPager.rollback();
                 } finally {
                     /*
                      * The rollback may have destroyed the pPage1->aData value.
                      * So call sqlite3BtreeGetPage() on page 1 again to make
-                     * sure pPage1->aData is set correctly.
+                     * sure pPage1->aData is set correctly. If pager is in error
+                     * state, page 1 is read again after it has been unlocked.
                      */
-                    pBt.getPage(1, false).releasePage();
+                    try {
+                        pBt.getPage(1, false).releasePage();
+                    } catch (SqlJetException e) {
+                        btreeLogger.log(Level.WARNING, "Can't reload page 1 after rollback", e);
+                    }
                 }
             }
         } finally {
+            if (pBt.pWriter == this) {
+                pBt.pWriter = null;
+            }
             this.inTrans = TransMode.NONE;
+            pBt.unlockTables(this);
             unlockBtreeIfUnused();
         }
 
@@ -611,7 +946,21 @@ public class SqlJetBtree implements ISqlJetBtree {
         if (pPage != null && pPage.isInit) {
             pPage.isInit = false;
             if (page.getRefCount() > 0) {
-                pPage.initPage();
+                try {
+                    pPage.initPage();
+                } catch (SqlJetException e) {
+                    if (e.getErrorCode() != SqlJetErrorCode.CORRUPT) {
+                        throw e;
+                    }
+                    /*
+                     * Page may be referenced by cursor which wasn't saved, for
+                     * example root of empty table which was allocated from the
+                     * freelist. Restored content of such page isn't a b-tree
+                     * page, so it's left not initialized as SQLite does, and
+                     * is checked again when it's used as b-tree page.
+                     */
+                    pPage.isInit = false;
+                }
             }
         }
     }
@@ -803,7 +1152,10 @@ public class SqlJetBtree implements ISqlJetBtree {
          * to move another root-page to fill a gap left by the deleted* root
          * page. If an open cursor was using this page a problem would* occur.
          */
-        SqlJetAssert.assertTrue(cursors.isEmpty(), SqlJetErrorCode.LOCKED);
+        for (SqlJetBtree p : pBt.sharing) {
+            SqlJetAssert.assertTrue(p.cursors.isEmpty(), SqlJetErrorCode.LOCKED);
+        }
+        pBt.lockTable(this, iTable, true);
 
         int piMoved = 0;
         SqlJetMemPage pPage = pBt.getPage(iTable, false);
@@ -882,6 +1234,7 @@ public class SqlJetBtree implements ISqlJetBtree {
     @Override
     public void clearTable(int table, int[] change) throws SqlJetException {
         assertWriteTransaction();
+        pBt.lockTable(this, table, true);
         cursors.saveAllCursors(table, null);
         pBt.clearDatabasePage(table, false, change);
     }
@@ -1011,7 +1364,10 @@ public class SqlJetBtree implements ISqlJetBtree {
      * @throws SqlJetException
      */
     public void unlockBtreeIfUnused() throws SqlJetException {
-        if (inTrans == TransMode.NONE && cursors.isEmpty() && pBt.pPage1 != null) {
+        if (isUnused()) {
+            pBt.unlockTables(this);
+        }
+        if (pBt.isUnused() && pBt.pPage1 != null) {
             if (pBt.pPager.getRefCount() >= 1) {
                 assert pBt.pPage1.getData() != null;
                 pBt.pPage1.releasePage();
@@ -1020,6 +1376,13 @@ public class SqlJetBtree implements ISqlJetBtree {
         }
     }
 
+    /**
+     * @return true if this btree has neither transaction nor cursors.
+     */
+    boolean isUnused() {
+        return inTrans == TransMode.NONE && cursors.isEmpty();
+    }
+
     private void assertWriteTransaction() throws SqlJetException {
         SqlJetAssert.assertTrue(inTrans == TransMode.WRITE, SqlJetErrorCode.MISUSE,
                 "The operation can only be done in a write transaction");
@@ -72,6 +72,15 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
 
     private SqlJetErrorCode error;
 
+    /** Overflow page-list cache of the entry, see accessPayload() */
+    private int[] aOverflow;
+
+    /** Number of leading aOverflow entries already known */
+    private int nOverflow;
+
+    /** Page, cell index and cache generation aOverflow is valid for */
+    private int overflowPgno, overflowIdx, overflowGeneration;
+
     /**
      * (skip<0) -> Prev() is a no-op. (skip>0) -> Next() is
      */
@@ -79,6 +88,8 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
 
     private final SqlJetIndexedMemPages pages;
 
+    private final SqlJetBtreeReadAhead readAhead;
+
     /**
      * Create a new cursor for the BTree whose root is on the page iTable. The
      * act of acquiring a cursor gets a read lock on the database file.
@@ -129,8 +140,10 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         this.pgnoRoot = table;
         int nPage = pBt.pPager.getPageCount();
         this.pages = new SqlJetIndexedMemPages(pBtree.pBt.usableSize * 2 / 3, pBtree.pBt.getPageSize());
+        this.readAhead = new SqlJetBtreeReadAhead(pBt);
         try {
             SqlJetAssert.assertFalse(table == 1 && nPage == 0, SqlJetErrorCode.EMPTY);
+            pBt.lockTable(btree, table, wrFlag);
             pages.addNewPage(pBt.getAndInitPage(pgnoRoot));
         } catch (SqlJetException e) {
             // create_cursor_exception:
@@ -206,6 +219,8 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
 
         SqlJetMemPage pRoot = pages.getCurrentPage();
         assert pRoot.pgno == this.pgnoRoot;
+        /* Root could fail to reinit after rollback, see pageReinit(). */
+        SqlJetAssert.assertTrue(pRoot.isInit, SqlJetErrorCode.CORRUPT);
         pages.setIndexOnCurrentPage(0);
         this.info.nSize = 0;
         this.atLast = false;
@@ -320,7 +335,10 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
             }
         }
 
-        moveToRoot();
+        if (!moveNear(pIdxKey, intKey)) {
+            moveToRoot();
+        }
+        pBtree.pBt.seekCount++;
 
         assert pages.getCurrentPage() != null;
         assert pages.getCurrentPage().isInit;
@@ -352,7 +370,7 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
                     if (pPage.hasData) {
                         pCell.movePointer(pCell.skipVarint32());
                     }
-                    key = pCell.getVarint().getValue();
+                    key = pCell.getVarintValue(0);
                     c = Long.compare(key, intKey);
                 } else if (pIdxKey == null) {
                     throw new SqlJetException(SqlJetErrorCode.CORRUPT);
@@ -412,6 +430,76 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         }
     }
 
+    /**
+     * Move the cursor up from its leaf page to the leaf itself or to its parent
+     * if the key is within range of that page, so moveToUnpacked() searches
+     * the key from there instead of the root. The range of page is known from
+     * its first and last cells, or is open on the side where all ancestors of
+     * the page point to their first (or last) child.
+     *
+     * @return true if cursor was moved, false if the search should start from
+     *         the root.
+     */
+    private boolean moveNear(ISqlJetUnpackedRecord pIdxKey, long intKey) throws SqlJetException {
+        if (!this.eState.isValid() || !pages.getCurrentPage().leaf) {
+            return false;
+        }
+        if (!pages.getFirstPage().intKey && pIdxKey == null) {
+            return false;
+        }
+        final int iLeaf = pages.getNumberOfPages() - 1;
+        for (int i = iLeaf; i > 0 && i >= iLeaf - 1; i--) {
+            if (isKeyInRange(i, pIdxKey, intKey)) {
+                pages.releaseAfter(i);
+                this.info.nSize = 0;
+                this.atLast = false;
+                this.validNKey = false;
+                pBtree.pBt.nearSeekCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isKeyInRange(int iPage, ISqlJetUnpackedRecord pIdxKey, long intKey) throws SqlJetException {
+        final SqlJetMemPage pPage = pages.getPage(iPage);
+        if (pPage.nCell == 0) {
+            return false;
+        }
+        boolean leftmost = true;
+        boolean rightmost = true;
+        for (int i = 0; i < iPage; i++) {
+            final int idx = pages.getIndex(i);
+            leftmost &= idx == 0;
+            rightmost &= idx == pages.getPage(i).nCell;
+        }
+        if (!leftmost && compareCell(pPage, 0, pIdxKey, intKey) > 0) {
+            return false;
+        }
+        return rightmost || compareCell(pPage, pPage.nCell - 1, pIdxKey, intKey) >= 0;
+    }
+
+    /**
+     * Compare key of cell with the key which is searched, like
+     * moveToUnpacked() does. Index key which has overflow pages isn't read,
+     * such cell is reported as not matching the range.
+     */
+    private static int compareCell(SqlJetMemPage pPage, int idx, ISqlJetUnpackedRecord pIdxKey, long intKey)
+            throws SqlJetException {
+        if (pPage.intKey) {
+            final ISqlJetMemoryPointer pCell = pPage.findCell(idx).pointer(pPage.getChildPtrSize());
+            if (pPage.hasData) {
+                pCell.movePointer(pCell.skipVarint32());
+            }
+            return Long.compare(pCell.getVarintValue(0), intKey);
+        }
+        final SqlJetBtreeCellInfo cell = pPage.parseCell(idx);
+        if (cell.nLocal < cell.getnKey()) {
+            return idx == 0 ? 1 : -1;
+        }
+        return pIdxKey.recordCompare((int) cell.getnKey(), cell.pCell.pointer(cell.nHeader));
+    }
+
     /**
      * Restore the cursor to the position it was in (or as close to as possible)
      * when saveCursorPosition() was called. Note that this call deletes the
@@ -468,6 +556,7 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
             /* Something has gone awry. */
             throw new SqlJetException(SqlJetErrorCode.ERROR);
         }
+        pBt.invalidateCursorCaches();
 
         /*
          * If this is a delete operation to remove a row from a table b-tree,
@@ -586,6 +675,7 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
          * optimizations, it is important not to clear the cursor here.
          */
         pBtree.cursors.saveAllCursors(this.pgnoRoot, this);
+        pBt.invalidateCursorCaches();
         int loc = this.moveTo(pKey, nKey, bias);
         assert this.eState.isValid() || this.eState.isInvalid() && loc != 0;
 
@@ -778,6 +868,7 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         this.validNKey = false;
         if (idx >= pPage.nCell) {
             if (!pPage.leaf) {
+                readAhead.descend(pPage, idx);
                 this.moveToChild(pPage.getData().getInt(pPage.getHdrOffset() + 8));
                 this.moveToLeftmost();
                 return false;
@@ -798,6 +889,7 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         if (pPage.leaf) {
             return false;
         }
+        readAhead.descend(pPage, idx);
         this.moveToLeftmost();
         return false;
     }
@@ -862,6 +954,118 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         return false;
     }
 
+    @Override
+    public long count() throws SqlJetException {
+        assert pBtree.db.getMutex().held();
+        return countEntries(pgnoRoot, 0);
+    }
+
+    /**
+     * Sums cell counts of pages of the subtree: in a table b-tree entries are
+     * stored on leaf pages only, in an index b-tree interior cells are entries
+     * too. Counts are cached in the shared b-tree until it is changed.
+     */
+    private long countEntries(int pgno, int depth) throws SqlJetException {
+        SqlJetAssert.assertTrue(depth < BTCURSOR_MAX_DEPTH, SqlJetErrorCode.CORRUPT);
+        final SqlJetBtreeShared pBt = pBtree.pBt;
+        long nEntry = pBt.getSubtreeCount(pgno);
+        if (nEntry >= 0) {
+            return nEntry;
+        }
+        final SqlJetMemPage pPage = pBt.getAndInitPage(pgno);
+        try {
+            nEntry = pPage.leaf || !pPage.intKey ? pPage.nCell : 0;
+            if (!pPage.leaf) {
+                for (int i = 0; i <= pPage.nCell; i++) {
+                    nEntry += countEntries(getChildPgno(pPage, i), depth + 1);
+                }
+            }
+        } finally {
+            SqlJetMemPage.releasePage(pPage);
+        }
+        pBt.putSubtreeCount(pgno, nEntry);
+        return nEntry;
+    }
+
+    /**
+     * @return page number of i-th child of interior page, the right child if i
+     *         equals number of cells.
+     */
+    private static int getChildPgno(SqlJetMemPage pPage, int i) {
+        if (i < pPage.nCell) {
+            return pPage.findCell(i).getInt();
+        } else {
+            return pPage.getData().getInt(pPage.getHdrOffset() + 8);
+        }
+    }
+
+    @Override
+    public boolean moveToPosition(long position) throws SqlJetException {
+        assert this.pBtree.db.getMutex().held();
+        if (position < 0 || position >= count()) {
+            return false;
+        }
+        this.moveToRoot();
+        long rest = position;
+        for (;;) {
+            final SqlJetMemPage pPage = pages.getCurrentPage();
+            if (pPage.leaf) {
+                SqlJetAssert.assertTrue(rest < pPage.nCell, SqlJetErrorCode.CORRUPT);
+                pages.setIndexOnCurrentPage((int) rest);
+                break;
+            }
+            int i = 0;
+            long nEntry;
+            while (rest >= (nEntry = countEntries(getChildPgno(pPage, i), pages.getNumberOfPages()))) {
+                SqlJetAssert.assertTrue(i < pPage.nCell, SqlJetErrorCode.CORRUPT);
+                rest -= nEntry;
+                if (!pPage.intKey && rest-- == 0) {
+                    break;
+                }
+                i++;
+            }
+            pages.setIndexOnCurrentPage(i);
+            if (rest < 0) {
+                /* Cell of interior page of index is an entry itself. */
+                break;
+            }
+            this.moveToChild(getChildPgno(pPage, i));
+        }
+        this.info.nSize = 0;
+        this.validNKey = false;
+        this.getCellInfo();
+        return true;
+    }
+
+    @Override
+    public long getPosition() throws SqlJetException {
+        assert this.pBtree.db.getMutex().held();
+        this.restoreCursorPosition();
+        SqlJetAssert.assertTrue(this.eState.isValid(), SqlJetErrorCode.MISUSE);
+        long position = 0;
+        final int nPage = pages.getNumberOfPages();
+        for (int k = 0; k < nPage; k++) {
+            final SqlJetMemPage pPage = pages.getPage(k);
+            final int idx = pages.getIndex(k);
+            if (pPage.leaf) {
+                position += idx;
+            } else {
+                /*
+                 * Cursor stays on interior page only at a cell of index, which
+                 * follows its left child.
+                 */
+                final int nChild = k == nPage - 1 ? idx + 1 : idx;
+                for (int i = 0; i < nChild; i++) {
+                    position += countEntries(getChildPgno(pPage, i), k + 1);
+                }
+                if (!pPage.intKey) {
+                    position += idx;
+                }
+            }
+        }
+        return position;
+    }
+
     @Override
     public boolean eof() {
         /*
@@ -893,6 +1097,15 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         }
     }
 
+    @Override
+    public long getCellPosition() throws SqlJetException {
+        this.restoreCursorPosition();
+        if (!this.eState.isValid()) {
+            return -1;
+        }
+        return (long) pages.getCurrentPage().pgno << 32 | pages.getIndexOnCurrentPage();
+    }
+
     @Override
     public void key(int offset, int amt, @Nonnull ISqlJetMemoryPointer buf) throws SqlJetException {
         this.restoreCursorPosition();
@@ -918,9 +1131,9 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
      * reads or writes bytes from the payload area. Data might appear on the
      * main page or be scattered out on multiple overflow pages.
      *
-     * If the BtCursor.isIncrblobHandle flag is set, and the current cursor
-     * entry uses one or more overflow pages, this function allocates space for
-     * and lazily popluates the overflow page-list cache array
+     * If the current cursor entry uses one or more overflow pages, this
+     * function allocates space for and lazily popluates the overflow page-list
+     * cache array
      * (BtCursor.aOverflow). Subsequent calls use this cache to make seeking to
      * the supplied offset more efficient.
      *
@@ -989,11 +1202,24 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         if (amt > 0) {
             int ovflSize = pBtree.pBt.usableSize
                     - 4; /* Bytes content per ovfl page */
-            int nextPage;
+            int nextPage = aPayload.getInt(info.nLocal);
+            final int[] cache = getOverflowCache(pPage, nextPage,
+                    (nKey + info.nData - info.nLocal + ovflSize - 1) / ovflSize);
 
-            nextPage = aPayload.getInt(info.nLocal);
+            /*
+             * Start from the last known page of the chain which doesn't follow
+             * the requested offset.
+             */
+            int iIdx = Math.min(offset / ovflSize, nOverflow - 1);
+            nextPage = cache[iIdx];
+            offset -= iIdx * ovflSize;
 
             while (amt > 0 && nextPage != 0) {
+                if (iIdx < cache.length && iIdx >= nOverflow) {
+                    cache[iIdx] = nextPage;
+                    nOverflow = iIdx + 1;
+                }
+                iIdx++;
                 if (offset >= ovflSize) {
                     /*
                      * The only reason to read this page is to obtain the page*
@@ -1002,7 +1228,11 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
                      * * page-list cache, if any, then fall back to the
                      * getOverflowPage()* function.
                      */
-                    nextPage = pBtree.pBt.getOverflowPage(nextPage, null, nextPage);
+                    if (iIdx < nOverflow) {
+                        nextPage = cache[iIdx];
+                    } else {
+                        nextPage = pBtree.pBt.getOverflowPage(nextPage, null, nextPage);
+                    }
                     offset -= ovflSize;
                 } else {
                     /*
@@ -1032,6 +1262,34 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
 
     }
 
+    /**
+     * Returns overflow page-list cache of the current entry, which is reset if
+     * it was filled for other entry or other generation of overflow chains.
+     *
+     * @param pPage
+     *            Btree page of current entry
+     * @param firstPage
+     *            First overflow page of current entry
+     * @param nOvfl
+     *            Number of overflow pages of current entry
+     */
+    private int[] getOverflowCache(SqlJetMemPage pPage, int firstPage, int nOvfl) {
+        final int idx = pages.getIndexOnCurrentPage();
+        final int generation = pBtree.pBt.cacheGeneration;
+        if (aOverflow == null || aOverflow.length < nOvfl || aOverflow[0] != firstPage || overflowPgno != pPage.pgno
+                || overflowIdx != idx || overflowGeneration != generation) {
+            if (aOverflow == null || aOverflow.length < nOvfl) {
+                aOverflow = new int[Math.max(nOvfl, 1)];
+            }
+            aOverflow[0] = firstPage;
+            nOverflow = 1;
+            overflowPgno = pPage.pgno;
+            overflowIdx = idx;
+            overflowGeneration = generation;
+        }
+        return aOverflow;
+    }
+
     /**
      * Copy data from a buffer to a page, or from a page to a buffer.
      *
@@ -1153,7 +1411,7 @@ public class SqlJetBtreeCursor implements ISqlJetBtreeCursor {
         }
         assert !pages.getFirstPage().intKey || this.pKey == null;
 
-        pages.clearAllPages();
+        releaseAllPages();
         this.eState = SqlJetCursorState.REQUIRESEEK;
     }
 
@@ -0,0 +1,365 @@
+/**
+ * SqlJetBtreeLoader.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.btree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeLoader;
+import org.tmatesoft.sqljet.core.internal.ISqlJetKeyInfo;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree.TransMode;
+
+/**
+ * Implementation of {@link ISqlJetBtreeLoader}.
+ *
+ * Leaf pages are allocated one after another and filled up to fill factor.
+ * Every filled page is remembered with the key which separates it from the
+ * next page; when all entries are appended, interior levels are built from
+ * these lists until single page remains, and content of that page is moved to
+ * the root page of b-tree.
+ *
+ * In tables separator is the largest rowid of the left page. In indices
+ * separator is an entry itself: entry which doesn't fit into the leaf becomes
+ * separator and the next leaf starts after it.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetBtreeLoader implements ISqlJetBtreeLoader {
+
+    /**
+     * Share of page in percents which loader fills with cells. Values below
+     * 100 leave space for later inserts into loaded b-tree.
+     */
+    public static final int SQLJET_FILL_FACTOR = SqlJetUtility.getIntSysProp("SQLJET.FILL_FACTOR", 100);
+
+    /**
+     * Page of the level which is built, and the key which separates it from
+     * the next page of this level.
+     */
+    private static class Child {
+        private final int pgno;
+        private final ISqlJetMemoryPointer pKey;
+        private final long nKey;
+
+        private Child(int pgno, ISqlJetMemoryPointer pKey, long nKey) {
+            this.pgno = pgno;
+            this.pKey = pKey;
+            this.nKey = nKey;
+        }
+    }
+
+    private final SqlJetBtree pBtree;
+    private final SqlJetBtreeShared pBt;
+    private final int pgnoRoot;
+    private final ISqlJetKeyInfo keyInfo;
+    private final boolean intKey;
+    private final int leafFlags;
+    private final int interiorFlags;
+
+    /** Free space in bytes which fill factor leaves on each page. */
+    private final int reserve;
+
+    /** Space where cells are built. */
+    private final ISqlJetMemoryPointer cell;
+
+    /** Filled leaf pages. */
+    private final List<Child> children = new ArrayList<>();
+
+    /** Leaf page which is filled now. */
+    private SqlJetMemPage leaf;
+
+    /** Key of the last entry on the leaf: rowid or copy of index entry. */
+    private long lastRowId;
+    private ISqlJetMemoryPointer lastKey;
+
+    /** Index entry which didn't fit into the filled leaf. */
+    private ISqlJetMemoryPointer pendingKey;
+
+    private long nEntry;
+    private boolean finished;
+
+    SqlJetBtreeLoader(SqlJetBtree pBtree, int table, ISqlJetKeyInfo keyInfo, int fillFactor) throws SqlJetException {
+        assert pBtree.db.getMutex().held();
+        SqlJetAssert.assertTrue(pBtree.inTrans == TransMode.WRITE, SqlJetErrorCode.MISUSE);
+        SqlJetAssert.assertFalse(pBtree.isReadOnly(), SqlJetErrorCode.READONLY);
+        SqlJetAssert.assertTrue(fillFactor >= 10 && fillFactor <= 100, SqlJetErrorCode.MISUSE);
+
+        this.pBtree = pBtree;
+        this.pBt = pBtree.pBt;
+        this.pgnoRoot = table;
+        this.keyInfo = keyInfo;
+
+        final SqlJetMemPage pRoot = pBt.getAndInitPage(table);
+        try {
+            SqlJetAssert.assertTrue(pRoot.pgno != 1, SqlJetErrorCode.MISUSE);
+            SqlJetAssert.assertTrue(pRoot.leaf && pRoot.nCell == 0, SqlJetErrorCode.MISUSE, "B-tree is not empty");
+            final int flags = pRoot.getData().getByteUnsigned(pRoot.getHdrOffset());
+            this.intKey = pRoot.intKey;
+            this.leafFlags = flags | SqlJetMemPage.PTF_LEAF;
+            this.interiorFlags = flags & ~SqlJetMemPage.PTF_LEAF;
+        } finally {
+            SqlJetMemPage.releasePage(pRoot);
+        }
+
+        this.reserve = pBt.usableSize * (100 - fillFactor) / 100;
+        this.cell = pBt.allocateTempSpace();
+
+        pBtree.cursors.saveAllCursors(table, null);
+        pBt.invalidateCursorCaches();
+    }
+
+    @Override
+    public void append(ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData, int nData)
+            throws SqlJetException {
+        assert pBtree.db.getMutex().held();
+        SqlJetAssert.assertFalse(finished, SqlJetErrorCode.MISUSE);
+        SqlJetAssert.assertTrue(pBtree.inTrans == TransMode.WRITE, SqlJetErrorCode.MISUSE);
+        checkOrder(pKey, nKey);
+
+        if (pendingKey != null) {
+            children.add(new Child(leaf.pgno, pendingKey, pendingKey.remaining()));
+            pendingKey = null;
+            nextLeaf();
+        } else if (leaf == null) {
+            leaf = newPage(leafFlags, pgnoRoot);
+        }
+
+        int sz = cellSize(leaf, nKey, nData);
+        if (!fits(leaf, sz)) {
+            if (!intKey) {
+                pendingKey = copyKey(pKey, nKey);
+                nEntry++;
+                return;
+            }
+            children.add(new Child(leaf.pgno, null, lastRowId));
+            nextLeaf();
+            sz = cellSize(leaf, nKey, nData);
+        }
+        putCell(leaf, pKey, nKey, pData, nData, sz);
+        if (intKey) {
+            lastRowId = nKey;
+        } else {
+            lastKey = copyKey(pKey, nKey);
+        }
+        nEntry++;
+    }
+
+    @Override
+    public long finish() throws SqlJetException {
+        assert pBtree.db.getMutex().held();
+        SqlJetAssert.assertFalse(finished, SqlJetErrorCode.MISUSE);
+        SqlJetAssert.assertTrue(pBtree.inTrans == TransMode.WRITE, SqlJetErrorCode.MISUSE);
+        finished = true;
+        try {
+            if (leaf == null) {
+                return 0;
+            }
+            if (pendingKey != null) {
+                /*
+                 * Nothing follows the entry which didn't fit, so last entry of
+                 * the filled leaf separates it from the new leaf with this
+                 * entry.
+                 */
+                final int last = leaf.nCell - 1;
+                SqlJetAssert.assertTrue(last > 0, SqlJetErrorCode.CORRUPT);
+                leaf.pDbPage.write();
+                leaf.clearCell(leaf.findCell(last));
+                leaf.dropCell(last, leaf.cellSize(last));
+                children.add(new Child(leaf.pgno, lastKey, lastKey.remaining()));
+                nextLeaf();
+                final int nKey = pendingKey.remaining();
+                putCell(leaf, pendingKey, nKey, null, 0, cellSize(leaf, nKey, 0));
+                pendingKey = null;
+            }
+            children.add(new Child(leaf.pgno, null, 0));
+            SqlJetMemPage.releasePage(leaf);
+            leaf = null;
+
+            List<Child> level = children;
+            while (level.size() > 1) {
+                level = buildLevel(level);
+            }
+            moveToRoot(level.get(0).pgno);
+            return nEntry;
+        } finally {
+            if (leaf != null) {
+                SqlJetMemPage.releasePage(leaf);
+                leaf = null;
+            }
+            pBt.invalidateCursorCaches();
+        }
+    }
+
+    @Override
+    public void close() throws SqlJetException {
+        finished = true;
+        if (leaf != null) {
+            SqlJetMemPage.releasePage(leaf);
+            leaf = null;
+        }
+    }
+
+    private void checkOrder(ISqlJetMemoryPointer pKey, long nKey) throws SqlJetException {
+        if (nEntry == 0) {
+            return;
+        }
+        if (intKey) {
+            SqlJetAssert.assertTrue(nKey > lastRowId, SqlJetErrorCode.CONSTRAINT,
+                    "Entries should be appended in order of rowid");
+        } else if (keyInfo != null) {
+            final ISqlJetMemoryPointer prev = pendingKey != null ? pendingKey : lastKey;
+            SqlJetAssert.assertTrue(keyInfo.recordUnpack(prev.remaining(), prev).recordCompare((int) nKey, pKey) >= 0,
+                    SqlJetErrorCode.CONSTRAINT, "Entries should be appended in order of key");
+        }
+    }
+
+    private ISqlJetMemoryPointer copyKey(ISqlJetMemoryPointer pKey, long nKey) {
+        final ISqlJetMemoryPointer copy = SqlJetUtility.memoryManager.allocatePtr((int) nKey);
+        copy.copyFrom(pKey, (int) nKey);
+        return copy;
+    }
+
+    private void nextLeaf() throws SqlJetException {
+        final int prev = leaf.pgno;
+        SqlJetMemPage.releasePage(leaf);
+        leaf = null;
+        leaf = newPage(leafFlags, prev);
+    }
+
+    private SqlJetMemPage newPage(int flags, int nearby) throws SqlJetException {
+        final int[] pgno = { 0 };
+        final SqlJetMemPage pPage = pBt.allocatePage(pgno, nearby, false);
+        try {
+            pPage.pDbPage.write();
+            pPage.zeroPage(flags);
+        } catch (SqlJetException e) {
+            SqlJetMemPage.releasePage(pPage);
+            throw e;
+        }
+        return pPage;
+    }
+
+    /**
+     * Size of the cell on the page, computed from cell header so that overflow
+     * pages are allocated only when cell is really put on the page.
+     */
+    private int cellSize(SqlJetMemPage pPage, long nKey, int nData) {
+        int nHeader = pPage.getChildPtrSize();
+        if (pPage.hasData) {
+            nHeader += cell.putVarint32(nHeader, nData);
+        }
+        cell.putVarint(nHeader, nKey);
+        return pPage.parseCellPtr(cell).nSize;
+    }
+
+    /**
+     * Cell fits if it leaves space reserved by fill factor; the first two
+     * cells are put on the page in any case if there is space for them.
+     */
+    private boolean fits(SqlJetMemPage pPage, int sz) {
+        if (sz + 2 > pPage.nFree) {
+            return false;
+        }
+        return pPage.nCell < 2 || pPage.nFree - sz - 2 >= reserve;
+    }
+
+    private void putCell(SqlJetMemPage pPage, ISqlJetMemoryPointer pKey, long nKey, ISqlJetMemoryPointer pData,
+            int nData, int sz) throws SqlJetException {
+        final int szCell = pPage.fillInCell(cell, pKey, nKey, pData, nData, 0);
+        assert szCell == sz;
+        pPage.insertCell(pPage.nCell, cell, szCell, null, 0);
+    }
+
+    /**
+     * Puts pages of the level into interior pages. Every page except the last
+     * one gets cell which points to it, the last page becomes right child. If
+     * cell doesn't fit, the page becomes right child of the filled interior
+     * page, and its separator goes to the upper level.
+     */
+    private List<Child> buildLevel(List<Child> level) throws SqlJetException {
+        final List<Child> parents = new ArrayList<>();
+        final int n = level.size();
+        SqlJetMemPage pPage = newPage(interiorFlags, level.get(0).pgno);
+        try {
+            for (int i = 0; i < n; i++) {
+                Child child = level.get(i);
+                if (i < n - 1) {
+                    final int sz = cellSize(pPage, child.nKey, 0);
+                    if (fits(pPage, sz) || i == n - 2 && sz + 2 <= pPage.nFree) {
+                        final int szCell = pPage.fillInCell(cell, child.pKey, child.nKey, null, 0, 0);
+                        assert szCell == sz;
+                        pPage.insertCell(pPage.nCell, cell, szCell, null, child.pgno);
+                        continue;
+                    }
+                    if (i == n - 2) {
+                        /*
+                         * The last page of the level would get right child
+                         * only, so take the last cell of this page back.
+                         */
+                        final int last = pPage.nCell - 1;
+                        SqlJetAssert.assertTrue(last > 0, SqlJetErrorCode.CORRUPT);
+                        pPage.clearCell(pPage.findCell(last));
+                        pPage.dropCell(last, pPage.cellSize(last));
+                        child = level.get(--i);
+                    }
+                }
+                pPage.getData().putIntUnsigned(pPage.getHdrOffset() + 8, child.pgno);
+                if (pBt.autoVacuumMode.isAutoVacuum()) {
+                    pPage.setChildPtrmaps();
+                }
+                parents.add(new Child(pPage.pgno, child.pKey, child.nKey));
+                final int prev = pPage.pgno;
+                SqlJetMemPage.releasePage(pPage);
+                pPage = null;
+                if (i < n - 1) {
+                    pPage = newPage(interiorFlags, prev);
+                }
+            }
+        } finally {
+            SqlJetMemPage.releasePage(pPage);
+        }
+        return parents;
+    }
+
+    /**
+     * Moves content of the top page to the root page of b-tree.
+     */
+    private void moveToRoot(int pgnoTop) throws SqlJetException {
+        final SqlJetMemPage pTop = pBt.getAndInitPage(pgnoTop);
+        try {
+            final SqlJetMemPage pRoot = pBt.getAndInitPage(pgnoRoot);
+            try {
+                pRoot.pDbPage.write();
+                pTop.copyNodeContent(pRoot);
+            } finally {
+                SqlJetMemPage.releasePage(pRoot);
+            }
+            pTop.freePage();
+        } finally {
+            SqlJetMemPage.releasePage(pTop);
+        }
+    }
+
+}
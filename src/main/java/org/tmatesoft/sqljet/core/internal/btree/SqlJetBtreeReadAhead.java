@@ -0,0 +1,94 @@
+/**
+ * SqlJetBtreeReadAhead.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.btree;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * Detects sequential scan of b-tree by cursor and loads sibling pages into
+ * page cache before cursor moves to them. Scan is sequential when cursor
+ * descends into children of the same interior page one after another; then
+ * next children are taken from the interior page's child pointers and passed
+ * to {@link org.tmatesoft.sqljet.core.internal.SqlJetAbstractPager#prefetch(int[], int)}.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetBtreeReadAhead {
+
+    private final SqlJetBtreeShared pBt;
+
+    /** Interior page whose children are visited */
+    private int parent;
+
+    /** Index of the last visited child of the parent */
+    private int lastIndex = -1;
+
+    /** Index of the first child which isn't loaded yet */
+    private int nextIndex;
+
+    private int[] pages;
+
+    SqlJetBtreeReadAhead(SqlJetBtreeShared pBt) {
+        this.pBt = pBt;
+    }
+
+    /**
+     * Called when cursor descends from interior page into its child.
+     *
+     * @param pPage
+     *            interior page.
+     * @param idx
+     *            index of the child; pPage.nCell means right child.
+     * @throws SqlJetException
+     */
+    void descend(SqlJetMemPage pPage, int idx) throws SqlJetException {
+        final int depth = pBt.readAhead;
+        if (depth <= 0 || pPage.leaf) {
+            return;
+        }
+        if (pPage.pgno != parent || idx != lastIndex + 1) {
+            parent = pPage.pgno;
+            lastIndex = idx;
+            nextIndex = idx + 1;
+            return;
+        }
+        lastIndex = idx;
+        /* Load next portion when half of previous one is consumed. */
+        if (nextIndex - idx > depth / 2) {
+            return;
+        }
+        final int from = Math.max(nextIndex, idx + 1);
+        final int to = Math.min(idx + depth, pPage.nCell);
+        if (from > to) {
+            return;
+        }
+        if (pages == null || pages.length < depth) {
+            pages = new int[depth];
+        }
+        int count = 0;
+        for (int i = from; i <= to; i++) {
+            pages[count++] = i < pPage.nCell ? pPage.findCell(i).getInt()
+                    : pPage.getData().getInt(pPage.getHdrOffset() + 8);
+        }
+        nextIndex = to + 1;
+        pBt.pPager.prefetch(pages, count);
+    }
+
+}
@@ -20,11 +20,19 @@ package org.tmatesoft.sqljet.core.internal.btree;
 import static org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree.TRACE;
 import static org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree.traceInt;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 import javax.annotation.Nonnull;
 
+import org.tmatesoft.sqljet.core.SqlAbstractJetMutex;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
 import org.tmatesoft.sqljet.core.internal.SqlJetAbstractPager;
@@ -54,6 +62,58 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
  */
 public class SqlJetBtreeShared {
 
+    /**
+     * Default number of sibling pages which are loaded ahead of sequential
+     * scan of b-tree.
+     */
+    static final int SQLJET_DEFAULT_READ_AHEAD = SqlJetUtility.getIntSysProp("SQLJET.READ_AHEAD", 16);
+
+    /**
+     * Maximum number of subtree entry counts cached for positional moves of
+     * cursors, 0 disables the cache.
+     */
+    static final int SQLJET_SUBTREE_COUNTS = SqlJetUtility.getIntSysProp("SQLJET.SUBTREE_COUNTS", 65536);
+
+    /**
+     * Btrees opened in shared-cache mode, by canonical path of database file.
+     * Access is synchronized on the map itself.
+     */
+    static final Map<String, SqlJetBtreeShared> SHARED_CACHE_LIST = new HashMap<>();
+
+    /**
+     * A lock on a table held by one of Btrees sharing this structure. Locks
+     * are held until the end of the Btree's transaction.
+     */
+    private static final class TableLock {
+        final SqlJetBtree btree;
+        final int table;
+        boolean write;
+
+        TableLock(SqlJetBtree btree, int table, boolean write) {
+            this.btree = btree;
+            this.table = table;
+            this.write = write;
+        }
+    }
+
+    /** Key in {@link #SHARED_CACHE_LIST} or null if cache isn't shared */
+    String sharedKey;
+
+    /** Mutex of database connections which share this structure */
+    SqlAbstractJetMutex mutex;
+
+    /** File system through which pager reads the file */
+    ISqlJetFileSystem fileSystem;
+
+    /** Btrees which share this structure */
+    final List<SqlJetBtree> sharing = new ArrayList<>(1);
+
+    /** Btree which holds the write transaction, if any */
+    SqlJetBtree pWriter;
+
+    /** Table locks of Btrees sharing this structure */
+    private final List<TableLock> tableLocks = new ArrayList<>();
+
     /** The page cache */
     SqlJetAbstractPager pPager;
 
@@ -70,6 +130,28 @@ public class SqlJetBtreeShared {
     /** Number of usable bytes on each page */
     int usableSize;
 
+    /** Number of sibling pages loaded ahead while b-tree is scanned */
+    int readAhead = SQLJET_DEFAULT_READ_AHEAD;
+
+    /** Number of cursor seeks which searched b-tree pages */
+    long seekCount;
+
+    /** Number of seeks which started near previous position of cursor */
+    long nearSeekCount;
+
+    /**
+     * Changed whenever b-tree pages may have been moved or rewritten: overflow
+     * page-list caches of cursors and subtree counts are valid only for the
+     * generation they were filled in.
+     */
+    int cacheGeneration;
+
+    /** Numbers of entries in subtrees by page numbers of their roots */
+    private final Map<Integer, Long> subtreeCounts = new HashMap<>();
+
+    /** Generation of subtreeCounts */
+    private int subtreeCountsGeneration;
+
     /**
      * maxLocal is the maximum amount of payload to store locally for a cell.
      * Make sure it is small enough so that at least minFanout cells can will
@@ -100,6 +182,68 @@ public class SqlJetBtreeShared {
         return (usableSize - 12) * 32 / 255 - 23;
     }
 
+    /**
+     * @return true if this structure is shared between several connections.
+     */
+    boolean isShared() {
+        return sharedKey != null;
+    }
+
+    /**
+     * Obtain a lock on the table with root page table for the Btree p. Lock
+     * conflicts with locks on the same table held by other Btrees unless both
+     * of locks are read locks. Locks are used only in shared-cache mode.
+     *
+     * @throws SqlJetException
+     *             LOCKED if lock conflicts with lock of another Btree.
+     */
+    void lockTable(@Nonnull SqlJetBtree p, int table, boolean write) throws SqlJetException {
+        if (!isShared()) {
+            return;
+        }
+        TableLock own = null;
+        for (TableLock lock : tableLocks) {
+            if (lock.table != table) {
+                continue;
+            }
+            if (lock.btree == p) {
+                own = lock;
+            } else if (write || lock.write) {
+                throw new SqlJetException(SqlJetErrorCode.LOCKED,
+                        table == 1 ? "database schema is locked" : "database table is locked");
+            }
+        }
+        if (own == null) {
+            tableLocks.add(new TableLock(p, table, write));
+        } else if (write) {
+            own.write = true;
+        }
+    }
+
+    /**
+     * Release all table locks held by the Btree p.
+     */
+    void unlockTables(@Nonnull SqlJetBtree p) {
+        for (Iterator<TableLock> i = tableLocks.iterator(); i.hasNext();) {
+            if (i.next().btree == p) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if none of Btrees sharing this structure has an open
+     *         transaction or cursor.
+     */
+    boolean isUnused() {
+        for (SqlJetBtree p : sharing) {
+            if (!p.isUnused()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public int getPageSize() {
         return pageSize;
     }
@@ -508,6 +652,39 @@ public class SqlJetBtreeShared {
 
     }
 
+    /**
+     * Invalidate the overflow page-list caches of all cursors open on this
+     * database and cached subtree counts, called when pages may be moved,
+     * freed or rebalanced.
+     */
+    void invalidateCursorCaches() {
+        cacheGeneration++;
+    }
+
+    /**
+     * @return cached number of entries in subtree rooted at page pgno, or -1
+     *         if it isn't known.
+     */
+    long getSubtreeCount(int pgno) {
+        if (subtreeCountsGeneration != cacheGeneration) {
+            subtreeCounts.clear();
+            subtreeCountsGeneration = cacheGeneration;
+            return -1;
+        }
+        final Long count = subtreeCounts.get(Integer.valueOf(pgno));
+        return count != null ? count.longValue() : -1;
+    }
+
+    void putSubtreeCount(int pgno, long count) {
+        if (subtreeCountsGeneration != cacheGeneration || subtreeCounts.size() >= SQLJET_SUBTREE_COUNTS) {
+            subtreeCounts.clear();
+            subtreeCountsGeneration = cacheGeneration;
+        }
+        if (SQLJET_SUBTREE_COUNTS > 0) {
+            subtreeCounts.put(Integer.valueOf(pgno), Long.valueOf(count));
+        }
+    }
+
     /**
      * Move the open database page pDbPage to location iFreePage in the
      * database. The pDbPage reference remains valid.
@@ -536,6 +713,7 @@ public class SqlJetBtreeShared {
 
         TRACE("AUTOVACUUM: Moving %d to free page %d (ptr page %d type %d)\n", Integer.valueOf(iDbPage),
                 Integer.valueOf(iFreePage), Integer.valueOf(iPtrPage), s);
+        invalidateCursorCaches();
         pDbPage.pDbPage.move(iFreePage, isCommit);
         pDbPage.pgno = iFreePage;
 
@@ -661,6 +839,35 @@ public class SqlJetBtreeShared {
 
     }
 
+    /**
+     * Incremental vacuum, like "PRAGMA incremental_vacuum(N)" of SQLite: moves
+     * pages from the end of file into free pages and truncates the file until
+     * given number of pages is removed from the free-list or free-list is
+     * empty. Must be called inside a write transaction.
+     *
+     * @param pages
+     *            maximum number of free pages to reclaim, negative value
+     *            reclaims all of them.
+     * @return number of pages removed from the free-list.
+     * @throws SqlJetException
+     */
+    public int incrVacuum(int pages) throws SqlJetException {
+        assert pPage1 != null;
+        final int nFree = pPage1.getData().getInt(36);
+        int reclaimed = 0;
+        try {
+            while (pages < 0 || reclaimed < pages) {
+                incrVacuumStep(0, getPageCount());
+                reclaimed = nFree - pPage1.getData().getInt(36);
+            }
+        } catch (SqlJetException e) {
+            if (e.getErrorCode() != SqlJetErrorCode.DONE) {
+                throw e;
+            }
+        }
+        return nFree - pPage1.getData().getInt(36);
+    }
+
     /**
      * This routine is called prior to sqlite3PagerCommit when a transaction is
      * commited for an auto-vacuum database.
@@ -734,6 +941,7 @@ public class SqlJetBtreeShared {
      */
     public void clearDatabasePage(int pgno, boolean freePageFlag, int[] pnChange) throws SqlJetException {
         SqlJetAssert.assertFalse(pgno > pPager.getPageCount(), SqlJetErrorCode.CORRUPT);
+        invalidateCursorCaches();
 
         SqlJetMemPage pPage = getAndInitPage(pgno);
         try {
@@ -18,6 +18,7 @@ import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetPage;
 
 public class SqlJetIndexedMemPages {
     /*
@@ -127,6 +128,10 @@ public class SqlJetIndexedMemPages {
         return getCurrentIndexedPage().getIndex();
     }
 
+    public int getIndex(int num) {
+        return apPage[num].getIndex();
+    }
+
     public int getNumberOfPages() {
         return iPage + 1;
     }
@@ -148,6 +153,12 @@ public class SqlJetIndexedMemPages {
         int balance_quick_called = 0; // TESTONLY
         int balance_deeper_called = 0; // TESTONLY
 
+        /*
+         * Space used by previous balanceNonroot() call, which could be freed
+         * only when overflow cells stored in it are moved by the next call.
+         */
+        ISqlJetMemoryPointer pFree = null;
+
         do {
             SqlJetMemPage pPage = getCurrentPage();
 
@@ -216,8 +227,13 @@ public class SqlJetIndexedMemPages {
                      * into the new pSpace buffer passed to the latter call to
                      * balance_nonroot().
                      */
-                    ISqlJetMemoryPointer pSpace = SqlJetUtility.memoryManager.allocatePtr(pageSize);
+                    ISqlJetMemoryPointer pSpace = SqlJetUtility.memoryManager.allocatePagePtr(pageSize,
+                            SqlJetPage.BUFFER_TYPE);
                     balanceNonroot(pParent, iIdx, pSpace, iPage == 1);
+                    if (pFree != null) {
+                        SqlJetUtility.memoryManager.free(pFree);
+                    }
+                    pFree = pSpace;
                 }
 
                 pPage.aOvfl.clear();
@@ -229,6 +245,10 @@ public class SqlJetIndexedMemPages {
                 this.iPage--;
             }
         } while (true);
+
+        if (pFree != null) {
+            SqlJetUtility.memoryManager.free(pFree);
+        }
     }
 
     /**
@@ -908,6 +928,9 @@ public class SqlJetIndexedMemPages {
             // sqlite3ScratchFree(apCell);
             for (i = 0; i < nOld; i++) {
                 SqlJetMemPage.releasePage(apOld[i]);
+                if (apCopy[i] != null) {
+                    SqlJetUtility.memoryManager.free(apCopy[i].getData());
+                }
             }
             for (i = 0; i < nNew; i++) {
                 SqlJetMemPage.releasePage(apNew[i]);
@@ -30,8 +30,8 @@ import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
 import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
 import org.tmatesoft.sqljet.core.internal.SqlJetCloneable;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
-import org.tmatesoft.sqljet.core.internal.memory.SqlJetVarintResult;
 import org.tmatesoft.sqljet.core.internal.memory.SqlJetVarintResult32;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetPage;
 
 /**
  * As each page of the file is loaded into memory, an instance of the following
@@ -387,21 +387,20 @@ public class SqlJetMemPage extends SqlJetCloneable {
 
         if (intKey) {
             if (hasData) {
-                SqlJetVarintResult32 res = pCell.getVarint32(n);
-                nPayload = res.getValue();
-                n += res.getOffset();
+                final long res = pCell.getVarint32Packed(n);
+                nPayload = SqlJetVarintResult32.getPackedValue(res);
+                n += SqlJetVarintResult32.getPackedOffset(res);
             } else {
                 nPayload = 0;
             }
-            SqlJetVarintResult varint = pCell.getVarint(n);
-            n += varint.getOffset();
-            nKey = varint.getValue();
+            nKey = pCell.getVarintValue(n);
+            n += pCell.getVarintLength(n);
             nData = nPayload;
         } else {
             nData = 0;
-            SqlJetVarintResult32 res = pCell.getVarint32(n);
-            n += res.getOffset();
-            nPayload = res.getValue();
+            final long res = pCell.getVarint32Packed(n);
+            n += SqlJetVarintResult32.getPackedOffset(res);
+            nPayload = SqlJetVarintResult32.getPackedValue(res);
             nKey = nPayload;
         }
 
@@ -620,9 +619,9 @@ public class SqlJetMemPage extends SqlJetCloneable {
 
         if (this.intKey) {
             if (this.hasData) {
-                SqlJetVarintResult32 res = pIter.getVarint32();
-                nSize = res.getValue();
-                pIter.movePointer(res.getOffset());
+                final long res = pIter.getVarint32Packed(0);
+                nSize = SqlJetVarintResult32.getPackedValue(res);
+                pIter.movePointer(SqlJetVarintResult32.getPackedOffset(res));
             }
 
             /*
@@ -640,9 +639,9 @@ public class SqlJetMemPage extends SqlJetCloneable {
                 }
             }
         } else {
-            SqlJetVarintResult32 res = pIter.getVarint32();
-            nSize = res.getValue();
-            pIter.movePointer(res.getOffset());
+            final long res = pIter.getVarint32Packed(0);
+            nSize = SqlJetVarintResult32.getPackedValue(res);
+            pIter.movePointer(SqlJetVarintResult32.getPackedOffset(res));
         }
 
         if (nSize > this.maxLocal) {
@@ -1310,7 +1309,7 @@ public class SqlJetMemPage extends SqlJetCloneable {
     @Override
     public SqlJetMemPage clone() throws CloneNotSupportedException {
         final SqlJetMemPage clone = (SqlJetMemPage) super.clone();
-        clone.aData = SqlJetUtility.memoryManager.allocatePtr(clone.pBt.getPageSize());
+        clone.aData = SqlJetUtility.memoryManager.allocatePagePtr(clone.pBt.getPageSize(), SqlJetPage.BUFFER_TYPE);
         clone.aOvfl = aOvfl.clone();
         return clone;
     }
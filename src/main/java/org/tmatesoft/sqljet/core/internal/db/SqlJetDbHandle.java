@@ -37,7 +37,7 @@ public class SqlJetDbHandle implements ISqlJetDbHandle {
             true);
 
     private final ISqlJetFileSystem fileSystem;
-    private final SqlAbstractJetMutex mutex;
+    private SqlAbstractJetMutex mutex;
     private ISqlJetOptions options;
     private ISqlJetBusyHandler busyHandler;
 
@@ -78,6 +78,11 @@ public class SqlJetDbHandle implements ISqlJetDbHandle {
         return mutex;
     }
 
+    @Override
+    public void setMutex(SqlAbstractJetMutex mutex) {
+        this.mutex = mutex;
+    }
+
     @Override
     public ISqlJetOptions getOptions() {
         return options;
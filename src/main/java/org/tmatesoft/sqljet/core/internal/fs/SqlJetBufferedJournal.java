@@ -0,0 +1,214 @@
+/**
+ * SqlJetBufferedJournal.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.fs;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Journal file which assembles appended records in memory and writes them to
+ * the underlying file in large chunks aligned to sector size. Buffered data
+ * is written before any other operation on the file, so reads, sync, size and
+ * truncation always see all written data. Writes which don't continue the
+ * buffered data start a new buffer.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetBufferedJournal implements ISqlJetFile {
+
+    private final @Nonnull ISqlJetFile file;
+    private final @Nonnull ISqlJetMemoryPointer buffer;
+    private final int sectorSize;
+
+    /** Offset in file of the first buffered byte */
+    private long start;
+
+    /** Number of buffered bytes */
+    private int length;
+
+    private long flushCount;
+
+    /**
+     * @param file
+     *            journal file.
+     * @param bufferSize
+     *            size of buffer, it's rounded up to sector size.
+     */
+    public SqlJetBufferedJournal(@Nonnull ISqlJetFile file, int bufferSize) {
+        this.file = file;
+        this.sectorSize = Math.max(file.sectorSize(), 1);
+        final int size = Math.max(bufferSize, sectorSize);
+        this.buffer = SqlJetUtility.memoryManager.allocatePtr((size + sectorSize - 1) / sectorSize * sectorSize);
+    }
+
+    /**
+     * @return the end of chunk which starts at {@link #start}: the last sector
+     *         boundary which fits into buffer.
+     */
+    private long chunkEnd() {
+        final long end = (start + buffer.remaining()) / sectorSize * sectorSize;
+        return end > start ? end : start + buffer.remaining();
+    }
+
+    /**
+     * Writes buffered data to the file.
+     *
+     * @throws SqlJetException
+     */
+    public void flush() throws SqlJetException {
+        if (length > 0) {
+            file.write(buffer, length, start);
+            start += length;
+            length = 0;
+            flushCount++;
+        }
+    }
+
+    /**
+     * @return number of writes issued to the underlying file by
+     *         {@link #flush()}.
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    @Override
+    public void write(@Nonnull ISqlJetMemoryPointer data, int amount, long offset) throws SqlJetException {
+        if (offset != start + length) {
+            flush();
+            start = offset;
+        }
+        int done = 0;
+        while (done < amount) {
+            final int n = (int) Math.min(amount - done, chunkEnd() - start - length);
+            buffer.copyFrom(length, data, done, n);
+            length += n;
+            done += n;
+            if (start + length == chunkEnd()) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public void write(@Nonnull ISqlJetMemoryPointer[] buffers, @Nonnull int[] amounts, long offset)
+            throws SqlJetException {
+        long o = offset;
+        for (int i = 0; i < buffers.length; i++) {
+            write(buffers[i], amounts[i], o);
+            o += amounts[i];
+        }
+    }
+
+    @Override
+    public int read(@Nonnull ISqlJetMemoryPointer data, int amount, long offset) throws SqlJetException {
+        flush();
+        return file.read(data, amount, offset);
+    }
+
+    @Override
+    public void truncate(long size) throws SqlJetException {
+        /* Data beyond the new end of file is dropped without writing. */
+        if (start >= size) {
+            length = 0;
+        } else if (start + length > size) {
+            length = (int) (size - start);
+        }
+        flush();
+        file.truncate(size);
+    }
+
+    @Override
+    public void sync() throws SqlJetException {
+        flush();
+        file.sync();
+    }
+
+    @Override
+    public long fileSize() throws SqlJetException {
+        flush();
+        return file.fileSize();
+    }
+
+    @Override
+    public void close() throws SqlJetException {
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return file.isReadOnly();
+    }
+
+    @Override
+    public boolean isReadWrite() {
+        return file.isReadWrite();
+    }
+
+    @Override
+    public boolean lock(@Nonnull SqlJetLockType lockType) throws SqlJetException {
+        return file.lock(lockType);
+    }
+
+    @Override
+    public boolean unlock(@Nonnull SqlJetLockType lockType) throws SqlJetException {
+        return file.unlock(lockType);
+    }
+
+    @Override
+    public boolean checkReservedLock() {
+        return file.checkReservedLock();
+    }
+
+    @Override
+    public SqlJetLockType getLockType() {
+        return file.getLockType();
+    }
+
+    @Override
+    public int sectorSize() {
+        return file.sectorSize();
+    }
+
+    @Override
+    public boolean isMemJournal() {
+        return file.isMemJournal();
+    }
+
+    @Override
+    public void setMmapSize(long mmapSize) {
+        file.setMmapSize(mmapSize);
+    }
+
+    @Override
+    public long getMmapSize() {
+        return file.getMmapSize();
+    }
+
+}
@@ -0,0 +1,706 @@
+/**
+ * SqlJetCompressedFile.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.fs;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Database file which keeps its content compressed in a container file.
+ *
+ * The logical file is split into blocks of equal size. Every block is
+ * deflated and stored as an extent: a run of contiguous slots of the
+ * container. Blocks which don't compress are stored as is, blocks of zeros
+ * aren't stored at all. The page-to-extent map is kept in memory and is stored
+ * in the container as map chunks plus a directory of chunks.
+ *
+ * The container starts with two copies of the header, which points to the
+ * directory. Changes are copy-on-write: extents referenced by the last stored
+ * header are never overwritten, and the header copies are written in turn,
+ * so the container always holds the state of the last completed
+ * {@link #sync()} even after a crash. The map is stored on sync, on unlock
+ * and on close; other connections reload it when they take a shared lock.
+ *
+ * Block size is chosen when the container is created: a first write which
+ * looks like a database page sets it to the page size, so every page is
+ * compressed separately and writes don't need to read blocks back.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetCompressedFile implements ISqlJetFile {
+
+    private static final byte[] MAGIC = { 'S', 'Q', 'L', 'J', 'E', 'T', 'Z', 1 };
+
+    private static final int HEADER_SIZE = 512;
+    private static final int HEADER_FIELDS_SIZE = 52;
+    private static final int DATA_OFFSET = 2 * HEADER_SIZE;
+    private static final int SLOT_SIZE = 256;
+
+    /** Number of map entries in one map chunk. */
+    private static final int MAP_CHUNK = 512;
+    private static final int MAP_ENTRY_SIZE = 8;
+    private static final int MAP_CHUNK_SIZE = MAP_CHUNK * MAP_ENTRY_SIZE;
+
+    private static class Header {
+        private long generation;
+        private int blockSize;
+        private long size;
+        private int blockCount;
+        private int directorySlot;
+        private int directoryLength;
+    }
+
+    private final @Nonnull SqlJetCompressedFileSystem fileSystem;
+    private final @Nonnull ISqlJetFile file;
+    private final int defaultBlockSize;
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater();
+
+    private ISqlJetMemoryPointer io;
+
+    private long generation;
+    private int blockSize;
+    private long size;
+
+    private int blockCount;
+    private int[] slots = new int[0];
+    private int[] lengths = new int[0];
+    private int[] chunkSlots = new int[0];
+    private int directorySlot;
+    private int directoryLength;
+    private final BitSet dirtyChunks = new BitSet();
+    private boolean dirty;
+
+    /** Slots used by the current map. */
+    private BitSet used = new BitSet();
+    /** Slots used by the last stored map. */
+    private BitSet committed = new BitSet();
+    /** Slots which can't be allocated: union of used and committed. */
+    private BitSet reserved = new BitSet();
+
+    private byte[] block = new byte[0];
+    private byte[] compressed = new byte[0];
+    private int cachedBlock = -1;
+
+    private SqlJetLockType lockType = SqlJetLockType.NONE;
+    private long mmapSize;
+
+    /**
+     * @param fileSystem
+     * @param file
+     *            container file.
+     * @param defaultBlockSize
+     *            block size used when container is created by a write which
+     *            isn't a database page.
+     * @param level
+     *            compression level.
+     * @throws SqlJetException
+     *             if file isn't an empty or a compressed file.
+     */
+    public SqlJetCompressedFile(@Nonnull SqlJetCompressedFileSystem fileSystem, @Nonnull ISqlJetFile file,
+            int defaultBlockSize, int level) throws SqlJetException {
+        this.fileSystem = fileSystem;
+        this.file = file;
+        this.defaultBlockSize = defaultBlockSize;
+        this.deflater = new Deflater(level);
+        if (file.fileSize() > 0) {
+            refresh();
+        }
+    }
+
+    /**
+     * @return block size, or 0 if nothing was written yet.
+     */
+    public synchronized int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return ratio of size of stored blocks to size of their extents.
+     */
+    public synchronized double getCompressionRatio() {
+        long stored = 0;
+        long extents = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (lengths[i] > 0) {
+                stored += blockSize;
+                extents += lengths[i];
+            }
+        }
+        return extents > 0 ? (double) stored / extents : 1;
+    }
+
+    /**
+     * @return size of container file.
+     * @throws SqlJetException
+     */
+    public synchronized long getStoredSize() throws SqlJetException {
+        return file.fileSize();
+    }
+
+    private static long slotOffset(int slot) {
+        return DATA_OFFSET + (long) slot * SLOT_SIZE;
+    }
+
+    private static int slotsFor(int length) {
+        return (length + SLOT_SIZE - 1) / SLOT_SIZE;
+    }
+
+    private @Nonnull ISqlJetMemoryPointer io(int length) {
+        ISqlJetMemoryPointer p = io;
+        if (p == null || p.remaining() < length) {
+            p = SqlJetUtility.memoryManager.allocatePtr(Math.max(length, MAP_CHUNK_SIZE));
+            io = p;
+        }
+        return p;
+    }
+
+    private void readBytes(byte[] bytes, int length, long offset) throws SqlJetException {
+        final ISqlJetMemoryPointer p = io(length);
+        final int read = file.read(p, length, offset);
+        SqlJetCompressedFileSystem.checkFormat(read >= length, "Compressed file is truncated");
+        p.getBuffer().getBytes(p.getPointer(), bytes, 0, length);
+    }
+
+    private void writeBytes(byte[] bytes, int length, long offset) throws SqlJetException {
+        final ISqlJetMemoryPointer p = io(length);
+        p.getBuffer().putBytes(p.getPointer(), bytes, 0, length);
+        file.write(p, length, offset);
+    }
+
+    private Header readHeader() throws SqlJetException {
+        final byte[] bytes = new byte[DATA_OFFSET];
+        final ISqlJetMemoryPointer p = io(DATA_OFFSET);
+        p.fill(DATA_OFFSET, (byte) 0);
+        file.read(p, DATA_OFFSET, 0);
+        p.getBuffer().getBytes(p.getPointer(), bytes, 0, DATA_OFFSET);
+
+        Header result = null;
+        boolean empty = true;
+        for (int copy = 0; copy < 2; copy++) {
+            final ByteBuffer b = ByteBuffer.wrap(bytes, copy * HEADER_SIZE, HEADER_SIZE).slice();
+            for (int i = 0; i < HEADER_FIELDS_SIZE + 4; i++) {
+                empty &= b.get(i) == 0;
+            }
+            final Header h = parseHeader(b);
+            if (h != null && (result == null || h.generation > result.generation)) {
+                result = h;
+            }
+        }
+        if (result == null && !empty) {
+            throw new SqlJetException(SqlJetErrorCode.NOTADB, "File isn't a compressed database");
+        }
+        return result;
+    }
+
+    private static Header parseHeader(ByteBuffer b) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (b.get(i) != MAGIC[i]) {
+                return null;
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(b.array(), b.arrayOffset(), HEADER_FIELDS_SIZE);
+        if (b.getInt(HEADER_FIELDS_SIZE) != (int) crc.getValue()) {
+            return null;
+        }
+        final Header h = new Header();
+        h.blockSize = b.getInt(8);
+        if (b.getInt(12) != SLOT_SIZE || !SqlJetCompressedFileSystem.isBlockSize(h.blockSize)) {
+            return null;
+        }
+        h.generation = b.getLong(16);
+        h.size = b.getLong(24);
+        h.blockCount = b.getInt(32);
+        h.directorySlot = b.getInt(36);
+        h.directoryLength = b.getInt(40);
+        return h;
+    }
+
+    private void writeHeader() throws SqlJetException {
+        final byte[] bytes = new byte[HEADER_FIELDS_SIZE + 4];
+        final ByteBuffer b = ByteBuffer.wrap(bytes);
+        b.put(MAGIC);
+        b.putInt(8, blockSize);
+        b.putInt(12, SLOT_SIZE);
+        b.putLong(16, generation);
+        b.putLong(24, size);
+        b.putInt(32, blockCount);
+        b.putInt(36, directorySlot);
+        b.putInt(40, directoryLength);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, HEADER_FIELDS_SIZE);
+        b.putInt(HEADER_FIELDS_SIZE, (int) crc.getValue());
+        writeBytes(bytes, bytes.length, (generation & 1) * HEADER_SIZE);
+    }
+
+    /**
+     * Reloads the map if the container was changed by another connection.
+     */
+    private void refresh() throws SqlJetException {
+        final Header h = readHeader();
+        if (h == null) {
+            if (generation != 0 || blockSize != 0) {
+                load(new Header());
+            }
+        } else if (h.generation != generation || blockSize == 0) {
+            load(h);
+        }
+    }
+
+    private void load(Header h) throws SqlJetException {
+        final int chunkCount = (h.blockCount + MAP_CHUNK - 1) / MAP_CHUNK;
+        SqlJetCompressedFileSystem.checkFormat(h.blockCount >= 0 && h.directoryLength == chunkCount * 4,
+                "Wrong directory of compressed file");
+
+        generation = h.generation;
+        setBlockSize(h.blockSize);
+        size = h.size;
+        blockCount = h.blockCount;
+        slots = new int[blockCount];
+        lengths = new int[blockCount];
+        chunkSlots = new int[chunkCount];
+        directorySlot = h.directorySlot;
+        directoryLength = h.directoryLength;
+        dirtyChunks.clear();
+        dirty = false;
+        cachedBlock = -1;
+        used = new BitSet();
+
+        if (chunkCount > 0) {
+            final byte[] directory = new byte[directoryLength];
+            readBytes(directory, directoryLength, slotOffset(directorySlot));
+            used.set(directorySlot, directorySlot + slotsFor(directoryLength));
+            final ByteBuffer d = ByteBuffer.wrap(directory);
+            final byte[] chunk = new byte[MAP_CHUNK_SIZE];
+            final ByteBuffer c = ByteBuffer.wrap(chunk);
+            for (int i = 0; i < chunkCount; i++) {
+                chunkSlots[i] = d.getInt(i * 4);
+                readBytes(chunk, MAP_CHUNK_SIZE, slotOffset(chunkSlots[i]));
+                used.set(chunkSlots[i], chunkSlots[i] + slotsFor(MAP_CHUNK_SIZE));
+                for (int j = 0; j < MAP_CHUNK && i * MAP_CHUNK + j < blockCount; j++) {
+                    final int b = i * MAP_CHUNK + j;
+                    slots[b] = c.getInt(j * MAP_ENTRY_SIZE);
+                    lengths[b] = c.getInt(j * MAP_ENTRY_SIZE + 4);
+                    SqlJetCompressedFileSystem.checkFormat(
+                            slots[b] >= 0 && lengths[b] >= 0 && lengths[b] <= blockSize,
+                            "Wrong map entry of compressed file");
+                    if (lengths[b] > 0) {
+                        used.set(slots[b], slots[b] + slotsFor(lengths[b]));
+                    }
+                }
+            }
+        }
+        committed = (BitSet) used.clone();
+        reserved = (BitSet) used.clone();
+    }
+
+    private void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+        if (block.length != blockSize) {
+            block = new byte[blockSize];
+            compressed = new byte[blockSize];
+        }
+    }
+
+    private int allocate(int count) {
+        int slot = reserved.nextClearBit(0);
+        for (;;) {
+            final int next = reserved.nextSetBit(slot);
+            if (next < 0 || next - slot >= count) {
+                break;
+            }
+            slot = reserved.nextClearBit(next);
+        }
+        used.set(slot, slot + count);
+        reserved.set(slot, slot + count);
+        return slot;
+    }
+
+    private void free(int slot, int count) {
+        used.clear(slot, slot + count);
+        for (int i = slot; i < slot + count; i++) {
+            if (!committed.get(i)) {
+                reserved.clear(i);
+            }
+        }
+    }
+
+    private void ensureBlocks(int count) {
+        if (count <= blockCount) {
+            return;
+        }
+        if (count > slots.length) {
+            final int capacity = Math.max(count, slots.length * 2);
+            slots = Arrays.copyOf(slots, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        dirtyChunks.set(blockCount / MAP_CHUNK, (count - 1) / MAP_CHUNK + 1);
+        blockCount = count;
+    }
+
+    /**
+     * Loads the block into {@link #block}.
+     */
+    private void loadBlock(int index) throws SqlJetException {
+        if (cachedBlock == index) {
+            return;
+        }
+        cachedBlock = -1;
+        final int length = index < blockCount ? lengths[index] : 0;
+        if (length == 0) {
+            Arrays.fill(block, (byte) 0);
+        } else if (length == blockSize) {
+            readBytes(block, length, slotOffset(slots[index]));
+        } else {
+            readBytes(compressed, length, slotOffset(slots[index]));
+            final long start = fileSystem.time();
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            try {
+                SqlJetCompressedFileSystem.checkFormat(inflater.inflate(block, 0, blockSize) == blockSize,
+                        "Compressed block is truncated");
+            } catch (DataFormatException e) {
+                throw new SqlJetException(SqlJetErrorCode.CORRUPT, e);
+            }
+            fileSystem.decompressed(start);
+        }
+        cachedBlock = index;
+    }
+
+    /**
+     * Stores content of {@link #block} as the block with given index.
+     */
+    private void storeBlock(int index) throws SqlJetException {
+        ensureBlocks(index + 1);
+        if (lengths[index] > 0) {
+            free(slots[index], slotsFor(lengths[index]));
+        }
+        int length = 0;
+        for (int i = 0; i < blockSize; i++) {
+            if (block[i] != 0) {
+                length = blockSize;
+                break;
+            }
+        }
+        if (length > 0) {
+            final long start = fileSystem.time();
+            deflater.reset();
+            deflater.setInput(block, 0, blockSize);
+            deflater.finish();
+            final int deflated = deflater.deflate(compressed, 0, blockSize);
+            if (deflater.finished() && deflated < blockSize) {
+                length = deflated;
+            }
+            fileSystem.compressed(blockSize, length, start);
+            slots[index] = allocate(slotsFor(length));
+            writeBytes(length < blockSize ? compressed : block, length, slotOffset(slots[index]));
+        }
+        lengths[index] = length;
+        dirtyChunks.set(index / MAP_CHUNK);
+        dirty = true;
+    }
+
+    /**
+     * Stores the map and the header.
+     *
+     * Extents and map are always synced before the header which points to
+     * them is written, so a crash can't leave a header which refers to
+     * missing data.
+     *
+     * @param sync
+     *            sync the container after header is written too.
+     */
+    private void commit(boolean sync) throws SqlJetException {
+        if (!dirty) {
+            if (sync) {
+                file.sync();
+            }
+            return;
+        }
+        final int chunkCount = (blockCount + MAP_CHUNK - 1) / MAP_CHUNK;
+        for (int i = chunkCount; i < chunkSlots.length; i++) {
+            free(chunkSlots[i], slotsFor(MAP_CHUNK_SIZE));
+        }
+        final int stored = chunkSlots.length;
+        chunkSlots = Arrays.copyOf(chunkSlots, chunkCount);
+
+        final byte[] chunk = new byte[MAP_CHUNK_SIZE];
+        final ByteBuffer c = ByteBuffer.wrap(chunk);
+        for (int i = dirtyChunks.nextSetBit(0); i >= 0 && i < chunkCount; i = dirtyChunks.nextSetBit(i + 1)) {
+            Arrays.fill(chunk, (byte) 0);
+            for (int j = 0; j < MAP_CHUNK && i * MAP_CHUNK + j < blockCount; j++) {
+                c.putInt(j * MAP_ENTRY_SIZE, slots[i * MAP_CHUNK + j]);
+                c.putInt(j * MAP_ENTRY_SIZE + 4, lengths[i * MAP_CHUNK + j]);
+            }
+            if (i < stored) {
+                free(chunkSlots[i], slotsFor(MAP_CHUNK_SIZE));
+            }
+            chunkSlots[i] = allocate(slotsFor(MAP_CHUNK_SIZE));
+            writeBytes(chunk, MAP_CHUNK_SIZE, slotOffset(chunkSlots[i]));
+        }
+
+        if (directoryLength > 0) {
+            free(directorySlot, slotsFor(directoryLength));
+        }
+        directoryLength = chunkCount * 4;
+        directorySlot = 0;
+        if (directoryLength > 0) {
+            final byte[] directory = new byte[directoryLength];
+            final ByteBuffer d = ByteBuffer.wrap(directory);
+            for (int i = 0; i < chunkCount; i++) {
+                d.putInt(i * 4, chunkSlots[i]);
+            }
+            directorySlot = allocate(slotsFor(directoryLength));
+            writeBytes(directory, directoryLength, slotOffset(directorySlot));
+        }
+
+        file.sync();
+        generation++;
+        writeHeader();
+        if (sync) {
+            file.sync();
+        }
+
+        committed = (BitSet) used.clone();
+        reserved = (BitSet) used.clone();
+        dirtyChunks.clear();
+        dirty = false;
+
+        final long end = slotOffset(used.length());
+        if (file.fileSize() > end) {
+            file.truncate(end);
+        }
+    }
+
+    @Override
+    public synchronized int read(@Nonnull ISqlJetMemoryPointer buffer, int amount, long offset)
+            throws SqlJetException {
+        assert amount > 0;
+        assert offset >= 0;
+        assert buffer.remaining() >= amount;
+
+        if (offset >= size) {
+            return 0;
+        }
+        int done = 0;
+        while (done < amount) {
+            final long position = offset + done;
+            final int index = (int) (position / blockSize);
+            final int from = (int) (position % blockSize);
+            final int count = Math.min(amount - done, blockSize - from);
+            if (index < blockCount && lengths[index] > 0) {
+                loadBlock(index);
+                buffer.getBuffer().putBytes(buffer.getAbsolute(done), block, from, count);
+            } else {
+                buffer.fill(done, count, (byte) 0);
+            }
+            done += count;
+        }
+        return (int) Math.min(amount, size - offset);
+    }
+
+    @Override
+    public synchronized void write(@Nonnull ISqlJetMemoryPointer buffer, int amount, long offset)
+            throws SqlJetException {
+        assert amount > 0;
+        assert offset >= 0;
+        assert buffer.remaining() >= amount;
+
+        if (blockSize == 0) {
+            setBlockSize(offset == 0 && SqlJetCompressedFileSystem.isBlockSize(amount) ? amount : defaultBlockSize);
+        }
+        int done = 0;
+        while (done < amount) {
+            final long position = offset + done;
+            final int index = (int) (position / blockSize);
+            final int from = (int) (position % blockSize);
+            final int count = Math.min(amount - done, blockSize - from);
+            if (count < blockSize) {
+                loadBlock(index);
+            }
+            buffer.getBuffer().getBytes(buffer.getAbsolute(done), block, from, count);
+            cachedBlock = index;
+            storeBlock(index);
+            done += count;
+        }
+        if (offset + amount > size) {
+            size = offset + amount;
+            dirty = true;
+        }
+    }
+
+    @Override
+    public synchronized void write(@Nonnull ISqlJetMemoryPointer[] buffers, @Nonnull int[] amounts, long offset)
+            throws SqlJetException {
+        long position = offset;
+        for (int i = 0; i < buffers.length; i++) {
+            write(buffers[i], amounts[i], position);
+            position += amounts[i];
+        }
+    }
+
+    @Override
+    public synchronized void truncate(long size) throws SqlJetException {
+        assert size >= 0;
+        if (blockSize > 0) {
+            final int count = (int) ((size + blockSize - 1) / blockSize);
+            for (int i = count; i < blockCount; i++) {
+                if (lengths[i] > 0) {
+                    free(slots[i], slotsFor(lengths[i]));
+                }
+                /* Entries past the end are reused by ensureBlocks() when file grows. */
+                slots[i] = 0;
+                lengths[i] = 0;
+            }
+            if (count < blockCount) {
+                blockCount = count;
+                if (count > 0) {
+                    dirtyChunks.set((count - 1) / MAP_CHUNK);
+                }
+                if (cachedBlock >= count) {
+                    cachedBlock = -1;
+                }
+            }
+            final int tail = (int) (size % blockSize);
+            if (tail > 0 && count - 1 < blockCount && lengths[count - 1] > 0) {
+                /* Keep bytes past the end zeroed, so they read back as zeros when file grows. */
+                loadBlock(count - 1);
+                Arrays.fill(block, tail, blockSize, (byte) 0);
+                storeBlock(count - 1);
+            }
+        }
+        this.size = size;
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void sync() throws SqlJetException {
+        commit(true);
+    }
+
+    @Override
+    public synchronized long fileSize() throws SqlJetException {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws SqlJetException {
+        try {
+            if (dirty && file.isReadWrite()) {
+                commit(false);
+            }
+        } finally {
+            try {
+                file.close();
+            } finally {
+                deflater.end();
+                inflater.end();
+            }
+        }
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return file.isReadOnly();
+    }
+
+    @Override
+    public boolean isReadWrite() {
+        return file.isReadWrite();
+    }
+
+    @Override
+    public synchronized boolean lock(@Nonnull SqlJetLockType lockType) throws SqlJetException {
+        final boolean locked = file.lock(lockType);
+        if (locked) {
+            if (this.lockType == SqlJetLockType.NONE && !dirty) {
+                refresh();
+            }
+            this.lockType = lockType;
+        }
+        return locked;
+    }
+
+    @Override
+    public synchronized boolean unlock(@Nonnull SqlJetLockType lockType) throws SqlJetException {
+        if (this.lockType != SqlJetLockType.NONE && file.getLockType() == SqlJetLockType.NONE) {
+            /* Container was changed without locks, the map is reloaded by next lock. */
+            dirty = false;
+            generation = -1;
+        } else if (dirty && file.isReadWrite()) {
+            commit(false);
+        }
+        final boolean unlocked = file.unlock(lockType);
+        if (this.lockType.compareTo(lockType) > 0) {
+            this.lockType = lockType;
+        }
+        return unlocked;
+    }
+
+    @Override
+    public boolean checkReservedLock() {
+        return file.checkReservedLock();
+    }
+
+    @Override
+    public synchronized SqlJetLockType getLockType() {
+        /* Locks of the container are lost when its channel is closed. */
+        return file.getLockType() == SqlJetLockType.NONE ? SqlJetLockType.NONE : lockType;
+    }
+
+    @Override
+    public int sectorSize() {
+        return file.sectorSize();
+    }
+
+    @Override
+    public boolean isMemJournal() {
+        return false;
+    }
+
+    /**
+     * Compressed files are never mapped, the value is only kept.
+     */
+    @Override
+    public synchronized void setMmapSize(long mmapSize) {
+        this.mmapSize = mmapSize;
+    }
+
+    @Override
+    public synchronized long getMmapSize() {
+        return mmapSize;
+    }
+
+}
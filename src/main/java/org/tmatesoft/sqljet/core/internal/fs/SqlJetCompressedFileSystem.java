@@ -0,0 +1,215 @@
+/**
+ * SqlJetCompressedFileSystem.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetLimits;
+import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+
+/**
+ * File system which stores main database files compressed. Every block of
+ * the database file is deflated and kept in a container file, see
+ * {@link SqlJetCompressedFile}. Journals and temporary files are stored as
+ * is. The pager doesn't know about compression, so any database may be
+ * opened with this file system, but existing plain database files can't.
+ *
+ * The file system is registered in {@link SqlJetFileSystemsManager} under the
+ * name {@link #FS_NAME}. It collects compression statistics of all files it
+ * has opened.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetCompressedFileSystem implements ISqlJetFileSystem {
+
+    public static final @Nonnull String FS_NAME = SqlJetCompressedFileSystem.class.getCanonicalName();
+
+    /**
+     * Block size of containers created by writes which don't look like a
+     * database page.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final @Nonnull SqlJetFileSystem fileSystem = new SqlJetFileSystem();
+    private final int level;
+    private final int blockSize;
+
+    private final AtomicLong bytesCompressed = new AtomicLong();
+    private final AtomicLong bytesStored = new AtomicLong();
+    private final AtomicLong blocksCompressed = new AtomicLong();
+    private final AtomicLong blocksDecompressed = new AtomicLong();
+    private final AtomicLong codecTime = new AtomicLong();
+
+    public SqlJetCompressedFileSystem() {
+        this(Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param level
+     *            deflate compression level, from 0 to 9 or
+     *            {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param blockSize
+     *            default block size, power of two from 512 to 32768.
+     */
+    public SqlJetCompressedFileSystem(int level, int blockSize) {
+        assert level == Deflater.DEFAULT_COMPRESSION || (level >= 0 && level <= 9);
+        assert isBlockSize(blockSize);
+        this.level = level;
+        this.blockSize = blockSize;
+    }
+
+    static boolean isBlockSize(int size) {
+        return size >= ISqlJetLimits.SQLJET_MIN_PAGE_SIZE && size <= ISqlJetLimits.SQLJET_MAX_PAGE_SIZE
+                && Integer.bitCount(size) == 1;
+    }
+
+    @Override
+    public String getName() {
+        return FS_NAME;
+    }
+
+    @Override
+    public @Nonnull ISqlJetFile open(File path, @Nonnull SqlJetFileType type,
+            @Nonnull Set<SqlJetFileOpenPermission> permissions) throws SqlJetException {
+        final ISqlJetFile file = fileSystem.open(path, type, permissions);
+        if (SqlJetFileType.MAIN_DB != type) {
+            return file;
+        }
+        try {
+            return new SqlJetCompressedFile(this, file, blockSize, level);
+        } catch (SqlJetException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public @Nonnull SqlJetMemJournal memJournalOpen() {
+        return fileSystem.memJournalOpen();
+    }
+
+    @Override
+    public boolean delete(File path, boolean sync) throws SqlJetException {
+        return fileSystem.delete(path, sync);
+    }
+
+    @Override
+    public boolean access(File path, SqlJetFileAccesPermission permission) throws SqlJetException {
+        return fileSystem.access(path, permission);
+    }
+
+    @Override
+    public @Nonnull File getTempFile() throws IOException {
+        return fileSystem.getTempFile();
+    }
+
+    /**
+     * @return CPU time of the current thread in nanoseconds, or wall clock
+     *         time if CPU time isn't available.
+     */
+    long time() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    void compressed(int in, int out, long start) {
+        bytesCompressed.addAndGet(in);
+        bytesStored.addAndGet(out);
+        blocksCompressed.incrementAndGet();
+        codecTime.addAndGet(time() - start);
+    }
+
+    void decompressed(long start) {
+        blocksDecompressed.incrementAndGet();
+        codecTime.addAndGet(time() - start);
+    }
+
+    /**
+     * @return number of bytes passed to compressor.
+     */
+    public long getBytesCompressed() {
+        return bytesCompressed.get();
+    }
+
+    /**
+     * @return number of bytes written by compressor, blocks which don't
+     *         compress are counted at their full size.
+     */
+    public long getBytesStored() {
+        return bytesStored.get();
+    }
+
+    /**
+     * @return ratio of {@link #getBytesCompressed()} to
+     *         {@link #getBytesStored()}, or 1 if nothing was compressed yet.
+     */
+    public double getCompressionRatio() {
+        final long stored = bytesStored.get();
+        return stored > 0 ? (double) bytesCompressed.get() / stored : 1;
+    }
+
+    public long getBlocksCompressed() {
+        return blocksCompressed.get();
+    }
+
+    public long getBlocksDecompressed() {
+        return blocksDecompressed.get();
+    }
+
+    /**
+     * @return CPU time spent in compression and decompression, in
+     *         nanoseconds.
+     */
+    public long getCodecCpuTime() {
+        return codecTime.get();
+    }
+
+    /**
+     * Clears statistics.
+     */
+    public void resetStatistics() {
+        bytesCompressed.set(0);
+        bytesStored.set(0);
+        blocksCompressed.set(0);
+        blocksDecompressed.set(0);
+        codecTime.set(0);
+    }
+
+    static void checkFormat(boolean condition, String message) throws SqlJetException {
+        SqlJetAssert.assertTrue(condition, SqlJetErrorCode.CORRUPT, message);
+    }
+
+}
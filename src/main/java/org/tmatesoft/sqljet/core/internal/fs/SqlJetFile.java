@@ -133,6 +133,7 @@ public class SqlJetFile extends SqlJetNoLockFile implements ISqlJetFile {
         if (isClosed) {
             return;
         }
+        releaseMapping();
 
         synchronized (openFiles) {
             unlock(SqlJetLockType.NONE);
@@ -225,6 +226,19 @@ public class SqlJetFile extends SqlJetNoLockFile implements ISqlJetFile {
 
         assert lockInfo != null;
 
+        if (this.lockType == SqlJetLockType.NONE && !channel.isOpen()) {
+            /*
+             * Channel was closed by interrupt and its users have dropped the
+             * locks which were lost with it, so the file could be used again.
+             */
+            try {
+                reopen();
+                fileLockManager.setChannel(channel);
+            } catch (IOException e) {
+                throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_LOCK, e);
+            }
+        }
+
         OSTRACE("LOCK    %s %s was %s(%s,%d) pid=%s\n", this.filePath, locktypeName(lockType),
                 locktypeName(this.lockType), locktypeName(lockInfo.lockType), Integer.valueOf(lockInfo.sharedLockCount),
                 getpid());
@@ -466,6 +480,25 @@ public class SqlJetFile extends SqlJetNoLockFile implements ISqlJetFile {
         return true;
     }
 
+    /**
+     * @return {@link SqlJetLockType#NONE} if locks were lost because channel
+     *         they were held through was closed by interrupt.
+     */
+    @Override
+    public synchronized SqlJetLockType getLockType() {
+        if (lockType != SqlJetLockType.NONE) {
+            if (!channel.isOpen()) {
+                return SqlJetLockType.NONE;
+            }
+            for (FileLock lock : locks.values()) {
+                if (!lock.isValid()) {
+                    return SqlJetLockType.NONE;
+                }
+            }
+        }
+        return lockType;
+    }
+
     @Override
     public synchronized boolean checkReservedLock() {
         boolean reserved = false;
@@ -33,7 +33,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SqlJetFileLockManager {
 
     private String filePath;
-    private FileChannel fileChannel;
+    private volatile FileChannel fileChannel;
 
     public SqlJetFileLockManager(String filePath, FileChannel fileChannel) {
         this.filePath = filePath;
@@ -49,6 +49,15 @@ public class SqlJetFileLockManager {
     private ILockCreator tryLockCreator = (position, size, shared) -> fileChannel.tryLock(position, size, shared);
     private ILockCreator lockCreator = (position, size, shared) -> fileChannel.lock(position, size, shared);
 
+    /**
+     * Replaces channel of the file after it was opened again.
+     *
+     * @param fileChannel
+     */
+    public void setChannel(FileChannel fileChannel) {
+        this.fileChannel = fileChannel;
+    }
+
     private FileLock createLock(long position, long size, boolean shared, ILockCreator lockCreator) throws IOException {
         synchronized (locks) {
             final SqlJetFileLock lock = getLock(position, size);
@@ -84,7 +93,8 @@ public class SqlJetFileLockManager {
     private SqlJetFileLock getLock(long position, long size) {
         if (locks.containsKey(filePath)) {
             for (SqlJetFileLock fl : locks.get(filePath)) {
-                if (fl.overlaps(position, size)) {
+                /* Locks released by closing of their channel aren't shared. */
+                if (fl.isValid() && fl.overlaps(position, size)) {
                     return fl;
                 }
             }
@@ -49,6 +49,7 @@ public class SqlJetFileSystemsManager implements ISqlJetFileSystemsManager {
     private SqlJetFileSystemsManager() {
         try {
             register(new SqlJetFileSystem(), true);
+            register(new SqlJetCompressedFileSystem(), false);
         } catch (SqlJetException e) {
             e.printStackTrace();
         }
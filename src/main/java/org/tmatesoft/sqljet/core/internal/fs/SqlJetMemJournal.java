@@ -106,6 +106,18 @@ public class SqlJetMemJournal implements ISqlJetFile {
         }
     }
 
+    @Override
+    public void write(@Nonnull ISqlJetMemoryPointer[] buffers, @Nonnull int[] amounts, long offset) {
+        assert buffers.length == amounts.length;
+        long o = offset;
+        for (int i = 0; i < buffers.length; i++) {
+            final ISqlJetMemoryPointer buffer = buffers[i];
+            assert buffer != null;
+            write(buffer, amounts[i], o);
+            o += amounts[i];
+        }
+    }
+
     @Override
     public void truncate(long size) {
     }
@@ -159,4 +171,14 @@ public class SqlJetMemJournal implements ISqlJetFile {
         return false;
     }
 
+    @Override
+    public void setMmapSize(long mmapSize) {
+        // memory journal is never mapped.
+    }
+
+    @Override
+    public long getMmapSize() {
+        return 0;
+    }
+
 }
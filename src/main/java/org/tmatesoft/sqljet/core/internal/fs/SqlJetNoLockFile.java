@@ -20,6 +20,8 @@ package org.tmatesoft.sqljet.core.internal.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -39,6 +41,22 @@ import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
 import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetTimer;
 
+/**
+ * File which is read and written by positional {@link FileChannel} I/O, so
+ * reads and writes of different threads don't wait for each other.
+ *
+ * Unlike {@link RandomAccessFile} streams, channel is interruptible: if thread
+ * is interrupted while it reads, writes or syncs the file, the channel is
+ * closed and the operation fails with IOERR. The channel is shared by all
+ * users of the file and the locks which it holds are released. The channel
+ * isn't reopened behind the back of its users: {@link SqlJetFile} reports
+ * lost locks by {@link #getLockType()} and opens the file again only when
+ * SHARED lock is acquired from scratch.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
 public class SqlJetNoLockFile implements ISqlJetFile {
     /**
      * Activates logging of files operations.
@@ -50,15 +68,44 @@ public class SqlJetNoLockFile implements ISqlJetFile {
 
     private static final int SQLJET_DEFAULT_SECTOR_SIZE = 512;
 
+    /**
+     * Size of a single memory-mapped region. A single MappedByteBuffer can't
+     * exceed 2GB, so larger files are mapped by several regions. Size is a
+     * multiple of any page size, so pages never cross regions.
+     */
+    private static final long MMAP_CHUNK_SIZE = 1L << 30;
+
+    /**
+     * Minimal growth of file which causes it to be mapped again. Mapped size
+     * is at least doubled, so a file which grows by pages isn't mapped again
+     * on every appended page. Reads beyond the mapping are done by regular
+     * I/O meanwhile.
+     */
+    private static final long MMAP_MIN_GROWTH = 1L << 16;
+
+    /**
+     * Memory-mapped regions of the file, never changed after creation so reads
+     * could use it without synchronization.
+     */
+    private static class Mapping {
+        private final MappedByteBuffer[] chunks;
+        private final long size;
+
+        private Mapping(MappedByteBuffer[] chunks, long size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+    }
+
     protected static void OSTRACE(String format, Object... args) {
         if (SQLJET_LOG_FILES) {
             SqlJetUtility.log(filesLogger, format, args);
         }
     }
 
-    protected final @Nonnull FileChannel channel;
+    protected volatile @Nonnull FileChannel channel;
 
-    protected final @Nonnull RandomAccessFile file;
+    protected volatile @Nonnull RandomAccessFile file;
     private final @Nonnull File filePath;
 
     private SqlJetLockType lockType = SqlJetLockType.NONE;
@@ -66,6 +113,9 @@ public class SqlJetNoLockFile implements ISqlJetFile {
     private final boolean readOnly;
     protected final boolean deleteOnClose;
 
+    private volatile long mmapSize;
+    private volatile Mapping mapping;
+
     /**
      * @param fileSystem
      * @param file
@@ -100,6 +150,21 @@ public class SqlJetNoLockFile implements ISqlJetFile {
         SqlJetAssert.assertFalse(isClosed, SqlJetErrorCode.MISUSE, "This file has been already closed!");
     }
 
+    /**
+     * Opens the file again after its channel was closed by interrupt.
+     *
+     * @throws IOException
+     */
+    protected synchronized void reopen() throws IOException {
+        assert !channel.isOpen();
+        releaseMapping();
+        final RandomAccessFile old = file;
+        file = SqlJetFileUtil.openFile(filePath, readOnly ? "r" : "rw");
+        channel = file.getChannel();
+        old.close();
+        OSTRACE("REOPEN  %s\n", this.filePath);
+    }
+
     @Override
     public synchronized void close() throws SqlJetException {
         if (isClosed) {
@@ -114,6 +179,7 @@ public class SqlJetNoLockFile implements ISqlJetFile {
          */
 
         isClosed = true;
+        releaseMapping();
         try {
             file.close();
             channel.close();
@@ -132,7 +198,7 @@ public class SqlJetNoLockFile implements ISqlJetFile {
     }
 
     @Override
-    public synchronized int read(@Nonnull ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetException {
+    public int read(@Nonnull ISqlJetMemoryPointer buffer, int amount, long offset) throws SqlJetException {
         assert amount > 0;
         assert offset >= 0;
         assert buffer.remaining() >= amount;
@@ -141,7 +207,13 @@ public class SqlJetNoLockFile implements ISqlJetFile {
 
         try {
             SqlJetTimer timer = new SqlJetTimer();
-            final int read = buffer.readFromFile(file, channel, offset, amount);
+            if (readMapped(buffer, amount, offset)) {
+                timer.end();
+                OSTRACE("READMAP %s %5d %7d %s\n", this.filePath, Integer.valueOf(amount), Long.valueOf(offset),
+                        timer.format());
+                return amount;
+            }
+            final int read = buffer.readFromFile(channel, offset, amount);
             timer.end();
             OSTRACE("READ %s %5d %7d %s\n", this.filePath, Integer.valueOf(read), Long.valueOf(offset), timer.format());
             return read < 0 ? 0 : read;
@@ -151,7 +223,7 @@ public class SqlJetNoLockFile implements ISqlJetFile {
     }
 
     @Override
-    public synchronized void write(@Nonnull ISqlJetMemoryPointer buffer, int amount, long offset)
+    public void write(@Nonnull ISqlJetMemoryPointer buffer, int amount, long offset)
             throws SqlJetException {
         assert amount > 0;
         assert offset >= 0;
@@ -160,7 +232,7 @@ public class SqlJetNoLockFile implements ISqlJetFile {
         checkIfClosed();
         try {
             SqlJetTimer timer = new SqlJetTimer();
-            final int write = buffer.writeToFile(file, channel, offset, amount);
+            final int write = buffer.writeToFile(channel, offset, amount);
             timer.end();
             OSTRACE("WRITE %s %5d %7d %s\n", this.filePath, Integer.valueOf(write), Long.valueOf(offset),
                     timer.format());
@@ -169,11 +241,54 @@ public class SqlJetNoLockFile implements ISqlJetFile {
         }
     }
 
+    @Override
+    public synchronized void write(@Nonnull ISqlJetMemoryPointer[] buffers, @Nonnull int[] amounts, long offset)
+            throws SqlJetException {
+        assert buffers.length == amounts.length;
+        assert offset >= 0;
+
+        checkIfClosed();
+        try {
+            SqlJetTimer timer = new SqlJetTimer();
+            final ByteBuffer[] srcs = new ByteBuffer[buffers.length];
+            long amount = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                final ISqlJetMemoryPointer buffer = buffers[i];
+                assert buffer.remaining() >= amounts[i];
+                srcs[i] = buffer.getBuffer().asByteBuffer(buffer.getPointer(), amounts[i]);
+                amount += amounts[i];
+            }
+            /*
+             * There is no positional gathering write in FileChannel, so this
+             * method moves channel's position. Positional reads and writes
+             * don't depend on it, and gathering writes are serialized by the
+             * monitor.
+             */
+            channel.position(offset);
+            long written = 0;
+            while (written < amount) {
+                written += channel.write(srcs);
+            }
+            timer.end();
+            OSTRACE("WRITEV %s %5d %7d %3d %s\n", this.filePath, Long.valueOf(written), Long.valueOf(offset),
+                    Integer.valueOf(buffers.length), timer.format());
+        } catch (IOException e) {
+            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_WRITE, e);
+        }
+    }
+
     @Override
     public synchronized void truncate(long size) throws SqlJetException {
         assert size >= 0;
         checkIfClosed();
         try {
+            /*
+             * Mapped regions beyond the end of file can't be accessed, so drop
+             * them. They are mapped again when needed.
+             */
+            if (mapping != null && mapping.size > size) {
+                releaseMapping();
+            }
             file.setLength(size);
         } catch (IOException e) {
             throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_TRUNCATE, e);
@@ -192,7 +307,7 @@ public class SqlJetNoLockFile implements ISqlJetFile {
     }
 
     @Override
-    public synchronized long fileSize() throws SqlJetException {
+    public long fileSize() throws SqlJetException {
         checkIfClosed();
         try {
             return channel.size();
@@ -231,4 +346,88 @@ public class SqlJetNoLockFile implements ISqlJetFile {
         return false;
     }
 
+    @Override
+    public void setMmapSize(long mmapSize) {
+        assert mmapSize >= 0;
+        this.mmapSize = mmapSize;
+        final Mapping m = mapping;
+        if (m != null && m.size > mmapSize) {
+            releaseMapping();
+        }
+    }
+
+    /**
+     * Drops memory-mapped regions of file. They can't be unmapped explicitly
+     * since reads which are in progress could still use them, so they are
+     * unmapped by garbage collector.
+     */
+    protected void releaseMapping() {
+        mapping = null;
+    }
+
+    @Override
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    /**
+     * Serve read from memory-mapped regions of file if it lies within
+     * mmapSize bytes. File is mapped again if it has grown enough since the
+     * last mapping.
+     *
+     * @return false if read should be done by regular I/O.
+     * @throws IOException
+     */
+    private boolean readMapped(@Nonnull ISqlJetMemoryPointer buffer, int amount, long offset) throws IOException {
+        final long end = offset + amount;
+        if (end > mmapSize) {
+            return false;
+        }
+        Mapping m = mapping;
+        if (m == null || end > m.size) {
+            m = remap(end);
+            if (end > m.size) {
+                return false;
+            }
+        }
+        final int chunk = (int) (offset / MMAP_CHUNK_SIZE);
+        final int position = (int) (offset % MMAP_CHUNK_SIZE);
+        if (position + amount > MMAP_CHUNK_SIZE) {
+            return false;
+        }
+        buffer.getBuffer().readFromBuffer(buffer.getPointer(), m.chunks[chunk], position, amount);
+        return true;
+    }
+
+    private synchronized @Nonnull Mapping remap(long required) throws IOException {
+        final Mapping m = mapping;
+        if (m != null && m.size >= required) {
+            return m;
+        }
+        final long fileSize = channel.size();
+        if (m != null && fileSize < Long.min(mmapSize, m.size + Long.max(m.size, MMAP_MIN_GROWTH))) {
+            return m;
+        }
+        final long size = Long.min(fileSize, mmapSize);
+        if (m != null && size <= m.size) {
+            return m;
+        }
+        final int count = (int) ((size + MMAP_CHUNK_SIZE - 1) / MMAP_CHUNK_SIZE);
+        final MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final long start = i * MMAP_CHUNK_SIZE;
+            final long length = Long.min(MMAP_CHUNK_SIZE, size - start);
+            if (m != null && i < m.chunks.length && m.chunks[i].capacity() == length) {
+                /* Complete regions are reused. */
+                chunks[i] = m.chunks[i];
+            } else {
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        }
+        OSTRACE("MMAP    %s %d\n", this.filePath, Long.valueOf(size));
+        final Mapping result = new Mapping(chunks, size);
+        mapping = result;
+        return result;
+    }
+
 }
@@ -19,7 +19,10 @@ package org.tmatesoft.sqljet.core.internal.fs.util;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import javax.annotation.Nonnull;
 
@@ -66,6 +69,52 @@ public class SqlJetFileUtil {
         return false;
     }
 
+    /**
+     * Reads remaining bytes of buffer from channel at given position without
+     * moving channel's position, so concurrent reads don't need locking.
+     * 
+     * @param channel
+     * @param buffer
+     * @param position
+     * @return number of bytes read or -1 if position is at end of file.
+     * @throws IOException
+     *             {@link java.nio.channels.ClosedByInterruptException} if
+     *             thread was interrupted, then the channel is closed.
+     */
+    public static int readFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position)
+            throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            final int r = channel.read(buffer, position + read);
+            if (r < 0) {
+                return read > 0 ? read : r;
+            }
+            read += r;
+        }
+        return read;
+    }
+
+    /**
+     * Writes remaining bytes of buffer to channel at given position without
+     * moving channel's position.
+     * 
+     * @param channel
+     * @param buffer
+     * @param position
+     * @return number of bytes written.
+     * @throws IOException
+     *             {@link java.nio.channels.ClosedByInterruptException} if
+     *             thread was interrupted, then the channel is closed.
+     */
+    public static int writeFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position)
+            throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
     public static @Nonnull RandomAccessFile openFile(@Nonnull File file, String mode) throws FileNotFoundException {
         if (file.getParentFile() != null && !file.getParentFile().exists()) {
             file.getParentFile().mkdirs();
@@ -0,0 +1,211 @@
+/**
+ * SqlJetBufferPool.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.memory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.internal.ISqlJetLimits;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
+import org.tmatesoft.sqljet.core.internal.SqlJetMemoryBufferType;
+
+/**
+ * Pool of free page-sized buffers. There is a separate pool for every page
+ * size (power of two from 512 to 32768 bytes) and every buffer type. Buffers
+ * of other sizes aren't pooled. Pool takes back only buffers which it has
+ * handed out and which aren't returned yet.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetBufferPool {
+
+    private static final int MIN_SIZE_SHIFT = Integer.numberOfTrailingZeros(ISqlJetLimits.SQLJET_MIN_PAGE_SIZE);
+    private static final int MAX_SIZE_SHIFT = Integer.numberOfTrailingZeros(ISqlJetLimits.SQLJET_MAX_PAGE_SIZE);
+
+    /** Maximum number of free buffers kept for every size and type */
+    private final int capacity;
+
+    private static final int SIZES = MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1;
+
+    /** Free buffers, by type and then by size */
+    private final List<ArrayDeque<ISqlJetMemoryBuffer>> pools;
+
+    /**
+     * Buffers which are handed out and aren't returned yet. Buffers which are
+     * never returned are only weakly referenced, so they are still collected
+     * as garbage.
+     */
+    private final Map<ISqlJetMemoryBuffer, Boolean> owned = new WeakHashMap<>();
+
+    private long hits;
+    private long misses;
+    private long releases;
+    private long outstanding;
+    private int pooled;
+
+    public SqlJetBufferPool(int capacity) {
+        this.capacity = capacity;
+        final int count = SqlJetMemoryBufferType.values().length * SIZES;
+        this.pools = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pools.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * @return true if buffers of this size are pooled.
+     */
+    public static boolean isPooledSize(int size) {
+        return size >= ISqlJetLimits.SQLJET_MIN_PAGE_SIZE && size <= ISqlJetLimits.SQLJET_MAX_PAGE_SIZE
+                && (size & (size - 1)) == 0;
+    }
+
+    private ArrayDeque<ISqlJetMemoryBuffer> getPool(@Nonnull SqlJetMemoryBufferType bufferType, int size) {
+        return pools.get(bufferType.ordinal() * SIZES + Integer.numberOfTrailingZeros(size) - MIN_SIZE_SHIFT);
+    }
+
+    private static SqlJetMemoryBufferType typeOf(ISqlJetMemoryBuffer buffer) {
+        if (buffer instanceof SqlJetDirectByteBuffer) {
+            return SqlJetMemoryBufferType.DIRECT;
+        } else if (buffer instanceof SqlJetByteBuffer) {
+            return SqlJetMemoryBufferType.BUFFER;
+        }
+        return SqlJetMemoryBufferType.ARRAY;
+    }
+
+    /**
+     * Takes zeroed buffer from the pool.
+     *
+     * @return free buffer or null if pool hasn't free buffers of this size and
+     *         type, then new buffer should be allocated and passed to
+     *         {@link #register(ISqlJetMemoryBuffer)}.
+     */
+    synchronized ISqlJetMemoryBuffer acquire(int size, @Nonnull SqlJetMemoryBufferType bufferType) {
+        final ISqlJetMemoryBuffer buffer = getPool(bufferType, size).pollLast();
+        if (buffer == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        pooled--;
+        buffer.fill(0, size, (byte) 0);
+        register(buffer);
+        return buffer;
+    }
+
+    /**
+     * Hands out new buffer which was allocated because pool had no free one.
+     */
+    synchronized void register(@Nonnull ISqlJetMemoryBuffer buffer) {
+        owned.put(buffer, Boolean.TRUE);
+        outstanding++;
+    }
+
+    /**
+     * Returns buffer handed out by the pool. Other buffers are ignored.
+     */
+    synchronized void release(@Nonnull ISqlJetMemoryBuffer buffer) {
+        if (owned.remove(buffer) == null) {
+            return;
+        }
+        releases++;
+        outstanding--;
+        final ArrayDeque<ISqlJetMemoryBuffer> pool = getPool(typeOf(buffer), buffer.getSize());
+        if (pool.size() < capacity) {
+            pool.addLast(buffer);
+            pooled++;
+        }
+    }
+
+    /**
+     * Stops tracking of buffer handed out by the pool which won't be returned,
+     * because it could be still read. It's left to garbage collector.
+     */
+    synchronized void forget(@Nonnull ISqlJetMemoryBuffer buffer) {
+        if (owned.remove(buffer) != null) {
+            outstanding--;
+        }
+    }
+
+    /**
+     * @return maximum number of free buffers kept for every size and type.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of allocations served by free buffers from the pool.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of allocations which created new buffers.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of buffers returned to the pool.
+     */
+    public synchronized long getReleases() {
+        return releases;
+    }
+
+    /**
+     * @return number of buffers which are allocated from the pool and aren't
+     *         returned yet.
+     */
+    public synchronized long getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * @return number of free buffers kept by the pool.
+     */
+    public synchronized int getPooled() {
+        return pooled;
+    }
+
+    /**
+     * Drops all free buffers.
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<ISqlJetMemoryBuffer> pool : pools) {
+            pool.clear();
+        }
+        pooled = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits=%d misses=%d releases=%d outstanding=%d pooled=%d", Long.valueOf(hits),
+                Long.valueOf(misses), Long.valueOf(releases), Long.valueOf(outstanding), Integer.valueOf(pooled));
+    }
+
+}
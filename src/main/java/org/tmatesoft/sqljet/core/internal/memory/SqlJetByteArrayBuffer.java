@@ -18,7 +18,7 @@
 package org.tmatesoft.sqljet.core.internal.memory;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
@@ -27,6 +27,7 @@ import javax.annotation.Nonnull;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryManager;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
 
 /**
  * @author TMate Software Ltd.
@@ -116,28 +117,45 @@ public class SqlJetByteArrayBuffer extends SqlJetAbstractMemoryBuffer implements
     }
 
     @Override
-    public int readFromFile(final int pointer, @Nonnull RandomAccessFile file, @Nonnull FileChannel channel,
-            final long position, final int count) throws IOException {
+    public int readFromFile(final int pointer, @Nonnull FileChannel channel, final long position, final int count)
+            throws IOException {
         assert pointer >= 0;
         assert pointer < buffer.length;
         assert position >= 0;
         assert count > 0;
 
-        file.seek(position);
-        return file.read(buffer, pointer, count);
+        return SqlJetFileUtil.readFully(channel, ByteBuffer.wrap(buffer, pointer, count), position);
     }
 
     @Override
-    public int writeToFile(final int pointer, @Nonnull RandomAccessFile file, @Nonnull FileChannel channel,
-            final long position, final int count) throws IOException {
+    public int writeToFile(final int pointer, @Nonnull FileChannel channel, final long position, final int count)
+            throws IOException {
         assert pointer >= 0;
         assert pointer < buffer.length;
         assert position >= 0;
         assert count > 0;
 
-        file.seek(position);
-        file.write(buffer, pointer, count);
-        return count;
+        return SqlJetFileUtil.writeFully(channel, ByteBuffer.wrap(buffer, pointer, count), position);
+    }
+
+    @Override
+    public @Nonnull ByteBuffer asByteBuffer(int pointer, int count) {
+        assert pointer >= 0;
+        assert pointer + count <= buffer.length;
+
+        final ByteBuffer b = ByteBuffer.wrap(buffer, pointer, count).slice();
+        assert b != null;
+        return b;
+    }
+
+    @Override
+    public void readFromBuffer(int pointer, @Nonnull ByteBuffer src, int position, int count) {
+        assert pointer >= 0;
+        assert pointer + count <= buffer.length;
+
+        final ByteBuffer s = src.duplicate();
+        s.position(position);
+        s.get(buffer, pointer, count);
     }
 
     @Override
@@ -18,7 +18,6 @@
 package org.tmatesoft.sqljet.core.internal.memory;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
@@ -27,6 +26,7 @@ import javax.annotation.Nonnull;
 
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryBuffer;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
 
 /**
  * @author TMate Software Ltd.
@@ -97,35 +97,52 @@ public class SqlJetByteBuffer extends SqlJetAbstractMemoryBuffer implements ISql
     }
 
     @Override
-    public int readFromFile(int pointer, @Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position,
-            int count) throws IOException {
+    public int readFromFile(int pointer, @Nonnull FileChannel channel, long position, int count) throws IOException {
         assert pointer >= 0;
         assert pointer < buffer.capacity();
         assert position >= 0;
         assert count > 0;
 
-        buffer.limit(pointer + count).position(pointer);
-        try {
-            return channel.read(buffer, position);
-        } finally {
-            buffer.clear();
-        }
+        final ByteBuffer b = buffer.duplicate();
+        b.limit(pointer + count).position(pointer);
+        return SqlJetFileUtil.readFully(channel, b, position);
     }
 
     @Override
-    public int writeToFile(int pointer, @Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position,
-            int count) throws IOException {
+    public int writeToFile(int pointer, @Nonnull FileChannel channel, long position, int count) throws IOException {
         assert pointer >= 0;
         assert pointer < buffer.capacity();
         assert position >= 0;
         assert count > 0;
 
-        buffer.limit(pointer + count).position(pointer);
-        try {
-            return channel.write(buffer, position);
-        } finally {
-            buffer.clear();
-        }
+        final ByteBuffer b = buffer.duplicate();
+        b.limit(pointer + count).position(pointer);
+        return SqlJetFileUtil.writeFully(channel, b, position);
+    }
+
+    @Override
+    public @Nonnull ByteBuffer asByteBuffer(int pointer, int count) {
+        assert pointer >= 0;
+        assert pointer + count <= buffer.capacity();
+
+        final ByteBuffer b = buffer.duplicate();
+        b.limit(pointer + count).position(pointer);
+        final ByteBuffer slice = b.slice();
+        assert slice != null;
+        return slice;
+    }
+
+    @Override
+    public void readFromBuffer(int pointer, @Nonnull ByteBuffer src, int position, int count) {
+        assert pointer >= 0;
+        assert pointer + count <= buffer.capacity();
+
+        final ByteBuffer s = src.duplicate();
+        s.position(position);
+        s.limit(position + count);
+        final ByteBuffer d = buffer.duplicate();
+        d.position(pointer);
+        d.put(s);
     }
 
     @Override
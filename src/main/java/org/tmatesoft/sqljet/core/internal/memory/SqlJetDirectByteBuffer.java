@@ -18,7 +18,6 @@
 package org.tmatesoft.sqljet.core.internal.memory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 /**
  * @author TMate Software Ltd.
@@ -40,10 +39,19 @@ public class SqlJetDirectByteBuffer extends SqlJetByteBuffer {
 
     @Override
     public void fill(int from, int count, byte value) {
-        final byte[] b = new byte[count];
-        Arrays.fill(b, value);
-        putBytes(from, b, 0, count);
-
+        final ByteBuffer b = buffer.duplicate();
+        b.position(from);
+        final int end = from + count;
+        long v = value & 0xFFL;
+        v |= v << 8;
+        v |= v << 16;
+        v |= v << 32;
+        while (b.position() + 8 <= end) {
+            b.putLong(v);
+        }
+        while (b.position() < end) {
+            b.put(value);
+        }
     }
 
     @Override
@@ -35,6 +35,13 @@ public class SqlJetMemoryManager implements ISqlJetMemoryManager {
     private final SqlJetMemoryBufferType defaultBufferType = SqlJetUtility
             .getEnumSysProp("SqlJetMemoryManager.defaultBufferType", SqlJetMemoryBufferType.ARRAY);
 
+    /**
+     * Number of free buffers of every page size and type which are kept for
+     * reuse. Zero disables pooling.
+     */
+    private final @Nonnull SqlJetBufferPool bufferPool = new SqlJetBufferPool(
+            SqlJetUtility.getIntSysProp("SQLJET.BUFFER_POOL_SIZE", 256));
+
     @Override
     public @Nonnull ISqlJetMemoryPointer allocatePtr(int size) {
         return allocate(size).getPointer(0);
@@ -74,6 +81,42 @@ public class SqlJetMemoryManager implements ISqlJetMemoryManager {
         return buffer;
     }
 
+    @Override
+    public @Nonnull ISqlJetMemoryPointer allocatePagePtr(int size, SqlJetMemoryBufferType bufferType) {
+        if (bufferPool.getCapacity() <= 0 || !SqlJetBufferPool.isPooledSize(size)) {
+            return allocatePtr(size, bufferType);
+        }
+        ISqlJetMemoryBuffer buffer = bufferPool.acquire(size, bufferType);
+        if (buffer == null) {
+            buffer = allocate(size, bufferType);
+            bufferPool.register(buffer);
+        }
+        return buffer.getPointer(0);
+    }
+
+    @Override
+    public void free(@Nonnull ISqlJetMemoryPointer pointer) {
+        final ISqlJetMemoryBuffer buffer = pointer.getBuffer();
+        if (bufferPool.getCapacity() > 0 && pointer.getPointer() == 0 && buffer != null
+                && SqlJetBufferPool.isPooledSize(buffer.getSize())) {
+            bufferPool.release(buffer);
+        }
+    }
+
+    @Override
+    public void forget(@Nonnull ISqlJetMemoryPointer pointer) {
+        final ISqlJetMemoryBuffer buffer = pointer.getBuffer();
+        if (bufferPool.getCapacity() > 0 && pointer.getPointer() == 0 && buffer != null
+                && SqlJetBufferPool.isPooledSize(buffer.getSize())) {
+            bufferPool.forget(buffer);
+        }
+    }
+
+    @Override
+    public @Nonnull SqlJetBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     @Override
     public @Nonnull ISqlJetMemoryBuffer allocate(@Nonnull byte[] bytes, SqlJetMemoryBufferType bufferType) {
         final ISqlJetMemoryBuffer buffer;
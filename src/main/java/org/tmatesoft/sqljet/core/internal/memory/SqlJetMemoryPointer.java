@@ -18,7 +18,6 @@
 package org.tmatesoft.sqljet.core.internal.memory;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 
 import javax.annotation.Nonnull;
@@ -125,23 +124,21 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
     }
 
     @Override
-    final public int readFromFile(@Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position,
-            int count) throws IOException {
+    final public int readFromFile(@Nonnull FileChannel channel, long position, int count) throws IOException {
         assert position >= 0;
         assert count > 0;
         assert pointer + count <= buffer.getSize();
 
-        return buffer.readFromFile(pointer, file, channel, position, count);
+        return buffer.readFromFile(pointer, channel, position, count);
     }
 
     @Override
-    final public int writeToFile(@Nonnull RandomAccessFile file, @Nonnull FileChannel channel, long position, int count)
-            throws IOException {
+    final public int writeToFile(@Nonnull FileChannel channel, long position, int count) throws IOException {
         assert position >= 0;
         assert count > 0;
         assert pointer + count <= buffer.getSize();
 
-        return buffer.writeToFile(pointer, file, channel, position, count);
+        return buffer.writeToFile(pointer, channel, position, count);
     }
 
     @Override
@@ -263,17 +260,31 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
 
     @Override
     public SqlJetVarintResult getVarint(int offset) {
+        return new SqlJetVarintResult(getVarintLength(offset), getVarintValue(offset));
+    }
+
+    @Override
+    public long getVarintValue(int offset) {
         long l = 0;
-        for (byte i = 0; i < 8; i++) {
+        for (int i = 0; i < 8; i++) {
             final int b = getByteUnsigned(i + offset);
             l = l << 7 | b & 0x7f;
             if ((b & 0x80) == 0) {
-                return new SqlJetVarintResult(++i, l);
+                return l;
             }
         }
         final int b = getByteUnsigned(8 + offset);
-        l = l << 8 | b;
-        return new SqlJetVarintResult(9, l);
+        return l << 8 | b;
+    }
+
+    @Override
+    public int getVarintLength(int offset) {
+        for (int i = 0; i < 8; i++) {
+            if ((getByteUnsigned(i + offset) & 0x80) == 0) {
+                return i + 1;
+            }
+        }
+        return 9;
     }
 
     /**
@@ -342,15 +353,22 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
          * that case we are not in any hurry. Use the (relatively slow)
          * general-purpose sqlite3GetVarint() routine to extract the value.
          */
-        return getVarint().to32().getOffset();
+        return getVarintLength(0);
     }
 
     @Override
     public SqlJetVarintResult32 getVarint32(int offset) {
+        final long packed = getVarint32Packed(offset);
+        return new SqlJetVarintResult32(SqlJetVarintResult32.getPackedOffset(packed),
+                SqlJetVarintResult32.getPackedValue(packed));
+    }
+
+    @Override
+    public long getVarint32Packed(int offset) {
         int i = offset;
         int x = getByteUnsigned(i);
         if (x < 0x80) {
-            return new SqlJetVarintResult32(1, x);
+            return SqlJetVarintResult32.pack(1, x);
         }
 
         int a, b;
@@ -358,7 +376,7 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
         a = getByteUnsigned(i);
         /* a: p0 (unmasked) */
         if ((a & 0x80) == 0) {
-            return new SqlJetVarintResult32(1, a);
+            return SqlJetVarintResult32.pack(1, a);
         }
 
         i++;
@@ -367,7 +385,7 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
         if ((b & 0x80) == 0) {
             a &= 0x7f;
             a = a << 7;
-            return new SqlJetVarintResult32(2, a | b);
+            return SqlJetVarintResult32.pack(2, a | b);
         }
 
         i++;
@@ -378,7 +396,7 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
             a &= 0x7f << 14 | 0x7f;
             b &= 0x7f;
             b = b << 7;
-            return new SqlJetVarintResult32(3, a | b);
+            return SqlJetVarintResult32.pack(3, a | b);
         }
 
         i++;
@@ -389,7 +407,7 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
             b &= 0x7f << 14 | 0x7f;
             a &= 0x7f << 14 | 0x7f;
             a = a << 7;
-            return new SqlJetVarintResult32(4, a | b);
+            return SqlJetVarintResult32.pack(4, a | b);
         }
 
         i++;
@@ -400,7 +418,7 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
             a &= 0x7f << 28 | 0x7f << 14 | 0x7f;
             b &= 0x7f << 28 | 0x7f << 14 | 0x7f;
             b = b << 7;
-            return new SqlJetVarintResult32(5, a | b);
+            return SqlJetVarintResult32.pack(5, a | b);
         }
 
         /*
@@ -408,7 +426,7 @@ public final class SqlJetMemoryPointer implements ISqlJetMemoryPointer {
          * that case we are not in any hurry. Use the (relatively slow)
          * general-purpose sqlite3GetVarint() routine to extract the value.
          */
-        return getVarint(offset).to32();
+        return SqlJetVarintResult32.pack(getVarintLength(offset), (int) getVarintValue(offset));
     }
 
     @Override
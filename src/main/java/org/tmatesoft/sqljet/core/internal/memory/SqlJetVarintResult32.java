@@ -16,4 +16,21 @@ public class SqlJetVarintResult32 {
     public int getValue() {
         return value;
     }
+
+    /**
+     * Packs varint into long which is returned by
+     * {@link org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer#getVarint32Packed(int)}:
+     * number of bytes in high half and value in low half.
+     */
+    public static long pack(int offset, int value) {
+        return (long) offset << 32 | value & 0xffffffffL;
+    }
+
+    public static int getPackedOffset(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int getPackedValue(long packed) {
+        return (int) packed;
+    }
 }
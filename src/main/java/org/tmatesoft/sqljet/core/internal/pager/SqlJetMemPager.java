@@ -37,6 +37,7 @@ import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPageCache;
 import org.tmatesoft.sqljet.core.internal.SqlJetAbstractPager;
 import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
@@ -183,6 +184,16 @@ public class SqlJetMemPager extends SqlJetAbstractPager implements ISqlJetLimits
         return SqlJetPagerJournalMode.MEMORY;
     }
 
+    @Override
+    public void setJournalMode(@Nonnull SqlJetPagerJournalMode journalMode) {
+        // journal mode of in-memory database can't be changed.
+    }
+
+    @Override
+    public void checkpoint() {
+        // there is no write-ahead log.
+    }
+
     @Override
     public void setBusyhandler(final ISqlJetBusyHandler busyHandler) {
     }
@@ -237,6 +248,16 @@ public class SqlJetMemPager extends SqlJetAbstractPager implements ISqlJetLimits
         pageCache.setCacheSize(cacheSize);
     }
 
+    @Override
+    public void setCachePolicy(@Nonnull SqlJetPageCachePolicy policy) {
+        pageCache.setPolicy(policy);
+    }
+
+    @Override
+    public @Nonnull SqlJetPageCachePolicy getCachePolicy() {
+        return pageCache.getPolicy();
+    }
+
     @Override
     public int getCacheSize() {
         return pageCache.getCachesize();
@@ -60,15 +60,43 @@ public class SqlJetPage implements ISqlJetPage {
     /** Cache that owns this page */
     private final SqlJetPageCache pCache;
 
+    /** Link in the list of dirty pages */
+    final SqlJetPageList.Node dirtyNode = new SqlJetPageList.Node(this);
+
+    /** Link in the list of pages which could be recycled */
+    final SqlJetPageList.Node lruNode = new SqlJetPageList.Node(this);
+
+    /** True if page was used again while it was cached */
+    boolean hot;
+
+    /** True if page was read ahead and wasn't used yet */
+    boolean prefetched;
+
     /**
      * 
      */
     protected SqlJetPage(int szPage, int pgno, SqlJetPageCache pCache) {
-        this.pData = SqlJetUtility.memoryManager.allocatePtr(szPage, BUFFER_TYPE);
+        this.pData = SqlJetUtility.memoryManager.allocatePagePtr(szPage, BUFFER_TYPE);
         this.pgno = pgno;
         this.pCache = pCache;
     }
 
+    /**
+     * Returns content buffer to the pool when page is evicted from cache. Page
+     * must not be used after that.
+     */
+    void freeData() {
+        SqlJetUtility.memoryManager.free(pData);
+    }
+
+    /**
+     * Stops accounting of content buffer by the pool when page is dropped
+     * while it could be still referenced, buffer is left to garbage collector.
+     */
+    void forgetData() {
+        SqlJetUtility.memoryManager.forget(pData);
+    }
+
     @Override
     public void dontRollback() {
         assert pPager.isReservedState();
@@ -454,7 +482,7 @@ public class SqlJetPage implements ISqlJetPage {
      */
     @Override
     public void removeFromDirtyList() {
-        pCache.dirtyList.remove(this);
+        pCache.dirtyList.remove(dirtyNode);
     }
 
     @Override
@@ -480,7 +508,7 @@ public class SqlJetPage implements ISqlJetPage {
      * Add this page to the head of the dirty list.
      */
     private void addToDirtyList() {
-        pCache.dirtyList.add(0, this);
+        pCache.dirtyList.addFirst(dirtyNode);
     }
 
     /**
@@ -19,12 +19,8 @@ package org.tmatesoft.sqljet.core.internal.pager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -32,6 +28,7 @@ import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPageCache;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPageCallback;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 
@@ -50,6 +47,12 @@ public class SqlJetPageCache implements ISqlJetPageCache {
     private static final int PAGE_CACHE_SIZE_DEFAULT = 2000;
     private static final int PAGE_CACHE_SIZE = SqlJetUtility.getIntSysProp(SQLJET_PAGE_CACHE_SIZE,
             PAGE_CACHE_SIZE_DEFAULT);
+    /**
+     * System property name for default replacement policy of clean pages.
+     */
+    private static final @Nonnull String SQLJET_PAGE_CACHE_POLICY = "SQLJET.PAGE_CACHE_POLICY";
+    private static final @Nonnull SqlJetPageCachePolicy PAGE_CACHE_POLICY = SqlJetUtility
+            .getEnumSysProp(SQLJET_PAGE_CACHE_POLICY, SqlJetPageCachePolicy.LRU);
     /** Configured minimum cache size */
     private static final int PAGE_CACHE_SIZE_MINIMUM = 10;
 
@@ -57,8 +60,8 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         return newCacheSize < PAGE_CACHE_SIZE_MINIMUM ? PAGE_CACHE_SIZE_DEFAULT : newCacheSize;
     }
 
-    /** List of dirty pages in LRU order */
-    protected final List<ISqlJetPage> dirtyList = new LinkedList<>();
+    /** List of dirty pages, most recently used first */
+    final SqlJetPageList dirtyList = new SqlJetPageList();
     /** Number of pinned pages */
     protected int nRef;
     /** Configured cache size */
@@ -108,6 +111,28 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         this.szPage = pageSize;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetPageCache#getPolicy()
+     */
+    @Override
+    public @Nonnull SqlJetPageCachePolicy getPolicy() {
+        return pCache.getPolicy();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.tmatesoft.sqljet.core.ISqlJetPageCache#setPolicy(org.tmatesoft.sqljet
+     * .core.internal.SqlJetPageCachePolicy)
+     */
+    @Override
+    public void setPolicy(@Nonnull SqlJetPageCachePolicy policy) {
+        pCache.setPolicy(policy);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -121,8 +146,8 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         assert pgno > 0;
 
         /*
-         * If the pluggable cache (sqlite3_pcache) has not been allocated,
-         * allocate it now.
+         * Clean unreferenced pages are recycled by the cache itself, so null is
+         * returned only if all the pages are dirty or referenced.
          */
         pPage = pCache.fetch(pgno, createFlag);
 
@@ -133,20 +158,23 @@ public class SqlJetPageCache implements ISqlJetPageCache {
              * Find a dirty page to write-out and recycle. First try to find a
              * page that does not require a journal-sync (one with
              * PGHDR_NEED_SYNC cleared), but if that is not possible settle for
-             * any other unreferenced dirty page.
+             * any other unreferenced dirty page. Search starts from the least
+             * recently used end of the list, where unreferenced pages gather.
              */
-            for (ISqlJetPage p : dirtyList) {
+            for (SqlJetPageList.Node n = dirtyList.getLast(); n != null; n = n.getPrev()) {
+                final ISqlJetPage p = n.page;
                 if (p.getRefCount() == 0) {
-                    pPg = p;
                     if (!p.getFlags().contains(SqlJetPageFlags.NEED_SYNC)) {
+                        pPg = p;
                         break;
+                    } else if (pPg == null) {
+                        pPg = p;
                     }
                 }
             }
             if (pPg != null) {
                 xStress.pageCallback(pPg);
             }
-            pCache.cleanUnpinned();
 
             pPage = pCache.fetch(pgno, true);
         }
@@ -160,6 +188,32 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         return pPage;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetPageCache#contains(int)
+     */
+    @Override
+    public boolean contains(int pgno) {
+        return pCache.contains(pgno);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.tmatesoft.sqljet.core.ISqlJetPageCache#prefetch(int)
+     */
+    @Override
+    public ISqlJetPage prefetch(int pgno) {
+        assert pgno > 0;
+        final SqlJetPage pPage = pCache.prefetch(pgno);
+        if (pPage != null) {
+            nRef++;
+            pPage.ref();
+        }
+        return pPage;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -174,7 +228,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
             p.removeFromDirtyList();
         }
         nRef--;
-        pCache.unpin(p, true);
+        pCache.unpin((SqlJetPage) p, true);
     }
 
     /*
@@ -185,7 +239,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
     @Override
     public void cleanAll() {
         while (!dirtyList.isEmpty()) {
-            dirtyList.iterator().next().makeClean();
+            dirtyList.getFirst().page.makeClean();
         }
     }
 
@@ -196,8 +250,8 @@ public class SqlJetPageCache implements ISqlJetPageCache {
      */
     @Override
     public void clearSyncFlags() {
-        for (ISqlJetPage p : dirtyList) {
-            p.getFlags().remove(SqlJetPageFlags.NEED_SYNC);
+        for (SqlJetPageList.Node n = dirtyList.getFirst(); n != null; n = n.getNext()) {
+            n.page.getFlags().remove(SqlJetPageFlags.NEED_SYNC);
         }
     }
 
@@ -208,7 +262,7 @@ public class SqlJetPageCache implements ISqlJetPageCache {
      */
     @Override
     public void truncate(int pgno) {
-        for (ISqlJetPage p : new ArrayList<>(dirtyList)) {
+        for (ISqlJetPage p : dirtyPages()) {
             if (p.getPageNumber() > pgno) {
                 assert p.getFlags().contains(SqlJetPageFlags.DIRTY);
                 p.makeClean();
@@ -244,11 +298,19 @@ public class SqlJetPageCache implements ISqlJetPageCache {
      */
     @Override
     public List<ISqlJetPage> getDirtyList() {
-        List<ISqlJetPage> result = new ArrayList<>(dirtyList);
+        List<ISqlJetPage> result = dirtyPages();
         result.sort((a, b) -> Integer.compare(a.getPageNumber(), b.getPageNumber()));
         return result;
     }
 
+    private List<ISqlJetPage> dirtyPages() {
+        final List<ISqlJetPage> result = new ArrayList<>(dirtyList.size());
+        for (SqlJetPageList.Node n = dirtyList.getFirst(); n != null; n = n.getNext()) {
+            result.add(n.page);
+        }
+        return result;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -294,51 +356,69 @@ public class SqlJetPageCache implements ISqlJetPageCache {
         /** Hash table for fast lookup by key */
         private final Map<Integer, SqlJetPage> apHash = new HashMap<>();
 
-        private final Set<Integer> unpinned = new HashSet<>();
+        /**
+         * Clean unreferenced pages which could be recycled, least recently used
+         * first. With {@link SqlJetPageCachePolicy#TWO_QUEUE} policy it holds
+         * pages which were used only once.
+         */
+        private final SqlJetPageList recycle = new SqlJetPageList();
+
+        /**
+         * Clean unreferenced pages which were used again while cached, least
+         * recently used first. Used only by
+         * {@link SqlJetPageCachePolicy#TWO_QUEUE} policy.
+         */
+        private final SqlJetPageList recycleHot = new SqlJetPageList();
+
+        private @Nonnull SqlJetPageCachePolicy policy = PAGE_CACHE_POLICY;
 
         public synchronized int getPageCount() {
             return apHash.size();
         }
 
+        public synchronized @Nonnull SqlJetPageCachePolicy getPolicy() {
+            return policy;
+        }
+
+        public synchronized void setPolicy(@Nonnull SqlJetPageCachePolicy policy) {
+            if (this.policy == policy) {
+                return;
+            }
+            final List<SqlJetPage> pages = new ArrayList<>(recycle.size() + recycleHot.size());
+            for (SqlJetPageList.Node n = recycleHot.getFirst(); n != null; n = n.getNext()) {
+                pages.add(n.page);
+            }
+            for (SqlJetPageList.Node n = recycle.getFirst(); n != null; n = n.getNext()) {
+                pages.add(n.page);
+            }
+            recycle.clear();
+            recycleHot.clear();
+            this.policy = policy;
+            for (SqlJetPage page : pages) {
+                page.hot = false;
+                recycle.addLast(page.lruNode);
+            }
+        }
+
         /**
          * Fetch a page by key value.
          * 
          * Whether or not a new page may be allocated by this function depends
          * on the value of the createFlag argument.
          * 
-         * There are three different approaches to obtaining space for a page,
-         * depending on the value of parameter createFlag (which may be 0, 1 or
-         * 2).
-         * 
          * 1. Regardless of the value of createFlag, the cache is searched for a
-         * copy of the requested page. If one is found, it is returned.
+         * copy of the requested page. If one is found, it is removed from the
+         * recycle lists and returned.
          * 
          * 2. If createFlag==0 and the page is not already in the cache, NULL is
          * returned.
          * 
-         * 3. If createFlag is 1, the cache is marked as purgeable and the page
-         * is not already in the cache, and if either of the following are true,
-         * return NULL:
-         * 
-         * (a) the number of pages pinned by the cache is greater than
-         * PCache1.nMax, or (b) the number of pages pinned by the cache is
-         * greater than the sum of nMax for all purgeable caches, less the sum
-         * of nMin for all other purgeable caches.
-         * 
-         * 4. If none of the first three conditions apply and the cache is
-         * marked as purgeable, and if one of the following is true:
-         * 
-         * (a) The number of pages allocated for the cache is already
-         * PCache1.nMax, or
+         * 3. If the cache is marked as purgeable and the number of pages is
+         * already PCache1.nMax, then attempt to recycle a clean unreferenced
+         * page chosen by replacement policy. If there are no such pages, NULL
+         * is returned.
          * 
-         * (b) The number of pages allocated for all purgeable caches is already
-         * equal to or greater than the sum of nMax for all purgeable caches,
-         * 
-         * then attempt to recycle a page from the LRU list. If it is the right
-         * size, return the recycled buffer. Otherwise, free the buffer and
-         * proceed to step 5.
-         * 
-         * 5. Otherwise, allocate and return a new page buffer.
+         * 4. Otherwise, allocate and return a new page buffer.
          * 
          * @param pager
          */
@@ -346,13 +426,23 @@ public class SqlJetPageCache implements ISqlJetPageCache {
             Integer keyObj = Integer.valueOf(key);
             SqlJetPage pPage = apHash.get(keyObj);
 
-            if (pPage != null || !createFlag) {
+            if (pPage != null) {
+                pin(pPage);
                 return pPage;
             }
+            if (!createFlag) {
+                return null;
+            }
 
             /* Step 3 of header comment. */
-            if (bPurgeable && getPageCount() == nMax) {
-                return null;
+            if (bPurgeable) {
+                while (getPageCount() >= nMax) {
+                    final SqlJetPageList.Node victim = selectVictim();
+                    if (victim == null) {
+                        return null;
+                    }
+                    discard(victim.page, true);
+                }
             }
 
             /*
@@ -365,6 +455,80 @@ public class SqlJetPageCache implements ISqlJetPageCache {
             return pPage;
         }
 
+        public synchronized boolean contains(final int key) {
+            return apHash.containsKey(Integer.valueOf(key));
+        }
+
+        /**
+         * Create a page which is read ahead of its use. It's like
+         * {@link #fetch(int, boolean)} with createFlag set, but null is
+         * returned if page is cached already.
+         */
+        public synchronized SqlJetPage prefetch(final int key) {
+            if (contains(key)) {
+                return null;
+            }
+            final SqlJetPage pPage = fetch(key, true);
+            if (pPage != null) {
+                pPage.prefetched = true;
+            }
+            return pPage;
+        }
+
+        private void pin(SqlJetPage page) {
+            final SqlJetPageList.Node node = page.lruNode;
+            if (recycle.contains(node)) {
+                recycle.remove(node);
+                if (page.prefetched) {
+                    /* First use of page read ahead. */
+                    page.prefetched = false;
+                } else {
+                    /* Page is used again while cached. */
+                    page.hot = policy == SqlJetPageCachePolicy.TWO_QUEUE;
+                }
+            } else if (recycleHot.contains(node)) {
+                recycleHot.remove(node);
+            }
+        }
+
+        private SqlJetPageList.Node selectVictim() {
+            if (policy == SqlJetPageCachePolicy.TWO_QUEUE) {
+                /*
+                 * Pages used once go first, but don't let pages used again
+                 * take more than three quarters of cache.
+                 */
+                if (recycle.isEmpty() || recycleHot.size() > nMax - nMax / 4) {
+                    final SqlJetPageList.Node hot = recycleHot.getFirst();
+                    if (hot != null) {
+                        return hot;
+                    }
+                }
+            }
+            return recycle.getFirst();
+        }
+
+        /**
+         * Removes page from cache.
+         * 
+         * @param free
+         *            if true then page content is returned to the buffer pool,
+         *            so page must not be referenced anymore. Otherwise page
+         *            could be still read and its content is left to garbage
+         *            collector.
+         */
+        private void discard(SqlJetPage page, boolean free) {
+            recycle.remove(page.lruNode);
+            recycleHot.remove(page.lruNode);
+            page.hot = false;
+            page.prefetched = false;
+            apHash.remove(Integer.valueOf(page.getPageNumber()));
+            if (free) {
+                page.freeData();
+            } else {
+                page.forgetData();
+            }
+        }
+
         /**
          * Mark a page as unpinned (eligible for asynchronous recycling).
          * 
@@ -384,12 +548,29 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * calls to xFetch().
          * 
          */
-        public synchronized void unpin(ISqlJetPage page, boolean discard) {
-            Integer pageNumber = Integer.valueOf(page.getPageNumber());
-            if (discard || bPurgeable && getPageCount() == nMax) {
-                apHash.remove(pageNumber);
+        public synchronized void unpin(SqlJetPage page, boolean discard) {
+            if (discard) {
+                /* Page is dropped by its last user. */
+                discard(page, true);
+                return;
+            }
+            final SqlJetPageList.Node node = page.lruNode;
+            recycle.remove(node);
+            recycleHot.remove(node);
+            if (page.hot) {
+                recycleHot.addLast(node);
             } else {
-                unpinned.add(pageNumber);
+                recycle.addLast(node);
+            }
+            if (bPurgeable) {
+                /* Cache could be over limit after setCacheSize(). */
+                while (getPageCount() > nMax) {
+                    final SqlJetPageList.Node victim = selectVictim();
+                    if (victim == null) {
+                        break;
+                    }
+                    discard(victim.page, true);
+                }
             }
         }
 
@@ -403,7 +584,12 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          */
         public synchronized void rekey(SqlJetPage page, int newKey) {
             apHash.remove(Integer.valueOf(page.getPageNumber()));
-            apHash.put(Integer.valueOf(newKey), page);
+            final SqlJetPage old = apHash.put(Integer.valueOf(newKey), page);
+            if (old != null && old != page) {
+                recycle.remove(old.lruNode);
+                recycleHot.remove(old.lruNode);
+                old.forgetData();
+            }
             page.setPageNumber(newKey);
         }
 
@@ -416,15 +602,14 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * 
          */
         public synchronized void truncate(int iLimit) {
-            List<Integer> l = new ArrayList<>();
-            for (Integer i : apHash.keySet()) {
-                if (i.intValue() >= iLimit) {
-                    l.add(i);
+            List<SqlJetPage> l = new ArrayList<>();
+            for (SqlJetPage p : apHash.values()) {
+                if (p.getPageNumber() >= iLimit) {
+                    l.add(p);
                 }
             }
-            for (Integer i : l) {
-                apHash.remove(i);
-                unpinned.remove(i);
+            for (SqlJetPage p : l) {
+                discard(p, false);
             }
         }
 
@@ -436,29 +621,12 @@ public class SqlJetPageCache implements ISqlJetPageCache {
          * sqlite3_pcache_methods functions.
          */
         public synchronized void clear() {
-            apHash.clear();
-            unpinned.clear();
-        }
-
-        /**
-         * 
-         */
-        public void cleanUnpinned() {
-            final Iterator<Integer> i = unpinned.iterator();
-            while (i.hasNext()) {
-                final Integer next = i.next();
-                final SqlJetPage p = apHash.get(next);
-                if (p == null || p.getRefCount() > 0) {
-                    i.remove();
-                    continue;
-                }
-                final Set<SqlJetPageFlags> flags = p.getFlags();
-                if (!flags.contains(SqlJetPageFlags.DIRTY) && !flags.contains(SqlJetPageFlags.NEED_SYNC)) {
-                    apHash.remove(next);
-                    i.remove();
-                    return;
-                }
+            for (SqlJetPage page : apHash.values()) {
+                page.forgetData();
             }
+            apHash.clear();
+            recycle.clear();
+            recycleHot.clear();
         }
 
     }
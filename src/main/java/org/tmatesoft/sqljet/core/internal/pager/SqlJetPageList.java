@@ -0,0 +1,135 @@
+/**
+ * SqlJetPageList.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+/**
+ * Intrusive doubly-linked list of pages. Every page owns its own
+ * {@link Node}s, so adding, removing and moving pages take constant time and
+ * don't allocate memory.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+class SqlJetPageList {
+
+    /**
+     * Link of page in a list. Node could be a member of one list at a time.
+     */
+    static final class Node {
+        final SqlJetPage page;
+        private Node prev;
+        private Node next;
+        private SqlJetPageList list;
+
+        Node(SqlJetPage page) {
+            this.page = page;
+        }
+
+        Node getPrev() {
+            return prev;
+        }
+
+        Node getNext() {
+            return next;
+        }
+    }
+
+    private Node head;
+    private Node tail;
+    private int size;
+
+    public Node getFirst() {
+        return head;
+    }
+
+    public Node getLast() {
+        return tail;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(Node node) {
+        return node.list == this;
+    }
+
+    public void addFirst(Node node) {
+        assert node.list == null;
+        node.list = this;
+        node.prev = null;
+        node.next = head;
+        if (head != null) {
+            head.prev = node;
+        } else {
+            tail = node;
+        }
+        head = node;
+        size++;
+    }
+
+    public void addLast(Node node) {
+        assert node.list == null;
+        node.list = this;
+        node.next = null;
+        node.prev = tail;
+        if (tail != null) {
+            tail.next = node;
+        } else {
+            head = node;
+        }
+        tail = node;
+        size++;
+    }
+
+    /**
+     * Removes node from this list. Does nothing if node isn't a member of this
+     * list.
+     */
+    public void remove(Node node) {
+        if (node.list != this) {
+            return;
+        }
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            head = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            tail = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.list = null;
+        size--;
+    }
+
+    public void clear() {
+        while (head != null) {
+            remove(head);
+        }
+    }
+
+}
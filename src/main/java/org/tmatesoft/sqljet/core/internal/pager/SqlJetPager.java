@@ -20,6 +20,7 @@ package org.tmatesoft.sqljet.core.internal.pager;
 import static org.tmatesoft.sqljet.core.internal.SqlJetAssert.assertNoError;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -46,12 +47,14 @@ import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
 import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerLockingMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetBufferedJournal;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFile;
 import org.tmatesoft.sqljet.core.table.ISqlJetBusyHandler;
 
@@ -110,11 +113,38 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
      */
     private static final int MAX_SECTOR_SIZE = 0x0100000;
 
+    /**
+     * Count of frames in write-ahead log after which commit tries to do a
+     * checkpoint. Zero disables automatic checkpoints.
+     */
+    private static final int WAL_AUTOCHECKPOINT = SqlJetUtility.getIntSysProp("SQLJET.WAL_AUTOCHECKPOINT", 1000);
+
+    /**
+     * Default number of bytes of database file which are read through
+     * memory-mapped I/O. Zero disables memory-mapped reads.
+     */
+    private static final long SQLJET_DEFAULT_MMAP_SIZE = SqlJetUtility.getLongSysProp("SQLJET.MMAP_SIZE", 0);
+
+    /**
+     * Size of buffer in which records of rollback journal are assembled before
+     * they are written to the journal file. Zero disables buffering.
+     */
+    private static final int SQLJET_JOURNAL_BUFFER_SIZE = SqlJetUtility.getIntSysProp("SQLJET.JOURNAL_BUFFER_SIZE",
+            64 * 1024);
+
+    /** Number of write calls and pages written by {@link #writePageList(List)}. */
+    private long writeCount;
+    private long pagesWrittenCount;
+
+    /** Number of read calls and pages loaded by {@link #prefetch(int[], int)}. */
+    private long readAheadCount;
+    private long pagesReadAheadCount;
+
     private final ISqlJetFileSystem fileSystem;
     private final @Nonnull Set<SqlJetFileOpenPermission> permissions;
 
     private @Nonnull SqlJetPagerState state = SqlJetPagerState.UNLOCK;
-    private final SqlJetPagerJournalMode journalMode = SqlJetPagerJournalMode.DELETE;
+    private @Nonnull SqlJetPagerJournalMode journalMode = SqlJetPagerJournalMode.DELETE;
     private SqlJetPagerLockingMode lockingMode = SqlJetPagerLockingMode.NORMAL;
 
     /** True if header of journal is synced */
@@ -165,6 +195,15 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
     /** Name of the journal file */
     private final @Nonnull File journal;
 
+    /** Name of the write-ahead log file */
+    private final @Nonnull File walFile;
+
+    /** Write-ahead log, not null in WAL journal mode */
+    private SqlJetWal wal;
+
+    /** Set when other connection has committed after our snapshot was taken */
+    private boolean walSnapshotStale;
+
     /** Directory hold database and journal files */
     private final File directory;
 
@@ -195,6 +234,9 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
     /** One of several kinds of errors */
     private SqlJetErrorCode errCode;
 
+    /** Set when locks on database file were lost while they were held */
+    private boolean lockLost;
+
     @Override
     public boolean isLockedState() {
         return state.isLocked();
@@ -238,9 +280,11 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
 
         this.directory = this.fileName.getParentFile();
         this.journal = new File(this.directory, this.fileName.getName() + JOURNAL);
+        this.walFile = new File(this.directory, this.fileName.getName() + SqlJetWal.WAL);
 
         this.fd = this.fileSystem.open(this.fileName, type, this.permissions);
         this.readOnly = this.fd.isReadOnly();
+        this.fd.setMmapSize(SQLJET_DEFAULT_MMAP_SIZE);
 
         /*
          * If the file was successfully opened for read/write access, choose a
@@ -312,6 +356,92 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         return journalMode;
     }
 
+    @Override
+    public void setJournalMode(@Nonnull SqlJetPagerJournalMode journalMode) throws SqlJetException {
+        if (this.journalMode == journalMode) {
+            return;
+        }
+        SqlJetAssert.assertTrue(state.compareTo(SqlJetPagerState.RESERVED) < 0, SqlJetErrorCode.MISUSE,
+                "Journal mode can't be changed inside write transaction");
+        if (this.journalMode == SqlJetPagerJournalMode.WAL) {
+            checkpoint();
+            wal.close(true);
+            wal = null;
+        } else if (journalMode == SqlJetPagerJournalMode.WAL) {
+            wal = new SqlJetWal(fileSystem, walFile);
+            /*
+             * Current snapshot was read from the database file, so the log is
+             * taken into account only when the next snapshot is taken.
+             */
+            if (state != SqlJetPagerState.UNLOCK && wal.isChanged()) {
+                walSnapshotStale = true;
+            }
+        }
+        PAGERTRACE("JOURNALMODE %s %s\n", pagerId(), journalMode);
+        this.journalMode = journalMode;
+    }
+
+    @Override
+    public void checkpoint() throws SqlJetException {
+        if (wal == null) {
+            return;
+        }
+        SqlJetAssert.assertTrue(state.compareTo(SqlJetPagerState.RESERVED) < 0, SqlJetErrorCode.MISUSE,
+                "Checkpoint can't be done inside write transaction");
+        sharedLock();
+        try {
+            SqlJetAssert.assertTrue(walCheckpoint(true), SqlJetErrorCode.BUSY);
+        } finally {
+            unlockIfUnused();
+        }
+    }
+
+    /**
+     * Copy content of write-ahead log into the database file. Should be called
+     * with a SHARED lock held, which is upgraded to EXCLUSIVE for the time of
+     * checkpoint.
+     *
+     * @param wait
+     *            wait for EXCLUSIVE lock using busy handler, otherwise give up
+     *            if lock isn't available immediately.
+     * @return true if checkpoint was done.
+     * @throws SqlJetException
+     */
+    private boolean walCheckpoint(boolean wait) throws SqlJetException {
+        assert state == SqlJetPagerState.SHARED;
+        try {
+            if (wait) {
+                waitOnLock(SqlJetLockType.EXCLUSIVE);
+            } else if (fd.lock(SqlJetLockType.EXCLUSIVE)) {
+                state = SqlJetPagerState.EXCLUSIVE;
+            } else {
+                return false;
+            }
+            /*
+             * Other connection could commit after our snapshot was taken. The
+             * snapshot may be moved and the cache discarded only if no pages
+             * are referenced, otherwise the log is left as is until the pages
+             * are released.
+             */
+            if (pageCache.getRefCount() > 0) {
+                if (walSnapshotStale || wal.isChanged()) {
+                    walSnapshotStale = true;
+                    return false;
+                }
+            } else if (wal.refresh() || walSnapshotStale) {
+                walSnapshotStale = false;
+                reset();
+            }
+            PAGERTRACE("CHECKPOINT %s frames=%d\n", pagerId(), Integer.valueOf(wal.getFrameCount()));
+            wal.checkpoint(fd, !noSync);
+            dbSizeValid = false;
+            return true;
+        } finally {
+            fd.unlock(SqlJetLockType.SHARED);
+            state = SqlJetPagerState.SHARED;
+        }
+    }
+
     @Override
     public void setSafetyLevel(final SqlJetSafetyLevel safetyLevel) {
         super.setSafetyLevel(safetyLevel);
@@ -382,6 +512,16 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         pageCache.setCacheSize(cacheSize);
     }
 
+    @Override
+    public void setCachePolicy(@Nonnull SqlJetPageCachePolicy policy) {
+        pageCache.setPolicy(policy);
+    }
+
+    @Override
+    public @Nonnull SqlJetPageCachePolicy getCachePolicy() {
+        return pageCache.getPolicy();
+    }
+
     @Override
     public int getCacheSize() {
         return pageCache.getCachesize();
@@ -406,6 +546,13 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
 
         if (dbSizeValid) {
             n = dbSize;
+        } else if (wal != null && wal.getDbSize() > 0) {
+            n = wal.getDbSize();
+            if (SqlJetPagerState.UNLOCK != state) {
+                dbSize = n;
+                dbFileSize = n;
+                dbSizeValid = true;
+            }
         } else {
             long l = 0;
             try {
@@ -479,7 +626,7 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
      *
      */
     private void unlock() {
-        if (SqlJetPagerLockingMode.EXCLUSIVE != lockingMode) {
+        if (SqlJetPagerLockingMode.EXCLUSIVE != lockingMode || lockLost) {
 
             /*
              * Always close the journal file when dropping the database lock.
@@ -499,13 +646,15 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
                 pagesAlwaysRollback.clear();
             }
 
-            SqlJetErrorCode errCode = null;
+            SqlJetErrorCode unlockErrCode = null;
             try {
                 fd.unlock(SqlJetLockType.NONE);
             } catch (final SqlJetException e) {
-                errCode = e.getErrorCode();
+                unlockErrCode = e.getErrorCode();
+                errCode = unlockErrCode;
             }
             dbSizeValid = false;
+            lockLost = false;
             PAGERTRACE("UNLOCK %s\n", pagerId());
 
             /*
@@ -514,7 +663,9 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
              * the cache can be discarded and the error code safely cleared.
              */
             if (null != errCode) {
-                errCode = null;
+                if (null == unlockErrCode) {
+                    errCode = null;
+                }
                 reset();
                 journalOff = 0;
                 journalStarted = false;
@@ -546,6 +697,9 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
          */
         journalHdr = -1;
         unlockAndRollback();
+        if (wal != null) {
+            closeWal();
+        }
         PAGERTRACE("CLOSE %s\n", pagerId());
         if (journalOpen) {
             if (null != jfd) {
@@ -566,6 +720,27 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         }
     }
 
+    /**
+     * Checkpoint the write-ahead log if no other connection uses the database
+     * and close it.
+     *
+     * @throws SqlJetException
+     */
+    private void closeWal() throws SqlJetException {
+        try {
+            if (!readOnly && fd.lock(SqlJetLockType.SHARED)) {
+                state = SqlJetPagerState.SHARED;
+                walCheckpoint(false);
+            }
+        } catch (SqlJetException e) {
+            PAGERTRACE("CHECKPOINT %s failed: %s\n", pagerId(), e.getMessage());
+        } finally {
+            fd.unlock(SqlJetLockType.NONE);
+            state = SqlJetPagerState.UNLOCK;
+            wal.close(false);
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -664,11 +839,42 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
 
     @Override
     public void unlockIfUnused() throws SqlJetException {
-        if (pageCache.getRefCount() == 0 && (SqlJetPagerLockingMode.EXCLUSIVE != lockingMode || journalOff > 0)) {
+        if (pageCache.getRefCount() == 0
+                && (SqlJetPagerLockingMode.EXCLUSIVE != lockingMode || journalOff > 0 || isLockLost())) {
             unlockAndRollback();
         }
     }
 
+    /**
+     * Checks whether locks on database file are still held. Locks are lost
+     * when file channel is closed by interrupt of a thread which used it. In
+     * this case neither cache nor database file could be trusted: pager enters
+     * error state, which is cleared by {@link #unlock()}, and changes of an
+     * open write transaction are rolled back from the journal by the next
+     * connection which gets SHARED lock.
+     *
+     * @return true if locks were lost.
+     */
+    private boolean isLockLost() {
+        if (!lockLost && state != SqlJetPagerState.UNLOCK && !noReadlock
+                && fd.getLockType() == SqlJetLockType.NONE) {
+            PAGERTRACE("LOCKS LOST %s\n", pagerId());
+            lockLost = true;
+            errCode = SqlJetErrorCode.IOERR;
+            dbSizeValid = false;
+            if (wal != null) {
+                wal.undo();
+            }
+        }
+        return lockLost;
+    }
+
+    private void checkLocks() throws SqlJetException {
+        if (isLockLost()) {
+            throw new SqlJetIOException(SqlJetIOErrorCode.IOERR_LOCK, "Locks on database file were lost");
+        }
+    }
+
     /**
      * Execute a rollback if a transaction is active and unlock the database
      * file. If the pager has already entered the error state, do not attempt
@@ -683,6 +889,85 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         unlock();
     }
 
+    /**
+     * Pages which aren't cached are read in runs of adjacent pages, one read
+     * call per run. Prefetch never takes more than a quarter of the cache, so
+     * it doesn't push out pages which are in use.
+     */
+    @Override
+    public void prefetch(@Nonnull int[] pageNumbers, int count) throws SqlJetException {
+        if (state == SqlJetPagerState.UNLOCK || errCode != null || fd == null) {
+            return;
+        }
+        final int limit = Math.min(count, getCacheSize() / 4);
+        final int nMax = getPageCount();
+        final long pendingPage = ISqlJetFile.PENDING_BYTE / pageSize + 1;
+        final int[] run = new int[limit];
+        int runLength = 0;
+        for (int i = 0; i < limit; i++) {
+            final int pgno = pageNumbers[i];
+            if (pgno <= 0 || pgno > nMax || pgno == pendingPage || pageCache.contains(pgno)
+                    || (wal != null && wal.findFrame(pgno) > 0)) {
+                continue;
+            }
+            if (runLength > 0 && run[runLength - 1] + 1 != pgno) {
+                readPageRun(run, runLength);
+                runLength = 0;
+            }
+            run[runLength++] = pgno;
+        }
+        if (runLength > 0) {
+            readPageRun(run, runLength);
+        }
+    }
+
+    /**
+     * Read run of adjacent pages from database file with single call and put
+     * them into cache.
+     */
+    private void readPageRun(int[] run, int runLength) throws SqlJetException {
+        final ISqlJetMemoryPointer buffer = SqlJetUtility.memoryManager.allocatePtr(runLength * pageSize);
+        try {
+            fd.read(buffer, runLength * pageSize, (long) (run[0] - 1) * pageSize);
+        } catch (SqlJetIOException e) {
+            if (SqlJetIOErrorCode.IOERR_SHORT_READ == e.getIoErrorCode()) {
+                return;
+            }
+            throw e;
+        }
+        readAheadCount++;
+        for (int i = 0; i < runLength; i++) {
+            final ISqlJetPage page = pageCache.prefetch(run[i]);
+            if (page == null) {
+                return;
+            }
+            if (page.getPager() == null) {
+                page.setPager(this);
+                page.getData().copyFrom(0, buffer, i * pageSize, pageSize);
+                if (1 == run[i]) {
+                    dbFileVers.copyFrom(0, page.getData(), 24, dbFileVers.remaining());
+                }
+                pagesReadAheadCount++;
+                PAGERTRACE("PREFETCH %s page %d\n", pagerId(), Integer.valueOf(run[i]));
+            }
+            page.release();
+        }
+    }
+
+    /**
+     * @return number of read calls made to load pages ahead of their use.
+     */
+    public long getReadAheadCount() {
+        return readAheadCount;
+    }
+
+    /**
+     * @return number of pages loaded into cache ahead of their use.
+     */
+    public long getPagesReadAheadCount() {
+        return pagesReadAheadCount;
+    }
+
     /**
      * Read the content of page pPg out of the database file.
      *
@@ -691,9 +976,13 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
      * @throws SqlJetIOException
      */
     private void readDbPage(final ISqlJetPage page, int pageNumber) throws SqlJetException {
-        final long offset = (long) (pageNumber - 1) * pageSize;
         final ISqlJetMemoryPointer data = page.getData();
-        fd.read(data, pageSize, offset);
+        final int frame = wal != null ? wal.findFrame(pageNumber) : 0;
+        if (frame > 0) {
+            wal.readFrame(frame, data, pageSize);
+        } else {
+            fd.read(data, pageSize, (long) (pageNumber - 1) * pageSize);
+        }
         if (1 == pageNumber) {
             dbFileVers.copyFrom(0, data, 24, dbFileVers.remaining());
         }
@@ -714,6 +1003,15 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
     private void sharedLock() throws SqlJetException {
         boolean isErrorReset = false;
 
+        /*
+         * Locks which were lost can't be taken again in the middle of a
+         * transaction, only after all pages are released and the pager is
+         * unlocked.
+         */
+        if (isLockLost() && pageCache.getRefCount() == 0) {
+            unlock();
+        }
+
         /*
          * If this database is opened for exclusive access, has no outstanding
          * page references and is in an error-state, now is the chance to clear
@@ -847,7 +1145,27 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
 
                 }
 
-                if (pageCache.getPageCount() > 0) {
+                if (wal == null && SqlJetWal.exists(fileSystem, walFile)) {
+                    /*
+                     * Database was left in WAL mode by this or other
+                     * connection, its content can't be read without the log.
+                     */
+                    PAGERTRACE("JOURNALMODE %s %s\n", pagerId(), SqlJetPagerJournalMode.WAL);
+                    journalMode = SqlJetPagerJournalMode.WAL;
+                    wal = new SqlJetWal(fileSystem, walFile);
+                }
+
+                if (wal != null) {
+                    /*
+                     * In WAL mode changes are detected by looking at the log:
+                     * cache is flushed if any frames were committed or log was
+                     * restarted since the last read.
+                     */
+                    if (wal.refresh() || walSnapshotStale) {
+                        walSnapshotStale = false;
+                        reset();
+                    }
+                } else if (pageCache.getPageCount() > 0) {
                     /*
                      * The shared-lock has just been acquired on the database
                      * file and there are already pages in the cache (from a
@@ -1935,11 +2253,6 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         jfd.write(b, b.remaining(), offset);
     }
 
-    private void write32bitsUnsigned(long offset, long val) throws SqlJetException {
-        final ISqlJetMemoryPointer b = SqlJetUtility.put4byteUnsigned(val);
-        jfd.write(b, b.remaining(), offset);
-    }
-
     @Override
     public boolean writeData(@Nonnull ISqlJetMemoryPointer pData, int pgno) throws SqlJetException {
         boolean result = false;
@@ -1950,17 +2263,18 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         assert pgno != PAGER_MJ_PGNO();
 
         try {
-            long cksum = cksum(pData);
-            write32bits(journalOff, pgno);
-            try {
-                jfd.write(pData, pageSize, journalOff + 4);
-            } finally {
-                journalOff += pageSize + 4;
-            }
+            /*
+             * Page number, page content and checksum are appended to journal
+             * with single gathering write.
+             */
+            final long cksum = cksum(pData);
+            final ISqlJetMemoryPointer pgnoBuf = SqlJetUtility.put4byte(pgno);
+            final ISqlJetMemoryPointer cksumBuf = SqlJetUtility.put4byteUnsigned(cksum);
             try {
-                write32bitsUnsigned(journalOff, cksum);
+                jfd.write(new ISqlJetMemoryPointer[] { pgnoBuf, pData, cksumBuf },
+                        new int[] { pgnoBuf.remaining(), pageSize, cksumBuf.remaining() }, journalOff);
             } finally {
-                journalOff += 4;
+                journalOff += JOURNAL_PG_SZ();
             }
         } finally {
             /*
@@ -1991,11 +2305,25 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
     @Override
     public void begin(boolean exclusive) throws SqlJetException {
         assert state != SqlJetPagerState.UNLOCK;
+        checkLocks();
         if (state == SqlJetPagerState.SHARED) {
             assert pagesInJournal == null;
             if (fd.lock(SqlJetLockType.RESERVED)) {
                 state = SqlJetPagerState.RESERVED;
-                if (exclusive) {
+                if (wal != null) {
+                    /*
+                     * In WAL mode readers are never blocked, so EXCLUSIVE lock
+                     * isn't needed. But if other connection has committed
+                     * since our snapshot was taken then this connection has to
+                     * release its locks and reread the database.
+                     */
+                    if (walSnapshotStale || wal.isChanged()) {
+                        walSnapshotStale = true;
+                        fd.unlock(SqlJetLockType.SHARED);
+                        state = SqlJetPagerState.SHARED;
+                        throw new SqlJetException(SqlJetErrorCode.BUSY);
+                    }
+                } else if (exclusive) {
                     waitOnLock(SqlJetLockType.EXCLUSIVE);
                 }
                 dirtyCache = false;
@@ -2106,7 +2434,7 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
 
     @Override
     public void openJournal() throws SqlJetException {
-        if (journalMode != SqlJetPagerJournalMode.OFF) {
+        if (journalMode != SqlJetPagerJournalMode.OFF && journalMode != SqlJetPagerJournalMode.WAL) {
 
             Set<SqlJetFileOpenPermission> flags = SqlJetUtility.of(SqlJetFileOpenPermission.EXCLUSIVE,
                     SqlJetFileOpenPermission.CREATE);
@@ -2125,6 +2453,9 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
                         jfd = fileSystem.memJournalOpen();
                     } else {
                         jfd = fileSystem.open(journal, SqlJetFileType.MAIN_JOURNAL, flags);
+                        if (SQLJET_JOURNAL_BUFFER_SIZE > 0) {
+                            jfd = new SqlJetBufferedJournal(jfd, SQLJET_JOURNAL_BUFFER_SIZE);
+                        }
                     }
                     journalOff = 0;
                     journalHdr = 0;
@@ -2152,6 +2483,7 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
 
     @Override
     public void commitPhaseOne(boolean noSync) throws SqlJetException {
+        checkLocks();
         assertNoError(errCode);
 
         /*
@@ -2179,6 +2511,17 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
              */
             incrChangeCounter();
 
+            if (wal != null) {
+                /*
+                 * In WAL mode commit is a single append of all dirty pages to
+                 * the log, where the last frame is the commit frame.
+                 */
+                walFrames(pageCache.getDirtyList(), dbSize);
+                pageCache.cleanAll();
+                state = SqlJetPagerState.SYNCED;
+                return;
+            }
+
             if (journalMode != SqlJetPagerJournalMode.OFF) {
 
                 if (dbSize < dbOrigSize) {
@@ -2230,6 +2573,18 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         }
     }
 
+    /**
+     * Writes records of rollback journal which are buffered in memory to the
+     * journal file.
+     *
+     * @throws SqlJetException
+     */
+    private void flushJournal() throws SqlJetException {
+        if (journalOpen && jfd instanceof SqlJetBufferedJournal) {
+            ((SqlJetBufferedJournal) jfd).flush();
+        }
+    }
+
     /**
      * Given a list of pages (connected by the PgHdr.pDirty pointer) write every
      * one of those pages out to the database file. No calls are made to the
@@ -2264,11 +2619,22 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
          */
         waitOnLock(SqlJetLockType.EXCLUSIVE);
 
+        /*
+         * Journal records of pages which are going to be overwritten must reach
+         * the journal file before the pages reach the database file.
+         */
+        flushJournal();
+
         /* If the file has not yet been opened, open it now. */
         /*
          * if (null == fd) { assert tempFile; fd = openTemp(type); }
          */
 
+        /*
+         * Dirty list is sorted by page number, so runs of adjacent pages are
+         * written with a single gathering write.
+         */
+        final List<ISqlJetPage> run = new ArrayList<>();
         for (ISqlJetPage page : pList) {
             /*
              * If there are dirty pages in the page cache with page numbers
@@ -2277,15 +2643,15 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
              * Do not write any such pages to the file.
              */
             if (page.getPageNumber() <= dbSize && !page.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
-
-                final long offset = (long) (page.getPageNumber() - 1) * pageSize;
                 PAGERTRACE("STORE %s page %d\n", pagerId(), Integer.valueOf(page.getPageNumber()));
+                if (!run.isEmpty() && run.get(run.size() - 1).getPageNumber() + 1 != page.getPageNumber()) {
+                    writePageRun(run);
+                    run.clear();
+                }
+                run.add(page);
 
-                ISqlJetMemoryPointer pData = page.getData();
-
-                fd.write(pData, pageSize, offset);
                 if (page.getPageNumber() == 1) {
-                    dbFileVers.copyFrom(0, pData, 24, dbFileVers.remaining());
+                    dbFileVers.copyFrom(0, page.getData(), 24, dbFileVers.remaining());
                 }
                 if (page.getPageNumber() > dbFileSize) {
                     dbFileSize = page.getPageNumber();
@@ -2294,7 +2660,76 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
                 PAGERTRACE("NOSTORE %s page %d\n", pagerId(), Integer.valueOf(page.getPageNumber()));
             }
         }
+        writePageRun(run);
+
+    }
+
+    /**
+     * Writes pages with adjacent page numbers to the database file.
+     *
+     * @param run
+     * @throws SqlJetException
+     */
+    private void writePageRun(List<ISqlJetPage> run) throws SqlJetException {
+        if (run.isEmpty()) {
+            return;
+        }
+        final long offset = (long) (run.get(0).getPageNumber() - 1) * pageSize;
+        if (run.size() == 1) {
+            fd.write(run.get(0).getData(), pageSize, offset);
+        } else {
+            final ISqlJetMemoryPointer[] buffers = new ISqlJetMemoryPointer[run.size()];
+            final int[] amounts = new int[run.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = run.get(i).getData();
+                amounts[i] = pageSize;
+            }
+            fd.write(buffers, amounts, offset);
+        }
+        writeCount++;
+        pagesWrittenCount += run.size();
+    }
+
+    /**
+     * @return number of write calls issued to the database file while
+     *         writing dirty pages back.
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
 
+    /**
+     * @return number of pages written back to the database file. Together
+     *         with {@link #getWriteCount()} shows how well adjacent pages are
+     *         coalesced.
+     */
+    public long getPagesWrittenCount() {
+        return pagesWrittenCount;
+    }
+
+    /**
+     * Append pages to the write-ahead log. Pages beyond the end of database and
+     * pages marked with DONT_WRITE are skipped like in
+     * {@link #writePageList(List)}.
+     *
+     * @param pList
+     * @param commitSize
+     *            size of database in pages if this is a commit, or zero.
+     * @throws SqlJetException
+     */
+    private void walFrames(List<ISqlJetPage> pList, int commitSize) throws SqlJetException {
+        final List<ISqlJetPage> pages = new ArrayList<>(pList.size());
+        for (ISqlJetPage page : pList) {
+            if (page.getPageNumber() <= dbSize && !page.getFlags().contains(SqlJetPageFlags.DONT_WRITE)) {
+                PAGERTRACE("WALSTORE %s page %d\n", pagerId(), Integer.valueOf(page.getPageNumber()));
+                pages.add(page);
+            } else {
+                PAGERTRACE("NOSTORE %s page %d\n", pagerId(), Integer.valueOf(page.getPageNumber()));
+            }
+        }
+        if (!pages.isEmpty()) {
+            wal.writeFrames(pages, pageSize, commitSize, !noSync);
+        }
     }
 
     /**
@@ -2345,12 +2780,40 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         } catch (SqlJetException e) {
             error(e);
         }
+
+        if (wal != null && WAL_AUTOCHECKPOINT > 0 && wal.getFrameCount() >= WAL_AUTOCHECKPOINT
+                && state == SqlJetPagerState.SHARED) {
+            /*
+             * Failed checkpoint leaves the log intact, so it will be retried
+             * after the next commit.
+             */
+            try {
+                walCheckpoint(false);
+            } catch (SqlJetException e) {
+                PAGERTRACE("CHECKPOINT %s failed: %s\n", pagerId(), e.getMessage());
+            }
+        }
     }
 
     @Override
     public void rollback() throws SqlJetException {
         PAGERTRACE("ROLLBACK %s\n", pagerId());
-        if (!dirtyCache || !journalOpen) {
+        if (isLockLost()) {
+            /*
+             * Journal is left hot, the database is restored when SHARED lock
+             * is taken again.
+             */
+            return;
+        } else if (wal != null) {
+            try {
+                rollbackWal();
+            } catch (SqlJetException e) {
+                dbSizeValid = false;
+                error(e);
+            } finally {
+                endTransaction(false);
+            }
+        } else if (!dirtyCache || !journalOpen) {
             endTransaction(false);
         } else if (null != errCode && errCode != SqlJetErrorCode.FULL) {
             if (state.compareTo(SqlJetPagerState.EXCLUSIVE) >= 0) {
@@ -2380,6 +2843,29 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         }
     }
 
+    /**
+     * Rollback in WAL mode: the database file is untouched, so it is enough to
+     * forget uncommitted frames and reload content of dirty pages.
+     *
+     * @throws SqlJetException
+     */
+    private void rollbackWal() throws SqlJetException {
+        wal.undo();
+        dbSizeValid = false;
+        final int nPage = getPageCount();
+        for (ISqlJetPage page : pageCache.getDirtyList()) {
+            if (page.getPageNumber() <= nPage) {
+                readDbPage(page, page.getPageNumber());
+            } else {
+                page.getData().fill(pageSize, (byte) 0);
+            }
+            if (null != reiniter) {
+                reiniter.pageCallback(page);
+            }
+        }
+        pageCache.cleanAll();
+    }
+
     @Override
     public int getRefCount() {
         return pageCache.getRefCount();
@@ -2402,14 +2888,18 @@ public class SqlJetPager extends SqlJetAbstractPager implements ISqlJetLimits, I
         assert pPg.getFlags().contains(SqlJetPageFlags.DIRTY);
         if (errCode == null) {
             try {
-                if (pPg.getFlags().contains(SqlJetPageFlags.NEED_SYNC)) {
-                    syncJournal();
-                    if (fullSync && journalMode != SqlJetPagerJournalMode.MEMORY) {
-                        nRec = 0;
-                        writeJournalHdr();
+                if (wal != null) {
+                    walFrames(Collections.singletonList(pPg), 0);
+                } else {
+                    if (pPg.getFlags().contains(SqlJetPageFlags.NEED_SYNC)) {
+                        syncJournal();
+                        if (fullSync && journalMode != SqlJetPagerJournalMode.MEMORY) {
+                            nRec = 0;
+                            writeJournalHdr();
+                        }
                     }
+                    writePageList(Collections.singletonList(pPg));
                 }
-                writePageList(Collections.singletonList(pPg));
             } catch (SqlJetException e) {
                 error(e);
             }
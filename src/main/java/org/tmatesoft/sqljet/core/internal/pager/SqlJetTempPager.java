@@ -45,6 +45,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPageFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
@@ -248,6 +249,16 @@ public class SqlJetTempPager extends SqlJetAbstractPager implements ISqlJetLimit
         return SqlJetPagerJournalMode.DELETE;
     }
 
+    @Override
+    public void setJournalMode(@Nonnull SqlJetPagerJournalMode journalMode) {
+        // journal mode of temporary database can't be changed.
+    }
+
+    @Override
+    public void checkpoint() {
+        // there is no write-ahead log.
+    }
+
     @Override
     public void setBusyhandler(final ISqlJetBusyHandler busyHandler) {
     }
@@ -305,6 +316,16 @@ public class SqlJetTempPager extends SqlJetAbstractPager implements ISqlJetLimit
         pageCache.setCacheSize(cacheSize);
     }
 
+    @Override
+    public void setCachePolicy(@Nonnull SqlJetPageCachePolicy policy) {
+        pageCache.setPolicy(policy);
+    }
+
+    @Override
+    public @Nonnull SqlJetPageCachePolicy getCachePolicy() {
+        return pageCache.getPolicy();
+    }
+
     @Override
     public int getCacheSize() {
         return pageCache.getCachesize();
@@ -0,0 +1,573 @@
+/**
+ * SqlJetWal.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetLimits;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileAccesPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+/**
+ * Write-ahead log of a single database file.
+ *
+ * The file layout is the one used by SQLite for its "-wal" files. The WAL
+ * header is 32 bytes in size and consists of the following eight big-endian
+ * 32-bit unsigned integer values:
+ *
+ * 0: Magic number. 0x377f0682 or 0x377f0683. 4: File format version.
+ * Currently 3007000. 8: Database page size. 12: Checkpoint sequence number.
+ * 16: Salt-1, random integer incremented with each checkpoint. 20: Salt-2, a
+ * different random integer changing with each checkpoint. 24: Checksum-1
+ * (first part of checksum for first 24 bytes of header). 28: Checksum-2
+ * (second part of checksum for first 24 bytes of header).
+ *
+ * Immediately following the wal-header are zero or more frames. Each frame
+ * consists of a 24-byte frame-header followed by page-size bytes of page data.
+ * The frame-header is six big-endian 32-bit unsigned integer values, as
+ * follows:
+ *
+ * 0: Page number. 4: For commit records, the size of the database image in
+ * pages after the commit. For all other records, zero. 8: Salt-1 (copied from
+ * the header). 12: Salt-2 (copied from the header). 16: Checksum-1. 20:
+ * Checksum-2.
+ *
+ * A frame is considered valid if and only if the salt values match the header
+ * and the cumulative checksum over the header and all frames up to and
+ * including this one matches. Only frames up to the last valid commit frame
+ * are visible to readers.
+ *
+ * Every pager keeps its own in-memory index of the frames it has seen instead
+ * of the shared-memory wal-index of SQLite, so the locking protocol on the
+ * main database file is used to keep readers away from a checkpoint.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetWal {
+
+    /** Suffix of the write-ahead log file name */
+    public static final String WAL = "-wal";
+
+    /** Magic number of log, lowest bit is set for big-endian checksums */
+    private static final int WAL_MAGIC = 0x377f0682;
+
+    /** Version of the log format */
+    private static final int WAL_FORMAT_VERSION = 3007000;
+
+    /** Size of the log header */
+    static final int WAL_HDRSIZE = 32;
+
+    /** Size of the frame header */
+    static final int WAL_FRAME_HDRSIZE = 24;
+
+    private static final Random RND = new Random();
+
+    private final ISqlJetFileSystem fileSystem;
+    private final @Nonnull File walName;
+
+    /** File descriptor of the log, opened lazily */
+    private ISqlJetFile fd;
+
+    /** Page size recorded in the log header */
+    private int pageSize;
+
+    /** True if checksums are computed over big-endian words */
+    private boolean bigEndCksum = true;
+
+    /** True if the log header has been read or written */
+    private boolean hasHeader;
+
+    private int ckptSeq;
+    private int salt1;
+    private int salt2;
+
+    /** Page number to the latest committed frame containing it */
+    private final Map<Integer, Integer> index = new HashMap<>();
+
+    /** Page number to frames written by current transaction */
+    private final Map<Integer, Integer> pending = new HashMap<>();
+
+    /** Last committed frame */
+    private int mxFrame;
+
+    /** Last written frame, may be beyond mxFrame while transaction is open */
+    private int nFrame;
+
+    /** Size of database in pages as of the last committed frame */
+    private int dbSize;
+
+    /** Checksum of the log header */
+    private final int[] headerCksum = new int[2];
+
+    /** Checksum at the end of mxFrame */
+    private final int[] commitCksum = new int[2];
+
+    /** Checksum at the end of nFrame */
+    private final int[] frameCksum = new int[2];
+
+    public SqlJetWal(ISqlJetFileSystem fileSystem, @Nonnull File walName) {
+        this.fileSystem = fileSystem;
+        this.walName = walName;
+        this.salt1 = RND.nextInt();
+        this.salt2 = RND.nextInt();
+    }
+
+    /**
+     * @return file of the log.
+     */
+    public @Nonnull File getFile() {
+        return walName;
+    }
+
+    /**
+     * @return count of committed frames in the log.
+     */
+    public int getFrameCount() {
+        return mxFrame;
+    }
+
+    /**
+     * @return size of database in pages stored in the last commit frame, or
+     *         zero if log has no committed frames.
+     */
+    public int getDbSize() {
+        return mxFrame > 0 ? dbSize : 0;
+    }
+
+    /**
+     * Returns true if log file exists and contains at least header.
+     *
+     * @param fileSystem
+     * @param walName
+     * @return true if there is a non-empty log for database.
+     * @throws SqlJetException
+     */
+    public static boolean exists(ISqlJetFileSystem fileSystem, @Nonnull File walName) throws SqlJetException {
+        return fileSystem.access(walName, SqlJetFileAccesPermission.EXISTS) && walName.length() >= WAL_HDRSIZE;
+    }
+
+    private boolean openIfExists() throws SqlJetException {
+        if (fd == null) {
+            if (!fileSystem.access(walName, SqlJetFileAccesPermission.EXISTS)) {
+                return false;
+            }
+            fd = fileSystem.open(walName, SqlJetFileType.WAL, SqlJetUtility.of(SqlJetFileOpenPermission.CREATE));
+        } else if (!fileSystem.access(walName, SqlJetFileAccesPermission.EXISTS)) {
+            /* Log was deleted by other connection. */
+            fd.close();
+            fd = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Brings the in-memory index up to date with the content of the log file.
+     * Should be called with at least a SHARED lock held on the database file.
+     *
+     * @return true if committed content of the log was changed since the last
+     *         call, i.e. cached pages may be stale.
+     * @throws SqlJetException
+     */
+    public boolean refresh() throws SqlJetException {
+        final int oldFrame = mxFrame;
+        final int oldSalt1 = salt1;
+        final int oldSalt2 = salt2;
+        final boolean hadHeader = hasHeader;
+
+        if (!openIfExists() || !readHeader()) {
+            hasHeader = false;
+            clearIndex();
+            return oldFrame > 0;
+        }
+
+        final boolean restarted = !hadHeader || oldSalt1 != salt1 || oldSalt2 != salt2;
+        if (restarted) {
+            /* Log was created or restarted by checkpoint. */
+            clearIndex();
+            commitCksum[0] = headerCksum[0];
+            commitCksum[1] = headerCksum[1];
+        }
+
+        final int lastCommit = scanFrames(commitCksum, index);
+        if (lastCommit != mxFrame) {
+            /* Commit frame header holds size of database after commit. */
+            final ISqlJetMemoryPointer commit = SqlJetUtility.memoryManager.allocatePtr(4);
+            fd.read(commit, 4, frameOffset(lastCommit) + 4);
+            dbSize = commit.getInt(0);
+            mxFrame = lastCommit;
+        }
+        nFrame = mxFrame;
+        frameCksum[0] = commitCksum[0];
+        frameCksum[1] = commitCksum[1];
+        pending.clear();
+
+        return mxFrame != oldFrame || restarted && oldFrame > 0;
+    }
+
+    /**
+     * Checks whether other connection has committed to the log since the last
+     * {@link #refresh()}, without changing the index. Should be called with at
+     * least a SHARED lock held on the database file.
+     *
+     * @return true if {@link #refresh()} would bring in new content of the
+     *         log. May also return true for a log which was restarted but has
+     *         no committed frames yet.
+     * @throws SqlJetException
+     */
+    public boolean isChanged() throws SqlJetException {
+        if (!openIfExists()) {
+            return mxFrame > 0;
+        }
+        final long size = fd.fileSize();
+        if (!hasHeader) {
+            return size > WAL_HDRSIZE;
+        }
+        if (size < WAL_HDRSIZE) {
+            return true;
+        }
+        final ISqlJetMemoryPointer header = SqlJetUtility.memoryManager.allocatePtr(WAL_HDRSIZE);
+        fd.read(header, WAL_HDRSIZE, 0);
+        if (header.getInt(16) != salt1 || header.getInt(20) != salt2) {
+            return true;
+        }
+
+        return scanFrames(new int[] { commitCksum[0], commitCksum[1] }, null) != mxFrame;
+    }
+
+    /**
+     * Scans frames which follow the last committed frame of the index. A
+     * frame is valid if it has salts of the log header and its checksum
+     * continues the checksum of previous frame.
+     *
+     * @param cksum
+     *            checksum of the last committed frame, replaced by checksum
+     *            of the last valid commit frame.
+     * @param pages
+     *            if not null, receives frame numbers of pages which are
+     *            written by valid committed frames.
+     * @return number of the last valid commit frame, or the last committed
+     *         frame of the index if there is none.
+     * @throws SqlJetException
+     */
+    private int scanFrames(@Nonnull int[] cksum, Map<Integer, Integer> pages) throws SqlJetException {
+        final int frameSize = WAL_FRAME_HDRSIZE + pageSize;
+        final long size = fd.fileSize();
+        final ISqlJetMemoryPointer frame = SqlJetUtility.memoryManager.allocatePtr(frameSize);
+        final Map<Integer, Integer> scanned = new HashMap<>();
+        final int[] running = new int[] { cksum[0], cksum[1] };
+        int lastCommit = mxFrame;
+
+        for (int iFrame = mxFrame + 1; frameOffset(iFrame) + frameSize <= size; iFrame++) {
+            fd.read(frame, frameSize, frameOffset(iFrame));
+            if (frame.getInt(8) != salt1 || frame.getInt(12) != salt2) {
+                break;
+            }
+            checksum(frame, 0, 8, running);
+            checksum(frame, WAL_FRAME_HDRSIZE, pageSize, running);
+            if (frame.getInt(16) != running[0] || frame.getInt(20) != running[1]) {
+                break;
+            }
+            scanned.put(Integer.valueOf(frame.getInt(0)), Integer.valueOf(iFrame));
+            if (frame.getInt(4) != 0) {
+                if (pages != null) {
+                    pages.putAll(scanned);
+                }
+                scanned.clear();
+                lastCommit = iFrame;
+                cksum[0] = running[0];
+                cksum[1] = running[1];
+            }
+        }
+        return lastCommit;
+    }
+
+    private void clearIndex() {
+        index.clear();
+        pending.clear();
+        mxFrame = 0;
+        nFrame = 0;
+        dbSize = 0;
+    }
+
+    private boolean readHeader() throws SqlJetException {
+        if (fd.fileSize() < WAL_HDRSIZE) {
+            return false;
+        }
+        final ISqlJetMemoryPointer header = SqlJetUtility.memoryManager.allocatePtr(WAL_HDRSIZE);
+        fd.read(header, WAL_HDRSIZE, 0);
+        final int magic = header.getInt(0);
+        if ((magic & 0xFFFFFFFE) != WAL_MAGIC || header.getInt(4) != WAL_FORMAT_VERSION) {
+            return false;
+        }
+        final int szPage = header.getInt(8);
+        if ((szPage & szPage - 1) != 0 || szPage < ISqlJetLimits.SQLJET_MIN_PAGE_SIZE
+                || szPage > ISqlJetLimits.SQLJET_MAX_PAGE_SIZE) {
+            return false;
+        }
+        final boolean bigEnd = (magic & 1) != 0;
+        final int[] cksum = new int[2];
+        checksum(bigEnd, header, 0, 24, cksum);
+        if (header.getInt(24) != cksum[0] || header.getInt(28) != cksum[1]) {
+            return false;
+        }
+        bigEndCksum = bigEnd;
+        pageSize = szPage;
+        ckptSeq = header.getInt(12);
+        salt1 = header.getInt(16);
+        salt2 = header.getInt(20);
+        headerCksum[0] = cksum[0];
+        headerCksum[1] = cksum[1];
+        hasHeader = true;
+        return true;
+    }
+
+    private void writeHeader(int szPage) throws SqlJetException {
+        if (fd == null) {
+            fd = fileSystem.open(walName, SqlJetFileType.WAL, SqlJetUtility.of(SqlJetFileOpenPermission.CREATE));
+        }
+        final ISqlJetMemoryPointer header = SqlJetUtility.memoryManager.allocatePtr(WAL_HDRSIZE);
+        /*
+         * Every new header gets new salt values so frames left from previous
+         * content of the log are never taken as valid.
+         */
+        salt1++;
+        salt2 = RND.nextInt();
+        bigEndCksum = true;
+        pageSize = szPage;
+        header.putInt(0, WAL_MAGIC | 1);
+        header.putInt(4, WAL_FORMAT_VERSION);
+        header.putInt(8, pageSize);
+        header.putInt(12, ckptSeq);
+        header.putInt(16, salt1);
+        header.putInt(20, salt2);
+        final int[] cksum = new int[2];
+        checksum(header, 0, 24, cksum);
+        header.putInt(24, cksum[0]);
+        header.putInt(28, cksum[1]);
+        fd.write(header, WAL_HDRSIZE, 0);
+        headerCksum[0] = commitCksum[0] = frameCksum[0] = cksum[0];
+        headerCksum[1] = commitCksum[1] = frameCksum[1] = cksum[1];
+        hasHeader = true;
+    }
+
+    private long frameOffset(int iFrame) {
+        return WAL_HDRSIZE + (long) (iFrame - 1) * (WAL_FRAME_HDRSIZE + pageSize);
+    }
+
+    /**
+     * Looks for the frame which holds most recent content of page.
+     *
+     * @param pgno
+     * @return frame number or zero if page isn't in the log.
+     */
+    public int findFrame(int pgno) {
+        Integer frame = pending.get(Integer.valueOf(pgno));
+        if (frame == null) {
+            frame = index.get(Integer.valueOf(pgno));
+        }
+        return frame != null ? frame.intValue() : 0;
+    }
+
+    /**
+     * Reads page content stored in the given frame.
+     *
+     * @param frame
+     * @param data
+     * @param amount
+     * @throws SqlJetException
+     */
+    public void readFrame(int frame, @Nonnull ISqlJetMemoryPointer data, int amount) throws SqlJetException {
+        assert frame > 0 && frame <= nFrame;
+        fd.read(data, Integer.min(amount, pageSize), frameOffset(frame) + WAL_FRAME_HDRSIZE);
+    }
+
+    /**
+     * Appends pages to the log. If commitSize isn't zero then last frame is
+     * marked as commit frame and the log is synced if requested.
+     *
+     * @param pages
+     *            pages to write, must not be empty.
+     * @param szPage
+     *            page size of database.
+     * @param commitSize
+     *            size of database in pages after commit, or zero.
+     * @param sync
+     *            sync log after commit.
+     * @throws SqlJetException
+     */
+    public void writeFrames(@Nonnull List<ISqlJetPage> pages, int szPage, int commitSize, boolean sync)
+            throws SqlJetException {
+        assert !pages.isEmpty();
+        if (nFrame == 0) {
+            writeHeader(szPage);
+        }
+        SqlJetAssert.assertTrue(szPage == pageSize, SqlJetErrorCode.MISUSE,
+                "Page size can't be changed while write-ahead log isn't empty");
+
+        final int frameSize = WAL_FRAME_HDRSIZE + pageSize;
+        final ISqlJetMemoryPointer frame = SqlJetUtility.memoryManager.allocatePtr(frameSize);
+        final int last = pages.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            final ISqlJetPage page = pages.get(i);
+            final int iFrame = nFrame + 1;
+            frame.putInt(0, page.getPageNumber());
+            frame.putInt(4, i == last ? commitSize : 0);
+            frame.putInt(8, salt1);
+            frame.putInt(12, salt2);
+            frame.copyFrom(WAL_FRAME_HDRSIZE, page.getData(), 0, pageSize);
+            final int[] cksum = new int[] { frameCksum[0], frameCksum[1] };
+            checksum(frame, 0, 8, cksum);
+            checksum(frame, WAL_FRAME_HDRSIZE, pageSize, cksum);
+            frame.putInt(16, cksum[0]);
+            frame.putInt(20, cksum[1]);
+            fd.write(frame, frameSize, frameOffset(iFrame));
+            frameCksum[0] = cksum[0];
+            frameCksum[1] = cksum[1];
+            nFrame = iFrame;
+            pending.put(Integer.valueOf(page.getPageNumber()), Integer.valueOf(iFrame));
+        }
+
+        if (commitSize != 0) {
+            if (sync) {
+                fd.sync();
+            }
+            index.putAll(pending);
+            pending.clear();
+            mxFrame = nFrame;
+            dbSize = commitSize;
+            commitCksum[0] = frameCksum[0];
+            commitCksum[1] = frameCksum[1];
+        }
+    }
+
+    /**
+     * Forgets all frames written after last commit.
+     */
+    public void undo() {
+        pending.clear();
+        nFrame = mxFrame;
+        frameCksum[0] = commitCksum[0];
+        frameCksum[1] = commitCksum[1];
+    }
+
+    /**
+     * Copies all committed pages from the log back into the database file and
+     * restarts the log. Caller must hold an EXCLUSIVE lock on the database.
+     *
+     * @param db
+     *            database file.
+     * @param sync
+     *            sync database file before restarting the log.
+     * @throws SqlJetException
+     */
+    public void checkpoint(@Nonnull ISqlJetFile db, boolean sync) throws SqlJetException {
+        assert pending.isEmpty();
+        if (mxFrame == 0) {
+            return;
+        }
+        final ISqlJetMemoryPointer data = SqlJetUtility.memoryManager.allocatePtr(pageSize);
+        for (Map.Entry<Integer, Integer> e : new TreeMap<>(index).entrySet()) {
+            final int pgno = e.getKey().intValue();
+            if (pgno <= dbSize) {
+                readFrame(e.getValue().intValue(), data, pageSize);
+                db.write(data, pageSize, (long) (pgno - 1) * pageSize);
+            }
+        }
+        db.truncate((long) dbSize * pageSize);
+        if (sync) {
+            db.sync();
+        }
+
+        /* Restart the log, new header is written with the next frame. */
+        ckptSeq++;
+        hasHeader = false;
+        clearIndex();
+        fd.truncate(0);
+        if (sync) {
+            fd.sync();
+        }
+    }
+
+    /**
+     * Closes the log file.
+     *
+     * @param delete
+     *            delete log file after closing.
+     * @throws SqlJetException
+     */
+    public void close(boolean delete) throws SqlJetException {
+        if (fd != null) {
+            try {
+                fd.close();
+            } finally {
+                fd = null;
+                hasHeader = false;
+                clearIndex();
+            }
+        }
+        if (delete) {
+            fileSystem.delete(walName, false);
+        }
+    }
+
+    private void checksum(@Nonnull ISqlJetMemoryPointer data, int offset, int length, int[] cksum) {
+        checksum(bigEndCksum, data, offset, length, cksum);
+    }
+
+    /**
+     * Computes the Fibonacci-weighted checksum used by log headers and frames,
+     * continuing from the values passed in cksum.
+     */
+    static void checksum(boolean bigEnd, @Nonnull ISqlJetMemoryPointer data, int offset, int length,
+            int[] cksum) {
+        assert (length & 7) == 0;
+        int s1 = cksum[0];
+        int s2 = cksum[1];
+        for (int i = offset; i < offset + length; i += 8) {
+            int x1 = data.getInt(i);
+            int x2 = data.getInt(i + 4);
+            if (!bigEnd) {
+                x1 = Integer.reverseBytes(x1);
+                x2 = Integer.reverseBytes(x2);
+            }
+            s1 += x1 + s2;
+            s2 += x2 + s1;
+        }
+        cksum[0] = s1;
+        cksum[1] = s2;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.tmatesoft.sqljet.core.internal.table;
 
+import java.util.Iterator;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -71,6 +72,19 @@ public interface ISqlJetBtreeDataTable extends ISqlJetBtreeTable {
      */
     long getRowId() throws SqlJetException;
 
+    /**
+     * Get values of some fields of current row. Only these fields are read
+     * from record, so other fields of wide rows cost nothing, even if they are
+     * stored on overflow pages.
+     * 
+     * @param fields
+     *            numbers of fields, negative number stands for ROWID.
+     * @return values of fields in the same order.
+     * @throws SqlJetException
+     */
+    @Nonnull
+    Object[] getValues(@Nonnull int[] fields) throws SqlJetException;
+
     /**
      * Write an new entry into the table.
      * 
@@ -163,6 +177,19 @@ public interface ISqlJetBtreeDataTable extends ISqlJetBtreeTable {
      */
     long insertWithRowId(SqlJetConflictAction onConflict, long rowId, @Nonnull Object[] values) throws SqlJetException;
 
+    /**
+     * Inserts rows sorted by rowid into empty table. Pages of table are built
+     * bottom-up by {@link org.tmatesoft.sqljet.core.internal.ISqlJetBtreeLoader}.
+     * If table isn't empty then rows are inserted one by one.
+     *
+     * @param rows
+     *            values of rows, in the same form as for
+     *            {@link #insert(SqlJetConflictAction, Object...)}.
+     * @return number of inserted rows.
+     * @throws SqlJetException
+     */
+    long bulkLoad(@Nonnull Iterator<Object[]> rows) throws SqlJetException;
+
     /**
      * @param indexName
      * @return
@@ -20,6 +20,7 @@ package org.tmatesoft.sqljet.core.internal.table;
 import javax.annotation.Nonnull;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 
 /**
  * 
@@ -101,4 +102,37 @@ public interface ISqlJetBtreeIndexTable extends ISqlJetBtreeTable {
      */
     int compareKeys(@Nonnull Object[] firstKey, @Nonnull Object[] lastKey) throws SqlJetException;
 
+    /**
+     * Creates sorter for entries of this index.
+     *
+     * @param memoryLimit
+     *            memory in bytes for entries which are sorted in memory.
+     * @return sorter which should be closed by caller.
+     */
+    @Nonnull
+    SqlJetRecordSorter openSorter(long memoryLimit);
+
+    /**
+     * Encodes entry of the index as it is stored in b-tree.
+     *
+     * @param rowId
+     * @param key
+     * @return record of key values followed by rowId.
+     * @throws SqlJetException
+     */
+    @Nonnull
+    ISqlJetMemoryPointer getEntry(long rowId, Object... key) throws SqlJetException;
+
+    /**
+     * Builds empty index bottom-up from sorted entries.
+     *
+     * @param sorter
+     *            sorter with all entries of the index.
+     * @param unique
+     *            if true then entries with equal keys without NULL values are
+     *            rejected.
+     * @throws SqlJetException
+     */
+    void load(@Nonnull SqlJetRecordSorter sorter, boolean unique) throws SqlJetException;
+
 }
\ No newline at end of file
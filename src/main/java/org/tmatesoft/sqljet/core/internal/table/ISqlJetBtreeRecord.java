@@ -24,7 +24,8 @@ import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
 
 /**
  * Parses current record in {@link ISqlJetBtreeCursor} and allow acces to
- * fields.
+ * fields. Fields of record which is read from cursor may be decoded when they
+ * are accessed, so such record is valid only until cursor moves.
  * 
  * @author TMate Software Ltd.
  * @author Sergey Scherbina (sergey.scherbina@gmail.com)
@@ -39,8 +40,9 @@ public interface ISqlJetBtreeRecord {
 
     /**
      * @return
+     * @throws SqlJetException
      */
-    ISqlJetMemoryPointer getRawRecord();
+    ISqlJetMemoryPointer getRawRecord() throws SqlJetException;
 
     /**
      * @param field
@@ -52,16 +54,18 @@ public interface ISqlJetBtreeRecord {
     /**
      * @param field
      * @return
+     * @throws SqlJetException
      */
-    long getIntField(int field);
+    long getIntField(int field) throws SqlJetException;
 
     /**
      * @param field
      * @return
+     * @throws SqlJetException
      */
-    double getRealField(int field);
+    double getRealField(int field) throws SqlJetException;
 
-    ISqlJetVdbeMem getRawField(int field);
+    ISqlJetVdbeMem getRawField(int field) throws SqlJetException;
 
-    ISqlJetVdbeMem getLastRawField();
+    ISqlJetVdbeMem getLastRawField() throws SqlJetException;
 }
\ No newline at end of file
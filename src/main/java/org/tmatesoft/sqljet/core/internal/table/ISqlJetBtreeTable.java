@@ -230,6 +230,30 @@ public interface ISqlJetBtreeTable {
      */
     long getKeySize() throws SqlJetException;
 
+    /**
+     * Counts entries of b-tree reading only page headers.
+     *
+     * @return number of entries in b-tree.
+     * @throws SqlJetException
+     */
+    long count() throws SqlJetException;
+
+    /**
+     * Moves to entry of b-tree by its position in key order.
+     *
+     * @param position
+     *            zero-based position of entry.
+     * @return true if entry exists, false if position is out of range.
+     * @throws SqlJetException
+     */
+    boolean moveToPosition(long position) throws SqlJetException;
+
+    /**
+     * @return zero-based position of current entry in key order.
+     * @throws SqlJetException
+     */
+    long getPosition() throws SqlJetException;
+
     /**
      * @param prev
      * @return
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -29,13 +30,14 @@ import java.util.TreeMap;
 
 import javax.annotation.Nonnull;
 
-import org.tmatesoft.sqljet.core.SqlJetEncoding;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeLoader;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtreeLoader;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetTableDef;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
 import org.tmatesoft.sqljet.core.schema.ISqlJetColumnConstraint;
@@ -333,11 +335,8 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
      * @throws SqlJetException
      */
     private long locateSequence() throws SqlJetException {
-        for (sequenceTable.first(); !sequenceTable.eof(); sequenceTable.next()) {
-            final String s = sequenceTable.getString(0);
-            if (null != s && tableDef.getName().equalsIgnoreCase(s)) {
-                return updateSequence();
-            }
+        if (openSequence()) {
+            return updateSequence();
         }
         final long newRowId = super.newRowId();
         sequenceTable.insert(null, tableDef.getName(), Long.valueOf(newRowId));
@@ -355,6 +354,127 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
         return newRowId;
     }
 
+    /**
+     * Encodes row as record of table. Column which is alias of rowid is stored
+     * as NULL. Record is valid until next encoding by this table.
+     */
+    private @Nonnull ISqlJetMemoryPointer getRawRecord(final long rowId, @Nonnull Object[] row)
+            throws SqlJetException {
+        if (!tableDef.isRowIdPrimaryKey()) {
+            return getEncoder().encode(row);
+        }
+        final int primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
+        if (primaryKeyColumnNumber == -1 || primaryKeyColumnNumber >= row.length) {
+            throw new SqlJetException(SqlJetErrorCode.ERROR);
+        }
+        row[primaryKeyColumnNumber] = null;
+        final ISqlJetMemoryPointer pData = getEncoder().encode(row);
+        row[primaryKeyColumnNumber] = Long.valueOf(rowId);
+        return pData;
+    }
+
+    @Override
+    public long bulkLoad(@Nonnull Iterator<Object[]> rows) throws SqlJetException {
+        if (first()) {
+            long count = 0;
+            while (rows.hasNext()) {
+                insert(null, rows.next());
+                count++;
+            }
+            return count;
+        }
+        final Map<String, SqlJetRecordSorter> sorters = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try {
+            /* Indexes share memory of sorter. */
+            final long memoryLimit = SqlJetRecordSorter.SQLJET_SORTER_MEMORY / Math.max(1, indexesTables.size());
+            for (final Map.Entry<String, ISqlJetBtreeIndexTable> index : indexesTables.entrySet()) {
+                sorters.put(index.getKey(), index.getValue().openSorter(memoryLimit));
+            }
+            final long count;
+            long lastRowId = getSequence();
+            try (ISqlJetBtreeLoader loader = btree.getLoader(rootPage, null, SqlJetBtreeLoader.SQLJET_FILL_FACTOR)) {
+                while (rows.hasNext()) {
+                    final Object[] values = rows.next();
+                    final Object[] row = getValuesRowForInsert(values);
+                    adjustRowIdPosition(values, row);
+                    long rowId = getRowIdForRow(row, false);
+                    if (rowId == 0) {
+                        rowId = lastRowId + 1;
+                        if (tableDef.isRowIdPrimaryKey()) {
+                            final String column = tableDef.getRowIdPrimaryKeyColumnName();
+                            row[tableDef.getColumnNumber(column)] = Long.valueOf(rowId);
+                        }
+                    }
+                    checkNotNull(null, row);
+                    for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+                        final ISqlJetBtreeIndexTable indexTable = indexesTables.get(indexDef.getName());
+                        final Object[] key = getKeyForIndex(row, indexDef);
+                        sorters.get(indexDef.getName()).add(indexTable.getEntry(rowId, key));
+                    }
+                    final ISqlJetMemoryPointer pData = getRawRecord(rowId, row);
+                    loader.append(null, rowId, pData, pData.remaining());
+                    lastRowId = rowId;
+                }
+                count = loader.finish();
+            }
+            /* Indexes are empty as the table was, so they are built from sorted entries. */
+            for (final ISqlJetIndexDef indexDef : indexesDefs.values()) {
+                indexesTables.get(indexDef.getName()).load(sorters.get(indexDef.getName()), isUniqueIndex(indexDef));
+            }
+            putSequence(lastRowId);
+            first();
+            return count;
+        } finally {
+            for (final SqlJetRecordSorter sorter : sorters.values()) {
+                sorter.close();
+            }
+        }
+    }
+
+    /**
+     * @return last value of autoincrement sequence of this table, or 0.
+     */
+    private long getSequence() throws SqlJetException {
+        if (!tableDef.isAutoincremented() || !openSequence()) {
+            return 0;
+        }
+        return sequenceTable.getInteger(1);
+    }
+
+    private void putSequence(long rowId) throws SqlJetException {
+        if (!tableDef.isAutoincremented()) {
+            return;
+        }
+        if (openSequence()) {
+            if (sequenceTable.getInteger(1) < rowId) {
+                sequenceTable.updateCurrent(null, tableDef.getName(), Long.valueOf(rowId));
+            }
+        } else if (null != sequenceTable) {
+            sequenceTable.insert(null, tableDef.getName(), Long.valueOf(rowId));
+        }
+    }
+
+    /**
+     * Moves sequence table to the entry of this table.
+     *
+     * @return false if there is no such entry.
+     */
+    private boolean openSequence() throws SqlJetException {
+        if (null == sequenceTable) {
+            sequenceTable = btree.getSchema().openSequenceTable();
+            if (null == sequenceTable) {
+                return false;
+            }
+        }
+        for (sequenceTable.first(); !sequenceTable.eof(); sequenceTable.next()) {
+            final String s = sequenceTable.getString(0);
+            if (null != s && tableDef.getName().equalsIgnoreCase(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * @param row
      * @return
@@ -362,21 +482,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
      */
     private void doInsert(SqlJetConflictAction onConflict, final long rowId, @Nonnull Object[] row)
             throws SqlJetException {
-        final ISqlJetMemoryPointer pData;
-        final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
-        if (!tableDef.isRowIdPrimaryKey()) {
-            ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, row);
-            pData = rec.getRawRecord();
-        } else {
-            final int primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
-            if (primaryKeyColumnNumber == -1 || primaryKeyColumnNumber >= row.length) {
-                throw new SqlJetException(SqlJetErrorCode.ERROR);
-            }
-            row[primaryKeyColumnNumber] = null;
-            ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, row);
-            pData = rec.getRawRecord();
-            row[primaryKeyColumnNumber] = Long.valueOf(rowId);
-        }
+        final ISqlJetMemoryPointer pData = getRawRecord(rowId, row);
         if (doActionWithIndexes(Action.INSERT, onConflict, rowId, row)) {
             getCursor().insert(null, rowId, pData, pData.remaining(), 0, true);
             goToRow(rowId);
@@ -442,21 +548,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             return;
         }
 
-        final ISqlJetMemoryPointer pData;
-        final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
-        if (!tableDef.isRowIdPrimaryKey()) {
-            final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, rowCompleted);
-            pData = rec.getRawRecord();
-        } else {
-            final int primaryKeyColumnNumber = tableDef.getColumnNumber(tableDef.getRowIdPrimaryKeyColumnName());
-            if (primaryKeyColumnNumber == -1 || primaryKeyColumnNumber >= rowCompleted.length) {
-                throw new SqlJetException(SqlJetErrorCode.ERROR);
-            }
-            rowCompleted[primaryKeyColumnNumber] = null;
-            final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(encoding, rowCompleted);
-            pData = rec.getRawRecord();
-            rowCompleted[primaryKeyColumnNumber] = Long.valueOf(newRowId);
-        }
+        final ISqlJetMemoryPointer pData = getRawRecord(newRowId, rowCompleted);
         if (doActionWithIndexes(Action.UPDATE, onConflict, newRowId, rowCompleted)) {
             final boolean changeRowId = newRowId != currentRowId;
             if (changeRowId) {
@@ -585,16 +677,8 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
             }
         }
 
-        if (Action.DELETE != action && hasNull(row)) {
-            for (ISqlJetColumnDef column : tableDef.getNotNullColumns()) {
-                final String name = column.getName();
-                final int index = column.getIndex();
-                if (row.length < index || null == row[index]) {
-                    if (SqlJetConflictAction.IGNORE != onConflict) {
-                        throw new SqlJetException(String.format("Field '%s' must be not NULL", name));
-                    }
-                }
-            }
+        if (Action.DELETE != action) {
+            checkNotNull(onConflict, row);
         }
 
         class IndexKeys {
@@ -626,8 +710,7 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
 
             // check unique indexes
             if (Action.DELETE != action && key != null && !hasNull(key)) {
-                if (indexDef.isUnique() || tableDef.getColumnIndexConstraint(indexDef.getName()) != null
-                        || tableDef.getTableIndexConstraint(indexDef.getName()) != null) {
+                if (isUniqueIndex(indexDef)) {
                     final long lookup = indexTable.lookup(key);
                     if (lookup != 0) {
                         if (Action.INSERT == action) {
@@ -675,6 +758,29 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
         return true;
     }
 
+    private void checkNotNull(SqlJetConflictAction onConflict, Object[] row) throws SqlJetException {
+        if (hasNull(row)) {
+            for (ISqlJetColumnDef column : tableDef.getNotNullColumns()) {
+                final String name = column.getName();
+                final int index = column.getIndex();
+                if (row.length < index || null == row[index]) {
+                    if (SqlJetConflictAction.IGNORE != onConflict) {
+                        throw new SqlJetException(String.format("Field '%s' must be not NULL", name));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if index is declared as unique or backs UNIQUE or PRIMARY
+     *         KEY constraint of the table.
+     */
+    boolean isUniqueIndex(ISqlJetIndexDef indexDef) {
+        return indexDef.isUnique() || tableDef.getColumnIndexConstraint(indexDef.getName()) != null
+                || tableDef.getTableIndexConstraint(indexDef.getName()) != null;
+    }
+
     /**
      * @param row
      * @return
@@ -849,6 +955,15 @@ public class SqlJetBtreeDataTable extends SqlJetBtreeTable implements ISqlJetBtr
         }
     }
 
+    @Override
+    public @Nonnull Object[] getValues(@Nonnull int[] fields) throws SqlJetException {
+        final Object[] values = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = fields[i] < 0 ? Long.valueOf(getRowId()) : getValue(fields[i]);
+        }
+        return values;
+    }
+
     @Override
     public boolean isIndexExists(String indexName) {
         return null == indexName || getIndexDefinitions().containsKey(indexName);
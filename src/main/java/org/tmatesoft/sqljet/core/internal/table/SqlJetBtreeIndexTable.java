@@ -21,17 +21,18 @@ import java.util.Set;
 
 import javax.annotation.Nonnull;
 
-import org.tmatesoft.sqljet.core.SqlJetEncoding;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeLoader;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
 import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
 import org.tmatesoft.sqljet.core.internal.SqlJetUnpackedRecordFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtreeLoader;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetVarintResult32;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetBaseIndexDef;
-import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetKeyInfo;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetUnpackedRecord;
 import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
@@ -94,9 +95,7 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
      * @throws SqlJetException
      */
     private long lookupSafe(boolean near, boolean last, @Nonnull Object... values) throws SqlJetException {
-        final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
-        ISqlJetBtreeRecord key = SqlJetBtreeRecord.getRecord(encoding, values);
-        final ISqlJetMemoryPointer k = key.getRawRecord();
+        final ISqlJetMemoryPointer k = getEncoder().encode(values);
         final int moved = cursorMoveTo(k, last);
         if (moved != 0) {
             if (!last) {
@@ -155,11 +154,8 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
 
     @Override
     public int compareKeys(@Nonnull Object[] firstKey, @Nonnull Object[] lastKey) throws SqlJetException {
-        final SqlJetEncoding encoding = btree.getDb().getOptions().getEncoding();
-        final ISqlJetBtreeRecord first = SqlJetBtreeRecord.getRecord(encoding, firstKey);
-        final ISqlJetBtreeRecord last = SqlJetBtreeRecord.getRecord(encoding, lastKey);
-        final ISqlJetMemoryPointer firstRec = first.getRawRecord();
-        final ISqlJetMemoryPointer lastRec = last.getRawRecord();
+        final ISqlJetMemoryPointer firstRec = copy(getEncoder().encode(firstKey));
+        final ISqlJetMemoryPointer lastRec = getEncoder().encode(lastKey);
         final SqlJetUnpackedRecord unpacked = getKeyInfo().recordUnpack(firstRec.remaining(), firstRec);
         unpacked.getFlags().add(SqlJetUnpackedRecordFlags.PREFIX_MATCH);
         return unpacked.recordCompare(lastRec.remaining(), lastRec);
@@ -196,9 +192,7 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
      */
     @Override
     public void insert(long rowId, boolean append, Object... key) throws SqlJetException {
-        final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(btree.getDb().getOptions().getEncoding(),
-                SqlJetUtility.addValueToArray(key, Long.valueOf(rowId)));
-        final ISqlJetMemoryPointer zKey = rec.getRawRecord();
+        final ISqlJetMemoryPointer zKey = getEncoder().encode(key, rowId);
         getCursor().insert(zKey, zKey.remaining(), SqlJetUtility.memoryManager.allocatePtr(0), 0, 0, append);
         clearRecordCache();
     }
@@ -212,8 +206,7 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
      */
     @Override
     public boolean delete(long rowId, @Nonnull Object... key) throws SqlJetException {
-        final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(btree.getDb().getOptions().getEncoding(), key);
-        final ISqlJetMemoryPointer k = rec.getRawRecord();
+        final ISqlJetMemoryPointer k = getEncoder().encode(key);
         if (cursorMoveTo(k, false) < 0) {
             next();
         }
@@ -237,7 +230,7 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
         return false;
     }
 
-    private long getKeyRowId(ISqlJetBtreeRecord record) {
+    private long getKeyRowId(ISqlJetBtreeRecord record) throws SqlJetException {
         if (null == record) {
             return 0;
         }
@@ -250,30 +243,99 @@ public class SqlJetBtreeIndexTable extends SqlJetBtreeTable implements ISqlJetBt
         return getKeyRowId(getRecord());
     }
 
+    @Override
+    public @Nonnull ISqlJetMemoryPointer getEntry(long rowId, Object... key) throws SqlJetException {
+        return copy(getEncoder().encode(key, rowId));
+    }
+
+    private static @Nonnull ISqlJetMemoryPointer copy(@Nonnull ISqlJetMemoryPointer record) {
+        final ISqlJetMemoryPointer copy = SqlJetUtility.memoryManager.allocatePtr(record.remaining());
+        copy.copyFrom(record, record.remaining());
+        return copy;
+    }
+
     /**
+     * Rebuilds index from its table: entries are sorted in memory or by
+     * merge of sorted runs, and index b-tree is built bottom-up.
+     * 
      * @throws SqlJetException
      * 
      */
     public void reindex() throws SqlJetException {
+        reindex(SqlJetRecordSorter.SQLJET_SORTER_MEMORY);
+    }
+
+    /**
+     * @param memoryLimit
+     *            memory in bytes for entries which are sorted in memory.
+     * @throws SqlJetException
+     */
+    public void reindex(long memoryLimit) throws SqlJetException {
         btree.clearTable(rootPage, null);
-        final SqlJetBtreeDataTable dataTable = new SqlJetBtreeDataTable(btree, indexDef.getTableName(), false);
-        try {
-            for (dataTable.first(); !dataTable.eof(); dataTable.next()) {
-                final Object[] key = dataTable.getKeyForIndex(dataTable.getValues(), indexDef);
-                insert(dataTable.getRowId(), true, key);
+        clearRecordCache();
+        try (SqlJetRecordSorter sorter = openSorter(memoryLimit)) {
+            final boolean unique;
+            final SqlJetBtreeDataTable dataTable = new SqlJetBtreeDataTable(btree, indexDef.getTableName(), false);
+            try {
+                unique = dataTable.isUniqueIndex(indexDef);
+                for (dataTable.first(); !dataTable.eof(); dataTable.next()) {
+                    final Object[] key = dataTable.getKeyForIndex(dataTable.getValues(), indexDef);
+                    sorter.add(getEntry(dataTable.getRowId(), key));
+                }
+            } finally {
+                dataTable.close();
             }
-        } finally {
-            dataTable.close();
+            load(sorter, unique);
         }
     }
 
+    @Override
+    public @Nonnull SqlJetRecordSorter openSorter(long memoryLimit) {
+        return new SqlJetRecordSorter(btree.getDb(), getKeyInfo(), memoryLimit);
+    }
+
+    @Override
+    public void load(@Nonnull SqlJetRecordSorter sorter, boolean unique) throws SqlJetException {
+        clearRecordCache();
+        /* Sorter returns entries in order, so loader doesn't check it. */
+        try (ISqlJetBtreeLoader loader = btree.getLoader(rootPage, null, SqlJetBtreeLoader.SQLJET_FILL_FACTOR)) {
+            sorter.sort();
+            ISqlJetMemoryPointer prev = null;
+            for (ISqlJetMemoryPointer entry = sorter.next(); entry != null; entry = sorter.next()) {
+                if (unique && prev != null && keyCompare(prev, entry) == 0 && !hasNullKey(entry)) {
+                    throw new SqlJetException(SqlJetErrorCode.CONSTRAINT,
+                            "Insert fails: unique index " + indexDef.getName());
+                }
+                loader.append(entry, entry.remaining(), null, 0);
+                prev = entry;
+            }
+            loader.finish();
+        }
+    }
+
+    /**
+     * @return true if some of key values in index entry is NULL.
+     */
+    private boolean hasNullKey(ISqlJetMemoryPointer entry) {
+        final long header = entry.getVarint32Packed(0);
+        final int szHdr = SqlJetVarintResult32.getPackedValue(header);
+        int offset = SqlJetVarintResult32.getPackedOffset(header);
+        for (int i = 0; i < getKeyInfo().getNField() && offset < szHdr; i++) {
+            final long type = entry.getVarint32Packed(offset);
+            if (SqlJetVarintResult32.getPackedValue(type) == 0) {
+                return true;
+            }
+            offset += SqlJetVarintResult32.getPackedOffset(type);
+        }
+        return false;
+    }
+
     @Override
     public int compareKey(@Nonnull Object[] key) throws SqlJetException {
         if (eof()) {
             return 1;
         }
-        final ISqlJetBtreeRecord rec = SqlJetBtreeRecord.getRecord(btree.getDb().getOptions().getEncoding(), key);
-        final ISqlJetMemoryPointer keyRecord = rec.getRawRecord();
+        final ISqlJetMemoryPointer keyRecord = getEncoder().encode(key);
         return keyCompare(keyRecord, getRecord().getRawRecord());
     }
 
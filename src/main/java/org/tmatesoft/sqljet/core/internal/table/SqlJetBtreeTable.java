@@ -31,6 +31,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
 import org.tmatesoft.sqljet.core.internal.SqlJetBtreeTableCreateFlags;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
 import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetKeyInfo;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetRecordEncoder;
 
 /**
  * @author TMate Software Ltd.
@@ -50,6 +51,8 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
     private SqlJetBtreeRecord recordCache;
     private Object[] valuesCache;
 
+    private SqlJetRecordEncoder encoder;
+
     private final Stack<State> states;
 
     protected static class State {
@@ -153,7 +156,12 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
 
     @Override
     public boolean hasMoved() throws SqlJetException {
-        return getCursor().cursorHasMoved();
+        final boolean moved = getCursor().cursorHasMoved();
+        if (moved || recordCache != null && !recordCache.isAtCursor()) {
+            /* Cursor was restored, cached record could belong to other entry. */
+            clearRecordCache();
+        }
+        return moved;
     }
 
     @Override
@@ -198,6 +206,19 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
         return getCursor().getCursorDb().getOptions().getEncoding();
     }
 
+    /**
+     * @return encoder of records which is reused by all inserts and lookups
+     *         of this table. Record encoded by it is valid until next
+     *         encoding.
+     * @throws SqlJetException
+     */
+    protected @Nonnull SqlJetRecordEncoder getEncoder() throws SqlJetException {
+        if (null == encoder) {
+            encoder = new SqlJetRecordEncoder(getEncoding());
+        }
+        return encoder;
+    }
+
     protected static boolean checkField(ISqlJetBtreeRecord record, int field) throws SqlJetException {
         return field >= 0 && record != null && field < record.getFieldsCount();
     }
@@ -389,6 +410,22 @@ public class SqlJetBtreeTable implements ISqlJetBtreeTable {
         return getCursor().getKeySize();
     }
 
+    @Override
+    public long count() throws SqlJetException {
+        return getCursor().count();
+    }
+
+    @Override
+    public boolean moveToPosition(long position) throws SqlJetException {
+        clearRecordCache();
+        return getCursor().moveToPosition(position);
+    }
+
+    @Override
+    public long getPosition() throws SqlJetException {
+        return getCursor().getPosition();
+    }
+
     @Override
     public int moveTo(ISqlJetMemoryPointer pKey, long nKey, boolean bias) throws SqlJetException {
         clearRecordCache();
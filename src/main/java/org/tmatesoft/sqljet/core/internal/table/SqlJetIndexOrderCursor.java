@@ -119,6 +119,22 @@ public class SqlJetIndexOrderCursor extends SqlJetTableDataCursor implements ISq
         }
     }
 
+    @Override
+    protected boolean seekRowPosition(long position) throws SqlJetException {
+        if (indexTable == null) {
+            return super.seekRowPosition(position);
+        }
+        return indexTable.moveToPosition(position) && goTo(indexTable.getKeyRowId());
+    }
+
+    @Override
+    protected long getRowPosition() throws SqlJetException {
+        if (indexTable == null) {
+            return super.getRowPosition();
+        }
+        return indexTable.eof() ? -1 : indexTable.getPosition();
+    }
+
     @Override
     protected void computeRows(boolean current) throws SqlJetException {
         if (indexTable != null) {
@@ -80,6 +80,11 @@ public class SqlJetIndexScopeCursor extends SqlJetIndexOrderCursor {
         first();
     }
 
+    @Override
+    protected boolean isWholeTable() {
+        return false;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -0,0 +1,311 @@
+/**
+ * SqlJetRecordSorter.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeLoader;
+import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.ISqlJetKeyInfo;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+import org.tmatesoft.sqljet.core.internal.SqlJetBtreeFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetBtreeTableCreateFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
+
+/**
+ * External sort of index records. Records are collected in memory until their
+ * size reaches the limit, then they are sorted and written as a run into a
+ * temporary database, one table per run. When all records are added, runs are
+ * merged and records are returned in key order, so index b-tree can be built
+ * by {@link ISqlJetBtreeLoader}.
+ *
+ * Runs are written by the loader too, so every run is a sequence of pages
+ * which is read sequentially during merge. Temporary database is deleted when
+ * sorter is closed.
+ *
+ * Sort is stable: records which are equal by key are returned in order they
+ * were added.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetRecordSorter implements AutoCloseable {
+
+    /**
+     * Memory in bytes which sorter uses for records before it writes them to
+     * the temporary database.
+     */
+    public static final int SQLJET_SORTER_MEMORY = SqlJetUtility.getIntSysProp("SQLJET.SORTER_MEMORY",
+            16 * 1024 * 1024);
+
+    /** Approximate memory which is used by record besides its bytes. */
+    private static final int RECORD_OVERHEAD = 64;
+
+    private static final Set<SqlJetBtreeFlags> FLAGS = SqlJetUtility.of(SqlJetBtreeFlags.READWRITE,
+            SqlJetBtreeFlags.CREATE);
+    private static final Set<SqlJetFileOpenPermission> PERMISSIONS = SqlJetUtility
+            .of(SqlJetFileOpenPermission.CREATE);
+    private static final Set<SqlJetBtreeTableCreateFlags> RUN_FLAGS = SqlJetUtility
+            .of(SqlJetBtreeTableCreateFlags.INTKEY, SqlJetBtreeTableCreateFlags.LEAFDATA);
+
+    /**
+     * Sorted run in the temporary database and its current record.
+     */
+    private static class Run {
+        private final int index;
+        private final ISqlJetBtreeCursor cursor;
+        private ISqlJetMemoryPointer record;
+
+        private Run(int index, ISqlJetBtreeCursor cursor) {
+            this.index = index;
+            this.cursor = cursor;
+        }
+
+        private boolean read() throws SqlJetException {
+            if (cursor.eof()) {
+                record = null;
+                return false;
+            }
+            final int nData = cursor.getDataSize();
+            record = SqlJetUtility.memoryManager.allocatePtr(nData);
+            cursor.data(0, nData, record);
+            return true;
+        }
+    }
+
+    private final ISqlJetDbHandle db;
+    private final ISqlJetKeyInfo keyInfo;
+    private final long memoryLimit;
+
+    private List<ISqlJetMemoryPointer> records = new ArrayList<>();
+    private long memory;
+
+    private ISqlJetBtree temp;
+    private final List<Integer> runs = new ArrayList<>();
+
+    private boolean sorted;
+
+    /** Position of the next record in memory when nothing was written. */
+    private int position;
+
+    /** Runs which have records, ordered by their current records. */
+    private Run[] heads;
+    private int nHeads;
+
+    /**
+     * @param db
+     *            handle of database, its file system and mutex are used for
+     *            temporary database.
+     * @param keyInfo
+     *            comparator of records.
+     * @param memoryLimit
+     *            memory in bytes for records which are kept in memory.
+     */
+    public SqlJetRecordSorter(@Nonnull ISqlJetDbHandle db, @Nonnull ISqlJetKeyInfo keyInfo, long memoryLimit) {
+        this.db = db;
+        this.keyInfo = keyInfo;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Adds record to sort. Record isn't copied so it shouldn't be changed
+     * later.
+     *
+     * @param record
+     * @throws SqlJetException
+     */
+    public void add(@Nonnull ISqlJetMemoryPointer record) throws SqlJetException {
+        SqlJetAssert.assertFalse(sorted, SqlJetErrorCode.MISUSE);
+        records.add(record);
+        memory += record.remaining() + RECORD_OVERHEAD;
+        if (memory >= memoryLimit) {
+            writeRun();
+        }
+    }
+
+    /**
+     * @return number of runs written to the temporary database.
+     */
+    public int getRunsCount() {
+        return runs.size();
+    }
+
+    /**
+     * Finishes adding of records and prepares merge of runs.
+     *
+     * @throws SqlJetException
+     */
+    public void sort() throws SqlJetException {
+        SqlJetAssert.assertFalse(sorted, SqlJetErrorCode.MISUSE);
+        sorted = true;
+        if (runs.isEmpty()) {
+            sortRecords();
+            return;
+        }
+        if (!records.isEmpty()) {
+            writeRun();
+        }
+        heads = new Run[runs.size()];
+        for (int i = 0; i < runs.size(); i++) {
+            final ISqlJetBtreeCursor cursor = temp.getCursor(runs.get(i).intValue(), false, null);
+            cursor.first();
+            final Run run = new Run(i, cursor);
+            if (run.read()) {
+                putHead(run);
+            }
+        }
+    }
+
+    /**
+     * @return next record in key order or null if there are no more records.
+     * @throws SqlJetException
+     */
+    public ISqlJetMemoryPointer next() throws SqlJetException {
+        SqlJetAssert.assertTrue(sorted, SqlJetErrorCode.MISUSE);
+        if (heads == null) {
+            return position < records.size() ? records.get(position++) : null;
+        }
+        if (nHeads == 0) {
+            return null;
+        }
+        final Run run = heads[0];
+        final ISqlJetMemoryPointer record = run.record;
+        System.arraycopy(heads, 1, heads, 0, --nHeads);
+        heads[nHeads] = null;
+        run.cursor.next();
+        if (run.read()) {
+            putHead(run);
+        }
+        return record;
+    }
+
+    @Override
+    public void close() throws SqlJetException {
+        records = new ArrayList<>();
+        if (temp != null) {
+            try {
+                temp.close();
+            } finally {
+                temp = null;
+            }
+        }
+    }
+
+    private int compare(ISqlJetMemoryPointer a, ISqlJetMemoryPointer b) throws SqlJetException {
+        return keyInfo.recordUnpack(b.remaining(), b).recordCompare(a.remaining(), a);
+    }
+
+    /**
+     * Puts run among heads after all runs with lesser or equal records.
+     * Equal records are ordered by run, so earlier added record goes first.
+     */
+    private void putHead(Run run) throws SqlJetException {
+        int low = 0;
+        int high = nHeads;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int c = compare(heads[mid].record, run.record);
+            if (c < 0 || c == 0 && heads[mid].index < run.index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        System.arraycopy(heads, low, heads, low + 1, nHeads - low);
+        heads[low] = run;
+        nHeads++;
+    }
+
+    private void writeRun() throws SqlJetException {
+        sortRecords();
+        if (temp == null) {
+            final SqlJetDbHandle handle = new SqlJetDbHandle(db.getFileSystem());
+            handle.setMutex(db.getMutex());
+            temp = new SqlJetBtree(null, handle, FLAGS, SqlJetFileType.TEMP_DB, PERMISSIONS);
+            temp.beginTrans(SqlJetTransactionMode.WRITE);
+        }
+        final int run = temp.createTable(RUN_FLAGS);
+        try (ISqlJetBtreeLoader loader = temp.getLoader(run, null, 100)) {
+            long rowId = 0;
+            for (final ISqlJetMemoryPointer record : records) {
+                loader.append(null, ++rowId, record, record.remaining());
+            }
+            loader.finish();
+        }
+        runs.add(Integer.valueOf(run));
+        records = new ArrayList<>();
+        memory = 0;
+    }
+
+    private void sortRecords() throws SqlJetException {
+        final ISqlJetMemoryPointer[] a = records.toArray(new ISqlJetMemoryPointer[records.size()]);
+        mergeSort(a.clone(), a, 0, a.length);
+        records = new ArrayList<>(a.length);
+        for (final ISqlJetMemoryPointer record : a) {
+            records.add(record);
+        }
+    }
+
+    /**
+     * Stable merge sort of dest from low to high, src has the same content.
+     * Comparison of records may fail so Arrays.sort() isn't used.
+     */
+    private void mergeSort(ISqlJetMemoryPointer[] src, ISqlJetMemoryPointer[] dest, int low, int high)
+            throws SqlJetException {
+        if (high - low < 8) {
+            for (int i = low + 1; i < high; i++) {
+                for (int j = i; j > low && compare(dest[j - 1], dest[j]) > 0; j--) {
+                    final ISqlJetMemoryPointer t = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = t;
+                }
+            }
+            return;
+        }
+        final int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid);
+        mergeSort(dest, src, mid, high);
+        if (compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, high - low);
+            return;
+        }
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || p < mid && compare(src[p], src[q]) <= 0) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+}
@@ -75,12 +75,49 @@ public abstract class SqlJetRowNumCursor extends SqlJetCursor {
     public long getRowCount() throws SqlJetException {
 
         if (rowsCount < 0) {
-            computeRows(false);
+            if (isWholeTable()) {
+                rowsCount = db.read().asLong(db -> btreeTable.count());
+                if (limit > 0 && rowsCount > limit) {
+                    rowsCount = limit;
+                }
+            } else {
+                computeRows(false);
+            }
         }
 
         return rowsCount;
     }
 
+    /**
+     * @return true if cursor walks over all rows of table, so they could be
+     *         counted without walking over them.
+     */
+    protected boolean isWholeTable() {
+        return false;
+    }
+
+    /**
+     * Moves to row by its position, used only if {@link #isWholeTable()}.
+     *
+     * @param position
+     *            zero-based position of row.
+     * @return false if there is no such row.
+     * @throws SqlJetException
+     */
+    protected boolean seekRowPosition(long position) throws SqlJetException {
+        return btreeTable.moveToPosition(position);
+    }
+
+    /**
+     * Returns position of current row, used only if {@link #isWholeTable()}.
+     *
+     * @return zero-based position of current row or -1 at the end of table.
+     * @throws SqlJetException
+     */
+    protected long getRowPosition() throws SqlJetException {
+        return btreeTable.eof() ? -1 : btreeTable.getPosition();
+    }
+
     /**
      * @throws SqlJetException
      */
@@ -120,6 +157,17 @@ public abstract class SqlJetRowNumCursor extends SqlJetCursor {
     @Override
     public long getRowIndex() throws SqlJetException {
 
+        if (isWholeTable()) {
+            if (currentRowNum < 0 || currentRowId != getRowIdSafe()) {
+                db.read().asVoid(db -> {
+                    final long position = getRowPosition();
+                    currentRowNum = position < 0 ? getRowCount() : position + 1;
+                    currentRowId = getRowIdSafe();
+                });
+            }
+            return currentRowNum;
+        }
+
         if (currentRowNum < 0 || rowsCount < 0 && eof() || currentRowId != getRowIdSafe()) {
             computeRows(true);
         }
@@ -129,6 +177,16 @@ public abstract class SqlJetRowNumCursor extends SqlJetCursor {
 
     @Override
     public boolean goToRow(long rowNum) throws SqlJetException {
+        if (isWholeTable()) {
+            return db.read().asBool(db -> {
+                if (rowNum < 1 || limit > 0 && rowNum > limit || !seekRowPosition(rowNum - 1)) {
+                    return false;
+                }
+                currentRowNum = rowNum;
+                currentRowId = getRowIdSafe();
+                return true;
+            });
+        }
         try {
             internalMove = true;
 
@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal.table;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -109,6 +110,41 @@ public class SqlJetTable implements ISqlJetTable {
         return db.runWithLock(db -> new SqlJetTableDataCursor(new SqlJetBtreeDataTable(btree, tableName, write), db));
     }
 
+    @Override
+    public ISqlJetCursor open(String... columns) throws SqlJetException {
+        final int[] projection = getColumnNumbers(columns);
+        return db.runWithLock(
+                db -> new SqlJetTableDataCursor(new SqlJetBtreeDataTable(btree, tableName, write), db, projection));
+    }
+
+    private int[] getColumnNumbers(String... columns) throws SqlJetException {
+        if (columns == null || columns.length == 0) {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "No columns to read, use open() to read all columns");
+        }
+        final ISqlJetTableDef definition = getDefinition();
+        final int[] numbers = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (SqlJetBtreeDataTable.isFieldNameRowId(columns[i])) {
+                numbers[i] = -1;
+            } else if (columns[i] == null || (numbers[i] = definition.getColumnNumber(columns[i])) < 0) {
+                throw new SqlJetException(SqlJetErrorCode.MISUSE, "Field not found: " + columns[i]);
+            }
+        }
+        return numbers;
+    }
+
+    @Override
+    public long getRowCount() throws SqlJetException {
+        return db.read().asLong(db -> {
+            final ISqlJetBtreeDataTable table = new SqlJetBtreeDataTable(btree, tableName, false);
+            try {
+                return table.count();
+            } finally {
+                table.close();
+            }
+        });
+    }
+
     @Override
     public ISqlJetCursor lookup(final String indexName, final Object... key) throws SqlJetException {
         final Object[] k = SqlJetUtility.adjustNumberTypes(key);
@@ -162,6 +198,11 @@ public class SqlJetTable implements ISqlJetTable {
         return runWriteTransaction(table -> Long.valueOf(table.insertWithRowId(onConflict, rowId, values))).longValue();
     }
 
+    @Override
+    public long bulkLoad(@Nonnull Iterator<Object[]> rows) throws SqlJetException {
+        return runWriteTransaction(table -> Long.valueOf(table.bulkLoad(rows))).longValue();
+    }
+
     @Override
     public ISqlJetCursor order(final String indexName) throws SqlJetException {
         return db.runWithLock(db -> {
@@ -40,8 +40,16 @@ import org.tmatesoft.sqljet.core.table.SqlJetDb;
  */
 public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
 
+    /** Numbers of columns returned by {@link #getRowValues()}, or null for all of them. */
+    private final int[] projection;
+
     public SqlJetTableDataCursor(ISqlJetBtreeDataTable table, SqlJetDb db) throws SqlJetException {
+        this(table, db, null);
+    }
+
+    public SqlJetTableDataCursor(ISqlJetBtreeDataTable table, SqlJetDb db, int[] projection) throws SqlJetException {
         super(table, db);
+        this.projection = projection;
         super.first();
     }
 
@@ -49,6 +57,11 @@ public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
         return (ISqlJetBtreeDataTable) btreeTable;
     }
 
+    @Override
+    protected boolean isWholeTable() {
+        return true;
+    }
+
     @Override
     public long getRowId() throws SqlJetException {
         return db.read().asLong(db -> {
@@ -214,6 +227,9 @@ public class SqlJetTableDataCursor extends SqlJetRowNumCursor {
     @Override
     public @Nonnull Object[] getRowValues() throws SqlJetException {
         return db.read().as(db -> {
+            if (projection != null) {
+                return getBtreeDataTable().getValues(projection);
+            }
             Object[] values = getBtreeDataTable().getValues();
             return values.clone();
         });
@@ -20,6 +20,7 @@ package org.tmatesoft.sqljet.core.internal.vdbe;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -40,22 +41,65 @@ import org.tmatesoft.sqljet.core.table.ISqlJetOptions;
 /**
  * Implements {@link ISqlJetBtreeRecord}.
  * 
+ * Record which is read from cursor parses only header of the record, i.e.
+ * serial types and offsets of fields. Each field is decoded from the page
+ * when it is requested first time, so fields which aren't read (and their
+ * overflow pages) cost nothing. Fields are read from the current entry of
+ * the cursor, so the record should be dropped when the cursor moves.
+ * 
  * @author TMate Software Ltd.
  * @author Sergey Scherbina (sergey.scherbina@gmail.com)
  * 
  */
 public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
-    private final List<ISqlJetVdbeMem> fields;
+    private final ISqlJetVdbeMem[] fields;
     private final int fileFormat;
 
+    /* Fields below are used only by record which is read from cursor. */
+    private final ISqlJetBtreeCursor cursor;
+    private final boolean isIndex;
+    private final SqlJetEncoding encoding;
+    private final int[] types;
+    private final int[] offsets;
+    private final long payloadSize;
+
+    /** Rowid of table entry or payload size of index entry. */
+    private final long key;
+    private final long cellPosition;
+
     public SqlJetBtreeRecord(ISqlJetBtreeCursor cursor, boolean isIndex, int fileFormat) throws SqlJetException {
         this.fileFormat = fileFormat;
-        fields = read(cursor, isIndex);
+        this.cursor = cursor;
+        this.isIndex = isIndex;
+        this.encoding = cursor.getCursorDb().getOptions().getEncoding();
+        this.payloadSize = isIndex ? cursor.getKeySize() : cursor.getDataSize();
+        this.key = cursor.getKeySize();
+        this.cellPosition = cursor.getCellPosition();
+        final int[][] header = readHeader(cursor, isIndex, payloadSize);
+        this.types = header[0];
+        this.offsets = header[1];
+        this.fields = new ISqlJetVdbeMem[types.length];
+    }
+
+    private SqlJetBtreeRecord(List<ISqlJetVdbeMem> values, int fileFormat) {
+        this.fileFormat = fileFormat;
+        this.fields = values.toArray(new ISqlJetVdbeMem[values.size()]);
+        this.cursor = null;
+        this.isIndex = false;
+        this.encoding = null;
+        this.types = null;
+        this.offsets = null;
+        this.payloadSize = 0;
+        this.key = 0;
+        this.cellPosition = -1;
     }
 
-    private SqlJetBtreeRecord(List<ISqlJetVdbeMem> values) {
-        this.fileFormat = ISqlJetOptions.SQLJET_DEFAULT_FILE_FORMAT;
-        fields = values;
+    /**
+     * Record of values which are already in the database encoding, for
+     * example fields of another record.
+     */
+    public static @Nonnull ISqlJetBtreeRecord getRecord(@Nonnull List<ISqlJetVdbeMem> values, int fileFormat) {
+        return new SqlJetBtreeRecord(values, fileFormat);
     }
 
     public static @Nonnull ISqlJetBtreeRecord getRecord(@Nonnull SqlJetEncoding encoding, @Nonnull Object... values)
@@ -89,32 +133,25 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
             }
             fields.add(mem);
         }
-        return new SqlJetBtreeRecord(fields);
+        return new SqlJetBtreeRecord(fields, ISqlJetOptions.SQLJET_DEFAULT_FILE_FORMAT);
     }
 
     @Override
     public int getFieldsCount() {
-        return fields.size();
+        return fields.length;
     }
 
     /**
-     * Read and parse the table header. Store the results of the parse into the
-     * record header cache fields of the cursor.
+     * Read and parse the record header. Returns serial types of fields and
+     * offsets of their data from the beginning of the record.
      * 
      * @throws SqlJetException
      */
-    private static List<ISqlJetVdbeMem> read(ISqlJetBtreeCursor cursor, boolean isIndex) throws SqlJetException {
-        List<ISqlJetVdbeMem> result = new ArrayList<>();
-        /*
-         * This block sets the variable payloadSize to be the total number of
-         * bytes in the record.
-         */
-        long payloadSize = isIndex ? cursor.getKeySize()
-                : cursor.getDataSize(); /* Number of bytes in the record */
-
-        /* If payloadSize is 0, then just store a NULL */
+    private static int[][] readHeader(ISqlJetBtreeCursor cursor, boolean isIndex, long payloadSize)
+            throws SqlJetException {
+        /* If payloadSize is 0, then there are no fields */
         if (payloadSize == 0) {
-            return result;
+            return new int[][] { new int[0], new int[0] };
         }
 
         int[] avail = { 0 }; /* Number of bytes of available data */
@@ -128,9 +165,9 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
          * file has been corrupted externally.* assert( zRec!=0 ||
          * avail>=payloadSize || avail>=9 );
          */
-        SqlJetVarintResult32 res = zData.getVarint32();
-        int offset = res.getValue(); /* Offset into the data */
-        int szHdrSz = res.getOffset(); /*
+        final long res = zData.getVarint32Packed(0);
+        int offset = SqlJetVarintResult32.getPackedValue(res); /* Offset into the data */
+        int szHdrSz = SqlJetVarintResult32.getPackedOffset(res); /*
                                         * Size of the header size field at start
                                         * of record
                                         */
@@ -145,12 +182,8 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
         if (avail[0] < offset) {
             zData = SqlJetVdbeMemFactory.fromBtree(cursor, 0, offset, isIndex);
         }
-        // ISqlJetMemoryPointer zEndHdr = zData.pointer(offset); /* Pointer to
-        // first byte after the header */
-        int zEndHdr = zData.getAbsolute(
-                offset); /* Pointer to first byte after the header */
-        ISqlJetMemoryPointer zIdx = zData
-                .pointer(szHdrSz); /* Index into header */
+        final int zEndHdr = offset; /* Offset of first byte after the header */
+        int zIdx = szHdrSz; /* Offset of next type in header */
 
         /*
          * Scan the header and use it to fill in the aType[] and aOffset[]*
@@ -158,15 +191,16 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
          * and aOffset[i] will contain the offset from the beginning* of the
          * record to the start of the data for the i-th column
          */
-        for (int i = 0; i < ISqlJetLimits.SQLJET_MAX_COLUMN && zIdx.getPointer() < zEndHdr
-                && offset <= payloadSize; i++) {
-            int cOffset = offset;
-            SqlJetVarintResult32 res2 = zIdx.getVarint32();
-            int a = res2.getValue();
-            zIdx.movePointer(res2.getOffset());
+        int[] types = new int[Math.max(0, Math.min(offset - szHdrSz, ISqlJetLimits.SQLJET_MAX_COLUMN))];
+        int[] offsets = new int[types.length];
+        int n = 0;
+        for (; n < types.length && zIdx < zEndHdr && offset <= payloadSize; n++) {
+            final long res2 = zData.getVarint32Packed(zIdx);
+            int a = SqlJetVarintResult32.getPackedValue(res2);
+            zIdx += SqlJetVarintResult32.getPackedOffset(res2);
+            types[n] = a;
+            offsets[n] = offset;
             offset += SqlJetVdbeSerialType.serialTypeLen(a);
-
-            result.add(getField(cursor, isIndex, i, a, cOffset));
         }
 
         /*
@@ -176,11 +210,14 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
          * of the record (when all fields present), then we must be dealing*
          * with a corrupt database.
          */
-        if (zIdx.getPointer() > zEndHdr || offset > payloadSize
-                || zIdx.getPointer() == zEndHdr && offset != payloadSize) {
+        if (zIdx > zEndHdr || offset > payloadSize || zIdx == zEndHdr && offset != payloadSize) {
             throw new SqlJetException(SqlJetErrorCode.CORRUPT);
         }
-        return result;
+        if (n < types.length) {
+            types = Arrays.copyOf(types, n);
+            offsets = Arrays.copyOf(offsets, n);
+        }
+        return new int[][] { types, offsets };
     }
 
     /**
@@ -189,83 +226,67 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * Interpret the data that cursor P1 points to as a structure built using
      * the MakeRecord instruction. (See the MakeRecord opcode for additional
      * information about the format of the data.) Extract the P2-th column from
-     * this record. If there are less that (P2+1) values in the record, extract
-     * a NULL.
-     * 
-     * The value extracted is stored in register P3.
+     * this record.
      * 
-     * If the column contains fewer than P2 fields, then extract a NULL. Or, if
-     * the P4 argument is a P4_MEM use the value of the P4 argument as the
-     * result.
+     * Field is decoded once and only when it is requested, data of field is
+     * fetched from overflow pages only if the field is there.
      * 
-     * @param pCrsr
-     *            The BTree cursor
-     * @param fieldNum
+     * @param field
      *            column number to retrieve
-     * @param isIndex
-     *            True if an index containing keys only - no data
-     * @param aType
-     *            Type values for all entries in the record
-     * @param aOffset
-     *            Cached offsets to the start of each columns data
-     * @param pDest
      * @throws SqlJetException
      */
-    private static ISqlJetVdbeMem getField(ISqlJetBtreeCursor cursor, boolean isIndex, int column, int type, int offset)
-            throws SqlJetException {
-
-        long payloadSize; /* Number of bytes in the record */
-        int len; /* The length of the serialized data for the column */
-        /* For storing the record being decoded */
-        ISqlJetVdbeMem pDest = SqlJetVdbeMemFactory.getNull();
-
-        /*
-         * This block sets the variable payloadSize to be the total number of*
-         * bytes in the record.
-         */
-        if (isIndex) {
-            payloadSize = cursor.getKeySize();
-        } else {
-            payloadSize = cursor.getDataSize();
+    private ISqlJetVdbeMem getField(int field) throws SqlJetException {
+        ISqlJetVdbeMem pDest = fields[field];
+        if (pDest == null) {
+            checkPosition();
+            final int type = types[field];
+            final int len = SqlJetVdbeSerialType.serialTypeLen(type);
+            /* Blob keeps its bytes, so they must not point into the page. */
+            final boolean blob = type >= 12 && (type & 0x01) == 0;
+            final ISqlJetMemoryPointer z = SqlJetVdbeMemFactory.fromBtree(cursor, offsets[field], len, isIndex,
+                    blob);
+            pDest = SqlJetVdbeMemFactory.serialGet(z, type, encoding).getValue();
+            fields[field] = pDest;
         }
+        return pDest;
+    }
 
-        /* If payloadSize is 0, then just store a NULL */
-        if (payloadSize == 0) {
-            return pDest;
+    /**
+     * Fields which aren't decoded yet can be read only while cursor points to
+     * the same entry. Getting of key restores position of cursor if it was
+     * saved; entry is the same if it has the same rowid (or payload size for
+     * index) and is in the same cell.
+     */
+    private void checkPosition() throws SqlJetException {
+        if (!isAtCursor()) {
+            throw new SqlJetException(SqlJetErrorCode.ABORT, "Cursor has moved from the record");
         }
+    }
 
-        /*
-         * Get the column information. If aOffset[p2] is non-zero, then*
-         * deserialize the value from the record. If aOffset[p2] is zero,* then
-         * there are not enough fields in the record to satisfy the* request. In
-         * this case, set the value NULL or to P4 if P4 is* a pointer to a Mem
-         * object.
-         */
-        if (offset != 0) {
-            len = SqlJetVdbeSerialType.serialTypeLen(type);
-            ISqlJetMemoryPointer z = SqlJetVdbeMemFactory.fromBtree(cursor, offset, len, isIndex);
-            @Nonnull
-            SqlJetEncoding encoding = cursor.getCursorDb().getOptions().getEncoding();
-            pDest = SqlJetVdbeMemFactory.serialGet(z, type, encoding).getValue();
+    /**
+     * @return true if cursor still points to the entry of this record.
+     */
+    public boolean isAtCursor() throws SqlJetException {
+        if (cursor == null) {
+            return true;
         }
-
-        return pDest;
-
+        final long size = isIndex ? cursor.getKeySize() : cursor.getDataSize();
+        return cursor.getKeySize() == key && size == payloadSize && cursor.getCellPosition() == cellPosition;
     }
 
     @Override
     public String getStringField(int field) throws SqlJetException {
-        return fields.get(field).stringValue();
+        return getField(field).stringValue();
     }
 
     @Override
-    public long getIntField(int field) {
-        return fields.get(field).intValue();
+    public long getIntField(int field) throws SqlJetException {
+        return getField(field).intValue();
     }
 
     @Override
-    public double getRealField(int field) {
-        return fields.get(field).realValue();
+    public double getRealField(int field) throws SqlJetException {
+        return getField(field).realValue();
     }
 
     /**
@@ -288,9 +309,25 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
      * corresponding data element (see sqlite3VdbeSerialType()). The hdr-size
      * field is also a varint which is the offset from the beginning of the
      * record to data0.
+     * 
+     * Record which is read from cursor is copied as is, without decoding of
+     * its fields.
      */
     @Override
-    public ISqlJetMemoryPointer getRawRecord() {
+    public ISqlJetMemoryPointer getRawRecord() throws SqlJetException {
+        if (cursor != null) {
+            checkPosition();
+            final ISqlJetMemoryPointer zRecord = SqlJetUtility.memoryManager.allocatePtr((int) payloadSize);
+            if (payloadSize > 0) {
+                if (isIndex) {
+                    cursor.key(0, (int) payloadSize, zRecord);
+                } else {
+                    cursor.data(0, (int) payloadSize, zRecord);
+                }
+            }
+            return zRecord;
+        }
+
         int nData = 0; /* Number of bytes of data space */
         int nHdr = 0; /* Number of bytes of header space */
         int nByte = 0; /* Data space required for this record */
@@ -338,12 +375,12 @@ public class SqlJetBtreeRecord implements ISqlJetBtreeRecord {
     }
 
     @Override
-    public ISqlJetVdbeMem getRawField(int field) {
-        return fields.get(field);
+    public ISqlJetVdbeMem getRawField(int field) throws SqlJetException {
+        return getField(field);
     }
 
     @Override
-    public ISqlJetVdbeMem getLastRawField() {
-        return fields.isEmpty() ? null : fields.get(fields.size() - 1);
+    public ISqlJetVdbeMem getLastRawField() throws SqlJetException {
+        return fields.length == 0 ? null : getRawField(fields.length - 1);
     }
 }
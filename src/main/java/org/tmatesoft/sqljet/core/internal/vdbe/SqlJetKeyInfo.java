@@ -50,18 +50,20 @@ public class SqlJetKeyInfo implements ISqlJetKeyInfo {
     @Override
     public SqlJetUnpackedRecord recordUnpack(int nKey, ISqlJetMemoryPointer pKey) {
         List<ISqlJetVdbeMem> pMem = new ArrayList<>(this.aSortOrder.length + 1);
-        SqlJetVarintResult32 res = pKey.getVarint32();
-        int idx = res.getOffset();
-        int d = res.getValue();
+        final long res = pKey.getVarint32Packed(0);
+        final int szHdr = SqlJetVarintResult32.getPackedValue(res);
+        int idx = SqlJetVarintResult32.getPackedOffset(res);
+        int d = szHdr;
         int u = 0;
 
-        while (idx < res.getValue() && u < this.aSortOrder.length + 1) {
-            SqlJetVarintResult32 res2 = pKey.pointer(idx).getVarint32();
-            idx += res2.getOffset();
-            if (d >= nKey && SqlJetVdbeSerialType.serialTypeLen(res2.getValue()) > 0) {
+        while (idx < szHdr && u < this.aSortOrder.length + 1) {
+            final long res2 = pKey.getVarint32Packed(idx);
+            final int serialType = SqlJetVarintResult32.getPackedValue(res2);
+            idx += SqlJetVarintResult32.getPackedOffset(res2);
+            if (d >= nKey && SqlJetVdbeSerialType.serialTypeLen(serialType) > 0) {
                 break;
             }
-            SqlJetResultWithOffset<ISqlJetVdbeMem> result = SqlJetVdbeMemFactory.serialGet(pKey, d, res2.getValue(),
+            SqlJetResultWithOffset<ISqlJetVdbeMem> result = SqlJetVdbeMemFactory.serialGet(pKey, d, serialType,
                     this.enc);
             d += result.getOffset();
             pMem.add(result.getValue());
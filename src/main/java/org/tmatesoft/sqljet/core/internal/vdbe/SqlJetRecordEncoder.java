@@ -0,0 +1,268 @@
+/**
+ * SqlJetRecordEncoder.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.table.ISqlJetOptions;
+
+/**
+ * Encodes values into record without creating of {@link ISqlJetVdbeMem} for
+ * each value. Serial types and size of record are computed in one pass over
+ * values, then values are written straight into buffer which is reused by
+ * next records, so encoder is kept by table for its inserts and lookups.
+ *
+ * Record is the same as
+ * {@link SqlJetBtreeRecord#getRecord(SqlJetEncoding, Object...)} makes.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetRecordEncoder {
+
+    private static final int FILE_FORMAT = ISqlJetOptions.SQLJET_DEFAULT_FILE_FORMAT;
+
+    private final @Nonnull SqlJetEncoding encoding;
+
+    /** Serial types of fields of the current record. */
+    private int[] types = new int[16];
+
+    /** Bytes of text (if encoding isn't UTF-8) and blob fields. */
+    private Object[] bytes = new Object[16];
+
+    private ISqlJetMemoryPointer buffer;
+
+    public SqlJetRecordEncoder(@Nonnull SqlJetEncoding encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Encodes values into record. Record is valid until next call of encoder,
+     * it should be copied if it's kept longer.
+     *
+     * @param values
+     * @return
+     * @throws SqlJetException
+     */
+    public @Nonnull ISqlJetMemoryPointer encode(@Nonnull Object[] values) throws SqlJetException {
+        return encode(values, false, 0);
+    }
+
+    /**
+     * Encodes values and rowId after them, as entry of index.
+     *
+     * @see #encode(Object[])
+     */
+    public @Nonnull ISqlJetMemoryPointer encode(@Nonnull Object[] values, long rowId) throws SqlJetException {
+        return encode(values, true, rowId);
+    }
+
+    private @Nonnull ISqlJetMemoryPointer encode(@Nonnull Object[] values, boolean withRowId, long rowId)
+            throws SqlJetException {
+        final int nField = values.length + (withRowId ? 1 : 0);
+        if (types.length < nField) {
+            types = new int[Math.max(nField, types.length * 2)];
+            bytes = new Object[types.length];
+        }
+        try {
+            int nData = 0;
+            int nHdr = 0;
+            for (int i = 0; i < nField; i++) {
+                final int serialType = i < values.length ? serialType(i, values[i]) : intSerialType(rowId);
+                types[i] = serialType;
+                nData += SqlJetVdbeSerialType.serialTypeLen(serialType);
+                nHdr += SqlJetUtility.varintLen(serialType);
+            }
+            int nVarint;
+            nHdr += nVarint = SqlJetUtility.varintLen(nHdr);
+            if (nVarint < SqlJetUtility.varintLen(nHdr)) {
+                nHdr++;
+            }
+            final int nByte = nHdr + nData;
+            if (buffer == null || buffer.remaining() < nByte) {
+                buffer = SqlJetUtility.memoryManager
+                        .allocatePtr(Math.max(nByte, buffer == null ? 256 : buffer.remaining() * 2));
+            }
+
+            int i = buffer.putVarint32(0, nHdr);
+            int t = nHdr;
+            for (int f = 0; f < nField; f++) {
+                i += buffer.putVarint32(i, types[f]);
+                t += put(t, f, f < values.length ? values[f] : Long.valueOf(rowId));
+            }
+            assert t == nByte;
+            return buffer.pointer(0, nByte);
+        } finally {
+            Arrays.fill(bytes, 0, nField, null);
+        }
+    }
+
+    private int serialType(int i, Object value) throws SqlJetException {
+        if (null == value) {
+            return 0;
+        } else if (value instanceof String) {
+            final String s = (String) value;
+            if (encoding == SqlJetEncoding.UTF8) {
+                return utf8Length(s) * 2 + 13;
+            }
+            final byte[] b = s.getBytes(encoding.getCharset());
+            bytes[i] = b;
+            return b.length * 2 + 13;
+        } else if (value instanceof Boolean) {
+            return intSerialType(((Boolean) value).booleanValue() ? 1 : 0);
+        } else if (value instanceof Float || value instanceof Double) {
+            return 7;
+        } else if (value instanceof Number) {
+            return intSerialType(((Number) value).longValue());
+        } else if (value instanceof ByteBuffer) {
+            return blobSerialType(i, SqlJetUtility.fromByteBuffer((ByteBuffer) value));
+        } else if (value instanceof InputStream) {
+            return blobSerialType(i, SqlJetUtility.streamToBuffer((InputStream) value));
+        } else if (value instanceof byte[]) {
+            bytes[i] = value;
+            return ((byte[]) value).length * 2 + 12;
+        } else if (value instanceof SqlJetMemoryPointer) {
+            return blobSerialType(i, (SqlJetMemoryPointer) value);
+        } else {
+            throw new SqlJetException(SqlJetErrorCode.MISUSE, "Bad value #" + i + " " + value.toString());
+        }
+    }
+
+    private int blobSerialType(int i, ISqlJetMemoryPointer blob) {
+        bytes[i] = blob;
+        return blob.getLimit() * 2 + 12;
+    }
+
+    /**
+     * @see SqlJetVdbeMemInt#serialType(int)
+     */
+    private static int intSerialType(long v) {
+        if (FILE_FORMAT >= 4 && (v & 1) == v) {
+            return 8 + (int) v;
+        }
+        final long u = SqlJetUtility.absolute(v);
+        if (u <= 127) {
+            return 1;
+        }
+        if (u <= 32767) {
+            return 2;
+        }
+        if (u <= 8388607) {
+            return 3;
+        }
+        if (u <= 2147483647) {
+            return 4;
+        }
+        if (u <= (0x00008000l << 32) - 1) {
+            return 5;
+        }
+        return 6;
+    }
+
+    /**
+     * Writes data of field at offset, returns its length.
+     */
+    private int put(int offset, int f, Object value) {
+        final int serialType = types[f];
+        final int len = SqlJetVdbeSerialType.serialTypeLen(serialType);
+        if (len == 0) {
+            return 0;
+        }
+        if (serialType == 7) {
+            buffer.putLong(offset, Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (serialType < 7) {
+            long v = value instanceof Boolean ? ((Boolean) value).booleanValue() ? 1 : 0
+                    : ((Number) value).longValue();
+            for (int i = len; i-- > 0;) {
+                buffer.putByteUnsigned(offset + i, (int) v);
+                v >>>= 8;
+            }
+        } else if (bytes[f] instanceof byte[]) {
+            buffer.getBuffer().putBytes(buffer.getAbsolute(offset), (byte[]) bytes[f], 0, len);
+        } else if (bytes[f] instanceof ISqlJetMemoryPointer) {
+            buffer.copyFrom(offset, (ISqlJetMemoryPointer) bytes[f], 0, len);
+        } else {
+            putUtf8(offset, (String) value);
+        }
+        return len;
+    }
+
+    /**
+     * @return number of bytes in UTF-8 encoding of string, like
+     *         {@link String#getBytes(java.nio.charset.Charset)} does: unpaired
+     *         surrogate is replaced by '?'.
+     */
+    private static int utf8Length(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                n++;
+            } else if (c < 0x800) {
+                n += 2;
+            } else if (!Character.isSurrogate(c)) {
+                n += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                n += 4;
+                i++;
+            } else {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void putUtf8(int offset, String s) {
+        int p = offset;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.putByteUnsigned(p++, c);
+            } else if (c < 0x800) {
+                buffer.putByteUnsigned(p++, 0xC0 | c >> 6);
+                buffer.putByteUnsigned(p++, 0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                buffer.putByteUnsigned(p++, 0xE0 | c >> 12);
+                buffer.putByteUnsigned(p++, 0x80 | c >> 6 & 0x3F);
+                buffer.putByteUnsigned(p++, 0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.putByteUnsigned(p++, 0xF0 | cp >> 18);
+                buffer.putByteUnsigned(p++, 0x80 | cp >> 12 & 0x3F);
+                buffer.putByteUnsigned(p++, 0x80 | cp >> 6 & 0x3F);
+                buffer.putByteUnsigned(p++, 0x80 | cp & 0x3F);
+            } else {
+                buffer.putByteUnsigned(p++, '?');
+            }
+        }
+    }
+
+}
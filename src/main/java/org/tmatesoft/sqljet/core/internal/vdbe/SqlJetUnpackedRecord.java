@@ -21,12 +21,13 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetUnpackedRecord;
 import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
-import org.tmatesoft.sqljet.core.internal.SqlJetResultWithOffset;
 import org.tmatesoft.sqljet.core.internal.SqlJetUnpackedRecordFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.memory.SqlJetVarintResult32;
 
 /**
@@ -55,9 +56,9 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
         int i = 0;
         int rc = 0;
 
-        SqlJetVarintResult32 res = pKey1.getVarint32();
-        int szHdr1 = res.getValue(); /* Number of bytes in header */
-        int idx1 = res.getOffset(); /* Offset into aKey[] of next header element */
+        final long res = pKey1.getVarint32Packed(0);
+        int szHdr1 = SqlJetVarintResult32.getPackedValue(res); /* Number of bytes in header */
+        int idx1 = SqlJetVarintResult32.getPackedOffset(res); /* Offset into aKey[] of next header element */
         int d1 = szHdr1; /* Offset into aKey[] of next data element */
         if (this.flags.contains(SqlJetUnpackedRecordFlags.IGNORE_ROWID)) {
             szHdr1--;
@@ -65,23 +66,19 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
         for (ISqlJetVdbeMem mem : aMem) {
             if (idx1 < szHdr1) {
                 /* Read the serial types for the next element in each key. */
-                SqlJetVarintResult32 res2 = pKey1.getVarint32(idx1);
-                idx1 += res2.getOffset();
-                if (d1 >= nKey1 && SqlJetVdbeSerialType.serialTypeLen(res2.getValue()) > 0) {
+                final long res2 = pKey1.getVarint32Packed(idx1);
+                final int serialType = SqlJetVarintResult32.getPackedValue(res2);
+                idx1 += SqlJetVarintResult32.getPackedOffset(res2);
+                final int len = SqlJetVdbeSerialType.serialTypeLen(serialType);
+                if (d1 >= nKey1 && len > 0) {
                     break;
                 }
 
                 /*
-                 * Extract the values to be compared.
+                 * Do the comparison of serialized value with the field.
                  */
-                SqlJetResultWithOffset<ISqlJetVdbeMem> result = SqlJetVdbeMemFactory.serialGet(pKey1, d1,
-                        res2.getValue(), pKeyInfo.getEnc());
-                d1 += result.getOffset();
-
-                /*
-                 * Do the comparison
-                 */
-                rc = result.getValue().compareTo(mem);
+                rc = compareField(pKey1, d1, serialType, len, mem);
+                d1 += len;
                 if (rc != 0) {
                     break;
                 }
@@ -113,6 +110,150 @@ public class SqlJetUnpackedRecord implements ISqlJetUnpackedRecord {
         return rc;
     }
 
+    /**
+     * Compares serialized value with the field like
+     * {@link ISqlJetVdbeMem#compareTo(ISqlJetVdbeMem)} does, but without
+     * deserialization of value: NULL is less than numbers, numbers are
+     * compared as reals and are less than text, text is less than blob.
+     */
+    private int compareField(ISqlJetMemoryPointer pKey1, int d1, int serialType, int len, ISqlJetVdbeMem mem) {
+        switch (serialType) {
+        case 0:
+        case 10:
+        case 11:
+            return mem.isNull() ? 0 : -1;
+        case 7: {
+            final double r = Double.longBitsToDouble(SqlJetVdbeMemFactory.serialGetLong(pKey1, d1, 6));
+            if (Double.isNaN(r)) {
+                /* NaN is read as NULL */
+                return mem.isNull() ? 0 : -1;
+            }
+            return mem.isNull() ? 1 : mem.isNumber() ? Double.compare(r, mem.realValue()) : -1;
+        }
+        case 8:
+        case 9:
+            return mem.isNull() ? 1 : mem.isNumber() ? Double.compare(serialType - 8, mem.realValue()) : -1;
+        default:
+            if (mem.isNull()) {
+                return 1;
+            }
+            if (serialType < 12) {
+                final long v = SqlJetVdbeMemFactory.serialGetLong(pKey1, d1, serialType);
+                return mem.isNumber() ? Double.compare(v, mem.realValue()) : -1;
+            }
+            if (mem.isNumber()) {
+                return 1;
+            }
+            if ((serialType & 0x01) != 0) {
+                return mem.isString() ? compareText(pKey1, d1, len, mem.stringValue()) : -1;
+            }
+            if (mem.isString()) {
+                return 1;
+            }
+            final ISqlJetMemoryPointer blob = mem.blobValue();
+            final int rc = SqlJetUtility.memcmp(pKey1, d1, blob, 0, Integer.min(len, blob.getLimit()));
+            return rc != 0 ? rc : len - blob.getLimit();
+        }
+    }
+
+    /**
+     * Compares serialized text with the string like {@link String#compareTo}
+     * compares decoded text, which ends at first zero character. Text is
+     * decoded char by char while it's compared. Text which isn't valid
+     * UTF-8 or UTF-16 is decoded entirely, so malformed chars are replaced
+     * exactly like decoder does.
+     */
+    private int compareText(ISqlJetMemoryPointer pKey1, int d1, int len, String s) {
+        final SqlJetEncoding enc = pKeyInfo.getEnc();
+        final int end = d1 + len;
+        final int n = s.length();
+        int j = 0;
+        if (enc == SqlJetEncoding.UTF8) {
+            for (int p = d1; p < end;) {
+                final int b = pKey1.getByteUnsigned(p);
+                int c;
+                int k;
+                if (b < 0x80) {
+                    c = b;
+                    k = 1;
+                } else if (b >= 0xC2 && b < 0xE0) {
+                    c = b & 0x1F;
+                    k = 2;
+                } else if (b >= 0xE0 && b < 0xF0) {
+                    c = b & 0x0F;
+                    k = 3;
+                } else if (b >= 0xF0 && b < 0xF5) {
+                    c = b & 0x07;
+                    k = 4;
+                } else {
+                    return compareDecoded(pKey1, d1, len, s);
+                }
+                if (p + k > end) {
+                    return compareDecoded(pKey1, d1, len, s);
+                }
+                for (int m = 1; m < k; m++) {
+                    final int b2 = pKey1.getByteUnsigned(p + m);
+                    if ((b2 & 0xC0) != 0x80) {
+                        return compareDecoded(pKey1, d1, len, s);
+                    }
+                    c = c << 6 | b2 & 0x3F;
+                }
+                if (k == 3 && (c < 0x800 || Character.isSurrogate((char) c))
+                        || k == 4 && (c < 0x10000 || c > Character.MAX_CODE_POINT)) {
+                    return compareDecoded(pKey1, d1, len, s);
+                }
+                if (c == 0) {
+                    break;
+                }
+                p += k;
+                if (c >= 0x10000) {
+                    if (j >= n) {
+                        return 1;
+                    }
+                    final int rc = Character.highSurrogate(c) - s.charAt(j++);
+                    if (rc != 0) {
+                        return rc;
+                    }
+                    c = Character.lowSurrogate(c);
+                }
+                if (j >= n) {
+                    return 1;
+                }
+                final int rc = c - s.charAt(j++);
+                if (rc != 0) {
+                    return rc;
+                }
+            }
+        } else if ((enc == SqlJetEncoding.UTF16LE || enc == SqlJetEncoding.UTF16BE) && (len & 1) == 0) {
+            final boolean le = enc == SqlJetEncoding.UTF16LE;
+            for (int p = d1; p < end; p += 2) {
+                final int b0 = pKey1.getByteUnsigned(p);
+                final int b1 = pKey1.getByteUnsigned(p + 1);
+                final char c = (char) (le ? b1 << 8 | b0 : b0 << 8 | b1);
+                if (Character.isSurrogate(c)) {
+                    return compareDecoded(pKey1, d1, len, s);
+                }
+                if (c == 0) {
+                    break;
+                }
+                if (j >= n) {
+                    return 1;
+                }
+                final int rc = c - s.charAt(j++);
+                if (rc != 0) {
+                    return rc;
+                }
+            }
+        } else {
+            return compareDecoded(pKey1, d1, len, s);
+        }
+        return j < n ? -1 : 0;
+    }
+
+    private int compareDecoded(ISqlJetMemoryPointer pKey1, int d1, int len, String s) {
+        return SqlJetUtility.toString(pKey1.pointer(d1, len), pKeyInfo.getEnc()).compareTo(s);
+    }
+
     /**
      * @return the flags
      */
@@ -61,6 +61,18 @@ public class SqlJetVdbeMemFactory {
      */
     public static ISqlJetMemoryPointer fromBtree(ISqlJetBtreeCursor pCur, int offset, int amt, boolean key)
             throws SqlJetException {
+        return fromBtree(pCur, offset, amt, key, false);
+    }
+
+    /**
+     * @param copy
+     *            if true then data from the local page is copied. Otherwise
+     *            result could point into the page buffer, which is reused
+     *            for other page once page is evicted from the cache.
+     * @see #fromBtree(ISqlJetBtreeCursor, int, int, boolean)
+     */
+    public static ISqlJetMemoryPointer fromBtree(ISqlJetBtreeCursor pCur, int offset, int amt, boolean key,
+            boolean copy) throws SqlJetException {
         assert pCur.getCursorDb().getMutex().held();
 
         ISqlJetMemoryPointer result;
@@ -76,7 +88,12 @@ public class SqlJetVdbeMemFactory {
         }
 
         if (offset + amt <= available[0]) {
-            result = zData.pointer(offset);
+            if (copy) {
+                result = SqlJetUtility.memoryManager.allocatePtr(amt);
+                result.copyFrom(0, zData, offset, amt);
+            } else {
+                result = zData.pointer(offset);
+            }
         } else {
             result = SqlJetUtility.memoryManager.allocatePtr(amt + 2);
             if (key) {
@@ -119,40 +136,20 @@ public class SqlJetVdbeMemFactory {
         case 0: /* NULL */
             return NULL;
         case 1: /* 1-byte signed integer */
-            result = getInt(buf.getByte(offset));
-            return new SqlJetResultWithOffset<>(result, 1);
         case 2: /* 2-byte signed integer */
-            result = getInt(
-                    SqlJetUtility.fromUnsigned(buf.getByteUnsigned(offset) << 8 | buf.getByteUnsigned(offset + 1)));
-            return new SqlJetResultWithOffset<>(result, 2);
         case 3: /* 3-byte signed integer */
-            result = getInt(
-                    buf.getByte(offset) << 16 | buf.getByteUnsigned(offset + 1) << 8 | buf.getByteUnsigned(offset + 2));
-            return new SqlJetResultWithOffset<>(result, 3);
         case 4: /* 4-byte signed integer */
-            result = getInt(SqlJetUtility.fromUnsigned(buf.getIntUnsigned(offset)));
-            return new SqlJetResultWithOffset<>(result, 4);
-        case 5: { /* 6-byte signed integer */
-            long x = buf.getByteUnsigned(offset) << 8 | buf.getByteUnsigned(offset + 1);
-            long y = buf.getIntUnsigned(offset + 2);
-            result = getInt((long) (short) x << 32 | y);
-            return new SqlJetResultWithOffset<>(result, 6);
-        }
+        case 5: /* 6-byte signed integer */
         case 6: /* 8-byte signed integer */
+            result = getInt(serialGetLong(buf, offset, serialType));
+            return new SqlJetResultWithOffset<>(result, SqlJetVdbeSerialType.serialTypeLen(serialType));
         case 7: { /* IEEE floating point */
-            long x = buf.getIntUnsigned(offset);
-            long y = buf.getIntUnsigned(offset + 4);
-            x = (long) (int) x << 32 | y;
-            if (serialType == 6) {
-                result = getInt(x);
-            } else {
-                // assert( sizeof(x)==8 && sizeof(pMem->r)==8 );
-                // swapMixedEndianFloat(x);
-                // memcpy(&pMem->r, &x, sizeof(x));
-                // pMem.r = ByteBuffer.allocate(8).putLong(x).getDouble();
-                double v = Double.longBitsToDouble(x);
-                result = Double.isNaN(v) ? getNull() : getDouble(v);
-            }
+            // assert( sizeof(x)==8 && sizeof(pMem->r)==8 );
+            // swapMixedEndianFloat(x);
+            // memcpy(&pMem->r, &x, sizeof(x));
+            // pMem.r = ByteBuffer.allocate(8).putLong(x).getDouble();
+            double v = Double.longBitsToDouble(serialGetLong(buf, offset, 6));
+            result = Double.isNaN(v) ? getNull() : getDouble(v);
             return new SqlJetResultWithOffset<>(result, 8);
         }
         case 8: /* Integer 0 */
@@ -171,4 +168,40 @@ public class SqlJetVdbeMemFactory {
         }
     }
 
+    /**
+     * Deserialize integer of serial type from 1 to 6 without creating of
+     * {@link ISqlJetVdbeMem}. Serial type 6 gives also bits of IEEE floating
+     * point value.
+     * 
+     * @param buf
+     *            Buffer to deserialize from
+     * @param offset
+     *            Offset of value in the buffer
+     * @param serialType
+     *            Serial type from 1 to 6
+     * @return
+     */
+    public static long serialGetLong(ISqlJetMemoryPointer buf, int offset, int serialType) {
+        switch (serialType) {
+        case 1: /* 1-byte signed integer */
+            return buf.getByte(offset);
+        case 2: /* 2-byte signed integer */
+            return SqlJetUtility.fromUnsigned(buf.getByteUnsigned(offset) << 8 | buf.getByteUnsigned(offset + 1));
+        case 3: /* 3-byte signed integer */
+            return buf.getByte(offset) << 16 | buf.getByteUnsigned(offset + 1) << 8 | buf.getByteUnsigned(offset + 2);
+        case 4: /* 4-byte signed integer */
+            return SqlJetUtility.fromUnsigned(buf.getIntUnsigned(offset));
+        case 5: { /* 6-byte signed integer */
+            long x = buf.getByteUnsigned(offset) << 8 | buf.getByteUnsigned(offset + 1);
+            long y = buf.getIntUnsigned(offset + 2);
+            return (long) (short) x << 32 | y;
+        }
+        default: { /* 8-byte signed integer */
+            long x = buf.getIntUnsigned(offset);
+            long y = buf.getIntUnsigned(offset + 4);
+            return (long) (int) x << 32 | y;
+        }
+        }
+    }
+
 }
@@ -384,7 +384,9 @@ public interface ISqlJetCursor {
     ISqlJetCursor reverse() throws SqlJetException;
 
     /**
-     * Returns number of rows accessible with this cursor.
+     * Returns number of rows accessible with this cursor. For cursors over all
+     * rows of table the number is taken from b-tree page headers, without
+     * walking over rows.
      *
      * @return number of rows
      * @throws SqlJetException
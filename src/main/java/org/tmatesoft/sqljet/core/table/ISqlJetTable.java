@@ -17,6 +17,7 @@
  */
 package org.tmatesoft.sqljet.core.table;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -102,6 +103,42 @@ public interface ISqlJetTable {
      */
     ISqlJetCursor open() throws SqlJetException;
 
+    /**
+     * <p>
+     * Open cursor for all table records which reads only given columns.
+     * </p>
+     * 
+     * <p>
+     * {@link ISqlJetCursor#getRowValues()} of this cursor returns values of
+     * these columns only, in the same order, and other columns aren't decoded
+     * nor their overflow pages are read. Other columns are still available by
+     * name or number.
+     * </p>
+     * 
+     * <p>
+     * Cursors can be opened only within active transaction. When transaction
+     * ends all cursors will be closed.
+     * </p>
+     * 
+     * @param columns
+     *            names of columns, ROWID is allowed too. At least one column
+     *            is required, empty array is rejected with
+     *            {@link org.tmatesoft.sqljet.core.SqlJetErrorCode#MISUSE}:
+     *            use {@link #open()} to read all columns.
+     * @return cursor for all table records.
+     * @throws SqlJetException
+     */
+    ISqlJetCursor open(String... columns) throws SqlJetException;
+
+    /**
+     * Returns number of rows in table. Rows aren't read, only headers of
+     * b-tree pages are, so it is much cheaper than walking a cursor.
+     *
+     * @return number of rows in table.
+     * @throws SqlJetException
+     */
+    long getRowCount() throws SqlJetException;
+
     /**
      * <p>
      * Open cursor for records which have found by key on index.
@@ -462,6 +499,31 @@ public interface ISqlJetTable {
     long insertWithRowIdOr(SqlJetConflictAction onConflict, long rowId, @Nonnull Object... values)
             throws SqlJetException;
 
+    /**
+     * <p>
+     * Inserts rows into empty table much faster than one by one insert: pages
+     * of table are filled sequentially and interior pages are built when all
+     * rows are written, so no page is split.
+     * </p>
+     *
+     * <p>
+     * Rows should be sorted by ROWID, that is by INTEGER PRIMARY KEY column if
+     * table has it; rows without ROWID get next one. If table isn't empty then
+     * rows are inserted as by {@link #insert(Object...)}. Share of page which
+     * is filled is set by "SQLJET.FILL_FACTOR" system property, in percents.
+     * </p>
+     *
+     * @param rows
+     *            values of rows, each in the same form as for
+     *            {@link #insert(Object...)}.
+     * @return number of inserted rows.
+     * @throws SqlJetException
+     *             with {@link org.tmatesoft.sqljet.core.SqlJetErrorCode#CONSTRAINT}
+     *             if rows aren't sorted by ROWID or violate constraints of
+     *             table.
+     */
+    long bulkLoad(@Nonnull Iterator<Object[]> rows) throws SqlJetException;
+
     /**
      * Clear table. It fast delete of all rows in table.
      * 
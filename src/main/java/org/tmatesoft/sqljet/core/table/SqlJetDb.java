@@ -32,6 +32,7 @@ import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
 import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
 import org.tmatesoft.sqljet.core.internal.SqlJetAbstractPager;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
 import org.tmatesoft.sqljet.core.internal.schema.SqlJetIndexedColumn;
 import org.tmatesoft.sqljet.core.internal.table.SqlJetPragmasHandler;
 import org.tmatesoft.sqljet.core.internal.table.SqlJetTable;
@@ -114,6 +115,10 @@ public class SqlJetDb extends SqlJetEngine {
         super(file, writable, fsName);
     }
 
+    public SqlJetDb(final File file, final boolean writable, final boolean sharedCache) throws SqlJetException {
+        super(file, writable, SqlJetFileSystemsManager.getManager().find(null), sharedCache);
+    }
+
     /**
      * <p>
      * Opens connection to data base. It does not create any locking on
@@ -162,6 +167,27 @@ public class SqlJetDb extends SqlJetEngine {
         return new SqlJetDb(file, write, fsName);
     }
 
+    /**
+     * Opens connection to data base in shared cache mode or without it.
+     * Connections which are opened in shared cache mode on the same file share
+     * single page cache, so pages read by one of them are available to others
+     * without I/O. Such connections see each other's committed changes and
+     * lock tables against each other: only one of them may write at a time and
+     * a table which is read by one connection can't be modified by another.
+     * 
+     * @param file
+     *            path to data base.
+     * @param write
+     *            open for writing if true.
+     * @param sharedCache
+     *            open in shared cache mode if true.
+     * @return SqlJetDb object for opened database
+     * @throws SqlJetException
+     */
+    public static @Nonnull SqlJetDb open(File file, boolean write, boolean sharedCache) throws SqlJetException {
+        return new SqlJetDb(file, write, sharedCache);
+    }
+
     /**
      * Do some actions with locking database's internal threads synchronization
      * mutex. It is related only with synchronization of access to one
@@ -0,0 +1,263 @@
+/**
+ * SqlJetGroupCommit.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+
+/**
+ * <p>
+ * Group commit of small write transactions. Transactions are submitted from
+ * any threads and are run by dedicated writer thread. Transactions which were
+ * submitted within short window are merged into one physical transaction of
+ * database, so they share one set of journal and database syncs.
+ * </p>
+ *
+ * <p>
+ * Future returned by {@link #submit(ISqlJetTransaction)} completes only after
+ * the physical transaction which contains submitted one is committed. If
+ * transaction fails then whole batch is rolled back and its transactions are
+ * run again each in its own physical transaction, so only the failed one
+ * completes exceptionally. Therefore transactions could be run more than once
+ * and must not have side effects outside of database.
+ * </p>
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetGroupCommit implements AutoCloseable {
+
+    private static final class Request<T> {
+        final ISqlJetTransaction<T, SqlJetDb> op;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+
+        Request(ISqlJetTransaction<T, SqlJetDb> op) {
+            this.op = op;
+        }
+
+        void run(SqlJetDb db) throws SqlJetException {
+            result = op.run(db);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+
+    /** Put into queue by {@link #close()} to stop writer. */
+    private static final Request<Void> STOP = new Request<>(null);
+
+    private final @Nonnull SqlJetDb db;
+    private final long windowNanos;
+    private final int maxBatch;
+
+    private final BlockingQueue<Request<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private boolean closed;
+
+    private long commitCount;
+
+    /**
+     * Starts writer thread.
+     *
+     * @param db
+     *            database opened for writing.
+     * @param window
+     *            how long writer waits for more transactions after the first
+     *            one in batch.
+     * @param unit
+     *            unit of window.
+     * @param maxBatch
+     *            maximum number of transactions in one physical transaction.
+     * @throws SqlJetException
+     */
+    public SqlJetGroupCommit(@Nonnull SqlJetDb db, long window, @Nonnull TimeUnit unit, int maxBatch)
+            throws SqlJetException {
+        SqlJetAssert.assertTrue(db.isWritable(), SqlJetErrorCode.READONLY);
+        SqlJetAssert.assertTrue(window >= 0 && maxBatch > 0, SqlJetErrorCode.MISUSE,
+                "Group commit window can't be negative and batch can't be empty");
+        this.db = db;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatch = maxBatch;
+        this.writer = new Thread(this::runWriter, "SqlJet group commit: " + db.getFile());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Submits write transaction.
+     *
+     * @param op
+     *            transaction's body (closure).
+     * @return future which completes with result of transaction after it has
+     *         been committed.
+     */
+    public <T> CompletableFuture<T> submit(@Nonnull ISqlJetTransaction<T, SqlJetDb> op) {
+        final Request<T> request = new Request<>(op);
+        synchronized (this) {
+            if (!closed) {
+                queue.add(request);
+                return request.future;
+            }
+        }
+        request.future.completeExceptionally(new SqlJetException(SqlJetErrorCode.MISUSE, "Group commit is closed"));
+        return request.future;
+    }
+
+    /**
+     * @return number of physical transactions committed by writer.
+     */
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Stops accepting transactions, waits until all submitted ones are
+     * committed and stops writer thread.
+     */
+    @Override
+    public void close() throws SqlJetException {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                queue.add(STOP);
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SqlJetException(SqlJetErrorCode.ABORT, e);
+        }
+    }
+
+    private void runWriter() {
+        final List<Request<?>> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                running = collect(batch);
+            } catch (InterruptedException e) {
+                abort(batch, new SqlJetException(SqlJetErrorCode.ABORT, e));
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    commit(batch);
+                } catch (Error e) {
+                    abort(batch, e);
+                    throw e;
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writer can't go on after {@link Error} or interrupt, so it fails all
+     * transactions which wait for it and stops accepting new ones.
+     */
+    private void abort(List<Request<?>> batch, Throwable e) {
+        synchronized (this) {
+            closed = true;
+        }
+        final List<Request<?>> requests = new ArrayList<>(batch);
+        queue.drainTo(requests);
+        for (Request<?> request : requests) {
+            if (request != STOP) {
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Collects transactions which are submitted within window after the first
+     * one.
+     *
+     * @return false if writer should stop.
+     */
+    private boolean collect(List<Request<?>> batch) throws InterruptedException {
+        Request<?> request = queue.take();
+        final long deadline = System.nanoTime() + windowNanos;
+        while (request != STOP) {
+            batch.add(request);
+            if (batch.size() >= maxBatch) {
+                return true;
+            }
+            request = queue.poll();
+            if (request == null) {
+                final long timeout = deadline - System.nanoTime();
+                if (timeout <= 0) {
+                    return true;
+                }
+                request = queue.poll(timeout, TimeUnit.NANOSECONDS);
+                if (request == null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void commit(List<Request<?>> batch) {
+        try {
+            db.write().asVoid(d -> {
+                for (Request<?> request : batch) {
+                    request.run(d);
+                }
+            });
+            committed();
+            for (Request<?> request : batch) {
+                request.complete();
+            }
+        } catch (SqlJetException | RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            /* Find the failed one: run each request in its own transaction. */
+            for (Request<?> request : batch) {
+                try {
+                    db.write().asVoid(request::run);
+                    committed();
+                    request.complete();
+                } catch (SqlJetException | RuntimeException e1) {
+                    request.future.completeExceptionally(e1);
+                }
+            }
+        }
+    }
+
+    private synchronized void committed() {
+        commitCount++;
+    }
+
+}
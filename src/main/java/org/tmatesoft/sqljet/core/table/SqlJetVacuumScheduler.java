@@ -0,0 +1,184 @@
+/**
+ * SqlJetVacuumScheduler.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+import org.tmatesoft.sqljet.core.table.engine.SqlJetEngine;
+
+/**
+ * <p>
+ * Reclaims free pages of database in incremental auto-vacuum mode while the
+ * connection is idle. Every idle period the scheduler thread checks whether
+ * the connection has run any transaction since the previous check; if it has
+ * not, at most given number of pages is reclaimed with
+ * {@link SqlJetEngine#incrementalVacuum(int)} in one short write transaction,
+ * so the file shrinks gradually without long pauses of other work.
+ * </p>
+ *
+ * <p>
+ * Steps which fail because database is locked by other connections are
+ * skipped silently and retried on the next idle period.
+ * </p>
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetVacuumScheduler implements AutoCloseable {
+
+    private final @Nonnull SqlJetDb db;
+    private final int pagesPerStep;
+    private final long idleNanos;
+
+    private final Thread vacuumer;
+    private boolean closed;
+
+    /** Time of the last transaction run by the scheduler itself. */
+    private long mark;
+    private long stepCount;
+    private long pagesReclaimed;
+    private SqlJetException lastError;
+
+    /**
+     * Starts scheduler thread.
+     *
+     * @param db
+     *            database opened for writing.
+     * @param pagesPerStep
+     *            maximum number of pages reclaimed in one transaction.
+     * @param idle
+     *            how long connection should be unused before vacuum step.
+     * @param unit
+     *            unit of idle.
+     * @throws SqlJetException
+     */
+    public SqlJetVacuumScheduler(@Nonnull SqlJetDb db, int pagesPerStep, long idle, @Nonnull TimeUnit unit)
+            throws SqlJetException {
+        SqlJetAssert.assertTrue(db.isWritable(), SqlJetErrorCode.READONLY);
+        SqlJetAssert.assertTrue(pagesPerStep > 0 && idle > 0, SqlJetErrorCode.MISUSE,
+                "Vacuum step and idle period should be positive");
+        this.db = db;
+        this.pagesPerStep = pagesPerStep;
+        this.idleNanos = unit.toNanos(idle);
+        this.mark = db.getLastTransactionTime();
+        this.vacuumer = new Thread(this::runVacuumer, "SqlJet vacuum: " + db.getFile());
+        this.vacuumer.setDaemon(true);
+        this.vacuumer.start();
+    }
+
+    /**
+     * @return number of vacuum transactions which reclaimed some pages.
+     */
+    public synchronized long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @return total number of pages reclaimed by scheduler.
+     */
+    public synchronized long getPagesReclaimed() {
+        return pagesReclaimed;
+    }
+
+    /**
+     * @return error of the last failed vacuum step other than busy or locked
+     *         database, or null.
+     */
+    public synchronized SqlJetException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops scheduler thread, waits for the running step to finish.
+     */
+    @Override
+    public void close() throws SqlJetException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            vacuumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SqlJetException(SqlJetErrorCode.ABORT, e);
+        }
+    }
+
+    private void runVacuumer() {
+        while (waitIdlePeriod()) {
+            try {
+                step();
+            } catch (SqlJetException e) {
+                final SqlJetErrorCode code = e.getErrorCode();
+                if (code != SqlJetErrorCode.BUSY && code != SqlJetErrorCode.LOCKED) {
+                    synchronized (this) {
+                        lastError = e;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if scheduler should stop.
+     */
+    private synchronized boolean waitIdlePeriod() {
+        final long deadline = System.nanoTime() + idleNanos;
+        try {
+            for (long timeout = idleNanos; !closed && timeout > 0; timeout = deadline - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.timedWait(this, timeout);
+            }
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return !closed && db.isOpen();
+    }
+
+    private void step() throws SqlJetException {
+        final int reclaimed = db.runSynchronized(engine -> {
+            if (engine.isInTransaction()) {
+                return Integer.valueOf(0);
+            }
+            final long last = engine.getLastTransactionTime();
+            if (last != mark && System.nanoTime() - last < idleNanos) {
+                /* Connection was used during the last period. */
+                return Integer.valueOf(0);
+            }
+            int n = 0;
+            if (engine.getFreePageCount() > 0) {
+                n = engine.incrementalVacuum(pagesPerStep);
+            }
+            mark = engine.getLastTransactionTime();
+            return Integer.valueOf(n);
+        }).intValue();
+        if (reclaimed > 0) {
+            synchronized (this) {
+                stepCount++;
+                pagesReclaimed += reclaimed;
+            }
+        }
+    }
+
+}
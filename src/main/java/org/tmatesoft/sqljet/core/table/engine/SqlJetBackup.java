@@ -0,0 +1,253 @@
+/**
+ * SqlJetBackup.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFileSystem;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
+import org.tmatesoft.sqljet.core.internal.SqlJetAbstractPager;
+import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetLockType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.pager.SqlJetWal;
+
+/**
+ * Online backup of database, like sqlite3_backup_step() of SQLite. Pages of
+ * the source database are copied into the destination file in chunks, every
+ * chunk in its own read transaction, so other connections may write to the
+ * source between steps. If the source is changed by anyone (the change
+ * counter of its header differs from the one seen by previous step) the copy
+ * is restarted from the first page, so the finished copy is always a
+ * consistent snapshot.
+ *
+ * The destination file is locked exclusively until the backup is closed. It
+ * is overwritten, and its stale journal and log files are deleted once the
+ * lock is taken. The destination can't be the source database itself.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetBackup implements AutoCloseable {
+
+    private static final Set<SqlJetFileOpenPermission> PERMISSIONS = SqlJetUtility
+            .of(SqlJetFileOpenPermission.CREATE);
+
+    /** Maximum number of pages written to destination with one call. */
+    private static final int WRITE_BATCH = 64;
+
+    private final @Nonnull SqlJetEngine source;
+    private final @Nonnull ISqlJetFile destination;
+
+    private int pageCount;
+    private int nextPage = 1;
+    private long changeCounter;
+    private boolean started;
+    private boolean done;
+    private int restartCount;
+    private long pagesCopied;
+
+    SqlJetBackup(@Nonnull SqlJetEngine source, @Nonnull File destination) throws SqlJetException {
+        this.source = source;
+        final File sourceFile = source.getFile();
+        SqlJetAssert.assertFalse(sourceFile != null && canonical(sourceFile).equals(canonical(destination)),
+                SqlJetErrorCode.MISUSE, "Backup destination is the source database");
+        final ISqlJetFileSystem fs = source.getFileSystem();
+        final ISqlJetFile file = fs.open(destination, SqlJetFileType.MAIN_DB, PERMISSIONS);
+        try {
+            SqlJetAssert.assertTrue(file.isReadWrite(), SqlJetErrorCode.READONLY);
+            SqlJetAssert.assertTrue(file.lock(SqlJetLockType.SHARED) && file.lock(SqlJetLockType.RESERVED)
+                    && file.lock(SqlJetLockType.EXCLUSIVE), SqlJetErrorCode.BUSY, "Backup destination is locked");
+            /* Journal and log may belong to a live writer until lock is held. */
+            fs.delete(new File(destination.getPath() + SqlJetAbstractPager.JOURNAL), false);
+            fs.delete(new File(destination.getPath() + SqlJetWal.WAL), false);
+        } catch (SqlJetException e) {
+            file.close();
+            throw e;
+        }
+        this.destination = file;
+    }
+
+    private static @Nonnull String canonical(@Nonnull File file) throws SqlJetException {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new SqlJetException(SqlJetErrorCode.CANTOPEN, e);
+        }
+    }
+
+    /**
+     * Copies next pages of the source database.
+     *
+     * @param pages
+     *            maximum number of pages to copy, negative value copies all
+     *            remaining pages.
+     * @return true if backup is complete.
+     * @throws SqlJetException
+     */
+    public boolean step(final int pages) throws SqlJetException {
+        SqlJetAssert.assertFalse(source.getTransactionMode() == SqlJetTransactionMode.WRITE, SqlJetErrorCode.MISUSE,
+                "Backup can't be done inside write transaction");
+        if (done) {
+            return true;
+        }
+        return source.runEngineTransactionBool(engine -> copy(pages), SqlJetTransactionMode.READ_ONLY);
+    }
+
+    /**
+     * Runs backup to the end.
+     *
+     * @param pagesPerStep
+     *            number of pages copied in one read transaction, negative
+     *            value copies the whole database in one transaction.
+     * @throws SqlJetException
+     */
+    public void run(int pagesPerStep) throws SqlJetException {
+        while (!step(pagesPerStep)) {
+            Thread.yield();
+        }
+    }
+
+    private boolean copy(int pages) throws SqlJetException {
+        final SqlJetAbstractPager pager = source.btree.getPager();
+        final int pageSize = pager.getPageSize();
+        final int count = pager.getPageCount();
+        final long counter;
+        final ISqlJetPage header = pager.acquirePage(1, true);
+        try {
+            counter = header.getData().getIntUnsigned(24);
+        } finally {
+            header.unref();
+        }
+        if (!started || counter != changeCounter || count != pageCount) {
+            if (started) {
+                restartCount++;
+            }
+            started = true;
+            nextPage = 1;
+            changeCounter = counter;
+            pageCount = count;
+        }
+
+        final int pendingPage = (int) (ISqlJetFile.PENDING_BYTE / pageSize) + 1;
+        final int last = pages < 0 ? pageCount : (int) Math.min(pageCount, (long) nextPage + pages - 1);
+        final int[] numbers = new int[WRITE_BATCH];
+        final ISqlJetPage[] batch = new ISqlJetPage[WRITE_BATCH];
+        final ISqlJetMemoryPointer[] buffers = new ISqlJetMemoryPointer[WRITE_BATCH];
+        final int[] amounts = new int[WRITE_BATCH];
+        while (nextPage <= last) {
+            final int first = nextPage;
+            int n = 0;
+            while (n < WRITE_BATCH && first + n <= last && first + n != pendingPage) {
+                numbers[n] = first + n;
+                n++;
+            }
+            if (n == 0) {
+                /* The page which holds locks is never used. */
+                nextPage++;
+                continue;
+            }
+            pager.prefetch(numbers, n);
+            int acquired = 0;
+            try {
+                for (; acquired < n; acquired++) {
+                    batch[acquired] = pager.acquirePage(numbers[acquired], true);
+                    buffers[acquired] = batch[acquired].getData();
+                    amounts[acquired] = pageSize;
+                }
+                destination.write(n == WRITE_BATCH ? buffers : Arrays.copyOf(buffers, n),
+                        n == WRITE_BATCH ? amounts : Arrays.copyOf(amounts, n), (long) (first - 1) * pageSize);
+            } finally {
+                for (int i = 0; i < acquired; i++) {
+                    batch[i].unref();
+                    batch[i] = null;
+                    buffers[i] = null;
+                }
+            }
+            nextPage += n;
+            pagesCopied += n;
+        }
+
+        if (nextPage > pageCount) {
+            destination.truncate((long) pageCount * pageSize);
+            destination.sync();
+            done = true;
+        }
+        return done;
+    }
+
+    /**
+     * @return true if all pages are copied.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return number of pages in the source database at the last step.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return number of pages which remain to be copied after the last step.
+     */
+    public int getRemaining() {
+        return done ? 0 : pageCount - nextPage + 1;
+    }
+
+    /**
+     * @return how many times backup was restarted because the source was
+     *         changed.
+     */
+    public int getRestartCount() {
+        return restartCount;
+    }
+
+    /**
+     * @return total number of pages written to destination, including pages
+     *         written before restarts.
+     */
+    public long getPagesCopied() {
+        return pagesCopied;
+    }
+
+    /**
+     * Unlocks and closes destination file. An incomplete backup leaves
+     * destination in undefined state.
+     */
+    @Override
+    public void close() throws SqlJetException {
+        destination.close();
+    }
+
+}
@@ -37,6 +37,7 @@ import org.tmatesoft.sqljet.core.internal.SqlJetAssert;
 import org.tmatesoft.sqljet.core.internal.SqlJetBtreeFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
@@ -67,6 +68,12 @@ public abstract class SqlJetEngine {
     private static final Set<SqlJetFileOpenPermission> WRITE_PREMISSIONS = Collections
             .unmodifiableSet(SqlJetUtility.of(SqlJetFileOpenPermission.CREATE));
 
+    /**
+     * Default value of shared cache mode for connections which are opened
+     * without explicit choice.
+     */
+    public static final boolean SQLJET_SHARED_CACHE = SqlJetUtility.getBoolSysProp("SQLJET.SHARED_CACHE", false);
+
     protected final ISqlJetFileSystem fileSystem;
 
     protected final boolean writable;
@@ -76,6 +83,7 @@ public abstract class SqlJetEngine {
     private final File file;
 
     private SqlJetTransactionMode transactionMode;
+    private volatile long lastTransactionTime = System.nanoTime();
 
     /**
      * @param file
@@ -84,12 +92,29 @@ public abstract class SqlJetEngine {
      * @throws SqlJetException
      */
     public SqlJetEngine(final File file, final boolean writable, final ISqlJetFileSystem fs) throws SqlJetException {
+        this(file, writable, fs, SQLJET_SHARED_CACHE);
+    }
+
+    /**
+     * @param file
+     * @param writable
+     * @param fs
+     * @param sharedCache
+     *            if true then connection shares page cache with other
+     *            connections opened in shared cache mode on the same file.
+     * @throws SqlJetException
+     */
+    public SqlJetEngine(final File file, final boolean writable, final ISqlJetFileSystem fs, final boolean sharedCache)
+            throws SqlJetException {
         this.file = file;
         this.fileSystem = fs;
 
         this.dbHandle = new SqlJetDbHandle(fileSystem);
         dbHandle.setBusyHandler(new SqlJetDefaultBusyHandler());
         final Set<SqlJetBtreeFlags> flags = EnumSet.copyOf(writable ? WRITE_FLAGS : READ_FLAGS);
+        if (sharedCache) {
+            flags.add(SqlJetBtreeFlags.SHARED_CACHE);
+        }
         final Set<SqlJetFileOpenPermission> permissions = EnumSet
                 .copyOf(writable ? WRITE_PREMISSIONS : READ_PERMISSIONS);
         final SqlJetFileType type = file != null ? SqlJetFileType.MAIN_DB : SqlJetFileType.TEMP_DB;
@@ -295,6 +320,107 @@ public abstract class SqlJetEngine {
         });
     }
 
+    /**
+     * Set replacement policy of clean pages in page cache. Default policy is
+     * taken from SQLJET.PAGE_CACHE_POLICY system property.
+     * 
+     * @param policy
+     *            {@link SqlJetPageCachePolicy#TWO_QUEUE} keeps frequently used
+     *            pages in cache while large tables are scanned.
+     */
+    public void setCachePolicy(@Nonnull final SqlJetPageCachePolicy policy) throws SqlJetException {
+        checkOpen();
+        runSynchronized(engine -> {
+            btree.setCachePolicy(policy);
+            return null;
+        });
+    }
+
+    /**
+     * Get replacement policy of clean pages in page cache.
+     * 
+     * @return replacement policy.
+     */
+    public @Nonnull SqlJetPageCachePolicy getCachePolicy() throws SqlJetException {
+        checkOpen();
+        return btree.getCachePolicy();
+    }
+
+    /**
+     * Set the number of sibling pages which are read into page cache ahead of
+     * sequential scan of table or index. Adjacent pages are read with single
+     * call. Zero disables read-ahead. Default value is taken from
+     * SQLJET.READ_AHEAD system property.
+     * 
+     * @param pages
+     *            read-ahead depth in pages.
+     */
+    public void setReadAhead(final int pages) throws SqlJetException {
+        checkOpen();
+        SqlJetAssert.assertTrue(pages >= 0, SqlJetErrorCode.MISUSE, "read-ahead can't be negative");
+        runSynchronized(engine -> {
+            btree.setReadAhead(pages);
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of sibling pages read ahead of sequential scan.
+     */
+    public int getReadAhead() throws SqlJetException {
+        checkOpen();
+        return btree.getReadAhead();
+    }
+
+    /**
+     * @return number of seeks of table and index cursors which searched
+     *         b-tree pages since database was opened.
+     */
+    public long getSeekCount() throws SqlJetException {
+        checkOpen();
+        return btree.getSeekCount();
+    }
+
+    /**
+     * Seeks to keys which are close to the previous position of cursor, like
+     * ascending inserts or lookups of sorted keys, start from the leaf page
+     * of cursor or from its parent instead of the root page.
+     * 
+     * @return number of such seeks, part of {@link #getSeekCount()}.
+     */
+    public long getNearSeekCount() throws SqlJetException {
+        checkOpen();
+        return btree.getNearSeekCount();
+    }
+
+    /**
+     * Set the maximum number of bytes of the database file which are read
+     * through memory-mapped I/O, like PRAGMA mmap_size of SQLite. Zero disables
+     * memory-mapped reads. Default value is taken from SQLJET.MMAP_SIZE system
+     * property.
+     * 
+     * @param mmapSize
+     *            limit of memory-mapped I/O in bytes.
+     */
+    public void setMmapSize(final long mmapSize) throws SqlJetException {
+        checkOpen();
+        SqlJetAssert.assertTrue(mmapSize >= 0, SqlJetErrorCode.MISUSE, "mmap size can't be negative");
+        runSynchronized(engine -> {
+            btree.setMmapSize(mmapSize);
+            return null;
+        });
+    }
+
+    /**
+     * Get the maximum number of bytes read through memory-mapped I/O.
+     * 
+     * @return limit of memory-mapped I/O in bytes.
+     */
+    public long getMmapSize() throws SqlJetException {
+        checkOpen();
+        return runSynchronized(engine -> Long.valueOf(btree.getMmapSize())).longValue();
+    }
+
     /**
      * Get cache size (in count of pages).
      * 
@@ -342,6 +468,119 @@ public abstract class SqlJetEngine {
         return runSynchronized(engine -> btree.getJournalMode());
     }
 
+    /**
+     * Set journal mode. Database in {@link SqlJetPagerJournalMode#WAL} mode
+     * keeps this mode after reopening. Journal mode can't be changed inside a
+     * transaction.
+     * 
+     * @param journalMode
+     *            the journal mode to use.
+     */
+    public void setJournalMode(final @Nonnull SqlJetPagerJournalMode journalMode) throws SqlJetException {
+        checkOpen();
+        runSynchronized(engine -> {
+            SqlJetAssert.assertFalse(isInTransaction(), SqlJetErrorCode.MISUSE,
+                    "Journal mode can't be changed inside transaction");
+            btree.setJournalMode(journalMode);
+            return null;
+        });
+    }
+
+    /**
+     * Starts online backup of this database into another file. The backup is
+     * done page by page with {@link SqlJetBackup#step(int)}, other
+     * connections may write to this database between steps.
+     *
+     * @param destination
+     *            file to write the copy of database to, it is overwritten.
+     * @return backup which should be closed after use.
+     * @throws SqlJetException
+     */
+    public @Nonnull SqlJetBackup backup(@Nonnull final File destination) throws SqlJetException {
+        checkOpen();
+        return new SqlJetBackup(this, destination);
+    }
+
+    /**
+     * Rebuilds database, like VACUUM statement of SQLite: every table and
+     * index is copied in key order into a temporary database, which then
+     * replaces content of this database in one write transaction. After that
+     * the file has no free pages and pages of every b-tree are stored
+     * sequentially. Vacuum can't be done inside a transaction.
+     * 
+     * @return sizes and fragmentation of database before and after vacuum.
+     */
+    public @Nonnull SqlJetVacuumStats vacuum() throws SqlJetException {
+        checkOpen();
+        return runSynchronized(engine -> {
+            SqlJetAssert.assertFalse(isInTransaction(), SqlJetErrorCode.MISUSE,
+                    "Vacuum can't be done inside transaction");
+            final SqlJetVacuumStats stats = runEngineTransaction(engine2 -> new SqlJetVacuum(this).run(),
+                    SqlJetTransactionMode.WRITE);
+            /* Root pages of tables and indices have been changed. */
+            readSchema();
+            return stats;
+        });
+    }
+
+    /**
+     * Copy content of write-ahead log into the database file. This is a no-op
+     * if database isn't in {@link SqlJetPagerJournalMode#WAL} mode. Checkpoint
+     * can't be done inside a transaction.
+     */
+    public void checkpoint() throws SqlJetException {
+        checkOpen();
+        runSynchronized(engine -> {
+            SqlJetAssert.assertFalse(isInTransaction(), SqlJetErrorCode.MISUSE,
+                    "Checkpoint can't be done inside transaction");
+            btree.checkpoint();
+            return null;
+        });
+    }
+
+    /**
+     * Reclaim free pages of database in incremental auto-vacuum mode (see
+     * {@link ISqlJetOptions#setIncrementalVacuum(boolean)}): pages from the
+     * end of file are moved into free pages and the file is truncated. This
+     * is a no-op if database isn't in incremental auto-vacuum mode. Joins
+     * current write transaction or runs in its own one.
+     * 
+     * @param pages
+     *            maximum number of pages to reclaim, negative value reclaims
+     *            all free pages.
+     * @return number of reclaimed pages.
+     */
+    public int incrementalVacuum(final int pages) throws SqlJetException {
+        checkOpen();
+        if (!btree.getAutoVacuum().isIncrVacuum()) {
+            return 0;
+        }
+        return runEngineTransaction(engine -> Integer.valueOf(btree.incrementalVacuum(pages)),
+                SqlJetTransactionMode.WRITE).intValue();
+    }
+
+    /**
+     * Returns number of unused pages in database file, which may be reclaimed
+     * by vacuum.
+     * 
+     * @return number of free pages.
+     */
+    public int getFreePageCount() throws SqlJetException {
+        checkOpen();
+        return runEngineTransaction(engine -> Integer.valueOf(btree.getFreePageCount()),
+                SqlJetTransactionMode.READ_ONLY).intValue();
+    }
+
+    /**
+     * Returns time when the last transaction of this connection was finished,
+     * or when connection was opened if there were no transactions yet.
+     * 
+     * @return value of {@link System#nanoTime()} at the end of transaction.
+     */
+    public long getLastTransactionTime() {
+        return lastTransactionTime;
+    }
+
     /**
      * Returns true if a transaction is active.
      * 
@@ -483,12 +722,14 @@ public abstract class SqlJetEngine {
         btree.closeAllCursors();
         btree.commit();
         transactionMode = null;
+        lastTransactionTime = System.nanoTime();
     }
 
     private void doRollbackTransaction() throws SqlJetException {
         btree.closeAllCursors();
         btree.rollback();
         transactionMode = null;
+        lastTransactionTime = System.nanoTime();
     }
 
 }
\ No newline at end of file
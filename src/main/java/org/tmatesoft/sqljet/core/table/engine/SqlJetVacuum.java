@@ -0,0 +1,303 @@
+/**
+ * SqlJetVacuum.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.ISqlJetBtreeCursor;
+import org.tmatesoft.sqljet.core.internal.ISqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
+import org.tmatesoft.sqljet.core.internal.SqlJetBtreeFlags;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
+import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
+import org.tmatesoft.sqljet.core.internal.schema.SqlJetSchema;
+import org.tmatesoft.sqljet.core.internal.table.ISqlJetBtreeSchemaTable;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetBtreeRecord;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetKeyInfo;
+import org.tmatesoft.sqljet.core.internal.vdbe.SqlJetVdbeMemFactory;
+import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
+import org.tmatesoft.sqljet.core.schema.ISqlJetIndexedColumn;
+import org.tmatesoft.sqljet.core.schema.SqlJetSortingOrder;
+
+/**
+ * Full vacuum, like VACUUM statement of SQLite. Every table and index of the
+ * database is copied in key order into a new temporary database, so pages of
+ * each b-tree are allocated one after another and there are no free pages.
+ * Then all pages of the temporary database are written over pages of this
+ * database in its write transaction, so the change is atomic: it is journaled
+ * and is either committed or rolled back as a whole.
+ *
+ * Records are copied as raw bytes, only root page numbers in the schema table
+ * are changed.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+final class SqlJetVacuum {
+
+    private static final Set<SqlJetBtreeFlags> FLAGS = SqlJetUtility.of(SqlJetBtreeFlags.READWRITE,
+            SqlJetBtreeFlags.CREATE);
+    private static final Set<SqlJetFileOpenPermission> PERMISSIONS = SqlJetUtility
+            .of(SqlJetFileOpenPermission.CREATE);
+
+    /**
+     * Meta values copied as is: file format, default cache size, text
+     * encoding, user version and application id. Schema cookie is changed and
+     * auto-vacuum values are set by b-tree itself.
+     */
+    private static final int[] COPIED_META = { 2, 3, 5, 6, 8 };
+
+    private static final String INDEX_TYPE = "index";
+    private static final int SCHEMA_COOKIE = 1;
+    private static final int FILE_FORMAT = 2;
+
+    /** Entry of the schema table. */
+    private static final class Entry {
+        final long rowId;
+        final boolean index;
+        final String name;
+        final int page;
+        int newPage;
+        ISqlJetMemoryPointer record;
+
+        Entry(long rowId, boolean index, String name, int page) {
+            this.rowId = rowId;
+            this.index = index;
+            this.name = name;
+            this.page = page;
+        }
+    }
+
+    /** Counts leaf pages which don't follow the previous one. */
+    private static final class Fragmentation implements IntConsumer {
+        private int last;
+        private long transitions;
+        private long jumps;
+
+        void start() {
+            last = 0;
+        }
+
+        @Override
+        public void accept(int page) {
+            if (last != 0) {
+                transitions++;
+                if (page != last + 1) {
+                    jumps++;
+                }
+            }
+            last = page;
+        }
+
+        double get() {
+            return transitions == 0 ? 0 : (double) jumps / transitions;
+        }
+    }
+
+    private final @Nonnull SqlJetEngine engine;
+    private final @Nonnull ISqlJetBtree btree;
+    private final List<Entry> entries = new ArrayList<>();
+    private ISqlJetMemoryPointer buffer = SqlJetUtility.memoryManager.allocatePtr(1024);
+
+    SqlJetVacuum(@Nonnull SqlJetEngine engine) {
+        this.engine = engine;
+        this.btree = engine.btree;
+    }
+
+    /**
+     * Must be run inside write transaction of the database.
+     */
+    SqlJetVacuumStats run() throws SqlJetException {
+        final int pagesBefore = btree.getPager().getPageCount();
+        if (pagesBefore == 0) {
+            return new SqlJetVacuumStats(0, 0, 0, 0, 0);
+        }
+        final int freePagesBefore = btree.getFreePageCount();
+        readSchema();
+        final double fragmentationBefore = fragmentation(false);
+
+        final ISqlJetDbHandle handle = new SqlJetDbHandle(engine.getFileSystem());
+        handle.setMutex(engine.dbHandle.getMutex());
+        try (ISqlJetBtree temp = new SqlJetBtree(null, handle, FLAGS, SqlJetFileType.TEMP_DB, PERMISSIONS)) {
+            temp.setPageSize(btree.getPager().getPageSize(), btree.getReserve());
+            temp.setAutoVacuum(btree.getAutoVacuum());
+            temp.beginTrans(SqlJetTransactionMode.WRITE);
+            build(temp);
+            btree.copyFile(temp);
+        }
+        return new SqlJetVacuumStats(pagesBefore, freePagesBefore, fragmentationBefore,
+                btree.getPager().getPageCount(), fragmentation(true));
+    }
+
+    private void readSchema() throws SqlJetException {
+        final ISqlJetBtreeCursor cursor = btree.getCursor(ISqlJetDbHandle.MASTER_ROOT, false, null);
+        try {
+            for (boolean eof = cursor.first(); !eof; eof = cursor.next()) {
+                final SqlJetBtreeRecord record = new SqlJetBtreeRecord(cursor, false,
+                        btree.getMeta(FILE_FORMAT));
+                final boolean index = INDEX_TYPE.equals(record.getStringField(ISqlJetBtreeSchemaTable.TYPE_FIELD));
+                entries.add(new Entry(cursor.getKeySize(), index,
+                        record.getStringField(ISqlJetBtreeSchemaTable.NAME_FIELD),
+                        (int) record.getIntField(ISqlJetBtreeSchemaTable.PAGE_FIELD)));
+            }
+        } finally {
+            cursor.closeCursor();
+        }
+    }
+
+    private double fragmentation(boolean after) throws SqlJetException {
+        final Fragmentation fragmentation = new Fragmentation();
+        fragmentation.start();
+        btree.visitLeafPages(ISqlJetDbHandle.MASTER_ROOT, fragmentation);
+        for (Entry entry : entries) {
+            final int page = after ? entry.newPage : entry.page;
+            if (page > 0) {
+                fragmentation.start();
+                btree.visitLeafPages(page, fragmentation);
+            }
+        }
+        return fragmentation.get();
+    }
+
+    private void build(@Nonnull ISqlJetBtree temp) throws SqlJetException {
+        /*
+         * Roots are created first: in auto-vacuum mode they are moved to the
+         * beginning of file, which would break sequence of already copied
+         * pages.
+         */
+        for (Entry entry : entries) {
+            if (entry.page > 0) {
+                entry.newPage = temp.createTable(
+                        entry.index ? SqlJetSchema.BTREE_CREATE_INDEX_FLAGS : SqlJetSchema.BTREE_CREATE_TABLE_FLAGS);
+            }
+        }
+        for (Entry entry : entries) {
+            if (entry.page > 0) {
+                copyTree(entry, temp);
+            }
+        }
+        copySchema(temp);
+
+        for (int meta : COPIED_META) {
+            temp.updateMeta(meta, btree.getMeta(meta));
+        }
+        temp.updateMeta(SCHEMA_COOKIE, btree.getMeta(SCHEMA_COOKIE) + 1);
+    }
+
+    private void copySchema(@Nonnull ISqlJetBtree temp) throws SqlJetException {
+        final int fileFormat = btree.getMeta(FILE_FORMAT);
+        final ISqlJetBtreeCursor from = btree.getCursor(ISqlJetDbHandle.MASTER_ROOT, false, null);
+        try {
+            int i = 0;
+            for (boolean eof = from.first(); !eof; eof = from.next()) {
+                final Entry entry = entries.get(i++);
+                final SqlJetBtreeRecord record = new SqlJetBtreeRecord(from, false, fileFormat);
+                final List<ISqlJetVdbeMem> fields = new ArrayList<>(record.getFieldsCount());
+                for (int f = 0; f < record.getFieldsCount(); f++) {
+                    fields.add(f == ISqlJetBtreeSchemaTable.PAGE_FIELD ? SqlJetVdbeMemFactory.getInt(entry.newPage)
+                            : record.getRawField(f));
+                }
+                entry.record = SqlJetBtreeRecord.getRecord(fields, fileFormat).getRawRecord();
+            }
+        } finally {
+            from.closeCursor();
+        }
+        final ISqlJetBtreeCursor to = temp.getCursor(ISqlJetDbHandle.MASTER_ROOT, true, null);
+        try {
+            for (Entry entry : entries) {
+                to.insert(null, entry.rowId, entry.record, entry.record.remaining(), 0, true);
+            }
+        } finally {
+            to.closeCursor();
+        }
+    }
+
+    private void copyTree(@Nonnull Entry entry, @Nonnull ISqlJetBtree temp) throws SqlJetException {
+        final SqlJetKeyInfo keyInfo = entry.index ? new SqlJetKeyInfo(getEncoding()) : null;
+        final ISqlJetBtreeCursor from = btree.getCursor(entry.page, false, keyInfo);
+        try {
+            final ISqlJetBtreeCursor to = temp.getCursor(entry.newPage, true, keyInfo);
+            try {
+                for (boolean eof = from.first(); !eof; eof = from.next()) {
+                    if (entry.index) {
+                        if (keyInfo.getNField() == 0) {
+                            adjustKeyInfo(entry, keyInfo, from);
+                        }
+                        final int size = (int) from.getKeySize();
+                        from.key(0, size, buffer(size));
+                        to.insert(buffer, size, null, 0, 0, true);
+                    } else {
+                        final int size = from.getDataSize();
+                        from.data(0, size, buffer(size));
+                        to.insert(null, from.getKeySize(), buffer, size, 0, true);
+                    }
+                }
+            } finally {
+                to.closeCursor();
+            }
+        } finally {
+            from.closeCursor();
+        }
+    }
+
+    /**
+     * Index keys are compared by all their fields, with sorting order of
+     * index columns.
+     */
+    private void adjustKeyInfo(@Nonnull Entry entry, @Nonnull SqlJetKeyInfo keyInfo, ISqlJetBtreeCursor cursor)
+            throws SqlJetException {
+        final int fields = new SqlJetBtreeRecord(cursor, true, btree.getMeta(FILE_FORMAT)).getFieldsCount();
+        keyInfo.setNField(Math.max(fields - 1, 1));
+        final SqlJetSchema schema = btree.getSchema();
+        final ISqlJetIndexDef indexDef = schema != null ? schema.getIndex(entry.name) : null;
+        if (indexDef != null) {
+            int i = 0;
+            for (final ISqlJetIndexedColumn column : indexDef.getColumns()) {
+                if (i < keyInfo.getNField()) {
+                    keyInfo.setSortOrder(i++, column.getSortingOrder() == SqlJetSortingOrder.DESC);
+                }
+            }
+        }
+    }
+
+    private @Nonnull SqlJetEncoding getEncoding() throws SqlJetException {
+        return engine.getOptions().getEncoding();
+    }
+
+    private ISqlJetMemoryPointer buffer(int size) {
+        if (buffer.remaining() < size) {
+            buffer = SqlJetUtility.memoryManager.allocatePtr(Math.max(size, buffer.remaining() * 2));
+        }
+        return buffer;
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * SqlJetVacuumStats.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table.engine;
+
+/**
+ * Result of {@link SqlJetEngine#vacuum()}.
+ *
+ * Fragmentation is the share of leaf pages of tables and indices which don't
+ * follow physically the previous leaf page of the same b-tree in key order:
+ * 0 means that every b-tree is scanned by sequential reads.
+ *
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetVacuumStats {
+
+    private final int pagesBefore;
+    private final int freePagesBefore;
+    private final double fragmentationBefore;
+    private final int pagesAfter;
+    private final double fragmentationAfter;
+
+    SqlJetVacuumStats(int pagesBefore, int freePagesBefore, double fragmentationBefore, int pagesAfter,
+            double fragmentationAfter) {
+        this.pagesBefore = pagesBefore;
+        this.freePagesBefore = freePagesBefore;
+        this.fragmentationBefore = fragmentationBefore;
+        this.pagesAfter = pagesAfter;
+        this.fragmentationAfter = fragmentationAfter;
+    }
+
+    /**
+     * @return number of pages in database file before vacuum.
+     */
+    public int getPagesBefore() {
+        return pagesBefore;
+    }
+
+    /**
+     * @return number of unused pages in database file before vacuum.
+     */
+    public int getFreePagesBefore() {
+        return freePagesBefore;
+    }
+
+    /**
+     * @return fragmentation of b-trees before vacuum, from 0 to 1.
+     */
+    public double getFragmentationBefore() {
+        return fragmentationBefore;
+    }
+
+    /**
+     * @return number of pages in database file after vacuum.
+     */
+    public int getPagesAfter() {
+        return pagesAfter;
+    }
+
+    /**
+     * @return fragmentation of b-trees after vacuum, from 0 to 1.
+     */
+    public double getFragmentationAfter() {
+        return fragmentationAfter;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pages: %d -> %d, free pages: %d, fragmentation: %.3f -> %.3f", pagesBefore, pagesAfter,
+                freePagesBefore, fragmentationBefore, fragmentationAfter);
+    }
+
+}
@@ -18,6 +18,7 @@
 package org.tmatesoft.sqljet.core.internal;
 
 import java.util.Collection;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -26,7 +27,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetBufferPool;
 import org.tmatesoft.sqljet.core.internal.memory.SqlJetMemoryManager;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetVarintResult;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetVarintResult32;
 
 /**
  * @author TMate Software Ltd.
@@ -124,4 +128,73 @@ public class MemoryBufferTest {
         Assert.assertEquals(1, b.getIntUnsigned(0));
         Assert.assertEquals(1, b.getInt(0));
     }
+
+    @Test
+    public void testPagePool() {
+        final int pageSize = ISqlJetLimits.SQLJET_DEFAULT_PAGE_SIZE;
+        final SqlJetBufferPool pool = memoryManager.getBufferPool();
+        final ISqlJetMemoryPointer p1 = memoryManager.allocatePagePtr(pageSize, bufferType);
+        Assert.assertEquals(1, pool.getMisses());
+        Assert.assertEquals(1, pool.getOutstanding());
+        p1.fill(pageSize, (byte) 7);
+        memoryManager.free(p1);
+        Assert.assertEquals(0, pool.getOutstanding());
+        Assert.assertEquals(1, pool.getPooled());
+
+        final ISqlJetMemoryPointer p2 = memoryManager.allocatePagePtr(pageSize, bufferType);
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertSame(p1.getBuffer(), p2.getBuffer());
+        Assert.assertEquals(0, p2.getByte(0));
+        Assert.assertEquals(0, p2.getByte(pageSize - 1));
+
+        final ISqlJetMemoryPointer other = memoryManager.allocatePagePtr(pageSize * 2, bufferType);
+        Assert.assertEquals(2, pool.getMisses());
+        memoryManager.free(other);
+        Assert.assertNotSame(other.getBuffer(), memoryManager.allocatePagePtr(pageSize, bufferType).getBuffer());
+    }
+
+    @Test
+    public void testOddSizesAreNotPooled() {
+        final ISqlJetMemoryPointer p = memoryManager.allocatePagePtr(100, bufferType);
+        memoryManager.free(p);
+        Assert.assertEquals(0, memoryManager.getBufferPool().getOutstanding());
+        Assert.assertEquals(0, memoryManager.getBufferPool().getPooled());
+    }
+
+    @Test
+    public void testForeignBuffersAreIgnored() {
+        final int pageSize = ISqlJetLimits.SQLJET_DEFAULT_PAGE_SIZE;
+        final ISqlJetMemoryPointer p = memoryManager.allocatePagePtr(pageSize, bufferType);
+        memoryManager.free(memoryManager.allocatePtr(pageSize, bufferType));
+        Assert.assertEquals(1, memoryManager.getBufferPool().getOutstanding());
+        Assert.assertEquals(0, memoryManager.getBufferPool().getPooled());
+        memoryManager.free(p);
+        memoryManager.free(p);
+        Assert.assertEquals(0, memoryManager.getBufferPool().getOutstanding());
+        Assert.assertEquals(1, memoryManager.getBufferPool().getPooled());
+    }
+
+    @Test
+    public void testVarints() {
+        final ISqlJetMemoryPointer p = memoryManager.allocatePtr(20, bufferType);
+        final Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            final long v = i < 64 ? 1L << i : random.nextLong() >>> random.nextInt(64);
+            final int n = p.putVarint(1, v);
+            Assert.assertEquals(n, p.getVarintLength(1));
+            Assert.assertEquals(v, p.getVarintValue(1));
+            final SqlJetVarintResult varint = p.getVarint(1);
+            Assert.assertEquals(n, varint.getOffset());
+            Assert.assertEquals(v, varint.getValue());
+
+            final long packed = p.getVarint32Packed(1);
+            final SqlJetVarintResult32 varint32 = p.getVarint32(1);
+            Assert.assertEquals(varint32.getOffset(), SqlJetVarintResult32.getPackedOffset(packed));
+            Assert.assertEquals(varint32.getValue(), SqlJetVarintResult32.getPackedValue(packed));
+            if (v >= 0 && v <= Integer.MAX_VALUE) {
+                Assert.assertEquals(n, SqlJetVarintResult32.getPackedOffset(packed));
+                Assert.assertEquals(v, SqlJetVarintResult32.getPackedValue(packed));
+            }
+        }
+    }
 }
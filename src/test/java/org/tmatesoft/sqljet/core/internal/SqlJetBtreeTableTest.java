@@ -268,6 +268,34 @@ public class SqlJetBtreeTableTest extends AbstractDataCopyTest {
         Assert.fail();
     }
 
+    @Test
+    public void testReindexExternalSort() throws SqlJetException {
+        final SqlJetSchema schema = new SqlJetSchema(db, btreeCopy);
+        btreeCopy.setSchema(schema);
+        final String idx = schema.getIndexes(REP_CACHE_TABLE).iterator().next().getName();
+        btreeCopy.beginTrans(SqlJetTransactionMode.WRITE);
+        final SqlJetBtreeIndexTable index = new SqlJetBtreeIndexTable(btreeCopy, idx, true);
+        try {
+            final long count = index.count();
+            Assert.assertTrue(count > 1000);
+            /* Few kilobytes of memory make sorter write many runs. */
+            index.reindex(16 * 1024);
+            Assert.assertEquals(count, index.count());
+            String prev = null;
+            for (index.first(); !index.eof(); index.next()) {
+                final String hash = index.getString(0);
+                Assert.assertTrue(prev == null || prev.compareTo(hash) < 0);
+                prev = hash;
+            }
+        } finally {
+            index.close();
+        }
+        btreeCopy.commit();
+        for (int i = 0; i < REPEATS_COUNT; i++) {
+            Assert.assertTrue(hashIndexLookupTest(schema, getRandomHash(schema)));
+        }
+    }
+
     @Test
     public void testIndexLookup() throws SqlJetException {
         boolean passed = false;
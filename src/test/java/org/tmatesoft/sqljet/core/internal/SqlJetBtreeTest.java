@@ -23,6 +23,8 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -32,6 +34,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.tmatesoft.sqljet.core.SqlJetAbstractLoggedTest;
 import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
 import org.tmatesoft.sqljet.core.internal.btree.SqlJetBtree;
 import org.tmatesoft.sqljet.core.internal.db.SqlJetDbHandle;
@@ -117,6 +121,31 @@ public class SqlJetBtreeTest extends SqlJetAbstractLoggedTest {
         });
     }
 
+    @Test
+    public void testCount() throws Exception {
+        db.getMutex().runVoid(mutex -> {
+            try (ISqlJetBtree btree = new SqlJetBtree(testDataBase, db, SqlJetUtility.of(SqlJetBtreeFlags.READONLY),
+                    SqlJetFileType.MAIN_DB, SqlJetUtility.of(SqlJetFileOpenPermission.READONLY))) {
+                btree.beginTrans(SqlJetTransactionMode.READ_ONLY);
+                final ISqlJetBtreeCursor schema = btree.getCursor(1, false, null);
+                final int pageCount = btree.getPager().getPageCount();
+                for (int i = 1; i <= pageCount; i++) {
+                    final ISqlJetBtreeCursor c = btree.getCursor(i, false, null);
+                    if (c.first()) {
+                        continue;
+                    }
+                    long n = 1;
+                    while (!c.next()) {
+                        n++;
+                    }
+                    Assert.assertEquals(n, c.count());
+                    Assert.assertTrue(c.eof());
+                }
+                Assert.assertTrue(schema.count() > 0);
+            }
+        });
+    }
+
     @Test
     public void testWrite() throws Exception {
     	db.getMutex().runVoid(mutex -> {
@@ -344,4 +373,122 @@ public class SqlJetBtreeTest extends SqlJetAbstractLoggedTest {
 
     }
 
+    @Test
+    public void testOverflowRandomAccess() throws Exception {
+        db.getMutex().runVoid(mutex -> {
+            final Random random = new Random(1);
+            final byte[][] rows = new byte[2][1024 * 1024];
+            random.nextBytes(rows[0]);
+            random.nextBytes(rows[1]);
+
+            final Set<SqlJetBtreeFlags> btreeFlags = SqlJetUtility.of(SqlJetBtreeFlags.CREATE,
+                    SqlJetBtreeFlags.READWRITE);
+            final Set<SqlJetFileOpenPermission> fileFlags = SqlJetUtility.of(SqlJetFileOpenPermission.CREATE);
+            try (ISqlJetBtree btree = new SqlJetBtree(testTempFile, db, btreeFlags, SqlJetFileType.MAIN_DB, fileFlags)) {
+                btree.beginTrans(SqlJetTransactionMode.WRITE);
+                final int table = btree.createTable(SqlJetUtility.of(SqlJetBtreeTableCreateFlags.INTKEY,
+                        SqlJetBtreeTableCreateFlags.LEAFDATA));
+                final ISqlJetBtreeCursor c = btree.getCursor(table, true, null);
+                for (int i = 0; i < rows.length; i++) {
+                    c.insert(null, i, SqlJetUtility.wrapPtr(rows[i]), rows[i].length, 0, false);
+                }
+
+                for (int n = 0; n < 1000; n++) {
+                    final int row = random.nextInt(rows.length);
+                    if (n % 100 == 99) {
+                        /* Rewriting of the row gives it other overflow chain. */
+                        random.nextBytes(rows[row]);
+                        c.insert(null, row, SqlJetUtility.wrapPtr(rows[row]), rows[row].length, 0, false);
+                    }
+                    Assert.assertEquals(0, c.moveTo(null, row, false));
+                    final int offset = random.nextInt(rows[row].length);
+                    final int amt = Math.min(random.nextInt(8192) + 1, rows[row].length - offset);
+                    final ISqlJetMemoryPointer buf = SqlJetUtility.memoryManager.allocatePtr(amt);
+                    if (n % 10 == 9) {
+                        final byte[] patch = new byte[amt];
+                        random.nextBytes(patch);
+                        System.arraycopy(patch, 0, rows[row], offset, amt);
+                        c.putData(offset, amt, SqlJetUtility.wrapPtr(patch));
+                    }
+                    c.data(offset, amt, buf);
+                    Assert.assertArrayEquals(Arrays.copyOfRange(rows[row], offset, offset + amt), buf.getBytes());
+                }
+                c.closeCursor();
+                btree.commit();
+            }
+        });
+    }
+
+
+    @Test
+    public void testLoader() throws Exception {
+        db.getMutex().runVoid(mutex -> {
+            final Random random = new Random(1);
+            final byte[][] entries = new byte[5000][];
+            final long[] rowIds = new long[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                /* Some entries are long enough to have overflow pages. */
+                entries[i] = new byte[i % 100 == 0 ? 5000 + random.nextInt(5000) : random.nextInt(200)];
+                random.nextBytes(entries[i]);
+                rowIds[i] = (i > 0 ? rowIds[i - 1] : 0) + 1 + random.nextInt(10);
+            }
+
+            final Set<SqlJetBtreeFlags> btreeFlags = SqlJetUtility.of(SqlJetBtreeFlags.CREATE,
+                    SqlJetBtreeFlags.READWRITE);
+            final Set<SqlJetFileOpenPermission> fileFlags = SqlJetUtility.of(SqlJetFileOpenPermission.CREATE);
+            final int table;
+            final int index;
+            try (ISqlJetBtree btree = new SqlJetBtree(testTempFile, db, btreeFlags, SqlJetFileType.MAIN_DB, fileFlags)) {
+                btree.beginTrans(SqlJetTransactionMode.WRITE);
+                table = btree.createTable(SqlJetUtility.of(SqlJetBtreeTableCreateFlags.INTKEY,
+                        SqlJetBtreeTableCreateFlags.LEAFDATA));
+                index = btree.createTable(SqlJetUtility.of(SqlJetBtreeTableCreateFlags.ZERODATA));
+                final ISqlJetBtreeLoader tableLoader = btree.getLoader(table, null, 100);
+                final ISqlJetBtreeLoader indexLoader = btree.getLoader(index, null, 70);
+                for (int i = 0; i < entries.length; i++) {
+                    final ISqlJetMemoryPointer p = SqlJetUtility.wrapPtr(entries[i]);
+                    tableLoader.append(null, rowIds[i], p, entries[i].length);
+                    indexLoader.append(p, entries[i].length, null, 0);
+                }
+                Assert.assertEquals(entries.length, tableLoader.finish());
+                Assert.assertEquals(entries.length, indexLoader.finish());
+                try {
+                    btree.getLoader(table, null, 100);
+                    Assert.fail();
+                } catch (SqlJetException e) {
+                    Assert.assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+                }
+                btree.commit();
+            }
+
+            try (ISqlJetBtree btree = new SqlJetBtree(testTempFile, db, btreeFlags, SqlJetFileType.MAIN_DB, fileFlags)) {
+                btree.beginTrans(SqlJetTransactionMode.READ_ONLY);
+                final ISqlJetBtreeCursor t = btree.getCursor(table, false, null);
+                final ISqlJetBtreeCursor x = btree.getCursor(index, false, null);
+                Assert.assertEquals(entries.length, t.count());
+                Assert.assertEquals(entries.length, x.count());
+                Assert.assertFalse(t.first());
+                Assert.assertFalse(x.first());
+                for (int i = 0; i < entries.length; i++) {
+                    Assert.assertEquals(rowIds[i], t.getKeySize());
+                    Assert.assertEquals(entries[i].length, t.getDataSize());
+                    Assert.assertEquals(entries[i].length, x.getKeySize());
+                    if (entries[i].length > 0) {
+                        final ISqlJetMemoryPointer buf = SqlJetUtility.memoryManager.allocatePtr(entries[i].length);
+                        t.data(0, entries[i].length, buf);
+                        Assert.assertArrayEquals(entries[i], buf.getBytes());
+                        x.key(0, entries[i].length, buf);
+                        Assert.assertArrayEquals(entries[i], buf.getBytes());
+                    }
+                    Assert.assertEquals(i == entries.length - 1, t.next());
+                    Assert.assertEquals(i == entries.length - 1, x.next());
+                }
+                for (int i = 0; i < entries.length; i += 97) {
+                    Assert.assertEquals(0, t.moveTo(null, rowIds[i], false));
+                    Assert.assertEquals(i, t.getPosition());
+                }
+            }
+        });
+    }
+
 }
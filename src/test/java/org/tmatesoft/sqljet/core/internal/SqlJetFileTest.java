@@ -17,11 +17,15 @@
  */
 package org.tmatesoft.sqljet.core.internal;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetBufferedJournal;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystem;
 
 /**
@@ -103,6 +107,106 @@ public class SqlJetFileTest extends SqlJetAbstractFileSystemMockTest {
     }
 
 	@Test
+    public void testConcurrentReads() throws Exception {
+        final int pageSize = 1024;
+        final int pages = 64;
+        final byte[] data = new byte[pageSize * pages];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i / pageSize);
+        }
+        file.write(SqlJetUtility.wrapPtr(data), data.length, 0);
+        final List<Future<Boolean>> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(execThread(() -> {
+                final ISqlJetMemoryPointer rb = SqlJetUtility.memoryManager.allocatePtr(pageSize);
+                for (int n = 0; n < 1000; n++) {
+                    final int page = n % pages;
+                    if (file.read(rb, pageSize, (long) page * pageSize) != pageSize
+                            || rb.getByte(0) != page || rb.getByte(pageSize - 1) != page) {
+                        return Boolean.FALSE;
+                    }
+                }
+                return Boolean.TRUE;
+            }));
+        }
+        for (Future<Boolean> reader : readers) {
+            Assert.assertEquals("Parallel positional reads should get their own pages", Boolean.TRUE, reader.get());
+        }
+    }
+
+	@Test
+    public void testMmapRead() throws Exception {
+        Assert.assertTrue(0 == path.length());
+        file.setMmapSize(1 << 20);
+        final ISqlJetMemoryPointer wb = SqlJetUtility.wrapPtr(new byte[] { 1, 2, 3, 4 });
+        file.write(wb, wb.remaining(), 0);
+        final ISqlJetMemoryPointer rb = SqlJetUtility.memoryManager.allocatePtr(4);
+        Assert.assertEquals(4, file.read(rb, 4, 0));
+        Assert.assertArrayEquals(wb.getBuffer().asArray(), rb.getBuffer().asArray());
+        final ISqlJetMemoryPointer wb2 = SqlJetUtility.wrapPtr(new byte[] { 5, 6 });
+        file.write(wb2, wb2.remaining(), 4);
+        file.write(wb2, wb2.remaining(), 0);
+        final ISqlJetMemoryPointer rb2 = SqlJetUtility.memoryManager.allocatePtr(6);
+        Assert.assertEquals(6, file.read(rb2, 6, 0));
+        Assert.assertArrayEquals("Mapped reads should see appended and rewritten data",
+                new byte[] { 5, 6, 3, 4, 5, 6 }, rb2.getBuffer().asArray());
+        file.truncate(2);
+        Assert.assertEquals(2, file.read(rb, 4, 0));
+    }
+
+	@Test
+    public void testMmapReadGrowingFile() throws Exception {
+        final int pageSize = 1024;
+        file.setMmapSize(1 << 20);
+        final ISqlJetMemoryPointer wb = SqlJetUtility.memoryManager.allocatePtr(pageSize);
+        final ISqlJetMemoryPointer rb = SqlJetUtility.memoryManager.allocatePtr(pageSize);
+        for (int page = 0; page < 300; page++) {
+            wb.fill(pageSize, (byte) page);
+            file.write(wb, pageSize, (long) page * pageSize);
+            Assert.assertEquals(pageSize, file.read(rb, pageSize, (long) page * pageSize));
+            Assert.assertEquals((byte) page, rb.getByte(pageSize - 1));
+            Assert.assertEquals(pageSize, file.read(rb, pageSize, 0));
+            Assert.assertEquals(0, rb.getByte(0));
+        }
+        for (int page = 0; page < 300; page++) {
+            Assert.assertEquals(pageSize, file.read(rb, pageSize, (long) page * pageSize));
+            Assert.assertEquals((byte) page, rb.getByte(0));
+        }
+    }
+
+	@Test
+    public void testInterruptedReadLosesLocks() throws Exception {
+        final ISqlJetMemoryPointer wb = SqlJetUtility.wrapPtr(new byte[] { 1, 2, 3, 4 });
+        file.write(wb, wb.remaining(), 0);
+        Assert.assertTrue(file.lock(SqlJetLockType.SHARED));
+        Assert.assertTrue(file.lock(SqlJetLockType.RESERVED));
+        final ISqlJetMemoryPointer rb = SqlJetUtility.memoryManager.allocatePtr(4);
+        Thread.currentThread().interrupt();
+        try {
+            file.read(rb, 4, 0);
+            Assert.fail("Read by interrupted thread should fail");
+        } catch (SqlJetException e) {
+            Assert.assertEquals(SqlJetErrorCode.IOERR, e.getErrorCode());
+        } finally {
+            Thread.interrupted();
+        }
+        Assert.assertEquals(SqlJetLockType.NONE, file.getLockType());
+        try {
+            file.write(wb, wb.remaining(), 4);
+            Assert.fail("File shouldn't be reopened while locks are held");
+        } catch (SqlJetException e) {
+            Assert.assertEquals(SqlJetErrorCode.IOERR, e.getErrorCode());
+        }
+        Assert.assertTrue(file.unlock(SqlJetLockType.NONE));
+        Assert.assertTrue(file.lock(SqlJetLockType.SHARED));
+        Assert.assertEquals(SqlJetLockType.SHARED, file.getLockType());
+        Assert.assertEquals(4, file.read(rb, 4, 0));
+        Assert.assertArrayEquals(wb.getBuffer().asArray(), rb.getBuffer().asArray());
+        Assert.assertTrue(file.lock(SqlJetLockType.RESERVED));
+        Assert.assertFalse(file2.lock(SqlJetLockType.SHARED) && file2.lock(SqlJetLockType.RESERVED));
+        Assert.assertTrue(file.unlock(SqlJetLockType.NONE));
+    }
+
     public void testLockShared() throws Exception {
         Assert.assertTrue(file.lock(SqlJetLockType.SHARED));
         Assert.assertTrue(file2.lock(SqlJetLockType.SHARED));
@@ -240,4 +344,44 @@ public class SqlJetFileTest extends SqlJetAbstractFileSystemMockTest {
         Assert.assertTrue(file.unlock(SqlJetLockType.NONE));
     }
 
+	@Test
+    public void testBufferedJournal() throws Exception {
+        final int pageSize = 1024;
+        final int records = 100;
+        final SqlJetBufferedJournal journal = new SqlJetBufferedJournal(file, 4096);
+        final ISqlJetMemoryPointer page = SqlJetUtility.memoryManager.allocatePtr(pageSize);
+        final ISqlJetMemoryPointer pgno = SqlJetUtility.memoryManager.allocatePtr(4);
+        long offset = 0;
+        for (int i = 0; i < records; i++) {
+            pgno.putIntUnsigned(0, i + 1);
+            page.fill(0, pageSize, (byte) i);
+            journal.write(new ISqlJetMemoryPointer[] { pgno, page, pgno }, new int[] { 4, pageSize, 4 }, offset);
+            offset += pageSize + 8;
+        }
+        journal.write(SqlJetUtility.wrapPtr(new byte[] { 0, 0, 0, 100 }), 4, 0);
+        Assert.assertTrue("Journal records should be merged", journal.getFlushCount() < records / 2);
+        journal.sync();
+        Assert.assertEquals(offset, file2.fileSize());
+        final ISqlJetMemoryPointer rb = SqlJetUtility.memoryManager.allocatePtr(pageSize + 8);
+        for (int i = 0; i < records; i++) {
+            file2.read(rb, pageSize + 8, (long) i * (pageSize + 8));
+            Assert.assertEquals(i == 0 ? 100 : i + 1, rb.getInt(0));
+            Assert.assertEquals((byte) i, rb.getByte(4 + pageSize - 1));
+        }
+    }
+
+	@Test
+    public void testBufferedJournalTruncate() throws Exception {
+        final SqlJetBufferedJournal journal = new SqlJetBufferedJournal(file, 4096);
+        final ISqlJetMemoryPointer wb = SqlJetUtility.wrapPtr(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        journal.write(wb, wb.remaining(), 0);
+        Assert.assertEquals(0, file2.fileSize());
+        journal.truncate(4);
+        Assert.assertEquals(4, file2.fileSize());
+        journal.write(wb, wb.remaining(), 4);
+        journal.truncate(0);
+        Assert.assertEquals(1, journal.getFlushCount());
+        Assert.assertEquals(0, file2.fileSize());
+    }
+
 }
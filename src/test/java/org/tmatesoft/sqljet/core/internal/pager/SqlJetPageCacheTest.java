@@ -0,0 +1,119 @@
+package org.tmatesoft.sqljet.core.internal.pager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.internal.ISqlJetLimits;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetBufferPool;
+
+public class SqlJetPageCacheTest {
+    private static final int CACHE_SIZE = 10;
+
+    private SqlJetPageCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new SqlJetPageCache(ISqlJetLimits.SQLJET_DEFAULT_PAGE_SIZE, true, null);
+        cache.setCacheSize(CACHE_SIZE);
+    }
+
+    private void touch(int pageNumber) throws Exception {
+        cache.fetch(pageNumber, true).release();
+    }
+
+    private boolean isCached(int pageNumber) throws Exception {
+        final SqlJetPage page = (SqlJetPage) cache.fetch(pageNumber, false);
+        if (page == null) {
+            return false;
+        }
+        page.release();
+        return true;
+    }
+
+    @Test
+    public void testLruRecyclesLeastRecentlyUsed() throws Exception {
+        cache.setPolicy(SqlJetPageCachePolicy.LRU);
+        for (int i = 1; i <= CACHE_SIZE; i++) {
+            touch(i);
+        }
+        touch(1);
+        touch(CACHE_SIZE + 1);
+        Assert.assertEquals(CACHE_SIZE, cache.getPageCount());
+        Assert.assertTrue(isCached(1));
+        Assert.assertFalse(isCached(2));
+        Assert.assertTrue(isCached(CACHE_SIZE + 1));
+    }
+
+    @Test
+    public void testReferencedPagesAreNotRecycled() throws Exception {
+        for (int i = 1; i <= CACHE_SIZE; i++) {
+            cache.fetch(i, true);
+        }
+        Assert.assertNull(cache.fetch(CACHE_SIZE + 1, true));
+        Assert.assertEquals(CACHE_SIZE, cache.getRefCount());
+    }
+
+    @Test
+    public void testTwoQueueIsScanResistant() throws Exception {
+        cache.setPolicy(SqlJetPageCachePolicy.TWO_QUEUE);
+        for (int i = 1; i <= 3; i++) {
+            touch(i);
+            touch(i);
+        }
+        for (int i = 100; i < 200; i++) {
+            touch(i);
+        }
+        Assert.assertEquals(CACHE_SIZE, cache.getPageCount());
+        for (int i = 1; i <= 3; i++) {
+            Assert.assertTrue("Page used twice should survive the scan", isCached(i));
+        }
+        Assert.assertTrue(isCached(199));
+        Assert.assertFalse(isCached(100));
+    }
+
+    @Test
+    public void testLruIsNotScanResistant() throws Exception {
+        cache.setPolicy(SqlJetPageCachePolicy.LRU);
+        for (int i = 1; i <= 3; i++) {
+            touch(i);
+            touch(i);
+        }
+        for (int i = 100; i < 200; i++) {
+            touch(i);
+        }
+        Assert.assertFalse(isCached(1));
+    }
+
+    @Test
+    public void testRecycledPagesReuseBuffers() throws Exception {
+        final SqlJetBufferPool pool = SqlJetUtility.memoryManager.getBufferPool();
+        for (int i = 1; i <= CACHE_SIZE; i++) {
+            touch(i);
+        }
+        final long hits = pool.getHits();
+        final long outstanding = pool.getOutstanding();
+        for (int i = 100; i < 100 + CACHE_SIZE; i++) {
+            touch(i);
+        }
+        Assert.assertEquals(CACHE_SIZE, cache.getPageCount());
+        Assert.assertTrue(pool.getHits() >= hits + CACHE_SIZE);
+        Assert.assertEquals(outstanding, pool.getOutstanding());
+    }
+
+    @Test
+    public void testDroppedPagesAreAccounted() throws Exception {
+        final SqlJetBufferPool pool = SqlJetUtility.memoryManager.getBufferPool();
+        final long outstanding = pool.getOutstanding();
+        for (int i = 1; i <= CACHE_SIZE; i++) {
+            touch(i);
+        }
+        cache.fetch(1, false);
+        cache.truncate(CACHE_SIZE / 2);
+        Assert.assertEquals(outstanding + CACHE_SIZE / 2, pool.getOutstanding());
+        cache.clear();
+        Assert.assertEquals(outstanding, pool.getOutstanding());
+    }
+
+}
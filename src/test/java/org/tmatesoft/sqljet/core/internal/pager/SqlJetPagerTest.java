@@ -39,6 +39,7 @@ import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 import org.tmatesoft.sqljet.core.internal.ISqlJetPage;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
 import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetPageCachePolicy;
 import org.tmatesoft.sqljet.core.internal.SqlJetPagerFlags;
 import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
 import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
@@ -191,4 +192,115 @@ public class SqlJetPagerTest extends SqlJetAbstractLoggedTest {
 
     }
 
+    @Test
+    public final void testCoalescedWrites() throws Exception {
+        pager = new SqlJetPager(fileSystem, file, flags, SqlJetFileType.MAIN_DB, PERM_CREATE);
+        final int pageSize = ISqlJetLimits.SQLJET_DEFAULT_PAGE_SIZE;
+        final ISqlJetPage page1 = pager.acquirePage(1, true);
+        pager.begin(true);
+        for (int pageNumber = 1; pageNumber <= 10; pageNumber++) {
+            if (pageNumber == 5) {
+                continue;
+            }
+            final ISqlJetPage page = pager.acquirePage(pageNumber, true);
+            page.write();
+            page.getData().fill(pageSize, (byte) pageNumber);
+            page.unref();
+        }
+        pager.commitPhaseOne(false);
+        pager.commitPhaseTwo();
+        page1.unref();
+        Assert.assertEquals(9, pager.getPagesWrittenCount());
+        Assert.assertEquals("Runs 1-4 and 6-10 should be written with two calls", 2, pager.getWriteCount());
+        pager.close();
+
+        pager = new SqlJetPager(fileSystem, file, flags, SqlJetFileType.MAIN_DB, PERM_CREATE);
+        for (int pageNumber = 6; pageNumber <= 10; pageNumber++) {
+            final ISqlJetPage page = pager.acquirePage(pageNumber, true);
+            Assert.assertEquals((byte) pageNumber, page.getData().getByte(0));
+            Assert.assertEquals((byte) pageNumber, page.getData().getByte(pageSize - 1));
+            page.unref();
+        }
+    }
+
+    @Test
+    public final void testPrefetch() throws Exception {
+        pager = new SqlJetPager(fileSystem, file, flags, SqlJetFileType.MAIN_DB, PERM_CREATE);
+        final int pageSize = ISqlJetLimits.SQLJET_DEFAULT_PAGE_SIZE;
+        ISqlJetPage page1 = pager.acquirePage(1, true);
+        pager.begin(true);
+        for (int pageNumber = 1; pageNumber <= 20; pageNumber++) {
+            final ISqlJetPage page = pager.acquirePage(pageNumber, true);
+            page.write();
+            page.getData().fill(pageSize, (byte) pageNumber);
+            page.unref();
+        }
+        pager.commitPhaseOne(false);
+        pager.commitPhaseTwo();
+        page1.unref();
+        pager.close();
+
+        pager = new SqlJetPager(fileSystem, file, flags, SqlJetFileType.MAIN_DB, PERM_CREATE);
+        page1 = pager.acquirePage(1, true);
+        final ISqlJetPage page4 = pager.acquirePage(4, true);
+        pager.prefetch(new int[] { 2, 3, 4, 5, 6, 10, 11, 30 }, 8);
+        Assert.assertEquals("Runs 2-3, 5-6 and 10-11 should be read with three calls", 3, pager.getReadAheadCount());
+        Assert.assertEquals(6, pager.getPagesReadAheadCount());
+        for (int pageNumber : new int[] { 2, 3, 5, 6, 10, 11 }) {
+            final ISqlJetPage page = pager.lookup(pageNumber);
+            Assert.assertNotNull(page);
+            Assert.assertEquals((byte) pageNumber, page.getData().getByte(pageSize - 1));
+            page.unref();
+        }
+        Assert.assertNull(pager.lookup(7));
+        page4.unref();
+        page1.unref();
+    }
+
+    @Test
+    public final void testPrefetchKeepsHotPages() throws Exception {
+        pager = new SqlJetPager(fileSystem, file, flags, SqlJetFileType.MAIN_DB, PERM_CREATE);
+        final int pageSize = ISqlJetLimits.SQLJET_DEFAULT_PAGE_SIZE;
+        ISqlJetPage page1 = pager.acquirePage(1, true);
+        pager.begin(true);
+        for (int pageNumber = 1; pageNumber <= 200; pageNumber++) {
+            final ISqlJetPage page = pager.acquirePage(pageNumber, true);
+            page.write();
+            page.getData().fill(pageSize, (byte) pageNumber);
+            page.unref();
+        }
+        pager.commitPhaseOne(false);
+        pager.commitPhaseTwo();
+        page1.unref();
+        pager.close();
+
+        pager = new SqlJetPager(fileSystem, file, flags, SqlJetFileType.MAIN_DB, PERM_CREATE);
+        pager.setCacheSize(20);
+        pager.setCachePolicy(SqlJetPageCachePolicy.TWO_QUEUE);
+        page1 = pager.acquirePage(1, true);
+        for (int pageNumber = 2; pageNumber <= 4; pageNumber++) {
+            pager.acquirePage(pageNumber, true).unref();
+            pager.acquirePage(pageNumber, true).unref();
+        }
+        final int[] ahead = new int[8];
+        for (int pageNumber = 10; pageNumber <= 200; pageNumber++) {
+            if ((pageNumber - 10) % ahead.length == 0) {
+                for (int i = 0; i < ahead.length; i++) {
+                    ahead[i] = pageNumber + i;
+                }
+                pager.prefetch(ahead, ahead.length);
+            }
+            final ISqlJetPage page = pager.acquirePage(pageNumber, true);
+            Assert.assertEquals((byte) pageNumber, page.getData().getByte(0));
+            page.unref();
+        }
+        Assert.assertTrue(pager.getPagesReadAheadCount() > 100);
+        for (int pageNumber = 2; pageNumber <= 4; pageNumber++) {
+            final ISqlJetPage page = pager.lookup(pageNumber);
+            Assert.assertNotNull("Page used twice should survive the scan", page);
+            page.unref();
+        }
+        page1.unref();
+    }
+
 }
@@ -0,0 +1,56 @@
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Random values of all types which could be stored in a record.
+ */
+final class SqlJetRandomValues {
+
+	private static final String[] CHARS = { "a", "z", "é", "\u0000", "߿", "ࠀ", "퟿", "",
+			"￿", "😀", "􏿿", "\ud800", "\udc00" };
+
+	private SqlJetRandomValues() {
+	}
+
+	private static byte[] blob(Random random) {
+		final byte[] blob = new byte[random.nextInt(10) == 0 ? random.nextInt(3000) : random.nextInt(4)];
+		random.nextBytes(blob);
+		return blob;
+	}
+
+	static Object value(Random random) {
+		switch (random.nextInt(12)) {
+		case 0:
+			return null;
+		case 1:
+			return Long.valueOf(random.nextInt(5) - 2);
+		case 2:
+			return Long.valueOf(random.nextLong() >> random.nextInt(64));
+		case 3:
+			return Integer.valueOf(random.nextInt() >> random.nextInt(32));
+		case 4:
+			return Boolean.valueOf(random.nextBoolean());
+		case 5:
+			return Double.valueOf(random.nextInt(5) == 0 ? -0.0 : random.nextGaussian() * 100);
+		case 6:
+			return Float.valueOf((float) random.nextGaussian());
+		case 7:
+			return blob(random);
+		case 8:
+			return ByteBuffer.wrap(blob(random));
+		case 9:
+			return new ByteArrayInputStream(blob(random));
+		default: {
+			final StringBuilder s = new StringBuilder();
+			for (int i = random.nextInt(10) == 0 ? random.nextInt(1000) : random.nextInt(4); i > 0; i--) {
+				s.append(CHARS[random.nextInt(CHARS.length)]);
+			}
+			return s.toString();
+		}
+		}
+	}
+
+}
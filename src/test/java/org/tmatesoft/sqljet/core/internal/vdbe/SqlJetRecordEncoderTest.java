@@ -0,0 +1,80 @@
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+
+public class SqlJetRecordEncoderTest {
+
+	/**
+	 * Streams are consumed by encoding, so each encoding gets its own copy.
+	 */
+	private static Object[] copy(Object[] values) {
+		final Object[] copy = values.clone();
+		for (int i = 0; i < copy.length; i++) {
+			if (copy[i] instanceof ByteArrayInputStream) {
+				final ByteArrayInputStream stream = (ByteArrayInputStream) copy[i];
+				final byte[] bytes = new byte[stream.available()];
+				stream.read(bytes, 0, bytes.length);
+				values[i] = new ByteArrayInputStream(bytes);
+				copy[i] = new ByteArrayInputStream(bytes);
+			}
+		}
+		return copy;
+	}
+
+	@Test
+	public void testSameAsRecord() throws SqlJetException {
+		final Random random = new Random(1);
+		for (final SqlJetEncoding encoding : SqlJetEncoding.values()) {
+			final SqlJetRecordEncoder encoder = new SqlJetRecordEncoder(encoding);
+			for (int i = 0; i < 5000; i++) {
+				final Object[] values = new Object[random.nextInt(10) == 0 ? random.nextInt(100) : random.nextInt(5)];
+				for (int j = 0; j < values.length; j++) {
+					values[j] = SqlJetRandomValues.value(random);
+				}
+				final Object[] copy = copy(values);
+				final byte[] expected = SqlJetBtreeRecord.getRecord(encoding, copy).getRawRecord().getBytes();
+				assertArrayEquals(expected, encoder.encode(values).getBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testRowId() throws SqlJetException {
+		final Random random = new Random(2);
+		final SqlJetRecordEncoder encoder = new SqlJetRecordEncoder(SqlJetEncoding.UTF8);
+		for (int i = 0; i < 1000; i++) {
+			final Object[] values = { SqlJetRandomValues.value(random), SqlJetRandomValues.value(random) };
+			final long rowId = random.nextLong() >> random.nextInt(64);
+			final Object[] copy = copy(values);
+			final byte[] expected = SqlJetBtreeRecord
+					.getRecord(SqlJetEncoding.UTF8, SqlJetUtility.addValueToArray(copy, Long.valueOf(rowId)))
+					.getRawRecord().getBytes();
+			assertArrayEquals(expected, encoder.encode(values, rowId).getBytes());
+		}
+	}
+
+	@Test
+	public void testBadValue() throws SqlJetException {
+		final SqlJetRecordEncoder encoder = new SqlJetRecordEncoder(SqlJetEncoding.UTF8);
+		try {
+			encoder.encode(new Object[] { "a", new Object() });
+			fail();
+		} catch (SqlJetException e) {
+			assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+		}
+		assertArrayEquals(SqlJetBtreeRecord.getRecord(SqlJetEncoding.UTF8, "b").getRawRecord().getBytes(),
+				encoder.encode(new Object[] { "b" }).getBytes());
+	}
+
+}
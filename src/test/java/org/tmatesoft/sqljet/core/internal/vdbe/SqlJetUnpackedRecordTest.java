@@ -0,0 +1,85 @@
+package org.tmatesoft.sqljet.core.internal.vdbe;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetEncoding;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.ISqlJetVdbeMem;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.memory.SqlJetVarintResult32;
+
+public class SqlJetUnpackedRecordTest {
+
+	private static ISqlJetMemoryPointer record(int serialType, byte[] data) {
+		final ISqlJetMemoryPointer record = SqlJetUtility.memoryManager.allocatePtr(data.length + 2);
+		record.putByteUnsigned(0, 2);
+		record.putByteUnsigned(1, serialType);
+		record.pointer(2).putBytes(data);
+		return record;
+	}
+
+	/**
+	 * Deserializes the only field of record. Long texts and blobs have serial
+	 * types which take more than one byte of header.
+	 */
+	private static ISqlJetVdbeMem field(ISqlJetMemoryPointer record, SqlJetEncoding encoding)
+			throws SqlJetException {
+		final long header = record.getVarint32Packed(0);
+		final int serialType = SqlJetVarintResult32
+				.getPackedValue(record.getVarint32Packed(SqlJetVarintResult32.getPackedOffset(header)));
+		return SqlJetVdbeMemFactory.serialGet(record, SqlJetVarintResult32.getPackedValue(header), serialType, encoding)
+				.getValue();
+	}
+
+	/**
+	 * Serialized value is compared in place as if it was deserialized and
+	 * compared as {@link ISqlJetVdbeMem}.
+	 */
+	private static void assertCompare(SqlJetKeyInfo keyInfo, ISqlJetMemoryPointer cell, ISqlJetMemoryPointer key)
+			throws SqlJetException {
+		final ISqlJetVdbeMem value = field(cell, keyInfo.getEnc());
+		final ISqlJetVdbeMem field = field(key, keyInfo.getEnc());
+		assertEquals(Integer.signum(value.compareTo(field)),
+				Integer.signum(keyInfo.recordUnpack(key.remaining(), key).recordCompare(cell.remaining(), cell)));
+	}
+
+	@Test
+	public void testCompareValues() throws SqlJetException {
+		final Random random = new Random(1);
+		for (final SqlJetEncoding encoding : SqlJetEncoding.values()) {
+			final SqlJetKeyInfo keyInfo = new SqlJetKeyInfo(encoding);
+			keyInfo.setNField(1);
+			for (int i = 0; i < 20000; i++) {
+				final ISqlJetMemoryPointer cell = SqlJetBtreeRecord.getRecord(encoding, SqlJetRandomValues.value(random))
+						.getRawRecord();
+				final ISqlJetMemoryPointer key = SqlJetBtreeRecord.getRecord(encoding, SqlJetRandomValues.value(random))
+						.getRawRecord();
+				assertCompare(keyInfo, cell, key);
+			}
+		}
+	}
+
+	@Test
+	public void testCompareMalformedText() throws SqlJetException {
+		final Random random = new Random(2);
+		for (final SqlJetEncoding encoding : SqlJetEncoding.values()) {
+			final SqlJetKeyInfo keyInfo = new SqlJetKeyInfo(encoding);
+			keyInfo.setNField(1);
+			for (int i = 0; i < 20000; i++) {
+				final byte[] text = new byte[random.nextInt(6)];
+				for (int j = 0; j < text.length; j++) {
+					text[j] = (byte) (random.nextBoolean() ? 0x80 | random.nextInt(0x80) : random.nextInt(0x100));
+				}
+				final ISqlJetMemoryPointer cell = record(text.length * 2 + 13, text);
+				final ISqlJetMemoryPointer key = SqlJetBtreeRecord.getRecord(encoding, SqlJetRandomValues.value(random))
+						.getRawRecord();
+				assertCompare(keyInfo, cell, key);
+			}
+		}
+	}
+
+}
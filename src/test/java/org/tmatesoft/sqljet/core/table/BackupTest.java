@@ -0,0 +1,171 @@
+/**
+ * BackupTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.SqlJetTransactionMode;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+import org.tmatesoft.sqljet.core.table.engine.SqlJetBackup;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class BackupTest extends AbstractNewDbTest {
+
+    private File copy;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        copy = File.createTempFile(this.getClass().getSimpleName(), null);
+        copy.deleteOnExit();
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text)");
+            db.createIndex("create index tb on t(b)");
+        });
+        insert(db, 0, 1000);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            SqlJetFileUtil.deleteFile(copy);
+        }
+    }
+
+    private static void insert(SqlJetDb db, int from, int to) throws SqlJetException {
+        db.write().asVoid(db2 -> {
+            for (int i = from; i < to; i++) {
+                db2.getTable("t").insert(null, "row number " + i);
+            }
+        });
+    }
+
+    private static long count(SqlJetDb db) throws SqlJetException {
+        return db.read().asLong(db2 -> db2.getTable("t").open().getRowCount());
+    }
+
+    private void assertCopy(long rows) throws SqlJetException {
+        final SqlJetDb db2 = SqlJetDb.open(copy, false);
+        try {
+            assertEquals(rows, count(db2));
+            assertFalse(db2.read().asBool(db -> db.getTable("t").lookup("tb", "row number 7").eof()));
+        } finally {
+            db2.close();
+        }
+    }
+
+    @Test
+    public void testBackupInSteps() throws Exception {
+        try (SqlJetBackup backup = db.backup(copy)) {
+            int steps = 0;
+            while (!backup.step(5)) {
+                steps++;
+                assertTrue(backup.getRemaining() > 0);
+            }
+            assertTrue(steps > 1);
+            assertEquals(0, backup.getRemaining());
+            assertEquals(0, backup.getRestartCount());
+            assertEquals(file.length(), copy.length());
+        }
+        assertCopy(1000);
+    }
+
+    @Test
+    public void testRestartOnChange() throws Exception {
+        try (SqlJetBackup backup = db.backup(copy)) {
+            assertFalse(backup.step(3));
+            insert(db, 1000, 1100);
+            backup.run(10);
+            assertEquals(1, backup.getRestartCount());
+        }
+        assertCopy(1100);
+    }
+
+    @Test
+    public void testChangeByAnotherConnection() throws Exception {
+        try (SqlJetBackup backup = db.backup(copy)) {
+            assertFalse(backup.step(3));
+            final SqlJetDb db2 = SqlJetDb.open(file, true);
+            try {
+                insert(db2, 1000, 1010);
+            } finally {
+                db2.close();
+            }
+            backup.run(-1);
+            assertEquals(1, backup.getRestartCount());
+        }
+        assertCopy(1010);
+    }
+
+    @Test
+    public void testSourceIsNotDestination() throws Exception {
+        try {
+            db.backup(new File(file.getParentFile(), "." + File.separator + file.getName())).close();
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+        assertEquals(1000, count(db));
+    }
+
+    @Test
+    public void testLockedDestinationKeepsJournal() throws Exception {
+        final SqlJetDb db2 = SqlJetDb.open(copy, true);
+        try {
+            db2.write().asVoid(db -> db.createTable("create table t(a integer primary key, b text)"));
+            db2.beginTransaction(SqlJetTransactionMode.WRITE);
+            insert(db2, 0, 100);
+            final File journal = new File(copy.getPath() + "-journal");
+            assertTrue(journal.exists());
+            try {
+                db.backup(copy).close();
+                fail();
+            } catch (SqlJetException e) {
+                assertEquals(SqlJetErrorCode.BUSY, e.getErrorCode());
+            }
+            assertTrue(journal.exists());
+            db2.rollback();
+        } finally {
+            db2.close();
+        }
+        try (SqlJetBackup backup = db.backup(copy)) {
+            backup.run(-1);
+        }
+        assertCopy(1000);
+    }
+
+}
@@ -1,7 +1,10 @@
 package org.tmatesoft.sqljet.core.table;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
@@ -12,6 +15,7 @@ import org.tmatesoft.sqljet.core.AbstractNewDbTest;
 import org.tmatesoft.sqljet.core.IntConstants;
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
 
 public class BlobsTest extends AbstractNewDbTest {
 
@@ -132,4 +136,37 @@ public class BlobsTest extends AbstractNewDbTest {
 		});
     }
 
+    @Test
+    public void blobsSurviveScanLargerThanCache() throws Exception {
+        db.createTable(T_DDL);
+        final ISqlJetTable t = db.getTable("t");
+        final int rows = 1000;
+        db.write().asVoid(db -> {
+            for (int i = 0; i < rows; i++) {
+                final byte[] blob = new byte[300];
+                Arrays.fill(blob, (byte) i);
+                t.insert(Integer.valueOf(i), blob);
+            }
+        });
+        db.setCacheSize(10);
+
+        final List<Object> values = new ArrayList<>();
+        db.read().asVoid(db -> {
+            final ISqlJetCursor c = t.open();
+            try {
+                for (; !c.eof(); c.next()) {
+                    values.add(c.getRowValues()[1]);
+                }
+            } finally {
+                c.close();
+            }
+        });
+        Assert.assertEquals(rows, values.size());
+        for (int i = 0; i < rows; i++) {
+            final byte[] blob = new byte[300];
+            Arrays.fill(blob, (byte) i);
+            Assert.assertArrayEquals(blob, ((ISqlJetMemoryPointer) values.get(i)).getBytes());
+        }
+    }
+
 }
@@ -0,0 +1,181 @@
+/**
+ * BulkLoadTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class BulkLoadTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 20000;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        createTable();
+    }
+
+    private void createTable() throws SqlJetException {
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text not null, c blob)");
+            db.createIndex("create index tb on t(b)");
+        });
+    }
+
+    private static byte[] blob(int i) {
+        final byte[] blob = new byte[i % 1000 == 0 ? 10000 : 10];
+        Arrays.fill(blob, (byte) i);
+        return blob;
+    }
+
+    private static List<Object[]> rows() {
+        final List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= ROWS; i++) {
+            rows.add(new Object[] { Long.valueOf(i * 2), "row " + i, blob(i) });
+        }
+        return rows;
+    }
+
+    private void assertContent(int extra) throws SqlJetException {
+        final ISqlJetTable t = db.getTable("t");
+        assertEquals(ROWS + extra, t.getRowCount());
+        db.read().asVoid(db -> {
+            final ISqlJetCursor c = t.open();
+            for (int i = 1; i <= ROWS; i++, c.next()) {
+                assertFalse(c.eof());
+                assertEquals(i * 2, c.getInteger("a"));
+                assertEquals("row " + i, c.getString("b"));
+                assertArrayEquals(blob(i), c.getBlobAsArray("c").orElse(null));
+            }
+            c.close();
+            for (int i = 1; i <= ROWS; i += 999) {
+                final ISqlJetCursor l = t.lookup("tb", "row " + i);
+                assertFalse(l.eof());
+                assertEquals(i * 2, l.getInteger("a"));
+                l.close();
+            }
+            final ISqlJetCursor p = t.open();
+            assertTrue(p.goToRow(ROWS / 2));
+            assertEquals(ROWS, p.getInteger("a"));
+            p.close();
+        });
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        assertEquals(ROWS, db.getTable("t").bulkLoad(rows().iterator()));
+        assertContent(0);
+
+        db.write().asVoid(db -> db.getTable("t").insert(null, "row " + (ROWS + 1), null));
+        assertContent(1);
+        assertEquals(ROWS * 2 + 1, (long) db.read().asLong(db -> db.getTable("t").lookup("tb", "row " + (ROWS + 1))
+                .getInteger("a")));
+
+        db.close();
+        db = SqlJetDb.open(file, true);
+        assertContent(1);
+    }
+
+    @Test
+    public void testBulkLoadAutoVacuum() throws Exception {
+        db.close();
+        file.delete();
+        db = SqlJetDb.open(file, true);
+        db.getOptions().setAutovacuum(true);
+        createTable();
+        db.getTable("t").bulkLoad(rows().iterator());
+        assertContent(0);
+        db.write().asVoid(db -> {
+            final ISqlJetCursor c = db.getTable("t").open();
+            c.goTo(2);
+            c.delete();
+            c.close();
+        });
+        assertEquals(ROWS - 1, db.getTable("t").getRowCount());
+    }
+
+    @Test
+    public void testNewRowIds() throws Exception {
+        final List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= ROWS; i++) {
+            rows.add(new Object[] { null, "row " + i, blob(i) });
+        }
+        db.getTable("t").bulkLoad(rows.iterator());
+        db.read().asVoid(db -> {
+            final ISqlJetCursor c = db.getTable("t").open();
+            assertTrue(c.last());
+            assertEquals(ROWS, c.getInteger("a"));
+            assertEquals("row " + ROWS, c.getString("b"));
+            c.close();
+        });
+    }
+
+    @Test
+    public void testUnsortedRows() throws Exception {
+        final List<Object[]> rows = rows();
+        rows.add(new Object[] { Long.valueOf(1), "row 0", null });
+        try {
+            db.getTable("t").bulkLoad(rows.iterator());
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+        assertEquals(0, db.getTable("t").getRowCount());
+        assertEquals(0, db.getFreePageCount());
+    }
+
+    @Test
+    public void testNotNull() throws Exception {
+        final List<Object[]> rows = rows();
+        rows.add(new Object[] { Long.valueOf(ROWS * 2 + 2), null, null });
+        try {
+            db.getTable("t").bulkLoad(rows.iterator());
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+        assertEquals(0, db.getTable("t").getRowCount());
+    }
+
+    @Test
+    public void testNotEmptyTable() throws Exception {
+        db.write().asVoid(db -> db.getTable("t").insert(Long.valueOf(ROWS * 3), "last row", null));
+        assertEquals(ROWS, db.getTable("t").bulkLoad(rows().iterator()));
+        assertContent(1);
+    }
+
+}
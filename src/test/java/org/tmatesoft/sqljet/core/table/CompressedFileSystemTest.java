@@ -0,0 +1,216 @@
+/**
+ * CompressedFileSystemTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.EnumSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetFile;
+import org.tmatesoft.sqljet.core.internal.ISqlJetMemoryPointer;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileOpenPermission;
+import org.tmatesoft.sqljet.core.internal.SqlJetFileType;
+import org.tmatesoft.sqljet.core.internal.SqlJetUtility;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetCompressedFileSystem;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetFileSystemsManager;
+import org.tmatesoft.sqljet.core.internal.fs.util.SqlJetFileUtil;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class CompressedFileSystemTest {
+
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog. ";
+
+    private File file;
+    private SqlJetCompressedFileSystem fs;
+    private SqlJetDb db;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile(this.getClass().getSimpleName(), null);
+        file.deleteOnExit();
+        fs = new SqlJetCompressedFileSystem();
+        db = SqlJetDb.open(file, true, fs);
+        db.write().asVoid(db -> db.createTable("create table t(a integer primary key, b text)"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (db != null) {
+                db.close();
+            }
+        } finally {
+            SqlJetFileUtil.deleteFile(file);
+        }
+    }
+
+    private static String text(int i) {
+        final StringBuilder s = new StringBuilder();
+        for (int j = 0; j < 10; j++) {
+            s.append(TEXT).append(i);
+        }
+        return s.toString();
+    }
+
+    private void insert(int from, int to) throws SqlJetException {
+        db.write().asVoid(db -> {
+            for (int i = from; i < to; i++) {
+                db.getTable("t").insert(null, text(i));
+            }
+        });
+    }
+
+    private long count(SqlJetDb db) throws SqlJetException {
+        return db.read().asLong(db2 -> db2.getTable("t").open().getRowCount());
+    }
+
+    @Test
+    public void testRegistered() {
+        assertSame(SqlJetCompressedFileSystem.class,
+                SqlJetFileSystemsManager.getManager().find(SqlJetCompressedFileSystem.FS_NAME).getClass());
+    }
+
+    @Test
+    public void testCompressedAndReopened() throws Exception {
+        insert(0, 2000);
+        db.close();
+        db = null;
+
+        assertTrue(fs.getCompressionRatio() > 2);
+        assertTrue(fs.getCodecCpuTime() > 0);
+        assertTrue(file.length() * 2 < 2000 * TEXT.length() * 10);
+
+        db = SqlJetDb.open(file, false, SqlJetCompressedFileSystem.FS_NAME);
+        assertEquals(2000, count(db));
+        assertEquals(text(1234), db.read().as(db -> {
+            final ISqlJetCursor c = db.getTable("t").open();
+            c.goTo(1235);
+            return c.getString("b");
+        }));
+    }
+
+    @Test
+    public void testRewritesReuseSpace() throws Exception {
+        insert(0, 1000);
+        final long length = file.length();
+        for (int k = 0; k < 5; k++) {
+            final int n = k;
+            db.write().asVoid(db -> {
+                final ISqlJetCursor c = db.getTable("t").open();
+                while (!c.eof()) {
+                    c.update(null, text(n));
+                    c.next();
+                }
+            });
+        }
+        assertTrue(file.length() < 2 * length);
+        assertEquals(1000, count(db));
+    }
+
+    @Test
+    public void testSecondConnectionSeesChanges() throws Exception {
+        final SqlJetDb db2 = SqlJetDb.open(file, true, fs);
+        try {
+            assertEquals(0, count(db2));
+            insert(0, 100);
+            assertEquals(100, count(db2));
+            db2.write().asVoid(db -> db.getTable("t").insert(null, "x"));
+            assertEquals(101, count(db));
+        } finally {
+            db2.close();
+        }
+    }
+
+    private static void writeBlock(ISqlJetFile f, int index, int value) throws SqlJetException {
+        final ISqlJetMemoryPointer p = SqlJetUtility.memoryManager.allocatePtr(1024);
+        p.fill(1024, (byte) value);
+        f.write(p, 1024, index * 1024L);
+    }
+
+    private static void assertBlock(ISqlJetFile f, int index, int value) throws SqlJetException {
+        final ISqlJetMemoryPointer p = SqlJetUtility.memoryManager.allocatePtr(1024);
+        assertEquals(1024, f.read(p, 1024, index * 1024L));
+        for (int i = 0; i < 1024; i++) {
+            assertEquals(value, p.getByte(i));
+        }
+    }
+
+    @Test
+    public void testTruncateAndGrow() throws Exception {
+        final File container = File.createTempFile(this.getClass().getSimpleName(), null);
+        container.deleteOnExit();
+        try {
+            final ISqlJetFile f = new SqlJetCompressedFileSystem(6, 1024).open(container, SqlJetFileType.MAIN_DB,
+                    EnumSet.of(SqlJetFileOpenPermission.CREATE));
+            try {
+                for (int i = 0; i < 4; i++) {
+                    writeBlock(f, i, i + 1);
+                }
+                f.sync();
+                f.truncate(2048);
+                f.sync();
+                writeBlock(f, 1, 5);
+                writeBlock(f, 2, 6);
+                writeBlock(f, 3, 7);
+                f.sync();
+                assertEquals(4096, f.fileSize());
+                assertBlock(f, 0, 1);
+                assertBlock(f, 1, 5);
+                assertBlock(f, 2, 6);
+                assertBlock(f, 3, 7);
+            } finally {
+                f.close();
+            }
+        } finally {
+            SqlJetFileUtil.deleteFile(container);
+        }
+    }
+
+    @Test
+    public void testPlainFileIsRejected() throws Exception {
+        final File plain = File.createTempFile(this.getClass().getSimpleName(), null);
+        plain.deleteOnExit();
+        try {
+            final SqlJetDb db2 = SqlJetDb.open(plain, true);
+            db2.write().asVoid(db -> db.createTable("create table t(a integer primary key)"));
+            db2.close();
+            try {
+                SqlJetDb.open(plain, false, fs).close();
+                fail();
+            } catch (SqlJetException e) {
+                assertEquals(SqlJetErrorCode.NOTADB, e.getErrorCode());
+            }
+        } finally {
+            SqlJetFileUtil.deleteFile(plain);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * IncrementalVacuumTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.ISqlJetLimits;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class IncrementalVacuumTest extends AbstractNewDbTest {
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.getOptions().setAutovacuum(true);
+        db.getOptions().setIncrementalVacuum(true);
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text)");
+            db.createIndex("create index tb on t(b)");
+            for (int i = 0; i < 2000; i++) {
+                db.getTable("t").insert(null, "row number " + i);
+            }
+        });
+        db.write().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            for (int i = 1; i <= 2000; i++) {
+                if (i % 4 != 0) {
+                    final ISqlJetCursor c = t.open();
+                    c.goTo(i);
+                    c.delete();
+                    c.close();
+                }
+            }
+        });
+    }
+
+    private void assertContent() throws SqlJetException {
+        assertEquals(500, (long) db.read().asLong(db -> db.getTable("t").open().getRowCount()));
+        assertFalse(db.read().asBool(db -> db.getTable("t").lookup("tb", "row number 1999").eof()));
+        assertTrue(db.read().asBool(db -> db.getTable("t").lookup("tb", "row number 1996").eof()));
+    }
+
+    @Test
+    public void testIncrementalVacuum() throws Exception {
+        final int free = db.getFreePageCount();
+        final long length = file.length();
+        final int pageSize = ISqlJetLimits.SQLJET_DEFAULT_PAGE_SIZE;
+        assertTrue(free > 10);
+
+        assertEquals(10, db.incrementalVacuum(10));
+        assertEquals(free - 10, db.getFreePageCount());
+        assertTrue(file.length() <= length - 10 * pageSize);
+        assertContent();
+
+        assertEquals(free - 10, db.incrementalVacuum(-1));
+        assertEquals(0, db.getFreePageCount());
+        assertEquals(0, db.incrementalVacuum(-1));
+        assertContent();
+    }
+
+    @Test
+    public void testInsideTransaction() throws Exception {
+        final int free = db.getFreePageCount();
+        db.write().asVoid(db -> {
+            final ISqlJetCursor c = db.getTable("t").open();
+            assertEquals(5, db.incrementalVacuum(5));
+            assertFalse(c.eof());
+            c.next();
+            assertEquals(8, c.getInteger("a"));
+        });
+        assertEquals(free - 5, db.getFreePageCount());
+        assertContent();
+    }
+
+    @Test
+    public void testScheduler() throws Exception {
+        final int free = db.getFreePageCount();
+        try (SqlJetVacuumScheduler scheduler = new SqlJetVacuumScheduler(db, 4, 10, TimeUnit.MILLISECONDS)) {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (scheduler.getPagesReclaimed() < free && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(free, scheduler.getPagesReclaimed());
+            assertTrue(scheduler.getStepCount() >= free / 4);
+            assertNull(scheduler.getLastError());
+        }
+        assertEquals(0, db.getFreePageCount());
+        assertContent();
+    }
+
+}
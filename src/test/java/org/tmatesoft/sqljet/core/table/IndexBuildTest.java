@@ -0,0 +1,162 @@
+/**
+ * IndexBuildTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class IndexBuildTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 20000;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text, c integer)");
+            final Random random = new Random(1);
+            for (int i = 1; i <= ROWS; i++) {
+                /* Every tenth value is NULL, every hundredth one is repeated. */
+                final String b = i % 10 == 0 ? null : "value " + random.nextInt(ROWS * 10) + (i % 100 == 1 ? "" : "-" + i);
+                db.getTable("t").insert(null, b, Long.valueOf(i % 100 == 1 ? 1 : i));
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertIndex(String index, String column, boolean desc) throws SqlJetException {
+        db.read().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            final ISqlJetCursor c = t.order(index);
+            long n = 0;
+            Object prev = null;
+            long prevRowId = 0;
+            for (; !c.eof(); c.next(), n++) {
+                final Object value = c.getValue(column);
+                if (prev != null && value != null) {
+                    final int cmp = ((Comparable<Object>) value).compareTo(prev);
+                    assertTrue(desc ? cmp <= 0 : cmp >= 0);
+                    if (cmp == 0) {
+                        assertTrue(c.getRowId() > prevRowId);
+                    }
+                } else if (n > 0) {
+                    /* NULL goes before any value in ascending order. */
+                    assertTrue(desc ? value == null : prev == null);
+                }
+                prev = value;
+                prevRowId = c.getRowId();
+            }
+            assertEquals(ROWS, n);
+            for (long rowId = 1; rowId <= ROWS; rowId += 997) {
+                final ISqlJetCursor r = t.open();
+                assertTrue(r.goTo(rowId));
+                final Object value = r.getValue(column);
+                r.close();
+                if (value != null) {
+                    final ISqlJetCursor l = t.lookup(index, value);
+                    boolean found = false;
+                    for (; !l.eof(); l.next()) {
+                        assertEquals(value, l.getValue(column));
+                        found |= l.getRowId() == rowId;
+                    }
+                    l.close();
+                    assertTrue(found);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testCreateIndex() throws Exception {
+        db.write().asVoid(db -> {
+            db.createIndex("create index tb on t(b)");
+            db.createIndex("create index tc on t(c desc)");
+        });
+        assertIndex("tb", "b", false);
+        assertIndex("tc", "c", true);
+
+        db.write().asVoid(db -> db.getTable("t").insert(null, "value 0", Long.valueOf(0)));
+        assertFalse(db.read().asBool(db -> db.getTable("t").lookup("tb", "value 0").eof()));
+    }
+
+    @Test
+    public void testCreateUniqueIndex() throws Exception {
+        db.write().asVoid(db -> db.createIndex("create unique index ta on t(a, c)"));
+        assertIndex("ta", "a", false);
+        try {
+            db.write().asVoid(db -> db.createIndex("create unique index tc on t(c)"));
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+        assertNull(db.getSchema().getIndex("tc"));
+    }
+
+    @Test
+    public void testUniqueIndexAllowsNulls() throws Exception {
+        db.write().asVoid(db -> {
+            db.createTable("create table u(a text)");
+            db.getTable("u").insert((Object) null);
+            db.getTable("u").insert((Object) null);
+            db.getTable("u").insert("x");
+            db.createIndex("create unique index ua on u(a)");
+        });
+        assertEquals(3, db.getTable("u").getRowCount());
+    }
+
+    @Test
+    public void testBulkLoadUniqueIndex() throws Exception {
+        db.write().asVoid(db -> {
+            db.createTable("create table u(a integer primary key, b text unique)");
+        });
+        final List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= ROWS; i++) {
+            rows.add(new Object[] { null, "value " + (i == ROWS ? 1 : i) });
+        }
+        try {
+            db.getTable("u").bulkLoad(rows.iterator());
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.CONSTRAINT, e.getErrorCode());
+        }
+        assertEquals(0, db.getTable("u").getRowCount());
+        rows.remove(rows.size() - 1);
+        assertEquals(ROWS - 1, db.getTable("u").bulkLoad(rows.iterator()));
+        assertFalse(db.read().asBool(db -> db.getTable("u").lookup(null, "value 777").eof()));
+    }
+
+}
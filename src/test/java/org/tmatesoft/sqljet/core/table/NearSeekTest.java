@@ -0,0 +1,150 @@
+/**
+ * NearSeekTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class NearSeekTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 10000;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text)");
+            db.createIndex("create index tb on t(b)");
+        });
+    }
+
+    private static String value(long i) {
+        return String.format("value %08d", Long.valueOf(i));
+    }
+
+    @Test
+    public void testAscendingInserts() throws Exception {
+        final long seeks = db.getSeekCount();
+        final long nearSeeks = db.getNearSeekCount();
+        db.write().asVoid(db -> db.getTable("t").insert(Long.valueOf(1), value(1)));
+        final List<Object[]> rows = new ArrayList<>();
+        for (long i = 2; i <= ROWS; i++) {
+            rows.add(new Object[] { Long.valueOf(i), value(i) });
+        }
+        /* Table isn't empty, so rows are inserted one by one with the same cursors. */
+        db.getTable("t").bulkLoad(rows.iterator());
+        final long total = db.getSeekCount() - seeks;
+        final long near = db.getNearSeekCount() - nearSeeks;
+        assertTrue(total >= ROWS);
+        assertTrue(near > total / 2);
+
+        db.read().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            for (long i = 1; i <= ROWS; i++) {
+                final ISqlJetCursor c = t.lookup("tb", value(i));
+                assertFalse(c.eof());
+                assertEquals(i, c.getInteger("a"));
+                c.close();
+            }
+            /* Index order follows rowids, so every row is next to previous one. */
+            final long orderNearSeeks = db.getNearSeekCount();
+            final ISqlJetCursor o = t.order("tb");
+            for (long i = 1; i <= ROWS; i++, o.next()) {
+                assertFalse(o.eof());
+                assertEquals(i, o.getInteger("a"));
+            }
+            assertTrue(o.eof());
+            o.close();
+            assertTrue(db.getNearSeekCount() - orderNearSeeks > ROWS / 2);
+
+            final ISqlJetCursor c = t.open();
+            for (long i = 1; i <= ROWS; i += 3) {
+                assertTrue(c.goTo(i));
+                assertEquals(value(i), c.getString("b"));
+            }
+            assertFalse(c.goTo(ROWS + 1));
+            c.close();
+        });
+    }
+
+    @Test
+    public void testRandomChanges() throws Exception {
+        final TreeMap<Long, String> expected = new TreeMap<>();
+        final Random random = new Random(2);
+        db.write().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            final ISqlJetCursor c = t.open();
+            for (int i = 0; i < ROWS * 2; i++) {
+                final long a = 1 + random.nextInt(ROWS);
+                if (c.goTo(a)) {
+                    if (random.nextBoolean()) {
+                        c.delete();
+                        expected.remove(Long.valueOf(a));
+                    } else {
+                        c.update(Long.valueOf(a), value(i));
+                        expected.put(Long.valueOf(a), value(i));
+                    }
+                } else {
+                    t.insert(Long.valueOf(a), value(i));
+                    expected.put(Long.valueOf(a), value(i));
+                }
+            }
+            c.close();
+        });
+        assertTrue(db.getNearSeekCount() > 0);
+
+        db.read().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            final ISqlJetCursor c = t.open();
+            for (long a = 1; a <= ROWS; a++) {
+                final String b = expected.get(Long.valueOf(a));
+                assertEquals(b != null, c.goTo(a));
+                if (b != null) {
+                    assertEquals(b, c.getString("b"));
+                }
+            }
+            c.close();
+            final ISqlJetCursor o = t.order("tb");
+            for (final String b : new TreeSet<>(expected.values())) {
+                assertFalse(o.eof());
+                assertEquals(b, o.getString("b"));
+                o.next();
+            }
+            assertTrue(o.eof());
+            o.close();
+        });
+    }
+
+}
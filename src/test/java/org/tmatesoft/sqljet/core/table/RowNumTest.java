@@ -88,6 +88,29 @@ public class RowNumTest extends AbstractDataCopyTest {
         }
     }
 
+    @Test
+    public void testRowCountWithoutScan() throws SqlJetException {
+        long n = 0;
+        final ISqlJetCursor c = table.open();
+        try {
+            for (; !c.eof(); c.next()) {
+                n++;
+            }
+        } finally {
+            c.close();
+        }
+        Assert.assertEquals(n, table.getRowCount());
+        final ISqlJetCursor c1 = table.order(table.getPrimaryKeyIndexName());
+        try {
+            Assert.assertEquals(n, c1.getRowCount());
+            Assert.assertEquals(n, c1.reverse().getRowCount());
+        } finally {
+            c1.close();
+        }
+        table.insert("row count", Integer.valueOf(1), Integer.valueOf(2), Integer.valueOf(3), Integer.valueOf(4));
+        Assert.assertEquals(n + 1, table.getRowCount());
+    }
+
     @Test
     public void testgoToRow() throws SqlJetException {
         final ISqlJetCursor c = table.open();
@@ -0,0 +1,122 @@
+/**
+ * RowPositionTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class RowPositionTest extends AbstractNewDbTest {
+
+    private static final int ROWS = 20000;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text)");
+            db.createIndex("create index tb on t(b)");
+            final Random random = new Random(1);
+            for (int i = 0; i < ROWS; i++) {
+                db.getTable("t").insert(null, "row " + random.nextInt());
+            }
+        });
+    }
+
+    private List<Long> scan(ISqlJetCursor c) throws SqlJetException {
+        final List<Long> rows = new ArrayList<>();
+        for (c.first(); !c.eof(); c.next()) {
+            rows.add(Long.valueOf(c.getRowId()));
+        }
+        return rows;
+    }
+
+    private void assertPositions(String index) throws SqlJetException {
+        db.read().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            final ISqlJetCursor c = index == null ? t.open() : t.order(index);
+            final List<Long> rows = scan(c);
+            assertEquals(rows.size(), c.getRowCount());
+
+            final Random random = new Random(2);
+            for (int n = 0; n < 500; n++) {
+                final int row = random.nextInt(rows.size()) + 1;
+                assertTrue(c.goToRow(row));
+                assertEquals(rows.get(row - 1).longValue(), c.getRowId());
+                assertEquals(row, c.getRowIndex());
+            }
+            assertTrue(c.goToRow(rows.size()));
+            assertFalse(c.goToRow(rows.size() + 1));
+            assertFalse(c.goToRow(0));
+            assertEquals(rows.size(), c.getRowIndex());
+
+            c.first();
+            for (int row = 1; row <= 200; row++, c.next()) {
+                final ISqlJetCursor other = index == null ? t.open() : t.order(index);
+                assertTrue(other.goToRow(row));
+                assertEquals(c.getRowId(), other.getRowId());
+                other.close();
+            }
+        });
+    }
+
+    @Test
+    public void testTableOrder() throws Exception {
+        assertPositions(null);
+    }
+
+    @Test
+    public void testIndexOrder() throws Exception {
+        assertPositions("tb");
+    }
+
+    @Test
+    public void testPositionsAfterChange() throws Exception {
+        assertPositions("tb");
+        db.write().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            for (int i = 1; i <= ROWS; i += 3) {
+                final ISqlJetCursor c = t.open();
+                c.goTo(i);
+                c.delete();
+                c.close();
+            }
+            for (int i = 0; i < 1000; i++) {
+                t.insert(null, "new row " + i);
+            }
+        });
+        assertPositions(null);
+        assertPositions("tb");
+    }
+
+}
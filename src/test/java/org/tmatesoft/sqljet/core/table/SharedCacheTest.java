@@ -0,0 +1,158 @@
+/**
+ * SharedCacheTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.fs.SqlJetCompressedFileSystem;
+import org.tmatesoft.sqljet.core.table.engine.SqlJetEngine;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SharedCacheTest extends AbstractNewDbTest {
+
+    private SqlJetDb db1;
+    private SqlJetDb db2;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text)");
+            db.createTable("create table u(a integer primary key, b text)");
+        });
+        db.close();
+        db = null;
+        db1 = SqlJetDb.open(file, true, true);
+        db2 = SqlJetDb.open(file, true, true);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        try {
+            if (db1 != null) {
+                db1.close();
+            }
+            if (db2 != null) {
+                db2.close();
+            }
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    private static long count(SqlJetDb db, String table) throws SqlJetException {
+        return db.read().asLong(db2 -> db2.getTable(table).open().getRowCount());
+    }
+
+    private static void insert(SqlJetDb db, String table, int rows) throws SqlJetException {
+        db.write().asVoid(db2 -> {
+            for (int i = 0; i < rows; i++) {
+                db2.getTable(table).insert(null, "row" + i);
+            }
+        });
+    }
+
+    private static void assertLocked(SqlJetException e) throws SqlJetException {
+        if (e.getErrorCode() != SqlJetErrorCode.LOCKED) {
+            throw e;
+        }
+    }
+
+    @Test
+    public void testChangesAreVisible() throws Exception {
+        insert(db1, "t", 10);
+        assertEquals(10, count(db2, "t"));
+        insert(db2, "t", 5);
+        assertEquals(15, count(db1, "t"));
+    }
+
+    @Test
+    public void testReadLockBlocksWriter() throws Exception {
+        insert(db1, "t", 10);
+        db1.read().asVoid(r -> {
+            final ISqlJetCursor c = r.getTable("t").open();
+            try {
+                insert(db2, "t", 1);
+                fail("Table which is read by other connection can't be modified");
+            } catch (SqlJetException e) {
+                assertLocked(e);
+            }
+            insert(db2, "u", 1);
+            assertEquals(10, c.getRowCount());
+            c.close();
+        });
+        insert(db2, "t", 1);
+        assertEquals(11, count(db1, "t"));
+        assertEquals(1, count(db1, "u"));
+    }
+
+    @Test
+    public void testSingleWriter() throws Exception {
+        db1.write().asVoid(w -> {
+            w.getTable("t").insert(null, "first");
+            try {
+                insert(db2, "u", 1);
+                fail("Only one of connections which share cache may write");
+            } catch (SqlJetException e) {
+                assertLocked(e);
+            }
+        });
+        insert(db2, "u", 1);
+        assertEquals(1, count(db2, "t"));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        insert(db1, "t", 10);
+        db1.close();
+        db1 = null;
+        insert(db2, "t", 10);
+        assertEquals(20, count(db2, "t"));
+        db1 = SqlJetDb.open(file, false, true);
+        assertEquals(20, count(db1, "t"));
+    }
+
+    @Test
+    public void testOtherFileSystemDoesNotShareCache() throws Exception {
+        insert(db1, "t", 10);
+        /* Compressed file system doesn't read plain files, pager of db1 would. */
+        try {
+            new SqlJetEngine(file, true, new SqlJetCompressedFileSystem(), true) {
+                // engine is abstract without abstract methods
+            }.close();
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.NOTADB, e.getErrorCode());
+        }
+        assertEquals(10, count(db2, "t"));
+    }
+
+}
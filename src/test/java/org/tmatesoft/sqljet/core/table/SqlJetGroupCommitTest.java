@@ -0,0 +1,167 @@
+/**
+ * SqlJetGroupCommitTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class SqlJetGroupCommitTest extends AbstractNewDbTest {
+
+    private static final int THREADS = 8;
+    private static final int ROWS = 50;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        db.write().asVoid(db -> db.createTable("create table t(a integer primary key, b text)"));
+    }
+
+    private long count() throws SqlJetException {
+        return db.read().asLong(db -> db.getTable("t").open().getRowCount());
+    }
+
+    @Test
+    public void testConcurrentTransactionsAreGrouped() throws Exception {
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        try (SqlJetGroupCommit group = new SqlJetGroupCommit(db, 20, TimeUnit.MILLISECONDS, 1000)) {
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                threads.add(new Thread(() -> {
+                    for (int j = 0; j < ROWS; j++) {
+                        final String value = thread + ":" + j;
+                        final CompletableFuture<Long> future = group
+                                .submit(db -> Long.valueOf(db.getTable("t").insert(null, value)));
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (CompletableFuture<Long> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS).longValue() > 0);
+            }
+            assertTrue("Transactions should be merged", group.getCommitCount() < THREADS * ROWS);
+        }
+        assertEquals(THREADS * ROWS, count());
+    }
+
+    @Test
+    public void testFailedTransactionDoesNotAffectOthers() throws Exception {
+        final CompletableFuture<?> ok1;
+        final CompletableFuture<?> failed;
+        final CompletableFuture<?> ok2;
+        try (SqlJetGroupCommit group = new SqlJetGroupCommit(db, 1, TimeUnit.SECONDS, 3)) {
+            ok1 = group.submit(db -> Long.valueOf(db.getTable("t").insert(null, "first")));
+            failed = group.submit(db -> {
+                db.getTable("t").insert(null, "failed");
+                throw new SqlJetException("failed");
+            });
+            ok2 = group.submit(db -> Long.valueOf(db.getTable("t").insert(null, "second")));
+        }
+        ok1.get();
+        ok2.get();
+        try {
+            failed.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        }
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void testErrorStopsWriter() throws Exception {
+        final CompletableFuture<?> ok;
+        final CompletableFuture<?> failed;
+        try (SqlJetGroupCommit group = new SqlJetGroupCommit(db, 1, TimeUnit.SECONDS, 2)) {
+            ok = group.submit(db -> Long.valueOf(db.getTable("t").insert(null, "first")));
+            failed = group.submit(db -> {
+                throw new OutOfMemoryError("failed");
+            });
+            try {
+                failed.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof OutOfMemoryError);
+            }
+            /* Error isn't treated as failure of single transaction. */
+            assertTrue(ok.isCompletedExceptionally());
+            assertTrue(group.submit(db -> null).isCompletedExceptionally());
+        }
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void testInterruptStopsWriter() throws Exception {
+        final CompletableFuture<?> pending;
+        try (SqlJetGroupCommit group = new SqlJetGroupCommit(db, 10, TimeUnit.SECONDS, 100)) {
+            pending = group.submit(db -> Long.valueOf(db.getTable("t").insert(null, "row")));
+            final String name = "SqlJet group commit: " + db.getFile();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (name.equals(thread.getName())) {
+                    thread.interrupt();
+                }
+            }
+            try {
+                pending.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals(SqlJetErrorCode.ABORT, ((SqlJetException) e.getCause()).getErrorCode());
+            }
+            assertTrue(group.submit(db -> null).isCompletedExceptionally());
+        }
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void testSubmitAfterClose() throws Exception {
+        final SqlJetGroupCommit group = new SqlJetGroupCommit(db, 0, TimeUnit.MILLISECONDS, 10);
+        final CompletableFuture<?> future = group.submit(db -> Long.valueOf(db.getTable("t").insert(null, "row")));
+        group.close();
+        future.get();
+        assertTrue(group.submit(db -> null).isCompletedExceptionally());
+        assertEquals(1, count());
+    }
+
+}
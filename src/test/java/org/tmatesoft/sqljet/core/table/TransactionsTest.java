@@ -2,9 +2,11 @@ package org.tmatesoft.sqljet.core.table;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.junit.Test;
 import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 
 public class TransactionsTest extends AbstractNewDbTest {
@@ -42,6 +44,25 @@ public class TransactionsTest extends AbstractNewDbTest {
 				})));
 	}
 
+	@Test
+	public void testInterruptedWriteIsRolledBack() throws SqlJetException {
+		db.write().asVoid(this::doWrite);
+		try {
+			db.write().asVoid(db2 -> {
+				db2.getTable("t").insert("interrupted");
+				Thread.currentThread().interrupt();
+			});
+			fail("Write by interrupted thread should fail");
+		} catch (SqlJetException e) {
+			assertEquals(SqlJetErrorCode.IOERR, e.getErrorCode());
+		} finally {
+			Thread.interrupted();
+		}
+		assertEquals(1, db.read().asLong(db2 -> db2.getTable("t").getRowCount()));
+		db.write().asVoid(db2 -> db2.getTable("t").insert("test2"));
+		assertEquals(2, db.read().asLong(db2 -> db2.getTable("t").getRowCount()));
+	}
+
 	private void doWrite(SqlJetDb db) throws SqlJetException {
 		ISqlJetTable t = db
 				.getTable(db
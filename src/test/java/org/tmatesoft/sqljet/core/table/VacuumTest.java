@@ -0,0 +1,136 @@
+/**
+ * VacuumTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.table.engine.SqlJetVacuumStats;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class VacuumTest extends AbstractNewDbTest {
+
+    private void fill() throws SqlJetException {
+        db.write().asVoid(db -> {
+            db.createTable("create table t(a integer primary key, b text)");
+            db.createTable("create table u(a text primary key, b integer)");
+            db.createIndex("create index tb on t(b desc)");
+            db.createView("create view v as select * from t");
+            /* Interleaved inserts into two tables fragment both of them. */
+            for (int i = 0; i < 2000; i++) {
+                db.getTable("t").insert(null, "row number " + i);
+                db.getTable("u").insert("key " + i, i);
+            }
+        });
+        db.write().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            for (int i = 1; i <= 2000; i++) {
+                if (i % 3 != 0) {
+                    final ISqlJetCursor c = t.open();
+                    c.goTo(i);
+                    c.delete();
+                    c.close();
+                }
+            }
+        });
+    }
+
+    private void assertContent(SqlJetDb db) throws SqlJetException {
+        assertEquals(666, (long) db.read().asLong(db2 -> db2.getTable("t").open().getRowCount()));
+        assertEquals(2000, (long) db.read().asLong(db2 -> db2.getTable("u").open().getRowCount()));
+        assertFalse(db.read().asBool(db2 -> db2.getTable("t").lookup("tb", "row number 1997").eof()));
+        assertTrue(db.read().asBool(db2 -> db2.getTable("t").lookup("tb", "row number 1998").eof()));
+        assertEquals(1234L, (long) db.read().asLong(db2 -> db2.getTable("u").lookup(null, "key 1234").getInteger("b")));
+        assertEquals(666, (long) db.read().asLong(db2 -> {
+            final ISqlJetCursor c = db2.getTable("t").order("tb");
+            long n = 0;
+            for (String last = null; !c.eof(); c.next(), n++) {
+                assertTrue(last == null || last.compareTo(c.getString("b")) > 0);
+                last = c.getString("b");
+            }
+            return n;
+        }));
+        assertTrue(db.getSchema().getViewNames().contains("v"));
+    }
+
+    @Test
+    public void testVacuum() throws Exception {
+        fill();
+        final long length = file.length();
+        final SqlJetVacuumStats stats = db.vacuum();
+
+        assertTrue(stats.getFreePagesBefore() > 0);
+        assertTrue(stats.getPagesAfter() < stats.getPagesBefore());
+        assertTrue(stats.getFragmentationBefore() > 0.2);
+        assertTrue(stats.getFragmentationAfter() < stats.getFragmentationBefore() / 2);
+        assertEquals(0, db.getFreePageCount());
+        assertTrue(file.length() < length);
+        assertContent(db);
+
+        db.write().asVoid(db -> db.getTable("t").insert(null, "row number 3000"));
+        db.close();
+        db = SqlJetDb.open(file, true);
+        assertEquals(667, (long) db.read().asLong(db -> db.getTable("t").open().getRowCount()));
+    }
+
+    @Test
+    public void testOtherConnectionSeesVacuum() throws Exception {
+        fill();
+        final SqlJetDb db2 = SqlJetDb.open(file, false);
+        try {
+            assertContent(db2);
+            db.vacuum();
+            assertContent(db2);
+        } finally {
+            db2.close();
+        }
+    }
+
+    @Test
+    public void testAutoVacuumDatabase() throws Exception {
+        db.getOptions().setAutovacuum(true);
+        fill();
+        final SqlJetVacuumStats stats = db.vacuum();
+        assertTrue(stats.getFragmentationAfter() < stats.getFragmentationBefore());
+        assertTrue(db.getOptions().isAutovacuum());
+        assertContent(db);
+    }
+
+    @Test
+    public void testVacuumInsideTransaction() throws Exception {
+        fill();
+        try {
+            db.write().asVoid(db -> db.vacuum());
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+        assertContent(db);
+    }
+
+}
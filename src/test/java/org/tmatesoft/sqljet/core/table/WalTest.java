@@ -0,0 +1,177 @@
+/**
+ * WalTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetPagerJournalMode;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class WalTest extends AbstractNewDbTest {
+
+    private File wal;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        wal = new File(file.getPath() + "-wal");
+        wal.deleteOnExit();
+        db.write().asVoid(db -> db.createTable("create table t(a integer primary key, b text)"));
+        db.setJournalMode(SqlJetPagerJournalMode.WAL);
+    }
+
+    private static long count(SqlJetDb db) throws SqlJetException {
+        return db.read().asLong(db2 -> db2.getTable("t").open().getRowCount());
+    }
+
+    private static void insert(SqlJetDb db, int rows) throws SqlJetException {
+        db.write().asVoid(db2 -> {
+            for (int i = 0; i < rows; i++) {
+                db2.getTable("t").insert(null, "row" + i);
+            }
+        });
+    }
+
+    private static int readInt(File f, long offset) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+            in.skipBytes((int) offset);
+            return in.readInt();
+        }
+    }
+
+    @Test
+    public void testCommitGoesToLog() throws Exception {
+        final long dbLength = file.length();
+        insert(db, 100);
+        assertEquals(SqlJetPagerJournalMode.WAL, db.getJournalMode());
+        assertEquals(dbLength, file.length());
+        assertTrue(wal.length() > 32);
+        assertEquals(0x377f0683, readInt(wal, 0));
+        assertEquals(3007000, readInt(wal, 4));
+        assertEquals(100, count(db));
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        insert(db, 10);
+        db.close();
+        db = SqlJetDb.open(file, true);
+        assertEquals(SqlJetPagerJournalMode.WAL, db.getJournalMode());
+        assertEquals(10, count(db));
+        insert(db, 10);
+        assertEquals(20, count(db));
+    }
+
+    @Test
+    public void testReaderIsNotBlocked() throws Exception {
+        insert(db, 10);
+        final SqlJetDb reader = SqlJetDb.open(file, false);
+        try {
+            reader.read().asVoid(r -> {
+                assertEquals(10, r.getTable("t").open().getRowCount());
+                insert(db, 5);
+                assertEquals(10, r.getTable("t").open().getRowCount());
+            });
+            assertEquals(15, count(reader));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        insert(db, 10);
+        try {
+            db.write().asVoid(db2 -> {
+                db2.getTable("t").insert(null, "rolled back");
+                throw new SqlJetException("rollback");
+            });
+        } catch (SqlJetException e) {
+            // expected
+        }
+        assertEquals(10, count(db));
+    }
+
+    @Test
+    public void testFailedWriteKeepsReadSnapshot() throws Exception {
+        insert(db, 500);
+        final SqlJetDb reader = SqlJetDb.open(file, true);
+        try {
+            reader.read().asVoid(r -> {
+                final ISqlJetCursor c = r.getTable("t").open();
+                assertEquals("row0", c.getString("b"));
+                db.write().asVoid(db2 -> {
+                    final ISqlJetCursor u = db2.getTable("t").open();
+                    while (!u.eof()) {
+                        u.update(null, "updated");
+                        u.next();
+                    }
+                });
+                try {
+                    r.getTable("t").insert(null, "x");
+                    fail();
+                } catch (SqlJetException e) {
+                    assertEquals(SqlJetErrorCode.BUSY, e.getErrorCode());
+                }
+                for (int i = 0; !c.eof(); i++, c.next()) {
+                    assertEquals("row" + i, c.getString("b"));
+                }
+            });
+            assertEquals("updated", reader.read().as(r -> r.getTable("t").open().getString("b")));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        insert(db, 100);
+        db.checkpoint();
+        assertEquals(0, wal.length());
+        assertEquals(100, count(db));
+        insert(db, 1);
+        assertEquals(101, count(db));
+
+        db.setJournalMode(SqlJetPagerJournalMode.DELETE);
+        assertFalse(wal.exists());
+        assertEquals(SqlJetPagerJournalMode.DELETE, db.getJournalMode());
+        db.close();
+        db = SqlJetDb.open(file, true);
+        assertEquals(SqlJetPagerJournalMode.DELETE, db.getJournalMode());
+        assertEquals(101, count(db));
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * WideRowTest.java
+ * Copyright (C) 2009-2013 TMate Software Ltd
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For information on how to redistribute this software under
+ * the terms of a license other than GNU General Public License
+ * contact TMate Software at support@sqljet.com
+ */
+package org.tmatesoft.sqljet.core.table;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.AbstractNewDbTest;
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+
+/**
+ * @author TMate Software Ltd.
+ * @author Sergey Scherbina (sergey.scherbina@gmail.com)
+ *
+ */
+public class WideRowTest extends AbstractNewDbTest {
+
+    private static final int COLUMNS = 40;
+    private static final int ROWS = 200;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        final StringBuilder sql = new StringBuilder("create table t(a integer primary key");
+        for (int i = 1; i < COLUMNS - 1; i++) {
+            sql.append(", c").append(i).append(i % 2 == 0 ? " integer" : " text");
+        }
+        sql.append(", d blob)");
+        db.write().asVoid(db -> {
+            db.createTable(sql.toString());
+            for (int i = 1; i <= ROWS; i++) {
+                db.getTable("t").insert(row(i));
+            }
+        });
+    }
+
+    private static Object value(int row, int column) {
+        if (column == 0) {
+            return Long.valueOf(row);
+        } else if (column == COLUMNS - 1) {
+            /* Every tenth blob goes to overflow pages. */
+            final byte[] blob = new byte[row % 10 == 0 ? 5000 : 10];
+            Arrays.fill(blob, (byte) row);
+            return blob;
+        } else if (column % 7 == 0) {
+            return null;
+        } else if (column % 2 == 0) {
+            return Long.valueOf(row * 1000L + column);
+        } else {
+            return "row " + row + " column " + column;
+        }
+    }
+
+    private static Object[] row(int row) {
+        final Object[] values = new Object[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            values[i] = value(row, i);
+        }
+        return values;
+    }
+
+    @Test
+    public void testReadSomeColumns() throws Exception {
+        db.read().asVoid(db -> {
+            final ISqlJetCursor c = db.getTable("t").open();
+            for (int i = 1; i <= ROWS; i++, c.next()) {
+                assertFalse(c.eof());
+                assertEquals(value(i, 4), Long.valueOf(c.getInteger(4)));
+                assertEquals(value(i, 33), c.getString(33));
+                assertTrue(c.isNull(14));
+                assertEquals(value(i, 4), Long.valueOf(c.getInteger(4)));
+            }
+            assertTrue(c.eof());
+            c.close();
+        });
+    }
+
+    @Test
+    public void testReadAllColumns() throws Exception {
+        db.read().asVoid(db -> {
+            final ISqlJetCursor c = db.getTable("t").open();
+            for (int i = 1; i <= ROWS; i++, c.next()) {
+                assertEquals(COLUMNS, c.getFieldsCount());
+                final Object[] values = c.getRowValues();
+                assertEquals(Long.valueOf(i), values[0]);
+                for (int j = 1; j < COLUMNS - 1; j++) {
+                    assertEquals(value(i, j), values[j]);
+                }
+                assertArrayEquals((byte[]) value(i, COLUMNS - 1), c.getBlobAsArray(COLUMNS - 1).orElse(null));
+            }
+            c.close();
+        });
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        db.read().asVoid(db -> {
+            final ISqlJetCursor c = db.getTable("t").open("c33", "rowid", "c4", "c14", "a");
+            for (int i = 1; i <= ROWS; i++, c.next()) {
+                final Object[] values = c.getRowValues();
+                assertEquals(5, values.length);
+                assertEquals(value(i, 33), values[0]);
+                assertEquals(Long.valueOf(i), values[1]);
+                assertEquals(value(i, 4), values[2]);
+                assertNull(values[3]);
+                assertEquals(Long.valueOf(i), values[4]);
+                assertEquals(value(i, 5), c.getString("c5"));
+            }
+            assertTrue(c.eof());
+            c.close();
+        });
+        try {
+            db.read().asVoid(db -> db.getTable("t").open("c1", "x"));
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+        try {
+            db.read().asVoid(db -> db.getTable("t").open(new String[0]));
+            fail();
+        } catch (SqlJetException e) {
+            assertEquals(SqlJetErrorCode.MISUSE, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testReadAfterChangeByOtherCursor() throws Exception {
+        db.write().asVoid(db -> {
+            final ISqlJetTable t = db.getTable("t");
+            final ISqlJetCursor c = t.open();
+            assertTrue(c.goTo(ROWS / 2));
+            assertEquals(value(ROWS / 2, 1), c.getString(1));
+            final ISqlJetCursor other = t.open();
+            for (int i = 1; i <= ROWS; i += 2) {
+                assertTrue(other.goTo(i));
+                other.update(row(i + ROWS));
+            }
+            other.close();
+            assertEquals(value(ROWS / 2, 3), c.getString(3));
+            assertArrayEquals((byte[]) value(ROWS / 2, COLUMNS - 1),
+                    c.getBlobAsArray(COLUMNS - 1).orElse(null));
+            c.close();
+        });
+        db.read().asVoid(db -> {
+            final ISqlJetCursor c = db.getTable("t").open();
+            assertTrue(c.goTo(ROWS + 1));
+            assertEquals(value(ROWS + 1, 5), c.getString(5));
+            assertNull(c.getValue(7));
+            c.close();
+        });
+    }
+
+    @Test
+    public void testReadAfterDeleteByOtherCursor() throws Exception {
+        db.write().asVoid(db -> {
+            db.createTable("create table u(a text, b text)");
+            final ISqlJetTable u = db.getTable("u");
+            for (int i = 1; i <= 3; i++) {
+                u.insert("a" + i, "b" + i);
+            }
+            final ISqlJetCursor c = u.open();
+            assertTrue(c.goTo(2));
+            assertEquals("a2", c.getString("a"));
+            final ISqlJetCursor other = u.open();
+            assertTrue(other.goTo(2));
+            other.delete();
+            other.close();
+            /* Cursor is moved to the next row, all fields are read from it. */
+            final String b = c.getString("b");
+            assertEquals("a" + b.substring(1), c.getString("a"));
+            assertEquals(b.substring(1), Long.toString(c.getRowId()));
+            c.close();
+        });
+    }
+
+}